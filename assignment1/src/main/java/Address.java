@@ -1,133 +1,175 @@
-/**
- * Class: Address
- *
- * Instance Variables:
- *      1. Unit number (String: must be one to four characters)
- *      2. Street number (int must be 0 to 999999)
- *      3. Street name (String: must be one to twenty characters)
- *      4. Postal code (String: must be either length 5 or length 6)
- *      5. City (String: must be one to thirty characters)
- *
- * Methods: Get methods for all instance variables
- *
- * @author Nattanicha Nilsriphaiwan
- * @version 1.0
- */
-public class Address {
-
-    private String unitNumber;
-    private int streetNumber;
-    private String streetName;
-    private String postalCode;
-    private String city;
-
-    private static final int MINIMUM_UNIT_NUMBER_LENGTH = 1;
-    private static final int MAXIMUM_UNIT_NUMBER_LENGTH = 4;
-    private static final int MINIMUM_STREET_NUMBER = 0;
-    private static final int MAXIMUM_STREET_NUMBER = 999999;
-    private static final int MINIMUM_STREET_NAME_LENGTH = 1;
-    private static final int MAXIMUM_STREET_NAME_LENGTH = 20;
-    private static final int MINIMUM_POSTAL_CODE_LENGTH = 5;
-    private static final int MAXIMUM_POSTAL_CODE_LENGTH = 6;
-    private static final int MINIMUM_CITY_LENGTH = 1;
-    private static final int MAXIMUM_CITY_LENGTH = 30;
-
-    /**
-     * constructor
-     * @param unitNumber    - unit number
-     * @param streetNumber  - street number
-     * @param streetName    - street name
-     * @param postalCode    - postal code
-     * @param city          - city
-     */
-    public Address(String unitNumber,
-                   final int streetNumber,
-                   final String streetName,
-                   final String postalCode,
-                   final String city) {
-        // unitNumber check
-        if (unitNumber != null) {
-            unitNumber = unitNumber.trim();
-            if (unitNumber.length() < MINIMUM_UNIT_NUMBER_LENGTH || unitNumber.length() > MAXIMUM_UNIT_NUMBER_LENGTH) {
-                throw new IllegalArgumentException("Invalid unit number: " + unitNumber);
-            }
-        }
-        this.unitNumber = unitNumber;
-
-        // streetNumber check
-        if (streetNumber < MINIMUM_STREET_NUMBER || streetNumber > MAXIMUM_STREET_NUMBER)
-        {
-            throw new IllegalArgumentException("Invalid street number: " + streetNumber);
-        }
-        else {
-            this.streetNumber = streetNumber;
-        }
-
-        // streetName check
-        if (streetName == null)
-        {
-            throw new NullPointerException("Invalid street name: " + streetName);
-        }
-        else if (streetName.isBlank() || streetName.strip().length() < MINIMUM_STREET_NAME_LENGTH || streetName.strip().length() > MAXIMUM_STREET_NAME_LENGTH) {
-            throw new IllegalArgumentException("Invalid street name: " + streetName);
-        }
-        else {
-            this.streetName = streetName;
-        }
-
-        // postalCode check
-        if (postalCode == null || postalCode.isBlank())
-        {
-            throw new NullPointerException("Invalid postal code: " + postalCode);
-        }
-        else if (postalCode.strip().length() < MINIMUM_POSTAL_CODE_LENGTH || postalCode.strip().length() > MAXIMUM_POSTAL_CODE_LENGTH)
-        {
-            throw new IllegalArgumentException("Invalid postal code: " + postalCode);
-        }
-        else {
-            this.postalCode = postalCode;
-        }
-
-        // city check
-        if (city == null)
-        {
-            throw new NullPointerException("Invalid city: " + city);
-        }
-        else if (city.isBlank() || city.strip().length() < MINIMUM_CITY_LENGTH || city.strip().length() > MAXIMUM_CITY_LENGTH)
-        {
-            throw new IllegalArgumentException("Invalid city: " + city);
-        }
-        else {
-            this.city = city;
-        }
-    }
-
-    /**
-     * getters
-     * @return unitNumber, streetNumber, streetName, postalCode, city
-     */
-    public String getUnitNumber()
-    {
-        return unitNumber;
-    }
-
-    public int getStreetNumber()
-    {
-        return streetNumber;
-    }
-
-    public String getStreetName()
-    {
-        return streetName;
-    }
-
-    public String getPostalCode()
-    {
-        return postalCode;
-    }
-
-    public String getCity()
-    {
-        return city;
-    }
-}
+import java.util.Objects;
+
+/**
+ * Class: Address
+ *
+ * Instance Variables:
+ *      1. Unit number (String: must be one to four characters)
+ *      2. Street number (int must be 0 to 999999)
+ *      3. Street name (String: must be one to twenty characters)
+ *      4. Postal code (String: must be either length 5 or length 6)
+ *      5. City (String: must be one to thirty characters)
+ *
+ * Address is immutable, so one instance can safely be shared by any number of
+ * properties. The string fields are taken from the StringPool, so every address
+ * in the same city or on the same street shares one canonical String.
+ *
+ * Methods:
+ *      1. Get methods for all instance variables
+ *      2. equals(other) and hashCode(): two addresses are equal when all fields are equal
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public class Address {
+
+    private final String unitNumber;
+    private final int streetNumber;
+    private final String streetName;
+    private final String postalCode;
+    private final String city;
+
+    private static final int MINIMUM_UNIT_NUMBER_LENGTH = 1;
+    private static final int MAXIMUM_UNIT_NUMBER_LENGTH = 4;
+    private static final int MINIMUM_STREET_NUMBER = 0;
+    private static final int MAXIMUM_STREET_NUMBER = 999999;
+    private static final int MINIMUM_STREET_NAME_LENGTH = 1;
+    private static final int MAXIMUM_STREET_NAME_LENGTH = 20;
+    private static final int MINIMUM_POSTAL_CODE_LENGTH = 5;
+    private static final int MAXIMUM_POSTAL_CODE_LENGTH = 6;
+    private static final int MINIMUM_CITY_LENGTH = 1;
+    private static final int MAXIMUM_CITY_LENGTH = 30;
+
+    /**
+     * constructor
+     * @param unitNumber    - unit number
+     * @param streetNumber  - street number
+     * @param streetName    - street name
+     * @param postalCode    - postal code
+     * @param city          - city
+     */
+    public Address(String unitNumber,
+                   final int streetNumber,
+                   final String streetName,
+                   final String postalCode,
+                   final String city) {
+        // unitNumber check
+        if (unitNumber != null) {
+            unitNumber = unitNumber.trim();
+            if (unitNumber.length() < MINIMUM_UNIT_NUMBER_LENGTH || unitNumber.length() > MAXIMUM_UNIT_NUMBER_LENGTH) {
+                throw new IllegalArgumentException("Invalid unit number: " + unitNumber);
+            }
+        }
+        this.unitNumber = StringPool.intern(unitNumber);
+
+        // streetNumber check
+        if (streetNumber < MINIMUM_STREET_NUMBER || streetNumber > MAXIMUM_STREET_NUMBER)
+        {
+            throw new IllegalArgumentException("Invalid street number: " + streetNumber);
+        }
+        else {
+            this.streetNumber = streetNumber;
+        }
+
+        // streetName check
+        if (streetName == null)
+        {
+            throw new NullPointerException("Invalid street name: " + streetName);
+        }
+        else if (streetName.isBlank() || streetName.strip().length() < MINIMUM_STREET_NAME_LENGTH || streetName.strip().length() > MAXIMUM_STREET_NAME_LENGTH) {
+            throw new IllegalArgumentException("Invalid street name: " + streetName);
+        }
+        else {
+            this.streetName = StringPool.intern(streetName);
+        }
+
+        // postalCode check
+        if (postalCode == null || postalCode.isBlank())
+        {
+            throw new NullPointerException("Invalid postal code: " + postalCode);
+        }
+        else if (postalCode.strip().length() < MINIMUM_POSTAL_CODE_LENGTH || postalCode.strip().length() > MAXIMUM_POSTAL_CODE_LENGTH)
+        {
+            throw new IllegalArgumentException("Invalid postal code: " + postalCode);
+        }
+        else {
+            this.postalCode = StringPool.intern(postalCode);
+        }
+
+        // city check
+        if (city == null)
+        {
+            throw new NullPointerException("Invalid city: " + city);
+        }
+        else if (city.isBlank() || city.strip().length() < MINIMUM_CITY_LENGTH || city.strip().length() > MAXIMUM_CITY_LENGTH)
+        {
+            throw new IllegalArgumentException("Invalid city: " + city);
+        }
+        else {
+            this.city = StringPool.intern(city);
+        }
+    }
+
+    /**
+     * getters
+     * @return unitNumber, streetNumber, streetName, postalCode, city
+     */
+    public String getUnitNumber()
+    {
+        return unitNumber;
+    }
+
+    public int getStreetNumber()
+    {
+        return streetNumber;
+    }
+
+    public String getStreetName()
+    {
+        return streetName;
+    }
+
+    public String getPostalCode()
+    {
+        return postalCode;
+    }
+
+    public String getCity()
+    {
+        return city;
+    }
+
+    /**
+     * equals method
+     * @param other - object to compare with
+     * @return      - true if other is an Address with the same fields
+     */
+    @Override
+    public boolean equals(final Object other)
+    {
+        if (this == other)
+        {
+            return true;
+        }
+        if (!(other instanceof Address))
+        {
+            return false;
+        }
+        Address address = (Address) other;
+        return streetNumber == address.streetNumber &&
+                Objects.equals(unitNumber, address.unitNumber) &&
+                streetName.equals(address.streetName) &&
+                postalCode.equals(address.postalCode) &&
+                city.equals(address.city);
+    }
+
+    /**
+     * hashCode method
+     * @return - hash code consistent with equals
+     */
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(unitNumber, streetNumber, streetName, postalCode, city);
+    }
+}
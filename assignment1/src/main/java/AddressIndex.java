@@ -0,0 +1,184 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class: AddressIndex
+ *
+ * The ids of the listed properties grouped by AddressKey, so checking a new property for a
+ * duplicate address is one hash lookup instead of a comparison with every listing,
+ * and listing every duplicate is one pass over the groups instead of over every pair.
+ * Ids rather than properties are kept so that the index never holds a cold property in memory.
+ *
+ * Each group is replaced whole on every change (almost every group holds one id), so
+ * readers never lock. A group keeps its ids in order of Listing.getListedSequence(), so
+ * it stays oldest first however the listings are inserted, including when the agency
+ * rebuilds the index from its main map. It is changed in place under the agency's write lock.
+ *
+ * Instance Variables:
+ *      1. By address (ConcurrentHashMap; key is AddressKey, value is the Group of ids listed at that address,
+ *          oldest first)
+ *
+ * Methods:
+ *      1. insert(listing), remove(listing)
+ *      2. idsAt(key): returns the ids listed at an address
+ *      3. duplicates(): returns every group of two or more ids listed at one address
+ *      4. estimateBytes(): returns the bytes of the map, its keys and its groups
+ *      5. estimateBytesPerListing(): returns the bytes a listing at its own address adds
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class AddressIndex {
+
+    private final ConcurrentHashMap<AddressKey, Group> byAddress;
+
+    /**
+     * constructor
+     */
+    AddressIndex()
+    {
+        this.byAddress = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * insert method
+     * @param listing - a listing now in the agency
+     */
+    void insert(final Listing listing)
+    {
+        Group single = new Group(new String[] {listing.getPropertyId()}, new long[] {listing.getListedSequence()});
+        byAddress.merge(listing.getAddressKey(), single, (group, added) -> group.with(listing));
+    }
+
+    /**
+     * remove method
+     * @param listing - a listing no longer in the agency
+     */
+    void remove(final Listing listing)
+    {
+        String propertyId = listing.getPropertyId();
+        byAddress.computeIfPresent(listing.getAddressKey(), (key, group) -> group.without(propertyId));
+    }
+
+    /**
+     * idsAt method
+     * @param key   - a normalized address
+     * @return      - the ids listed at that address, oldest first; empty if there are none
+     */
+    List<String> idsAt(final AddressKey key)
+    {
+        Group group = byAddress.get(key);
+        return group == null ? Collections.emptyList() : Arrays.asList(group.ids);
+    }
+
+    /**
+     * duplicates method
+     * @return - every group of two or more ids listed at one address, each oldest first
+     */
+    ArrayList<List<String>> duplicates()
+    {
+        ArrayList<List<String>> duplicates = new ArrayList<>();
+        for (Group group : byAddress.values())
+        {
+            if (group.ids.length > 1)
+            {
+                duplicates.add(Arrays.asList(group.ids));
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * estimateBytes method
+     * @return - bytes of the map's table and nodes, the keys and the groups (not the ids or the keys' pooled strings)
+     */
+    long estimateBytes()
+    {
+        long bytes = MemoryEstimator.sizeOfHashMap(byAddress.size());
+        for (Map.Entry<AddressKey, Group> entry : byAddress.entrySet())
+        {
+            int length = entry.getValue().ids.length;
+            bytes += entry.getKey().estimateBytes() + MemoryEstimator.shallowSizeOf(Group.class)
+                    + MemoryEstimator.sizeOfArray(length, MemoryEstimator.REFERENCE_BYTES)
+                    + MemoryEstimator.sizeOfArray(length, Long.BYTES);
+        }
+        return bytes;
+    }
+
+    /**
+     * estimateBytesPerListing method
+     * @return - bytes a listing at an address of its own adds: a map entry, its key (whose strings are pooled)
+     *           and a group of one
+     */
+    static long estimateBytesPerListing()
+    {
+        return MemoryEstimator.sizeOfHashMapEntry()
+                + MemoryEstimator.shallowSizeOf(AddressKey.class)
+                + MemoryEstimator.shallowSizeOf(Group.class)
+                + MemoryEstimator.sizeOfArray(1, MemoryEstimator.REFERENCE_BYTES)
+                + MemoryEstimator.sizeOfArray(1, Long.BYTES);
+    }
+
+    /**
+     * Class: Group
+     *
+     * The ids listed at one address and their listed sequences, both oldest first. Never changed once made.
+     */
+    private static final class Group {
+
+        private final String[] ids;
+        private final long[] listed;
+
+        private Group(final String[] ids, final long[] listed)
+        {
+            this.ids = ids;
+            this.listed = listed;
+        }
+
+        private Group with(final Listing listing)
+        {
+            // a new listing is almost always the newest, so look for its place from the end
+            long sequence = listing.getListedSequence();
+            int position = ids.length;
+            while (position > 0 && listed[position - 1] > sequence)
+            {
+                position--;
+            }
+            String[] grownIds = new String[ids.length + 1];
+            long[] grownListed = new long[ids.length + 1];
+            System.arraycopy(ids, 0, grownIds, 0, position);
+            System.arraycopy(listed, 0, grownListed, 0, position);
+            grownIds[position] = listing.getPropertyId();
+            grownListed[position] = sequence;
+            System.arraycopy(ids, position, grownIds, position + 1, ids.length - position);
+            System.arraycopy(listed, position, grownListed, position + 1, ids.length - position);
+            return new Group(grownIds, grownListed);
+        }
+
+        private Group without(final String propertyId)
+        {
+            for (int index = 0; index < ids.length; index++)
+            {
+                if (ids[index].equals(propertyId))
+                {
+                    if (ids.length == 1)
+                    {
+                        return null;
+                    }
+                    String[] shrunkIds = new String[ids.length - 1];
+                    long[] shrunkListed = new long[ids.length - 1];
+                    System.arraycopy(ids, 0, shrunkIds, 0, index);
+                    System.arraycopy(listed, 0, shrunkListed, 0, index);
+                    System.arraycopy(ids, index + 1, shrunkIds, index, ids.length - index - 1);
+                    System.arraycopy(listed, index + 1, shrunkListed, index, ids.length - index - 1);
+                    return new Group(shrunkIds, shrunkListed);
+                }
+            }
+            return this;
+        }
+    }
+}
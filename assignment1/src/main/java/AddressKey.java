@@ -0,0 +1,200 @@
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Class: AddressKey
+ *
+ * An Address reduced to the form feeds disagree least about, for finding the same
+ * physical address listed under different ids. Case, punctuation and repeated spaces
+ * are dropped from every part ("V7N2m8" and "v7n2m8" match), the unit loses any "#",
+ * and common street words are shortened ("56th Avenue" and "56th ave." match). The hash is worked out once, so an AddressIndex lookup costs
+ * one hash and one comparison of five fields. The normalized parts are taken from the StringPool, so keys
+ * on one street or in one city share their strings instead of each holding a copy.
+ *
+ * Instance Variables:
+ *      1. Unit (String: normalized unit number, empty if there is none)
+ *      2. Street number (int)
+ *      3. Street (String: normalized street name)
+ *      4. Postal code (String: upper case, no spaces)
+ *      5. City (String: normalized city)
+ *      6. Hash (int: computed once)
+ *
+ * Methods:
+ *      1. of(address): returns the key of an address
+ *      2. getStreet(), getPostalCode(), getCity(): return the normalized parts
+ *      3. normalizeStreet(streetName), normalizeCity(city): normalize one part the way of(address) does
+ *      4. equals(other), hashCode()
+ *      5. toString(): returns the key as "unit-number street POSTAL city"
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class AddressKey {
+
+    private final String unit;
+    private final int streetNumber;
+    private final String street;
+    private final String postalCode;
+    private final String city;
+    private final int hash;
+
+    private static final Map<String, String> STREET_WORDS = Map.ofEntries(
+            Map.entry("avenue", "ave"),
+            Map.entry("street", "st"),
+            Map.entry("road", "rd"),
+            Map.entry("drive", "dr"),
+            Map.entry("boulevard", "blvd"),
+            Map.entry("crescent", "cres"),
+            Map.entry("place", "pl"),
+            Map.entry("court", "ct"),
+            Map.entry("lane", "ln"),
+            Map.entry("highway", "hwy"),
+            Map.entry("north", "n"),
+            Map.entry("south", "s"),
+            Map.entry("east", "e"),
+            Map.entry("west", "w"));
+    private static final int HASH_MULTIPLIER = 31;
+
+    private AddressKey(final String unit,
+                       final int streetNumber,
+                       final String street,
+                       final String postalCode,
+                       final String city)
+    {
+        this.unit = unit;
+        this.streetNumber = streetNumber;
+        this.street = street;
+        this.postalCode = postalCode;
+        this.city = city;
+
+        int hash = unit.hashCode();
+        hash = HASH_MULTIPLIER * hash + streetNumber;
+        hash = HASH_MULTIPLIER * hash + street.hashCode();
+        hash = HASH_MULTIPLIER * hash + postalCode.hashCode();
+        this.hash = HASH_MULTIPLIER * hash + city.hashCode();
+    }
+
+    /**
+     * of method
+     * @param address   - an address
+     * @return          - its normalized key
+     */
+    static AddressKey of(final Address address)
+    {
+        // the parts are pooled like the address's own strings, so every key on one street shares its street
+        String unit = address.getUnitNumber() == null ? "" : words(address.getUnitNumber(), false).replace(" ", "");
+        String postalCode = address.getPostalCode().replaceAll("[\\s-]", "").toUpperCase(Locale.ROOT);
+        return new AddressKey(StringPool.intern(unit), address.getStreetNumber(),
+                StringPool.intern(words(address.getStreetName(), true)), StringPool.intern(postalCode),
+                StringPool.intern(words(address.getCity(), false)));
+    }
+
+    /**
+     * getters
+     * @return street, postalCode, city
+     */
+    String getStreet()
+    {
+        return street;
+    }
+
+    String getPostalCode()
+    {
+        return postalCode;
+    }
+
+    String getCity()
+    {
+        return city;
+    }
+
+    /**
+     * normalizeStreet method
+     * @param streetName    - a street name
+     * @return              - the street name as a key holds it
+     */
+    static String normalizeStreet(final String streetName)
+    {
+        return words(streetName, true);
+    }
+
+    /**
+     * normalizeCity method
+     * @param city  - a city
+     * @return      - the city as a key holds it
+     */
+    static String normalizeCity(final String city)
+    {
+        return words(city, false);
+    }
+
+    /**
+     * words method
+     * @param text              - part of an address
+     * @param shortenStreetWords - true to shorten common street words
+     * @return                  - text in lower case, with runs of anything but letters and digits as one space
+     */
+    private static String words(final String text, final boolean shortenStreetWords)
+    {
+        StringBuilder normalized = new StringBuilder(text.length());
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+        {
+            if (word.isEmpty())
+            {
+                continue;
+            }
+            if (normalized.length() > 0)
+            {
+                normalized.append(' ');
+            }
+            normalized.append(shortenStreetWords ? STREET_WORDS.getOrDefault(word, word) : word);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * estimateBytes method
+     * @return - bytes of this key (not its strings, which come from the StringPool and are shared)
+     */
+    long estimateBytes()
+    {
+        return MemoryEstimator.shallowSizeOf(AddressKey.class);
+    }
+
+    /**
+     * equals method
+     * @param other - another object
+     * @return      - true if other is an AddressKey with the same normalized fields
+     */
+    @Override
+    public boolean equals(final Object other)
+    {
+        if (this == other)
+        {
+            return true;
+        }
+        if (!(other instanceof AddressKey))
+        {
+            return false;
+        }
+        AddressKey key = (AddressKey) other;
+        return hash == key.hash
+                && streetNumber == key.streetNumber
+                && unit.equals(key.unit)
+                && street.equals(key.street)
+                && postalCode.equals(key.postalCode)
+                && city.equals(key.city);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    @Override
+    public String toString()
+    {
+        return (unit.isEmpty() ? "" : unit + "-") + streetNumber + " " + street + " " + postalCode + " " + city;
+    }
+}
@@ -1,387 +1,2114 @@
-import java.util.ArrayList;
-import java.util.HashMap;
-
-/**
- * Class: Agency
- *
- * Instance Variables:
- *      1. Name (String, 1 to 30 characters)
- *      2. Properties (HashMap of properties; key is property id, value is a Property)
- *
- * Methods:
- *      1. addProperty(property): adds the (non-null) property to the HashMap
- *      2. removeProperty(propertyId): removes the property whose ID matches the parameter, from the HashMap
- *      3. getProperty(propertyId): returns the property whose ID matches the parameter, from the HashMap (or null if there is no match)
- *      4. getTotalPropertyValues(): returns the total amount in USD of all Properties
- *      5. getPropertiesWithPools(): returns an ArrayList of such Properties...or null if there are none
- *      6. getPropertiesBetween(minUsd, maxUsd): returns an array of properties whose price falls in the range specified by the parameters...or null if there are none
- *      7. getPropertiesOn(streetName): returns an ArrayList of addresses which are on the specified street...or null if there are none
- *      8. getPropertiesWithBedrooms(minBedrooms, maxBedrooms): returns a HashMap of properties
- *          (key is property id, value is the Property) whose number of bedrooms falls in the range specified
- *          by the parameters...or null if there are none. Note that the order of the properties may differ
- *          from since a HashMap doesn’t store “in order,” but the contents must otherwise match those in the sample run in the tests.
- *      9. getPropertiesOfType(propertyType): returns an ArrayList of Strings, with all the information
- *          about every property (one property per line) that is of the specified type (e.g. “commErciAl”: be
- *          case-insensitive) in the exact format of:
- *
- *          Type: COMMERCIAL
- *              1) Property 9999: unit #9 at 99 Gretzky Way T6V7H3 in Toronto (1 bedroom): $99999.
- *              2) Property 678T: 1515 Main Street V8Y7R3 in West Vancouver (2 bedrooms plus pool): $4000000.
- *              3) Property A1212: unit #7h at 1500 Railway Avenue V9V5V4 in Richmond (4 bedrooms): $840000.
- *
- *          Note that the sample output above is exactly what should be returned for the data shown
- *          below; it must create similar sentence structures for any property of any type. Notice the
- *          capitalization of various parts of the string (see above) versus how it was stored (see below).
- *
- *          If there are NO properties of the specified type the output must be as follows:
- *
- *          Type: RETAIL
- *          <none found>
- *
- * @author Nattanicha Nilsriphaiwan
- * @version 1.0
- */
-public class Agency {
-
-    private String name;
-    private HashMap<String, Property> properties;
-
-    private static double TOTAL_PRICE_USD = 0.00;
-    private static int PROPERTIES_BETWEEN_FIRST_INDEX = 0;
-    private static int PROPERTIES_BETWEEN_TOTAL_INDEX = 0;
-    private static final int SMALLEST_SIZE_OF_MATCHING_PROPERTIES = 1;
-
-    /**
-     * constructor
-     * @param name - name of the class
-     */
-    public Agency(final String name)
-    {
-        if (name == null || name.isBlank())
-        {
-            throw new NullPointerException("Invalid Name: " + name);
-        } else {
-            this.name = name;
-        }
-        this.properties = new HashMap<>();
-    }
-
-    /**
-     * addProperty method
-     * @param property - adds the (non-null) property to the HashMap
-     */
-    void addProperty(final Property property)
-    {
-        if (property == null) {
-            throw new NullPointerException("Property cannot be null");
-        }
-        else {
-            properties.put(property.getPropertyId(), property);
-        }
-    }
-
-    /**
-     * getProperty method
-     * @param propertyId    - property id you want to find
-     * @return              - the property whose ID matches the parameter, from the HashMap (or null if there is no match)
-     */
-    Property getProperty(final String propertyId)
-    {
-        for (String key : properties.keySet())
-        {
-            if (key.equals(propertyId)) {
-                return properties.get(key);
-            }
-        }
-        return null;
-    }
-
-    /**
-     * removeProperty method
-     * @param propertyId - property id you want to remove
-     */
-    void removeProperty(final String propertyId)
-    {
-        if (propertyId == null || propertyId.isBlank())
-        {
-            throw new NullPointerException("Property cannot be null");
-        }
-        else if (!properties.containsKey(propertyId))
-        {
-            throw new IllegalArgumentException("Property ID doesn't match");
-        }
-        else
-        {
-            properties.remove(propertyId);
-        }
-    }
-
-    /**
-     * getTotalPropertyValues method
-     * @return - the total amount in USD of all Properties
-     */
-    double getTotalPropertyValues() {
-        for (String key : properties.keySet())
-        {
-            double price = properties.get(key).getPriceUsd();
-            TOTAL_PRICE_USD += price;
-        }
-        return TOTAL_PRICE_USD;
-    }
-
-    /**
-     * getPropertiesWithPools method
-     * @return - an ArrayList of such Properties, or null if there are none
-     */
-    ArrayList<Property> getPropertiesWithPools()
-    {
-        ArrayList<Property> propertiesWithPools = new ArrayList<>();
-        for (String key : properties.keySet())
-        {
-            if (properties.get(key).hasSwimmingPool())
-            {
-                propertiesWithPools.add(properties.get(key));
-            }
-        }
-
-        return propertiesWithPools;
-    }
-
-    /**
-     * getPropertiesBetween method
-     * @param minUsd - minimum price in usd
-     * @param maxUsd - maximum price in usd
-     * @return       - an array of properties whose price falls in the range specified by the parameters, or null if there are none
-     */
-    Property[] getPropertiesBetween(final int minUsd, final int maxUsd)
-    {
-        for (String key : properties.keySet())
-        {
-            double priceUsd = properties.get(key).getPriceUsd();
-            if (priceUsd >= minUsd && priceUsd <= maxUsd)
-            {
-                PROPERTIES_BETWEEN_TOTAL_INDEX++;
-            }
-        }
-
-        Property[] propertiesBetween = new Property[PROPERTIES_BETWEEN_TOTAL_INDEX];
-        for (String key : properties.keySet())
-        {
-            double priceUsd = properties.get(key).getPriceUsd();
-            if (priceUsd >= minUsd && priceUsd <= maxUsd)
-            {
-                propertiesBetween[PROPERTIES_BETWEEN_FIRST_INDEX] = properties.get(key);
-                PROPERTIES_BETWEEN_FIRST_INDEX++;
-            }
-        }
-
-        return propertiesBetween;
-    }
-
-    /**
-     * getPropertiesOn method
-     * @param streetName - street name you want to find
-     * @return           - an ArrayList of addresses which are on the specified street, or null if there are none
-     */
-    ArrayList<Address> getPropertiesOn(final String streetName)
-    {
-        ArrayList<Address> propertiesOn = new ArrayList<>();
-        for (String key : properties.keySet())
-        {
-            Property property = properties.get(key);
-            if (property.getAddress().getStreetName().equalsIgnoreCase(streetName))
-            {
-                propertiesOn.add(property.getAddress());
-            }
-        }
-        // if streetName is not found, return null
-        if (propertiesOn.isEmpty())
-        {
-            return null;
-        }
-
-        return propertiesOn;
-    }
-
-    /**
-     * getPropertiesWithBedrooms method
-     * @param minBedrooms   - minimum number of bedroom
-     * @param maxBedrooms   - maximum number of bedroom
-     * @return              - a HashMap of properties (key is property id, value is the Property)
-     *                        whose number of bedrooms falls in the range specified by the parameters...or null if there are none
-     */
-    HashMap<String, Property> getPropertiesWithBedrooms(final int minBedrooms, final int maxBedrooms)
-    {
-        HashMap<String, Property> propertiesWithBedrooms = new HashMap<>();
-        for (String key : properties.keySet())
-        {
-            int propertyNumberOfBedrooms = properties.get(key).getNumberOfBedrooms();
-            if (propertyNumberOfBedrooms >= minBedrooms && propertyNumberOfBedrooms <= maxBedrooms)
-            {
-                propertiesWithBedrooms.put(properties.get(key).getPropertyId(), properties.get(key));
-            }
-        }
-        // if streetName is not found, return null
-        if (propertiesWithBedrooms.isEmpty())
-        {
-            return null;
-        }
-
-        return propertiesWithBedrooms;
-    }
-
-    /**
-     * getPropertiesOfType method
-     * @param propertyType  - property type tou want to find
-     * @return              - an ArrayList of Strings, with all the information about every property (one property per line)
-     *                        that is one of the specified type (“residence”, “commercial”, or “retail”) in the exact format
-     */
-    public ArrayList<String> getPropertiesOfType(final String propertyType)
-    {
-        ArrayList<String> matchingProperties = new ArrayList<>();
-        String string;
-        string = "Type: " + propertyType.toUpperCase() + "\n";
-        matchingProperties.add(string);
-        for (String key : properties.keySet()) {
-            Property property = properties.get(key);
-            if (properties.get(key).getType().equalsIgnoreCase(propertyType))
-            {
-                // HAS UNIT
-                if (property.getAddress().getUnitNumber() != null)
-                {
-                    // has unit number, HAS SWIMMING POOL
-                    if (property.hasSwimmingPool())
-                    {
-                        // has unit number, has swimming pool, HAS 1 BEDROOM
-                        if (property.getNumberOfBedrooms() == 1)
-                        {
-                            // ") Property 9999: unit #9 at 99 Gretzky Way T6V7H3 in Toronto (1 bedroom plus pool): $99999.\n"
-                            string = String.format(") Property %s: unit #%s at %d %s %s in %s (%d bedroom plus pool): $%.0f.\n",
-                                    property.getPropertyId(), property.getAddress().getUnitNumber(), property.getAddress().getStreetNumber(),
-                                    toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
-                                    toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), property.getPriceUsd());
-                            matchingProperties.add(string);
-                        }
-                        // has unit number, has swimming pool, HAS MORE THAN 1 BEDROOM
-                        else
-                        {
-                            // ") Property 9999: unit #9 at 99 Gretzky Way T6V7H3 in Toronto (4 bedrooms plus pool): $99999.\n"
-                            string = String.format(") Property %s: unit #%s at %d %s %s in %s (%d bedrooms plus pool): $%.0f.\n",
-                                    property.getPropertyId(), property.getAddress().getUnitNumber(), property.getAddress().getStreetNumber(),
-                                    toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
-                                    toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), property.getPriceUsd());
-                            matchingProperties.add(string);
-                        }
-                    }
-                    // has unitNumber, HAS NO SWIMMING POOL
-                    else
-                    {
-                        // has unit number, has NO swimming pool, HAS 1 BEDROOM
-                        if (property.getNumberOfBedrooms() == 1)
-                        {
-                            // ") Property 9999: unit #9 at 99 Gretzky Way T6V7H3 in Toronto (1 bedroom): $99999.\n"
-                            string = String.format(") Property %s: unit #%s at %d %s %s in %s (%d bedroom): $%.0f.\n",
-                                    property.getPropertyId(), property.getAddress().getUnitNumber(), property.getAddress().getStreetNumber(),
-                                    toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
-                                    toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), property.getPriceUsd());
-                            matchingProperties.add(string);
-                        }
-                        // has unit number, has NO swimming pool, HAS MORE THAN 1 BEDROOM
-                        else
-                        {
-                            // ") Property 9999: unit #9 at 99 Gretzky Way T6V7H3 in Toronto (4 bedrooms): $99999.\n"
-                            string = String.format(") Property %s: unit #%s at %d %s %s in %s (%d bedrooms): $%.0f.\n",
-                                    property.getPropertyId(), property.getAddress().getUnitNumber(), property.getAddress().getStreetNumber(),
-                                    toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
-                                    toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), property.getPriceUsd());
-                            matchingProperties.add(string);
-                        }
-                    }
-                }
-                // HAS NO UNIT
-                else
-                {
-                    // has NO unit number, HAS SWIMMING POOL
-                    if (property.hasSwimmingPool())
-                    {
-                        // has NO unit number, has swimming pool, HAS 1 BEDROOM
-                        if (property.getNumberOfBedrooms() == 1)
-                        {
-                            // ") Property 9999: 99 Gretzky Way T6V7H3 in Toronto (1 bedroom plus pool): $99999.\n"
-                            string = String.format(") Property %s: %d %s %s in %s (%d bedroom plus pool): $%.0f.\n",
-                                    property.getPropertyId(), property.getAddress().getStreetNumber(),
-                                    toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
-                                    toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), property.getPriceUsd());
-                            matchingProperties.add(string);
-                        }
-                        // has NO unit number, has swimming pool, HAS MORE THAN 1 BEDROOM
-                        else
-                        {
-                            // ") Property 9999: 99 Gretzky Way T6V7H3 in Toronto (4 bedroom plus pool): $99999.\n"
-                            string = String.format(") Property %s: %d %s %s in %s (%d bedrooms plus pool): $%.0f.\n",
-                                    property.getPropertyId(), property.getAddress().getStreetNumber(),
-                                    toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
-                                    toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), property.getPriceUsd());
-                            matchingProperties.add(string);
-                        }
-                    }
-                    // has NO unitNumber, HAS NO SWIMMING POOL
-                    else
-                    {
-                        // has NO unit number, has NO swimming pool, HAS 1 BEDROOM
-                        if (property.getNumberOfBedrooms() == 1)
-                        {
-                            // ") Property 9999: 99 Gretzky Way T6V7H3 in Toronto (1 bedroom): $99999.\n"
-                            string = String.format(") Property %s: %d %s %s in %s (%d bedroom): $%.0f.\n",
-                                    property.getPropertyId(), property.getAddress().getStreetNumber(),
-                                    toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
-                                    toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), property.getPriceUsd());
-                            matchingProperties.add(string);
-                        }
-                        // has NO unit number, has NO swimming pool, HAS MORE THAN 1 BEDROOM
-                        else
-                        {
-                            // ") Property 9999: 99 Gretzky Way T6V7H3 in Toronto (4 bedroom plus pool): $99999.\n"
-                            string = String.format(") Property %s: %d %s %s in %s (%d bedrooms): $%.0f.\n",
-                                    property.getPropertyId(), property.getAddress().getStreetNumber(),
-                                    toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
-                                    toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), property.getPriceUsd());
-                            matchingProperties.add(string);
-                        }
-                    }
-                }
-            }
-        }
-        // if property type cannot be found, show "<none found>"
-        if (matchingProperties.size() == SMALLEST_SIZE_OF_MATCHING_PROPERTIES)
-        {
-            matchingProperties.add("<none found>");
-        }
-
-        return matchingProperties;
-    }
-
-    /**
-     * a method to make a string in title case
-     * @param string - String
-     * @return      - title string
-     */
-    String toTitleCase(String string) {
-        StringBuilder titleCase = new StringBuilder();
-        boolean nextTitleCase = true;
-
-        for (char c : string.toCharArray()) {
-            if (Character.isSpaceChar(c)) {
-                nextTitleCase = true;
-            } else if (nextTitleCase) {
-                c = Character.toTitleCase(c);
-                nextTitleCase = false;
-            } else {
-                c = Character.toLowerCase(c);
-            }
-            titleCase.append(c);
-        }
-
-        return titleCase.toString();
-    }
-}
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Class: Agency
+ *
+ * Instance Variables:
+ *      1. Name (String, 1 to 30 characters)
+ *      2. Listings (PersistentMap of listings; key is property id, value is the Listing of a Property)
+ *      3. Listings by type (EnumMap of PersistentMaps; the same listings partitioned by PropertyType,
+ *          so type queries only read their own partition)
+ *      4. Snapshot (AgencySnapshot: the latest published, immutable view of the listings)
+ *      5. Metrics (AgencyMetrics: per-method counters, latency histograms and JFR events)
+ *      6. Memory budget (long: soft cap in bytes on the estimated size of the listings; 0 means no cap)
+ *      7. Estimated bytes (AtomicLong: running estimate of the listings' size and their entries in every index,
+ *          kept on add and remove; a spill takes off the bytes of the properties it drops, and a promotion, which
+ *          can happen on any reader's thread, puts them back)
+ *      8. Total price in USD (double: sum of every listing's price, kept on add, remove and price change)
+ *      9. Comparables (ComparablesIndex: a k-d tree of the listings by price, bedrooms, pool and type)
+ *     10. Mutation sequence (long: number of changes made to the listings so far)
+ *     11. Mutation listeners (AgencyMutationListener[]: told of every change, in order; empty by default)
+ *     12. Address index (AddressIndex: the listings grouped by normalized address, for finding duplicates)
+ *     13. Duplicate policy (DuplicatePolicy: what adding a property at an already listed address does; ALLOW by default)
+ *     14. Flagged duplicates (Set of property ids: listed at an already listed address while the policy was FLAG;
+ *          each listing keeps its flag, so a rebuild recomputes the set)
+ *     15. Cold storage (ListingStore: where spillColdListings writes properties not read lately; null by default)
+ *     16. Price ranks (PriceRankIndex: one persistent treap per number of bedrooms, with the count and total price
+ *          under every node, for the listings, counts and totals in a price and bedrooms range; published in each
+ *          snapshot)
+ *     17. Analytics (AgencyAnalytics: distinct address counts, street frequencies and a sample of the listings)
+ *     18. Digest (ListingDigest: a Merkle tree of the listings' content, for comparing agencies)
+ *     19. Columns (ListingColumnIndex: the listings as chunked primitive columns, copied chunk by chunk on write)
+ *
+ * Writers (adds, removes, price changes and batches) take the write lock, change the persistent maps and
+ * publish a new AgencySnapshot. Queries read the latest snapshot once and scan only that, so they never
+ * block, are never blocked and always see one consistent point in time, prices included; the price ranks
+ * are persistent too and are published with the snapshot. The exceptions are getComparables and findDuplicates,
+ * whose indexes are updated in place and may be a change ahead of the snapshot: the k-d tree synchronizes for
+ * the length of one search, a price change replaces a listing in it in one step, and a rebuild builds new
+ * indexes aside and swaps them in.
+ *
+ * Every structure kept alongside the main map (the type partitions, the total price, the comparables tree,
+ * the price ranks, the analytics, the digest, the columns) is maintained through indexAdd, indexRemove and indexPriceChanged, and can
+ * be rebuilt from the main map with rebuildIndexes. Batch operations apply all their changes to the main map first and then either patch
+ * the structures once per changed listing or, for a batch that touches a large share of the agency,
+ * rebuild them once.
+ *
+ * Methods:
+ *      1. addProperty(property): adds the (non-null) property to the agency
+ *      2. removeProperty(propertyId): removes the property whose ID matches the parameter, from the agency
+ *      3. getProperty(propertyId): returns the property whose ID matches the parameter, from the agency (or null if there is no match)
+ *      4. getTotalPropertyValues(): returns the total amount in USD of all Properties
+ *      5. getPropertiesWithPools(): returns an ArrayList of such Properties...or null if there are none
+ *      6. getPropertiesBetween(minUsd, maxUsd): returns an array of properties whose price falls in the range specified by the parameters...or null if there are none
+ *      7. getPropertiesOn(streetName): returns an ArrayList of addresses which are on the specified street...or null if there are none
+ *      8. getPropertiesWithBedrooms(minBedrooms, maxBedrooms): returns a HashMap of properties
+ *          (key is property id, value is the Property) whose number of bedrooms falls in the range specified
+ *          by the parameters...or null if there are none. Note that the order of the properties may differ
+ *          from since a HashMap doesn’t store “in order,” but the contents must otherwise match those in the sample run in the tests.
+ *      9. getPropertiesOfType(propertyType): returns an ArrayList of Strings, with all the information
+ *          about every property (one property per line) that is of the specified type (e.g. “commErciAl”: be
+ *          case-insensitive) in the exact format of:
+ *
+ *          Type: COMMERCIAL
+ *              1) Property 9999: unit #9 at 99 Gretzky Way T6V7H3 in Toronto (1 bedroom): $99999.
+ *              2) Property 678T: 1515 Main Street V8Y7R3 in West Vancouver (2 bedrooms plus pool): $4000000.
+ *              3) Property A1212: unit #7h at 1500 Railway Avenue V9V5V4 in Richmond (4 bedrooms): $840000.
+ *
+ *          Note that the sample output above is exactly what should be returned for the data shown
+ *          below; it must create similar sentence structures for any property of any type. Notice the
+ *          capitalization of various parts of the string (see above) versus how it was stored (see below).
+ *
+ *          If there are NO properties of the specified type the output must be as follows:
+ *
+ *          Type: RETAIL
+ *          <none found>
+ *
+ *     10. getMetrics(): returns the AgencyMetrics of this agency (disabled until setEnabled(true); a SlowQueryLog
+ *          can be attached with setSlowQueryLog(log))
+ *     11. getMemoryReport(): returns an AgencyMemoryReport estimating the bytes retained per component
+ *     12. setMemoryBudget(bytes): sets the soft cap; addProperty throws an IllegalStateException
+ *          for a listing that would take the estimated size past it
+ *     13. addAll(properties): adds every (non-null) property as one batch
+ *     14. removeAll(propertyIds): removes every listed property as one batch
+ *     15. updatePrices(filter, repricing): sets the price of every property matching filter to
+ *          repricing applied to its current price, as one batch; returns the number repriced
+ *     16. snapshot(): returns the latest AgencySnapshot, for callers that need several reads
+ *          to agree with each other
+ *     17. getTotalPropertyValuesAt(epochMillis): returns the total of the listed properties' prices at that time
+ *     18. getPropertiesBetween(minUsd, maxUsd, epochMillis): returns an array of the listed properties whose
+ *          price at that time falls in the range
+ *     19. getPropertiesWithPriceDrop(percent, fromMillis, toMillis): returns an ArrayList of the listed
+ *          properties whose price fell by more than percent between the two times
+ *     20. propertiesWithPools(), propertiesOn(streetName), propertiesWithBedrooms(minBedrooms, maxBedrooms):
+ *          return a QueryView of the same matches as methods 5, 7 and 8, evaluated lazily on iteration
+ *     21. stream(), parallelStream(): return a Stream of the properties in the latest snapshot
+ *     22. getTotalPropertyValuesBetween(minUsd, maxUsd, minBedrooms, maxBedrooms): returns the total price
+ *          of the properties in both ranges
+ *     23. getComparables(property, k), getComparables(property, k, weights): return the k listed properties
+ *          most similar to property, nearest first
+ *     24. getPropertiesWithin(minUsd, maxUsd, minBedrooms, maxBedrooms): returns an ArrayList of the
+ *          properties in both ranges, from the price ranks instead of a scan
+ *     25. addMutationListener(listener): starts telling listener of every change and returns the snapshot
+ *          the first change it hears of will follow; removeMutationListener(listener) stops
+ *     26. getPropertiesBetween(minUsd, maxUsd, context), getPropertiesOfType(propertyType, context): methods 6
+ *          and 9, stopping with a CancellationException once context is cancelled (see AgencyScheduler)
+ *     27. publishPropertiesWithPools(), publishPropertiesOfType(propertyType), publishPropertiesBetween(minUsd,
+ *          maxUsd), publishPropertiesWithBedrooms(minBedrooms, maxBedrooms): return a QueryPublisher that emits
+ *          the matching properties only as its subscriber requests them
+ *     28. setDuplicatePolicy(policy), getDuplicatePolicy(): what addProperty and addAll do with a property whose
+ *          normalized address (AddressKey) is already listed under another id
+ *     29. findDuplicates(): returns an ArrayList of every group of properties listed at the same address
+ *     30. getFlaggedDuplicates(): returns the ids of the listed properties flagged as duplicates
+ *     31. setColdStorage(file): spills to file from now on (null reads every cold property back and stops)
+ *     32. spillColdListings(): writes every property not read since the last call to cold storage and
+ *          drops it from memory; returns the number spilled
+ *     33. getColdCount(): returns the number of listings whose property is in cold storage; getColdReadCount()
+ *          returns the number of properties read back from it since it was set
+ *     34. countBetween(minUsd, maxUsd), countBetween(minUsd, maxUsd, minBedrooms, maxBedrooms): return the number
+ *          of properties in the range(s) from the price ranks, in O(log n) without collecting them
+ *     35. sumBetween(minUsd, maxUsd), sumBetween(minUsd, maxUsd, minBedrooms, maxBedrooms): return their total price
+ *     36. getAnalytics(): returns the AgencyAnalytics of this agency, whose approximate counts, quantiles and
+ *          street frequencies are read in constant time
+ *     37. getContentHash(): returns the root hash of the listings' content; agencies holding the same listings
+ *          at the same prices have the same hash
+ *     38. diff(other): returns the ids of the listings that differ between the two agencies, in time proportional
+ *          to the number of differences
+ *     39. reconcileWith(other): copies in (or removes) only the listings that differ, so this agency holds the
+ *          same listings as other; returns the number changed
+ *     40. replaceAll(properties): swaps every listing for the given properties as one change, so a reader sees
+ *          either the old listings or the new ones, never an empty or half-loaded agency
+ *     41. addReplicated(property): adds a property from a replication leader, without the duplicate policy
+ *
+ * Price and bedroom filters (methods 6, 8 and 22) run over the snapshot's ListingColumns with the
+ * branch-free loops in ColumnKernels instead of walking the listings one object at a time. The columns are
+ * kept up to date by the same hooks as the other structures; a publish hands the snapshot the current chunks
+ * and the next write to a chunk copies it, so a snapshot costs only the chunks changed since the last one.
+ *
+ * Every index is built from the fields a Listing keeps in memory, so a listing's Property can be spilled to
+ * cold storage without touching them. Only returning a cold property reads it back, and the property then stays
+ * in memory until it goes unread for a whole spill cycle again. Scans test the same fields; the ones that must
+ * read an address or a price history (getPropertiesOn, only for listings on the normalized street, and the
+ * time-based queries) read a cold property into a copy that is not kept, and promote only the matches. A Property
+ * object held by a caller while its listing is spilled is detached: later changes to its price are not seen by
+ * the agency, and getProperty returns a new object for the same listing.
+ *
+ * The time-based queries read each property's PriceHistory, so they cover the properties listed now, at
+ * the prices they had then. A property whose latest change is before the window is skipped without
+ * decoding its history.
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public class Agency {
+
+    private String name;
+    private final Object writeLock;
+    private volatile AgencySnapshot snapshot;
+    private PersistentMap<String, Listing> listings;
+    private EnumMap<PropertyType, PersistentMap<String, Listing>> listingsByType;
+    private volatile ComparablesIndex comparables;
+    private PriceRankIndex priceRanks;
+    private final AgencyAnalytics analytics;
+    private volatile ListingDigest digest;
+    private volatile AddressIndex addressIndex;
+    private final ListingColumnIndex columns;
+    private volatile DuplicatePolicy duplicatePolicy = DuplicatePolicy.ALLOW;
+    private volatile Set<String> flaggedDuplicates;
+    private volatile ListingStore coldStorage;
+    private AgencyMetrics metrics;
+    private volatile long memoryBudgetBytes;
+    private final AtomicLong estimatedBytes;
+    private double totalPriceUsd;
+    private PriceChangeListener priceChangeListener;
+    private boolean inBatch;
+    private long mutationSequence;
+    private volatile AgencyMutationListener[] mutationListeners = NO_MUTATION_LISTENERS;
+
+    private static final AgencyMutationListener[] NO_MUTATION_LISTENERS = new AgencyMutationListener[0];
+    private static final Object LOCK_ORDER_TIE = new Object();
+
+    private static final int SMALLEST_SIZE_OF_MATCHING_PROPERTIES = 1;
+    private static final long INDEX_BYTES_PER_LISTING = ComparablesIndex.estimateBytesPerListing()
+            + PriceRankIndex.estimateBytesPerListing() + AddressIndex.estimateBytesPerListing()
+            + ListingDigest.estimateBytesPerListing() + ListingColumnIndex.estimateBytesPerListing();
+    private static final int BATCH_REBUILD_DIVISOR = 4;
+    private static final double PERCENT = 100.0;
+
+    /**
+     * constructor
+     * @param name - name of the class
+     */
+    public Agency(final String name)
+    {
+        if (name == null || name.isBlank())
+        {
+            throw new NullPointerException("Invalid Name: " + name);
+        } else {
+            this.name = name;
+        }
+        this.writeLock = new Object();
+        this.listings = PersistentMap.empty();
+        this.listingsByType = new EnumMap<>(PropertyType.class);
+        for (PropertyType propertyType : PropertyType.values())
+        {
+            listingsByType.put(propertyType, PersistentMap.empty());
+        }
+        this.comparables = new ComparablesIndex();
+        this.priceRanks = PriceRankIndex.empty();
+        this.analytics = new AgencyAnalytics();
+        this.digest = new ListingDigest();
+        this.addressIndex = new AddressIndex();
+        this.columns = new ListingColumnIndex();
+        this.flaggedDuplicates = ConcurrentHashMap.newKeySet();
+        this.metrics = new AgencyMetrics(name);
+        this.estimatedBytes = new AtomicLong();
+        this.priceChangeListener = this::priceChanged;
+        publish();
+    }
+
+    /**
+     * addProperty method
+     * @param property - adds the (non-null) property to the HashMap
+     */
+    void addProperty(final Property property)
+    {
+        add(property, true, "addProperty");
+    }
+
+    /**
+     * addReplicated method: adds the property without applying the duplicate policy, since it comes whole
+     * from elsewhere (a replication leader's change, which the leader has already checked)
+     * @param property - the (non-null) property to add
+     */
+    void addReplicated(final Property property)
+    {
+        add(property, false, "addReplicated");
+    }
+
+    /**
+     * add method
+     * @param property      - the property to add
+     * @param applyPolicy   - true to check and flag it under the duplicate policy
+     * @param operation     - the name the metrics record it under
+     */
+    private void add(final Property property, final boolean applyPolicy, final String operation)
+    {
+        if (property == null) {
+            throw new NullPointerException("Property cannot be null");
+        }
+        else {
+            QueryEvent event = metrics.start();
+            synchronized (writeLock)
+            {
+                if (applyPolicy)
+                {
+                    checkDuplicate(property, null);
+                }
+                long listingBytes = sizeOfListing(property);
+                Listing existing = listings.get(property.getPropertyId());
+                long replacedBytes = existing == null ? 0 : sizeOfListing(existing);
+                if (memoryBudgetBytes > 0 && estimatedBytes.get() - replacedBytes + listingBytes > memoryBudgetBytes)
+                {
+                    throw new IllegalStateException("Memory budget exceeded: " + memoryBudgetBytes);
+                }
+
+                if (existing != null)
+                {
+                    detach(existing);
+                    indexRemove(existing);
+                }
+                property.addPriceChangeListener(priceChangeListener);
+                Listing listing = new Listing(property);
+                listings = listings.put(property.getPropertyId(), listing);
+                logAdded(listing);
+                indexAdd(listing);
+                if (applyPolicy)
+                {
+                    flagDuplicate(property);
+                }
+                estimatedBytes.addAndGet(listingBytes - replacedBytes);
+                publish();
+            }
+            if (event != null)
+            {
+                metrics.record(operation, property.getPropertyId(), 1, 1, event);
+            }
+        }
+    }
+
+    /**
+     * getProperty method
+     * @param propertyId    - property id you want to find
+     * @return              - the property whose ID matches the parameter, from the HashMap (or null if there is no match)
+     */
+    Property getProperty(final String propertyId)
+    {
+        QueryEvent event = metrics.start();
+        Property property = snapshot.getProperty(propertyId);
+        if (event != null)
+        {
+            metrics.record("getProperty", propertyId, "listings", 1, property == null ? 0 : 1, event,
+                    AgencyMetrics.NOT_RECORDING);
+        }
+        return property;
+    }
+
+    /**
+     * removeProperty method
+     * @param propertyId - property id you want to remove
+     */
+    void removeProperty(final String propertyId)
+    {
+        if (propertyId == null || propertyId.isBlank())
+        {
+            throw new NullPointerException("Property cannot be null");
+        }
+        QueryEvent event = metrics.start();
+        synchronized (writeLock)
+        {
+            Listing removed = listings.get(propertyId);
+            if (removed == null)
+            {
+                throw new IllegalArgumentException("Property ID doesn't match");
+            }
+            listings = listings.remove(propertyId);
+            logRemoved(propertyId);
+            detach(removed);
+            indexRemove(removed);
+            estimatedBytes.addAndGet(-sizeOfListing(removed));
+            publish();
+        }
+        if (event != null)
+        {
+            metrics.record("removeProperty", propertyId, 1, 1, event);
+        }
+    }
+
+    /**
+     * getTotalPropertyValues method
+     * @return - the total amount in USD of all Properties
+     */
+    double getTotalPropertyValues() {
+        QueryEvent event = metrics.start();
+        double total = snapshot.getTotalPropertyValues();
+        if (event != null)
+        {
+            metrics.record("getTotalPropertyValues", "", "running total", 0, 1, event, AgencyMetrics.NOT_RECORDING);
+        }
+        return total;
+    }
+
+    /**
+     * getPropertiesWithPools method
+     * @return - an ArrayList of such Properties, or null if there are none
+     */
+    ArrayList<Property> getPropertiesWithPools()
+    {
+        QueryEvent event = metrics.start();
+        AgencySnapshot current = snapshot;
+        ArrayList<Property> propertiesWithPools = new ArrayList<>();
+        for (Listing listing : current.listings())
+        {
+            if (listing.hasSwimmingPool())
+            {
+                propertiesWithPools.add(listing.getProperty());
+            }
+        }
+        if (event != null)
+        {
+            metrics.record("getPropertiesWithPools", "", "listings", current.size(), propertiesWithPools.size(), event,
+                    AgencyMetrics.NOT_RECORDING);
+        }
+
+        return propertiesWithPools;
+    }
+
+    /**
+     * getPropertiesBetween method
+     * @param minUsd - minimum price in usd
+     * @param maxUsd - maximum price in usd
+     * @return       - an array of properties whose price falls in the range specified by the parameters, or null if there are none
+     */
+    Property[] getPropertiesBetween(final int minUsd, final int maxUsd)
+    {
+        return getPropertiesBetween(minUsd, maxUsd, QueryContext.NONE);
+    }
+
+    /**
+     * getPropertiesBetween method
+     * @param minUsd    - minimum price in usd
+     * @param maxUsd    - maximum price in usd
+     * @param context   - checked as the matches are collected; cancelling it stops the query
+     * @return          - an array of properties whose price falls in the range specified by the parameters
+     */
+    Property[] getPropertiesBetween(final int minUsd, final int maxUsd, final QueryContext context)
+    {
+        QueryEvent event = metrics.start();
+        AgencySnapshot current = snapshot;
+        ListingColumns rows = current.columns();
+        context.checkpoint();
+        long[] selection = rows.selectPricesBetween(minUsd, maxUsd);
+        long scannedNanos = metrics.lap(event);
+
+        Property[] propertiesBetween = new Property[ColumnKernels.count(selection)];
+        int next = 0;
+        for (int row = ColumnKernels.nextSelected(selection, 0); row >= 0; row = ColumnKernels.nextSelected(selection, row + 1))
+        {
+            context.checkpoint();
+            propertiesBetween[next++] = rows.listing(row).getProperty();
+        }
+        if (event != null)
+        {
+            metrics.record("getPropertiesBetween", minUsd + ", " + maxUsd, "price column",
+                    current.size(), propertiesBetween.length, event, scannedNanos);
+        }
+
+        return propertiesBetween;
+    }
+
+    /**
+     * getPropertiesOn method
+     * @param streetName - street name you want to find
+     * @return           - an ArrayList of addresses which are on the specified street, or null if there are none
+     */
+    ArrayList<Address> getPropertiesOn(final String streetName)
+    {
+        QueryEvent event = metrics.start();
+        AgencySnapshot current = snapshot;
+        ArrayList<Address> propertiesOn = new ArrayList<>();
+        Predicate<Listing> onStreet = onStreet(streetName);
+        for (Listing listing : current.listings())
+        {
+            if (onStreet.test(listing))
+            {
+                propertiesOn.add(listing.getProperty().getAddress());
+            }
+        }
+        if (event != null)
+        {
+            metrics.record("getPropertiesOn", streetName, "listings", current.size(), propertiesOn.size(), event,
+                    AgencyMetrics.NOT_RECORDING);
+        }
+        // if streetName is not found, return null
+        if (propertiesOn.isEmpty())
+        {
+            return null;
+        }
+
+        return propertiesOn;
+    }
+
+    /**
+     * getPropertiesWithBedrooms method
+     * @param minBedrooms   - minimum number of bedroom
+     * @param maxBedrooms   - maximum number of bedroom
+     * @return              - a HashMap of properties (key is property id, value is the Property)
+     *                        whose number of bedrooms falls in the range specified by the parameters...or null if there are none
+     */
+    HashMap<String, Property> getPropertiesWithBedrooms(final int minBedrooms, final int maxBedrooms)
+    {
+        QueryEvent event = metrics.start();
+        AgencySnapshot current = snapshot;
+        ListingColumns rows = current.columns();
+        long[] selection = rows.selectBedroomsBetween(minBedrooms, maxBedrooms);
+        long scannedNanos = metrics.lap(event);
+        HashMap<String, Property> propertiesWithBedrooms = new HashMap<>();
+        for (int row = ColumnKernels.nextSelected(selection, 0); row >= 0; row = ColumnKernels.nextSelected(selection, row + 1))
+        {
+            Property property = rows.listing(row).getProperty();
+            propertiesWithBedrooms.put(property.getPropertyId(), property);
+        }
+        if (event != null)
+        {
+            metrics.record("getPropertiesWithBedrooms", minBedrooms + ", " + maxBedrooms, "bedroom column",
+                    current.size(), propertiesWithBedrooms.size(), event, scannedNanos);
+        }
+        // if streetName is not found, return null
+        if (propertiesWithBedrooms.isEmpty())
+        {
+            return null;
+        }
+
+        return propertiesWithBedrooms;
+    }
+
+    /**
+     * getTotalPropertyValuesBetween method
+     * @param minUsd        - minimum price in usd
+     * @param maxUsd        - maximum price in usd
+     * @param minBedrooms   - minimum number of bedroom
+     * @param maxBedrooms   - maximum number of bedroom
+     * @return              - the total amount in USD of the properties in both ranges
+     */
+    double getTotalPropertyValuesBetween(final int minUsd, final int maxUsd, final int minBedrooms, final int maxBedrooms)
+    {
+        QueryEvent event = metrics.start();
+        AgencySnapshot current = snapshot;
+        ListingColumns rows = current.columns();
+        long[] selection = rows.selectPricesBetween(minUsd, maxUsd);
+        ColumnKernels.and(selection, rows.selectBedroomsBetween(minBedrooms, maxBedrooms));
+        double total = rows.sumPricesSelected(selection);
+        if (event != null)
+        {
+            metrics.record("getTotalPropertyValuesBetween", minUsd + ", " + maxUsd + ", " + minBedrooms + ", " + maxBedrooms,
+                    "price and bedroom columns", current.size(), 1, event, AgencyMetrics.NOT_RECORDING);
+        }
+        return total;
+    }
+
+    /**
+     * getPropertiesWithin method
+     * @param minUsd        - minimum price in usd
+     * @param maxUsd        - maximum price in usd
+     * @param minBedrooms   - minimum number of bedroom
+     * @param maxBedrooms   - maximum number of bedroom
+     * @return              - an ArrayList of the properties whose price and number of bedrooms both fall in
+     *                        the ranges, by number of bedrooms and then by price; empty if there are none
+     */
+    ArrayList<Property> getPropertiesWithin(final int minUsd, final int maxUsd, final int minBedrooms, final int maxBedrooms)
+    {
+        QueryEvent event = metrics.start();
+        List<Listing> matches = snapshot.priceRanks().query(minUsd, maxUsd, minBedrooms, maxBedrooms);
+        long scannedNanos = metrics.lap(event);
+        ArrayList<Property> propertiesWithin = new ArrayList<>(matches.size());
+        for (Listing listing : matches)
+        {
+            propertiesWithin.add(listing.getProperty());
+        }
+        if (event != null)
+        {
+            metrics.record("getPropertiesWithin", minUsd + ", " + maxUsd + ", " + minBedrooms + ", " + maxBedrooms,
+                    "price ranks", matches.size(), propertiesWithin.size(), event, scannedNanos);
+        }
+
+        return propertiesWithin;
+    }
+
+    /**
+     * countBetween method
+     * @param minUsd    - minimum price in usd
+     * @param maxUsd    - maximum price in usd
+     * @return          - the number of properties whose price falls in the range
+     */
+    int countBetween(final int minUsd, final int maxUsd)
+    {
+        return countBetween(minUsd, maxUsd, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * countBetween method
+     * @param minUsd        - minimum price in usd
+     * @param maxUsd        - maximum price in usd
+     * @param minBedrooms   - minimum number of bedroom
+     * @param maxBedrooms   - maximum number of bedroom
+     * @return              - the number of properties whose price and number of bedrooms both fall in the ranges
+     */
+    int countBetween(final int minUsd, final int maxUsd, final int minBedrooms, final int maxBedrooms)
+    {
+        QueryEvent event = metrics.start();
+        int count = snapshot.priceRanks().count(minUsd, maxUsd, minBedrooms, maxBedrooms);
+        if (event != null)
+        {
+            metrics.record("countBetween", minUsd + ", " + maxUsd + ", " + minBedrooms + ", " + maxBedrooms,
+                    "price ranks", 0, 1, event, AgencyMetrics.NOT_RECORDING);
+        }
+        return count;
+    }
+
+    /**
+     * sumBetween method
+     * @param minUsd    - minimum price in usd
+     * @param maxUsd    - maximum price in usd
+     * @return          - the total amount in USD of the properties whose price falls in the range
+     */
+    double sumBetween(final int minUsd, final int maxUsd)
+    {
+        return sumBetween(minUsd, maxUsd, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * sumBetween method
+     * @param minUsd        - minimum price in usd
+     * @param maxUsd        - maximum price in usd
+     * @param minBedrooms   - minimum number of bedroom
+     * @param maxBedrooms   - maximum number of bedroom
+     * @return              - the total amount in USD of the properties in both ranges (the same total as
+     *                        getTotalPropertyValuesBetween, without scanning the listings)
+     */
+    double sumBetween(final int minUsd, final int maxUsd, final int minBedrooms, final int maxBedrooms)
+    {
+        QueryEvent event = metrics.start();
+        double sum = snapshot.priceRanks().sum(minUsd, maxUsd, minBedrooms, maxBedrooms);
+        if (event != null)
+        {
+            metrics.record("sumBetween", minUsd + ", " + maxUsd + ", " + minBedrooms + ", " + maxBedrooms,
+                    "price ranks", 0, 1, event, AgencyMetrics.NOT_RECORDING);
+        }
+        return sum;
+    }
+
+    /**
+     * getComparables method
+     * @param property  - the (non-null) property to compare with; it may or may not be listed here
+     * @param k         - number of properties wanted (at least 1)
+     * @return          - up to k listed properties most similar to property, nearest first, with every feature
+     *                    weighted equally
+     */
+    ArrayList<Property> getComparables(final Property property, final int k)
+    {
+        return getComparables(property, k, ComparableWeights.EQUAL);
+    }
+
+    /**
+     * getComparables method
+     * @param property  - the (non-null) property to compare with; it may or may not be listed here
+     * @param k         - number of properties wanted (at least 1)
+     * @param weights   - how much price, bedrooms, pool and type each count
+     * @return          - up to k listed properties most similar to property, nearest first (never property itself)
+     */
+    ArrayList<Property> getComparables(final Property property, final int k, final ComparableWeights weights)
+    {
+        if (property == null)
+        {
+            throw new NullPointerException("Property cannot be null");
+        }
+        if (k < 1)
+        {
+            throw new IllegalArgumentException("Invalid k: " + k);
+        }
+
+        QueryEvent event = metrics.start();
+        ComparablesIndex index = comparables;
+        List<Listing> nearest = index.nearest(property, k, weights);
+        long scannedNanos = metrics.lap(event);
+        ArrayList<Property> comparableProperties = new ArrayList<>();
+        for (Listing listing : nearest)
+        {
+            comparableProperties.add(listing.getProperty());
+        }
+        if (event != null)
+        {
+            metrics.record("getComparables", property.getPropertyId() + ", " + k, "comparables",
+                    index.size(), comparableProperties.size(), event, scannedNanos);
+        }
+
+        return comparableProperties;
+    }
+
+    /**
+     * propertiesWithPools method
+     * @return - a lazy view of the properties with a swimming pool; empty (not null) if there are none
+     */
+    QueryView<Property> propertiesWithPools()
+    {
+        return new QueryView<>(this::currentListings, Listing::hasSwimmingPool, Listing::getProperty);
+    }
+
+    /**
+     * propertiesOn method
+     * @param streetName - street name you want to find
+     * @return           - a lazy view of the addresses on the specified street; empty (not null) if there are none
+     */
+    QueryView<Address> propertiesOn(final String streetName)
+    {
+        return new QueryView<>(this::currentListings, onStreet(streetName),
+                listing -> listing.getProperty().getAddress());
+    }
+
+    /**
+     * propertiesWithBedrooms method
+     * @param minBedrooms   - minimum number of bedroom
+     * @param maxBedrooms   - maximum number of bedroom
+     * @return              - a lazy view of the properties whose number of bedrooms falls in the range;
+     *                        empty (not null) if there are none
+     */
+    QueryView<Property> propertiesWithBedrooms(final int minBedrooms, final int maxBedrooms)
+    {
+        return new QueryView<>(this::currentListings,
+                listing -> listing.getNumberOfBedrooms() >= minBedrooms
+                        && listing.getNumberOfBedrooms() <= maxBedrooms,
+                Listing::getProperty);
+    }
+
+    private Iterable<Listing> currentListings()
+    {
+        return snapshot.listings();
+    }
+
+    /**
+     * onStreet method
+     * @param streetName    - street name you want to find (case-insensitive)
+     * @return              - a test for listings on that street; only listings whose normalized street matches
+     *                        have their address read (without promoting a cold one)
+     */
+    private static Predicate<Listing> onStreet(final String streetName)
+    {
+        if (streetName == null)
+        {
+            return listing -> false;
+        }
+        String street = AddressKey.normalizeStreet(streetName);
+        return listing -> listing.getAddressKey().getStreet().equals(street)
+                && listing.peekProperty().getAddress().getStreetName().equalsIgnoreCase(streetName);
+    }
+
+    /**
+     * publishPropertiesWithPools method
+     * @return - a publisher of the properties with a swimming pool, emitted as the subscriber requests them
+     */
+    QueryPublisher<Property> publishPropertiesWithPools()
+    {
+        return new QueryPublisher<>(propertiesWithPools(), Runnable::run);
+    }
+
+    /**
+     * publishPropertiesOfType method
+     * @param propertyType  - property type you want to find (case-insensitive)
+     * @return              - a publisher of the properties of that type; completes at once for an unknown type
+     */
+    QueryPublisher<Property> publishPropertiesOfType(final String propertyType)
+    {
+        PropertyType type = PropertyType.parse(propertyType);
+        if (type == null)
+        {
+            return new QueryPublisher<>(Collections.emptyList(), Runnable::run);
+        }
+        return new QueryPublisher<>(() -> snapshot.getPropertiesOfType(type).iterator(), Runnable::run);
+    }
+
+    /**
+     * publishPropertiesBetween method
+     * @param minUsd - minimum price in usd
+     * @param maxUsd - maximum price in usd
+     * @return       - a publisher of the properties whose price falls in the range
+     */
+    QueryPublisher<Property> publishPropertiesBetween(final int minUsd, final int maxUsd)
+    {
+        return new QueryPublisher<>(new QueryView<>(this::currentListings,
+                listing -> listing.getPriceUsd() >= minUsd && listing.getPriceUsd() <= maxUsd,
+                Listing::getProperty), Runnable::run);
+    }
+
+    /**
+     * publishPropertiesWithBedrooms method
+     * @param minBedrooms   - minimum number of bedroom
+     * @param maxBedrooms   - maximum number of bedroom
+     * @return              - a publisher of the properties whose number of bedrooms falls in the range
+     */
+    QueryPublisher<Property> publishPropertiesWithBedrooms(final int minBedrooms, final int maxBedrooms)
+    {
+        return new QueryPublisher<>(propertiesWithBedrooms(minBedrooms, maxBedrooms), Runnable::run);
+    }
+
+    /**
+     * getPropertiesOfType method
+     * @param propertyType  - property type tou want to find
+     * @return              - an ArrayList of Strings, with all the information about every property (one property per line)
+     *                        that is one of the specified type (“residence”, “commercial”, or “retail”) in the exact format
+     */
+    public ArrayList<String> getPropertiesOfType(final String propertyType)
+    {
+        return getPropertiesOfType(propertyType, QueryContext.NONE);
+    }
+
+    /**
+     * getPropertiesOfType method
+     * @param propertyType  - property type you want to find
+     * @param context       - checked before each line is formatted; cancelling it stops the query
+     * @return              - the same lines as getPropertiesOfType(propertyType)
+     */
+    ArrayList<String> getPropertiesOfType(final String propertyType, final QueryContext context)
+    {
+        QueryEvent event = metrics.start();
+        ArrayList<String> matchingProperties = new ArrayList<>();
+        String string;
+        string = "Type: " + propertyType.toUpperCase() + "\n";
+        matchingProperties.add(string);
+
+        // an unknown type has no partition, so nothing can match
+        PropertyType type = PropertyType.parse(propertyType);
+        PersistentMap<String, Listing> partition = PersistentMap.empty();
+        if (type != null)
+        {
+            partition = snapshot.listingsOfType(type);
+        }
+        // every listing in the partition matches, so the rest is formatting
+        long scannedNanos = metrics.lap(event);
+
+        for (Listing listing : partition) {
+            context.checkpoint();
+            Property property = listing.getProperty();
+            // HAS UNIT
+            if (property.getAddress().getUnitNumber() != null)
+            {
+                // has unit number, HAS SWIMMING POOL
+                if (property.hasSwimmingPool())
+                {
+                    // has unit number, has swimming pool, HAS 1 BEDROOM
+                    if (property.getNumberOfBedrooms() == 1)
+                    {
+                        // ") Property 9999: unit #9 at 99 Gretzky Way T6V7H3 in Toronto (1 bedroom plus pool): $99999.\n"
+                        string = String.format(") Property %s: unit #%s at %d %s %s in %s (%d bedroom plus pool): $%.0f.\n",
+                                property.getPropertyId(), property.getAddress().getUnitNumber(), property.getAddress().getStreetNumber(),
+                                toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
+                                toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), listing.getPriceUsd());
+                        matchingProperties.add(string);
+                    }
+                    // has unit number, has swimming pool, HAS MORE THAN 1 BEDROOM
+                    else
+                    {
+                        // ") Property 9999: unit #9 at 99 Gretzky Way T6V7H3 in Toronto (4 bedrooms plus pool): $99999.\n"
+                        string = String.format(") Property %s: unit #%s at %d %s %s in %s (%d bedrooms plus pool): $%.0f.\n",
+                                property.getPropertyId(), property.getAddress().getUnitNumber(), property.getAddress().getStreetNumber(),
+                                toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
+                                toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), listing.getPriceUsd());
+                        matchingProperties.add(string);
+                    }
+                }
+                // has unitNumber, HAS NO SWIMMING POOL
+                else
+                {
+                    // has unit number, has NO swimming pool, HAS 1 BEDROOM
+                    if (property.getNumberOfBedrooms() == 1)
+                    {
+                        // ") Property 9999: unit #9 at 99 Gretzky Way T6V7H3 in Toronto (1 bedroom): $99999.\n"
+                        string = String.format(") Property %s: unit #%s at %d %s %s in %s (%d bedroom): $%.0f.\n",
+                                property.getPropertyId(), property.getAddress().getUnitNumber(), property.getAddress().getStreetNumber(),
+                                toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
+                                toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), listing.getPriceUsd());
+                        matchingProperties.add(string);
+                    }
+                    // has unit number, has NO swimming pool, HAS MORE THAN 1 BEDROOM
+                    else
+                    {
+                        // ") Property 9999: unit #9 at 99 Gretzky Way T6V7H3 in Toronto (4 bedrooms): $99999.\n"
+                        string = String.format(") Property %s: unit #%s at %d %s %s in %s (%d bedrooms): $%.0f.\n",
+                                property.getPropertyId(), property.getAddress().getUnitNumber(), property.getAddress().getStreetNumber(),
+                                toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
+                                toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), listing.getPriceUsd());
+                        matchingProperties.add(string);
+                    }
+                }
+            }
+            // HAS NO UNIT
+            else
+            {
+                // has NO unit number, HAS SWIMMING POOL
+                if (property.hasSwimmingPool())
+                {
+                    // has NO unit number, has swimming pool, HAS 1 BEDROOM
+                    if (property.getNumberOfBedrooms() == 1)
+                    {
+                        // ") Property 9999: 99 Gretzky Way T6V7H3 in Toronto (1 bedroom plus pool): $99999.\n"
+                        string = String.format(") Property %s: %d %s %s in %s (%d bedroom plus pool): $%.0f.\n",
+                                property.getPropertyId(), property.getAddress().getStreetNumber(),
+                                toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
+                                toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), listing.getPriceUsd());
+                        matchingProperties.add(string);
+                    }
+                    // has NO unit number, has swimming pool, HAS MORE THAN 1 BEDROOM
+                    else
+                    {
+                        // ") Property 9999: 99 Gretzky Way T6V7H3 in Toronto (4 bedroom plus pool): $99999.\n"
+                        string = String.format(") Property %s: %d %s %s in %s (%d bedrooms plus pool): $%.0f.\n",
+                                property.getPropertyId(), property.getAddress().getStreetNumber(),
+                                toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
+                                toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), listing.getPriceUsd());
+                        matchingProperties.add(string);
+                    }
+                }
+                // has NO unitNumber, HAS NO SWIMMING POOL
+                else
+                {
+                    // has NO unit number, has NO swimming pool, HAS 1 BEDROOM
+                    if (property.getNumberOfBedrooms() == 1)
+                    {
+                        // ") Property 9999: 99 Gretzky Way T6V7H3 in Toronto (1 bedroom): $99999.\n"
+                        string = String.format(") Property %s: %d %s %s in %s (%d bedroom): $%.0f.\n",
+                                property.getPropertyId(), property.getAddress().getStreetNumber(),
+                                toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
+                                toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), listing.getPriceUsd());
+                        matchingProperties.add(string);
+                    }
+                    // has NO unit number, has NO swimming pool, HAS MORE THAN 1 BEDROOM
+                    else
+                    {
+                        // ") Property 9999: 99 Gretzky Way T6V7H3 in Toronto (4 bedroom plus pool): $99999.\n"
+                        string = String.format(") Property %s: %d %s %s in %s (%d bedrooms): $%.0f.\n",
+                                property.getPropertyId(), property.getAddress().getStreetNumber(),
+                                toTitleCase(property.getAddress().getStreetName()), property.getAddress().getPostalCode().toUpperCase(),
+                                toTitleCase(property.getAddress().getCity()), property.getNumberOfBedrooms(), listing.getPriceUsd());
+                        matchingProperties.add(string);
+                    }
+                }
+            }
+        }
+        // if property type cannot be found, show "<none found>"
+        if (matchingProperties.size() == SMALLEST_SIZE_OF_MATCHING_PROPERTIES)
+        {
+            matchingProperties.add("<none found>");
+        }
+        if (event != null)
+        {
+            metrics.record("getPropertiesOfType", propertyType, "type partition", partition.size(), partition.size(),
+                    event, scannedNanos);
+        }
+
+        return matchingProperties;
+    }
+
+    /**
+     * addAll method
+     * @param batch - properties to add (none may be null); a property replaces any listing with the same id
+     */
+    void addAll(final Collection<Property> batch)
+    {
+        if (batch == null)
+        {
+            throw new NullPointerException("Properties cannot be null");
+        }
+
+        // a later property in the batch replaces an earlier one with the same id
+        QueryEvent event = metrics.start();
+        LinkedHashMap<String, Property> batchById = new LinkedHashMap<>();
+        for (Property property : batch)
+        {
+            if (property == null)
+            {
+                throw new NullPointerException("Property cannot be null");
+            }
+            batchById.put(property.getPropertyId(), property);
+        }
+
+        synchronized (writeLock)
+        {
+            // check the whole batch before changing anything
+            long batchBytes = 0;
+            HashMap<AddressKey, String> batchAddresses = new HashMap<>();
+            for (Property property : batchById.values())
+            {
+                checkDuplicate(property, batchAddresses);
+                batchBytes += sizeOfListing(property);
+                Listing existing = listings.get(property.getPropertyId());
+                if (existing != null)
+                {
+                    batchBytes -= sizeOfListing(existing);
+                }
+            }
+            if (memoryBudgetBytes > 0 && estimatedBytes.get() + batchBytes > memoryBudgetBytes)
+            {
+                throw new IllegalStateException("Memory budget exceeded: " + memoryBudgetBytes);
+            }
+
+            boolean rebuild = isLargeBatch(batchById.size());
+            for (Property property : batchById.values())
+            {
+                Listing replaced = listings.get(property.getPropertyId());
+                if (replaced != null)
+                {
+                    detach(replaced);
+                    if (!rebuild)
+                    {
+                        indexRemove(replaced);
+                    }
+                }
+                property.addPriceChangeListener(priceChangeListener);
+                Listing listing = new Listing(property);
+                listings = listings.put(property.getPropertyId(), listing);
+                logAdded(listing);
+                if (!rebuild)
+                {
+                    indexAdd(listing);
+                }
+            }
+            if (rebuild)
+            {
+                rebuildIndexes();
+            }
+            for (Property property : batchById.values())
+            {
+                flagDuplicate(property);
+            }
+            estimatedBytes.addAndGet(batchBytes);
+            publish();
+        }
+
+        if (event != null)
+        {
+            metrics.record("addAll", batch.size() + " properties", batch.size(), batch.size(), event);
+        }
+    }
+
+    /**
+     * removeAll method
+     * @param propertyIds - ids of the properties to remove; every id must be in the agency
+     */
+    void removeAll(final Collection<String> propertyIds)
+    {
+        if (propertyIds == null)
+        {
+            throw new NullPointerException("Property IDs cannot be null");
+        }
+
+        QueryEvent event = metrics.start();
+        int removedCount = 0;
+        synchronized (writeLock)
+        {
+            // check the whole batch before changing anything
+            for (String propertyId : propertyIds)
+            {
+                if (propertyId == null || propertyId.isBlank())
+                {
+                    throw new NullPointerException("Property cannot be null");
+                }
+                else if (listings.get(propertyId) == null)
+                {
+                    throw new IllegalArgumentException("Property ID doesn't match");
+                }
+            }
+
+            boolean rebuild = isLargeBatch(propertyIds.size());
+            for (String propertyId : propertyIds)
+            {
+                Listing removed = listings.get(propertyId);
+                if (removed != null)
+                {
+                    listings = listings.remove(propertyId);
+                    logRemoved(propertyId);
+                    detach(removed);
+                    if (!rebuild)
+                    {
+                        indexRemove(removed);
+                    }
+                    estimatedBytes.addAndGet(-sizeOfListing(removed));
+                    removedCount++;
+                }
+            }
+            if (rebuild)
+            {
+                rebuildIndexes();
+            }
+            publish();
+        }
+
+        if (event != null)
+        {
+            metrics.record("removeAll", propertyIds.size() + " ids", propertyIds.size(), removedCount, event);
+        }
+    }
+
+    /**
+     * replaceAll method: the listings not among properties are removed and every property is added, under one
+     * publish; the duplicate policy is not applied, since the properties come whole from elsewhere (for example
+     * a replication leader's snapshot)
+     * @param properties    - the properties to hold from now on (none may be null; a later one replaces an earlier
+     *                        one with the same id)
+     */
+    void replaceAll(final Collection<Property> properties)
+    {
+        if (properties == null)
+        {
+            throw new NullPointerException("Properties cannot be null");
+        }
+
+        QueryEvent event = metrics.start();
+        LinkedHashMap<String, Property> batchById = new LinkedHashMap<>();
+        long batchBytes = 0;
+        for (Property property : properties)
+        {
+            if (property == null)
+            {
+                throw new NullPointerException("Property cannot be null");
+            }
+            Property replaced = batchById.put(property.getPropertyId(), property);
+            batchBytes += sizeOfListing(property)
+                    - (replaced == null ? 0 : sizeOfListing(replaced));
+        }
+        if (memoryBudgetBytes > 0 && batchBytes > memoryBudgetBytes)
+        {
+            throw new IllegalStateException("Memory budget exceeded: " + memoryBudgetBytes);
+        }
+
+        int scanned;
+        synchronized (writeLock)
+        {
+            // the listings are only walked for their ids, so a cold property stays cold until it is dropped
+            PersistentMap<String, Listing> previous = listings;
+            scanned = previous.size();
+            for (Listing listing : previous)
+            {
+                detach(listing);
+                if (!batchById.containsKey(listing.getPropertyId()))
+                {
+                    listings = listings.remove(listing.getPropertyId());
+                    logRemoved(listing.getPropertyId());
+                }
+            }
+            for (Property property : batchById.values())
+            {
+                property.addPriceChangeListener(priceChangeListener);
+                Listing listing = new Listing(property);
+                listings = listings.put(property.getPropertyId(), listing);
+                logAdded(listing);
+            }
+            rebuildIndexes();
+            estimatedBytes.set(batchBytes);
+            publish();
+        }
+
+        if (event != null)
+        {
+            metrics.record("replaceAll", properties.size() + " properties", scanned, batchById.size(), event);
+        }
+    }
+
+    /**
+     * updatePrices method
+     * @param filter    - selects the properties to reprice
+     * @param repricing - turns a property's current price into its new price (e.g. price -> price * 1.03)
+     * @return          - the number of properties repriced
+     */
+    int updatePrices(final Predicate<Property> filter, final DoubleUnaryOperator repricing)
+    {
+        if (filter == null || repricing == null)
+        {
+            throw new NullPointerException("Filter and repricing cannot be null");
+        }
+
+        QueryEvent event = metrics.start();
+        ArrayList<Listing> matches = new ArrayList<>();
+        int scanned;
+        synchronized (writeLock)
+        {
+            // work out every new price before changing anything, so an invalid one leaves the agency unchanged
+            scanned = listings.size();
+            ArrayList<Double> newPrices = new ArrayList<>();
+            for (Listing listing : listings)
+            {
+                // a cold property is read to test it, but only kept in memory if it is repriced
+                Property property = listing.peekProperty();
+                if (filter.test(property))
+                {
+                    double newPriceUsd = repricing.applyAsDouble(property.getPriceUsd());
+                    if (newPriceUsd < 0 || Double.isNaN(newPriceUsd))
+                    {
+                        throw new IllegalArgumentException("Invalid price: " + newPriceUsd);
+                    }
+                    matches.add(listing);
+                    newPrices.add(newPriceUsd);
+                }
+            }
+
+            boolean rebuild = isLargeBatch(matches.size());
+            inBatch = true;
+            try
+            {
+                for (int index = 0; index < matches.size(); index++)
+                {
+                    Listing oldListing = matches.get(index);
+                    oldListing.getProperty().setPriceUsd(newPrices.get(index));
+                    Listing newListing = oldListing.reprice();
+                    listings = listings.put(newListing.getPropertyId(), newListing);
+                    logPriceChanged(oldListing, newListing);
+                    if (!rebuild)
+                    {
+                        indexPriceChanged(oldListing, newListing);
+                    }
+                }
+            }
+            finally
+            {
+                inBatch = false;
+            }
+            if (rebuild)
+            {
+                rebuildIndexes();
+            }
+            publish();
+        }
+
+        if (event != null)
+        {
+            metrics.record("updatePrices", "", scanned, matches.size(), event);
+        }
+        return matches.size();
+    }
+
+    /**
+     * snapshot method
+     * @return - the latest published snapshot; it never changes, however the agency changes afterwards
+     */
+    public AgencySnapshot snapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * stream method
+     * @return - a sequential Stream of the properties in the latest snapshot
+     */
+    public Stream<Property> stream()
+    {
+        return snapshot.stream();
+    }
+
+    /**
+     * parallelStream method
+     * @return - a parallel Stream of the properties in the latest snapshot
+     */
+    public Stream<Property> parallelStream()
+    {
+        return snapshot.parallelStream();
+    }
+
+    /**
+     * getTotalPropertyValuesAt method
+     * @param epochMillis   - a time
+     * @return              - the total amount in USD of the listed properties' prices at that time
+     *                        (properties listed after it count as zero)
+     */
+    double getTotalPropertyValuesAt(final long epochMillis)
+    {
+        QueryEvent event = metrics.start();
+        AgencySnapshot current = snapshot;
+        double total = 0;
+        for (Listing listing : current.listings())
+        {
+            double priceUsd = priceAt(listing, epochMillis);
+            if (!Double.isNaN(priceUsd))
+            {
+                total += priceUsd;
+            }
+        }
+        if (event != null)
+        {
+            metrics.record("getTotalPropertyValuesAt", String.valueOf(epochMillis), "price history", current.size(), 1,
+                    event, AgencyMetrics.NOT_RECORDING);
+        }
+        return total;
+    }
+
+    /**
+     * getPropertiesBetween method for a point in time
+     * @param minUsd        - minimum price in usd
+     * @param maxUsd        - maximum price in usd
+     * @param epochMillis   - the time whose prices are compared
+     * @return              - an array of the listed properties whose price at that time falls in the range
+     */
+    Property[] getPropertiesBetween(final int minUsd, final int maxUsd, final long epochMillis)
+    {
+        QueryEvent event = metrics.start();
+        AgencySnapshot current = snapshot;
+        ArrayList<Property> matches = new ArrayList<>();
+        for (Listing listing : current.listings())
+        {
+            // NaN (not listed yet) fails both comparisons
+            double priceUsd = priceAt(listing, epochMillis);
+            if (priceUsd >= minUsd && priceUsd <= maxUsd)
+            {
+                matches.add(listing.getProperty());
+            }
+        }
+        long scannedNanos = metrics.lap(event);
+
+        Property[] propertiesBetween = matches.toArray(new Property[0]);
+        if (event != null)
+        {
+            metrics.record("getPropertiesBetweenAt", minUsd + ", " + maxUsd + ", " + epochMillis, "price history",
+                    current.size(), propertiesBetween.length, event, scannedNanos);
+        }
+
+        return propertiesBetween;
+    }
+
+    /**
+     * getPropertiesWithPriceDrop method
+     * @param percent       - the drop, in percent of the earlier price, that must be exceeded (0 to 100)
+     * @param fromMillis    - start of the window
+     * @param toMillis      - end of the window (not before fromMillis)
+     * @return              - an ArrayList of the listed properties whose price at toMillis is more than percent
+     *                        below their price at fromMillis, or when first listed if that is later
+     */
+    ArrayList<Property> getPropertiesWithPriceDrop(final double percent, final long fromMillis, final long toMillis)
+    {
+        if (!(percent >= 0 && percent <= PERCENT))
+        {
+            throw new IllegalArgumentException("Invalid percent: " + percent);
+        }
+        if (toMillis < fromMillis)
+        {
+            throw new IllegalArgumentException("Invalid time range: " + fromMillis + " to " + toMillis);
+        }
+
+        QueryEvent event = metrics.start();
+        AgencySnapshot current = snapshot;
+        double remainingRatio = 1 - percent / PERCENT;
+        ArrayList<Property> propertiesWithPriceDrop = new ArrayList<>();
+        for (Listing listing : current.listings())
+        {
+            long firstMillis = listing.getFirstChangeMillis();
+            // no change inside the window, or not listed until after it: passed over without reading the history
+            if (listing.getLastChangeMillis() <= fromMillis || firstMillis > toMillis)
+            {
+                continue;
+            }
+            PriceHistory history = listing.peekProperty().getPriceHistory();
+            double startPriceUsd = history.priceAt(Math.max(fromMillis, firstMillis));
+            double endPriceUsd = history.priceAt(toMillis);
+            if (endPriceUsd < startPriceUsd * remainingRatio)
+            {
+                propertiesWithPriceDrop.add(listing.getProperty());
+            }
+        }
+        if (event != null)
+        {
+            metrics.record("getPropertiesWithPriceDrop", percent + ", " + fromMillis + ", " + toMillis, "price history",
+                    current.size(), propertiesWithPriceDrop.size(), event, AgencyMetrics.NOT_RECORDING);
+        }
+
+        return propertiesWithPriceDrop;
+    }
+
+    /**
+     * priceAt method
+     * @param listing       - a listing
+     * @param epochMillis   - a time
+     * @return              - its price at that time, or NaN if it was not listed yet; the property's history
+     *                        (from disk, if it is cold) is only read for a time between its first and latest change
+     */
+    private static double priceAt(final Listing listing, final long epochMillis)
+    {
+        if (epochMillis < listing.getFirstChangeMillis())
+        {
+            return Double.NaN;
+        }
+        if (epochMillis >= listing.getLastChangeMillis())
+        {
+            return PriceHistory.roundToCent(listing.getPriceUsd());
+        }
+        return listing.peekProperty().getPriceUsdAt(epochMillis);
+    }
+
+    /**
+     * isLargeBatch method
+     * @param batchSize - number of listings a batch changes
+     * @return          - true if rebuilding every index once is cheaper than patching it per listing
+     */
+    private boolean isLargeBatch(final int batchSize)
+    {
+        return (long) batchSize * BATCH_REBUILD_DIVISOR >= listings.size();
+    }
+
+    /**
+     * priceChanged method: called by a listed property after its price changed outside a batch
+     * @param property      - the property
+     * @param oldPriceUsd   - its price before the change
+     */
+    private void priceChanged(final Property property, final double oldPriceUsd)
+    {
+        synchronized (writeLock)
+        {
+            // the listing's own price is what the indexes hold; a rebuild may already have caught up
+            Listing oldListing = listings.get(property.getPropertyId());
+            if (inBatch || oldListing == null || oldListing.residentProperty() != property
+                    || oldListing.getPriceUsd() == property.getPriceUsd())
+            {
+                return;
+            }
+            Listing newListing = oldListing.reprice();
+            listings = listings.put(property.getPropertyId(), newListing);
+            logPriceChanged(oldListing, newListing);
+            indexPriceChanged(oldListing, newListing);
+            publish();
+        }
+    }
+
+    /**
+     * indexAdd method: adds a listing that is now in the main map to every other structure
+     * @param listing - the listing
+     */
+    private void indexAdd(final Listing listing)
+    {
+        PropertyType type = listing.getPropertyType();
+        listingsByType.put(type, listingsByType.get(type).put(listing.getPropertyId(), listing));
+        totalPriceUsd += listing.getPriceUsd();
+        comparables.insert(listing);
+        priceRanks = priceRanks.put(listing);
+        addressIndex.insert(listing);
+        if (listing.isFlaggedDuplicate())
+        {
+            flaggedDuplicates.add(listing.getPropertyId());
+        }
+        analytics.add(listing);
+        digest.add(listing);
+        columns.insert(listing);
+    }
+
+    /**
+     * indexRemove method: removes a listing that has left the main map from every other structure
+     * @param listing - the listing
+     */
+    private void indexRemove(final Listing listing)
+    {
+        PropertyType type = listing.getPropertyType();
+        listingsByType.put(type, listingsByType.get(type).remove(listing.getPropertyId()));
+        totalPriceUsd -= listing.getPriceUsd();
+        comparables.remove(listing);
+        priceRanks = priceRanks.remove(listing);
+        addressIndex.remove(listing);
+        flaggedDuplicates.remove(listing.getPropertyId());
+        analytics.remove(listing);
+        digest.remove(listing);
+        columns.remove(listing);
+    }
+
+    /**
+     * indexPriceChanged method: moves a listed property to its new price in every other structure
+     * @param oldListing    - the listing at its old price
+     * @param newListing    - the listing at its new price, already in the main map
+     */
+    private void indexPriceChanged(final Listing oldListing, final Listing newListing)
+    {
+        PropertyType type = newListing.getPropertyType();
+        listingsByType.put(type, listingsByType.get(type).put(newListing.getPropertyId(), newListing));
+        totalPriceUsd += newListing.getPriceUsd() - oldListing.getPriceUsd();
+        comparables.replace(oldListing, newListing);
+        priceRanks = priceRanks.remove(oldListing).put(newListing);
+        analytics.priceChanged(oldListing, newListing);
+        digest.replace(oldListing, newListing);
+        columns.replace(oldListing, newListing);
+    }
+
+    /**
+     * detach method: stops listening to a listing's property, if it is in memory (a cold one has no listener)
+     * @param listing - a listing leaving the main map
+     */
+    private void detach(final Listing listing)
+    {
+        Property property = listing.residentProperty();
+        if (property != null)
+        {
+            property.removePriceChangeListener(priceChangeListener);
+        }
+    }
+
+    /**
+     * rebuildIndexes method: brings every listing to its property's current price, then rebuilds every
+     * other structure from the main map
+     */
+    private void rebuildIndexes()
+    {
+        // getComparables, findDuplicates, getFlaggedDuplicates and getContentHash read these without the write
+        // lock, so new ones are filled aside and swapped in
+        ComparablesIndex rebuiltComparables = new ComparablesIndex();
+        AddressIndex rebuiltAddresses = new AddressIndex();
+        Set<String> rebuiltFlags = ConcurrentHashMap.newKeySet();
+        ListingDigest rebuiltDigest = new ListingDigest();
+        for (PropertyType type : PropertyType.values())
+        {
+            listingsByType.put(type, PersistentMap.empty());
+        }
+        totalPriceUsd = 0;
+        columns.clear();
+        for (Listing listing : listings)
+        {
+            // a cold property has no price change listener, so only a resident one can have moved on
+            Listing current = listing;
+            Property property = listing.residentProperty();
+            if (property != null && listing.getPriceUsd() != property.getPriceUsd())
+            {
+                current = listing.reprice();
+                listings = listings.put(current.getPropertyId(), current);
+                logPriceChanged(listing, current);
+            }
+            PropertyType type = current.getPropertyType();
+            listingsByType.put(type, listingsByType.get(type).put(current.getPropertyId(), current));
+            totalPriceUsd += current.getPriceUsd();
+            rebuiltComparables.insert(current);
+            rebuiltAddresses.insert(current);
+            if (current.isFlaggedDuplicate())
+            {
+                rebuiltFlags.add(current.getPropertyId());
+            }
+            rebuiltDigest.add(current);
+            columns.insert(current);
+        }
+        rebuiltComparables.rebuild();
+        comparables = rebuiltComparables;
+        addressIndex = rebuiltAddresses;
+        flaggedDuplicates = rebuiltFlags;
+        digest = rebuiltDigest;
+        analytics.rebuild(listings);
+        // readers keep the published version until the next snapshot, so the new one is built whole, not put by put
+        priceRanks = PriceRankIndex.of(listings);
+    }
+
+    /**
+     * checkDuplicate method (holding the write lock)
+     * @param property          - a property about to be added
+     * @param batchAddresses    - addresses claimed by earlier properties of the same batch (key is the address,
+     *                            value is the property id), to which property's is added; null for a single add
+     */
+    private void checkDuplicate(final Property property, final Map<AddressKey, String> batchAddresses)
+    {
+        if (duplicatePolicy != DuplicatePolicy.REJECT)
+        {
+            return;
+        }
+        AddressKey key = AddressKey.of(property.getAddress());
+        for (String listedId : addressIndex.idsAt(key))
+        {
+            if (!listedId.equals(property.getPropertyId()))
+            {
+                throw new IllegalArgumentException("Duplicate address: " + listedId);
+            }
+        }
+        String claimedBy = batchAddresses == null ? null : batchAddresses.putIfAbsent(key, property.getPropertyId());
+        if (claimedBy != null && !claimedBy.equals(property.getPropertyId()))
+        {
+            throw new IllegalArgumentException("Duplicate address: " + claimedBy);
+        }
+    }
+
+    /**
+     * flagDuplicate method (holding the write lock)
+     * @param property - a property just added
+     */
+    private void flagDuplicate(final Property property)
+    {
+        if (duplicatePolicy == DuplicatePolicy.FLAG
+                && addressIndex.idsAt(AddressKey.of(property.getAddress())).size() > 1)
+        {
+            // the listing keeps the flag, so a rebuild of the indexes can find it again
+            listings.get(property.getPropertyId()).flagDuplicate();
+            flaggedDuplicates.add(property.getPropertyId());
+        }
+    }
+
+    /**
+     * setDuplicatePolicy method
+     * @param duplicatePolicy - what adding a property at an already listed address does from now on
+     */
+    public void setDuplicatePolicy(final DuplicatePolicy duplicatePolicy)
+    {
+        if (duplicatePolicy == null)
+        {
+            throw new NullPointerException("Invalid duplicate policy: " + duplicatePolicy);
+        }
+        this.duplicatePolicy = duplicatePolicy;
+    }
+
+    public DuplicatePolicy getDuplicatePolicy()
+    {
+        return duplicatePolicy;
+    }
+
+    /**
+     * findDuplicates method
+     * @return - every group of two or more properties listed at the same normalized address, each oldest first;
+     *           empty if there are none
+     */
+    ArrayList<ArrayList<Property>> findDuplicates()
+    {
+        QueryEvent event = metrics.start();
+        AgencySnapshot current = snapshot;
+        ArrayList<List<String>> groups = addressIndex.duplicates();
+        long scannedNanos = metrics.lap(event);
+        ArrayList<ArrayList<Property>> duplicates = new ArrayList<>();
+        for (List<String> group : groups)
+        {
+            ArrayList<Property> properties = new ArrayList<>(group.size());
+            for (String propertyId : group)
+            {
+                // the index is changed in place, so it may be ahead of the snapshot
+                Property property = current.getProperty(propertyId);
+                if (property != null)
+                {
+                    properties.add(property);
+                }
+            }
+            if (properties.size() > 1)
+            {
+                duplicates.add(properties);
+            }
+        }
+        if (event != null)
+        {
+            metrics.record("findDuplicates", "", "address index", current.size(), duplicates.size(), event,
+                    scannedNanos);
+        }
+
+        return duplicates;
+    }
+
+    /**
+     * getContentHash method
+     * @return - the root hash of the listings' ids, fields and prices (not their price histories); 0 if there are none
+     */
+    long getContentHash()
+    {
+        return digest.getRootHash();
+    }
+
+    /**
+     * diff method
+     * @param other - another agency, for example a rebuilt copy of this one
+     * @return      - the ids of the listings in only one of the agencies, or in both with a different field or
+     *                price, in order; empty if they hold the same listings
+     */
+    List<String> diff(final Agency other)
+    {
+        if (other == null)
+        {
+            throw new NullPointerException("Agency cannot be null");
+        }
+
+        QueryEvent event = metrics.start();
+        List<String> differing = other == this
+                ? new ArrayList<>()
+                : withWriteLocks(other, () -> ListingDigest.diff(digest, other.digest));
+        if (event != null)
+        {
+            metrics.record("diff", other.name, "listing digest", differing.size(), differing.size(), event,
+                    AgencyMetrics.NOT_RECORDING);
+        }
+
+        return differing;
+    }
+
+    /**
+     * reconcileWith method: removes the listings other does not have and copies in the ones it has with
+     * different content (at other's price, without its price history); nothing else is read or written
+     * @param other - the agency to match
+     * @return      - the number of listings removed or copied
+     */
+    int reconcileWith(final Agency other)
+    {
+        if (other == null)
+        {
+            throw new NullPointerException("Agency cannot be null");
+        }
+        if (other == this)
+        {
+            return 0;
+        }
+
+        // collect the delta while neither agency changes, then copy the properties and apply it as two batches
+        // without either lock; a listing is immutable, so theirs can be copied after other moves on
+        ArrayList<String> removed = new ArrayList<>();
+        ArrayList<Listing> theirs = new ArrayList<>();
+        withWriteLocks(other, () -> {
+            for (String propertyId : ListingDigest.diff(digest, other.digest))
+            {
+                Listing listing = other.listings.get(propertyId);
+                if (listing == null)
+                {
+                    removed.add(propertyId);
+                }
+                else
+                {
+                    theirs.add(listing);
+                }
+            }
+            return null;
+        });
+        ArrayList<Property> copied = new ArrayList<>(theirs.size());
+        for (Listing listing : theirs)
+        {
+            copied.add(copyOf(listing));
+        }
+        if (!removed.isEmpty())
+        {
+            removeAll(removed);
+        }
+        if (!copied.isEmpty())
+        {
+            addAll(copied);
+        }
+        return removed.size() + copied.size();
+    }
+
+    /**
+     * withWriteLocks method: runs action holding the write locks of this agency and other, always taken in the
+     * same order so that two agencies diffing each other cannot deadlock
+     * @param other     - another agency
+     * @param action    - what to run
+     * @return          - what action returns
+     */
+    private <T> T withWriteLocks(final Agency other, final Supplier<T> action)
+    {
+        int order = Integer.compare(System.identityHashCode(this), System.identityHashCode(other));
+        if (order == 0)
+        {
+            synchronized (LOCK_ORDER_TIE)
+            {
+                synchronized (writeLock)
+                {
+                    synchronized (other.writeLock)
+                    {
+                        return action.get();
+                    }
+                }
+            }
+        }
+        Object first = order < 0 ? writeLock : other.writeLock;
+        Object second = order < 0 ? other.writeLock : writeLock;
+        synchronized (first)
+        {
+            synchronized (second)
+            {
+                return action.get();
+            }
+        }
+    }
+
+    /**
+     * copyOf method
+     * @param listing   - a listing of another agency
+     * @return          - a new Property with the listing's fields and price, as replication would send it
+     */
+    private static Property copyOf(final Listing listing)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            PropertyCodec.write(new DataOutputStream(bytes), listing.peekProperty(), listing.getPriceUsd());
+            return PropertyCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * getFlaggedDuplicates method
+     * @return - the ids of the listed properties that were flagged as duplicates when added, in order
+     */
+    public Set<String> getFlaggedDuplicates()
+    {
+        return new TreeSet<>(flaggedDuplicates);
+    }
+
+    /**
+     * setColdStorage method
+     * @param file          - the file to spill cold properties to (emptied now, deleted when replaced), or null
+     *                        to read every cold property back and stop spilling
+     * @throws IOException  - if the file cannot be opened, or a cold property cannot be read back
+     */
+    public void setColdStorage(final Path file) throws IOException
+    {
+        synchronized (writeLock)
+        {
+            if (coldStorage != null)
+            {
+                // the old file is deleted on close, so everything in it comes back first
+                for (Listing listing : listings)
+                {
+                    listing.getProperty();
+                }
+                coldStorage.close();
+                coldStorage = null;
+            }
+            if (file != null)
+            {
+                coldStorage = new ListingStore(file, priceChangeListener, this::promoted);
+            }
+        }
+    }
+
+    /**
+     * spillColdListings method: one sweep of the CLOCK; a property is spilled by the second sweep that
+     * finds it unread, so calling this on a timer spills what went unread for a whole period
+     * @return              - the number of properties written to cold storage and dropped from memory
+     * @throws IOException  - if cold storage fails; properties spilled before the failure stay spilled
+     */
+    public int spillColdListings() throws IOException
+    {
+        QueryEvent event = metrics.start();
+        int spilled = 0;
+        int scanned;
+        synchronized (writeLock)
+        {
+            if (coldStorage == null)
+            {
+                throw new IllegalStateException("Cold storage not set");
+            }
+            scanned = listings.size();
+            for (Listing listing : listings)
+            {
+                Property property = listing.residentProperty();
+                if (listing.sweep(coldStorage, priceChangeListener))
+                {
+                    estimatedBytes.addAndGet(-MemoryEstimator.sizeOfSpilledProperty(property));
+                    spilled++;
+                }
+            }
+        }
+        if (event != null)
+        {
+            metrics.record("spillColdListings", "", scanned, spilled, event);
+        }
+        return spilled;
+    }
+
+    /**
+     * promoted method (holding the listing's lock)
+     * @param listing - a listing whose property was just read back from cold storage and kept
+     */
+    private void promoted(final Listing listing)
+    {
+        // a listing already removed, or replaced by a newer version, is no longer in the estimate
+        if (snapshot.listings().get(listing.getPropertyId()) == listing)
+        {
+            estimatedBytes.addAndGet(MemoryEstimator.sizeOfSpilledProperty(listing.residentProperty()));
+        }
+    }
+
+    /**
+     * getColdReadCount method
+     * @return - the number of properties read back from cold storage (promoted, or read for a scan) since it was
+     *           set, or 0 if there is none
+     */
+    public long getColdReadCount()
+    {
+        ListingStore store = coldStorage;
+        return store == null ? 0 : store.getReadCount();
+    }
+
+    /**
+     * getColdCount method
+     * @return - the number of listings in the latest snapshot whose property is in cold storage
+     */
+    public int getColdCount()
+    {
+        int cold = 0;
+        for (Listing listing : snapshot.listings())
+        {
+            if (listing.residentProperty() == null)
+            {
+                cold++;
+            }
+        }
+        return cold;
+    }
+
+    /**
+     * addMutationListener method
+     * @param listener  - told of every later change, in order, while the write lock is held
+     * @return          - the latest snapshot; the first change listener hears of is numbered
+     *                    snapshot.getSequence() + 1
+     */
+    AgencySnapshot addMutationListener(final AgencyMutationListener listener)
+    {
+        synchronized (writeLock)
+        {
+            AgencyMutationListener[] listeners = Arrays.copyOf(mutationListeners, mutationListeners.length + 1);
+            listeners[listeners.length - 1] = listener;
+            mutationListeners = listeners;
+            return snapshot;
+        }
+    }
+
+    /**
+     * removeMutationListener method
+     * @param listener - a listener added earlier; removing one that was never added does nothing
+     */
+    void removeMutationListener(final AgencyMutationListener listener)
+    {
+        synchronized (writeLock)
+        {
+            for (int index = 0; index < mutationListeners.length; index++)
+            {
+                if (mutationListeners[index] == listener)
+                {
+                    AgencyMutationListener[] listeners = new AgencyMutationListener[mutationListeners.length - 1];
+                    System.arraycopy(mutationListeners, 0, listeners, 0, index);
+                    System.arraycopy(mutationListeners, index + 1, listeners, index, listeners.length - index);
+                    mutationListeners = listeners;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * logAdded, logRemoved and logPriceChanged methods: number a change to the main map and tell every
+     * mutation listener; called with the write lock held, right after the change
+     */
+    private void logAdded(final Listing listing)
+    {
+        long sequence = ++mutationSequence;
+        for (AgencyMutationListener listener : mutationListeners)
+        {
+            listener.propertyAdded(sequence, listing);
+        }
+    }
+
+    private void logRemoved(final String propertyId)
+    {
+        long sequence = ++mutationSequence;
+        for (AgencyMutationListener listener : mutationListeners)
+        {
+            listener.propertyRemoved(sequence, propertyId);
+        }
+    }
+
+    private void logPriceChanged(final Listing oldListing, final Listing newListing)
+    {
+        long sequence = ++mutationSequence;
+        for (AgencyMutationListener listener : mutationListeners)
+        {
+            listener.priceChanged(sequence, oldListing, newListing);
+        }
+    }
+
+    /**
+     * publish method: makes the current state of the maps visible to readers
+     */
+    private void publish()
+    {
+        // removals can thin the analytics sample; refill it from the listings once it is under half full
+        if (analytics.needsRefill())
+        {
+            analytics.refill(listings);
+        }
+        snapshot = new AgencySnapshot(listings, listingsByType, totalPriceUsd, columns.columns(), priceRanks,
+                mutationSequence);
+    }
+
+    /**
+     * getMetrics method
+     * @return - the counters, latency histograms and JFR events of this agency
+     */
+    public AgencyMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * getAnalytics method
+     * @return - the approximate dashboard counts of this agency
+     */
+    public AgencyAnalytics getAnalytics()
+    {
+        return analytics;
+    }
+
+    /**
+     * getMemoryReport method
+     * @return - an estimate of the bytes this agency retains, per component; shared strings and
+     *           addresses are counted once
+     */
+    public AgencyMemoryReport getMemoryReport()
+    {
+        Set<Address> addresses = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<String> strings = Collections.newSetFromMap(new IdentityHashMap<>());
+        long propertyBytes = 0;
+        long addressBytes = 0;
+        long stringBytes = 0;
+
+        AgencySnapshot current = snapshot;
+        for (Listing listing : current.listings())
+        {
+            // a cold property takes no heap; its listing keeps only the id
+            Property property = listing.residentProperty();
+            if (property == null)
+            {
+                stringBytes += sizeOfDistinctString(listing.getPropertyId(), strings);
+                continue;
+            }
+            propertyBytes += MemoryEstimator.shallowSizeOf(Property.class) + property.getPriceHistory().estimateBytes();
+            stringBytes += sizeOfDistinctString(property.getPropertyId(), strings);
+            stringBytes += sizeOfDistinctString(property.getType(), strings);
+
+            Address address = property.getAddress();
+            if (addresses.add(address))
+            {
+                addressBytes += MemoryEstimator.shallowSizeOf(Address.class);
+                stringBytes += sizeOfDistinctString(address.getUnitNumber(), strings);
+                stringBytes += sizeOfDistinctString(address.getStreetName(), strings);
+                stringBytes += sizeOfDistinctString(address.getPostalCode(), strings);
+                stringBytes += sizeOfDistinctString(address.getCity(), strings);
+            }
+        }
+
+        // the trie nodes of a partition are its own; the Listings are shared with the main map
+        long mapBytes = current.listings().estimateBytes()
+                + current.size() * MemoryEstimator.shallowSizeOf(Listing.class);
+        long indexBytes = MemoryEstimator.shallowSizeOf(EnumMap.class)
+                + MemoryEstimator.sizeOfArray(PropertyType.values().length, MemoryEstimator.REFERENCE_BYTES);
+        for (PropertyType type : PropertyType.values())
+        {
+            indexBytes += current.listingsOfType(type).estimateBytes();
+        }
+        indexBytes += current.columnsBytes() + columns.estimateBytes() + comparables.estimateBytes()
+                + current.priceRanks().estimateBytes() + addressIndex.estimateBytes() + analytics.estimateBytes()
+                + digest.estimateBytes();
+
+        return new AgencyMemoryReport(current.size(), propertyBytes, addressBytes, stringBytes, mapBytes, indexBytes);
+    }
+
+    /**
+     * sizeOfListing method
+     * @param property  - a property
+     * @return          - bytes the property adds as a listing (see MemoryEstimator.sizeOfListing) plus its entries in
+     *                    the comparables tree, the price indexes, the address index, the digest and the columns
+     */
+    private static long sizeOfListing(final Property property)
+    {
+        return MemoryEstimator.sizeOfListing(property) + INDEX_BYTES_PER_LISTING;
+    }
+
+    /**
+     * sizeOfListing method for a listed property
+     * @param listing   - a listing
+     * @return          - the bytes it counts for in the estimate: as sizeOfListing(property) while its property is
+     *                    resident, and without the property's share (never read back) while it is cold
+     */
+    private static long sizeOfListing(final Listing listing)
+    {
+        Property property = listing.residentProperty();
+        if (property == null)
+        {
+            return MemoryEstimator.sizeOfColdListing(listing.getPropertyId()) + INDEX_BYTES_PER_LISTING;
+        }
+        return sizeOfListing(property);
+    }
+
+    private static long sizeOfDistinctString(final String string, final Set<String> seen)
+    {
+        if (string == null || !seen.add(string))
+        {
+            return 0;
+        }
+        return MemoryEstimator.sizeOfString(string);
+    }
+
+    /**
+     * setMemoryBudget method
+     * @param memoryBudgetBytes - soft cap in bytes on the estimated size of the listings, or 0 for no cap
+     */
+    public void setMemoryBudget(final long memoryBudgetBytes)
+    {
+        if (memoryBudgetBytes < 0)
+        {
+            throw new IllegalArgumentException("Invalid memory budget: " + memoryBudgetBytes);
+        }
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    public long getMemoryBudget()
+    {
+        return memoryBudgetBytes;
+    }
+
+    /**
+     * getEstimatedBytes method
+     * @return - the running estimate checked against the memory budget: each listing's objects and its entries in
+     *           the maps and indexes; pooled address strings and the fixed-size analytics are not counted
+     */
+    public long getEstimatedBytes()
+    {
+        return estimatedBytes.get();
+    }
+
+    /**
+     * a method to make a string in title case
+     * @param string - String
+     * @return      - title string
+     */
+    String toTitleCase(String string) {
+        StringBuilder titleCase = new StringBuilder();
+        boolean nextTitleCase = true;
+
+        for (char c : string.toCharArray()) {
+            if (Character.isSpaceChar(c)) {
+                nextTitleCase = true;
+            } else if (nextTitleCase) {
+                c = Character.toTitleCase(c);
+                nextTitleCase = false;
+            } else {
+                c = Character.toLowerCase(c);
+            }
+            titleCase.append(c);
+        }
+
+        return titleCase.toString();
+    }
+}
@@ -0,0 +1,445 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Class: AgencyAnalytics
+ *
+ * Approximate answers for dashboards, kept up to date with one Agency's listings so that
+ * reading them never scans the listings:
+ *
+ *      - distinct cities, streets (a street name in a city) and postal codes, from HyperLogLogs
+ *        (about 1.6% standard error)
+ *      - how many listings are on a street, from a CountMinSketch (never under; over by more than
+ *        0.13% of the listings less than 2% of the time)
+ *      - the share of listings with a pool, counted exactly
+ *      - price quantiles and price band shares, from a uniform reservoir sample of SAMPLE_CAPACITY listings
+ *
+ * Everything is read from the fields a Listing keeps in memory, so cold properties stay on disk.
+ * The agency updates it through its index hooks under its write lock; every method synchronizes.
+ *
+ * A HyperLogLog cannot forget a value, so the distinct counts include values whose listings have
+ * since been removed, until the agency next rebuilds its indexes (after a large batch) and the
+ * sketches are refilled. A removed listing leaves the sample at once; when the sample falls
+ * below half of what it should hold, the agency refills it from the listings. A rebuild refills
+ * everything in one synchronized step, so a reader sees either the old answers or the new ones.
+ *
+ * combine merges the analytics of several agencies into one read-only view, for a dashboard over all
+ * of them: the sketches are merged (a listing's street and city count once however many agencies
+ * list it), the counts are summed and the sample is redrawn so that each agency contributes in
+ * proportion to its listings.
+ *
+ * Instance Variables:
+ *      1. Cities, streets, postal codes (HyperLogLog: distinct normalized values added)
+ *      2. Street counts (CountMinSketch: listings per normalized street and city)
+ *      3. Listing count, pool count (int: exact)
+ *      4. Sample (Listing[]: the reservoir), sample size (int), sample slots (HashMap; key is property id,
+ *          value is its index in the sample)
+ *      5. Offered (long: listings offered to the reservoir since it was last refilled)
+ *      6. Random state (long: xorshift generator picking reservoir slots)
+ *
+ * Methods:
+ *      1. getListingCount(), getPoolShare()
+ *      2. getDistinctCities(), getDistinctStreets(), getDistinctPostalCodes()
+ *      3. getStreetFrequency(streetName, city): returns the estimated number of listings on that street
+ *      4. getPriceQuantile(quantile): returns the estimated price below which that share of listings fall
+ *      5. getPriceBandShare(minUsd, maxUsd): returns the estimated share of listings priced in the band
+ *      6. getSampleSize(), getSample(): the reservoir sample and the properties in it
+ *      7. combine(parts): returns the analytics of the listings of several agencies together
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public final class AgencyAnalytics {
+
+    private final HyperLogLog cities;
+    private final HyperLogLog streets;
+    private final HyperLogLog postalCodes;
+    private final CountMinSketch streetCounts;
+    private int listingCount;
+    private int poolCount;
+    private final Listing[] sample;
+    private int sampleSize;
+    private final HashMap<String, Integer> sampleSlots;
+    private long offered;
+    private long randomState;
+
+    static final int SAMPLE_CAPACITY = 1024;
+    private static final long INITIAL_RANDOM_STATE = 0x2545F4914F6CDD1DL;
+    private static final int XORSHIFT_A = 13;
+    private static final int XORSHIFT_B = 7;
+    private static final int XORSHIFT_C = 17;
+    private static final String STREET_CITY_SEPARATOR = "|";
+
+    /**
+     * constructor
+     */
+    AgencyAnalytics()
+    {
+        this.cities = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        this.streets = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        this.postalCodes = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        this.streetCounts = new CountMinSketch(CountMinSketch.DEFAULT_WIDTH, CountMinSketch.DEFAULT_DEPTH);
+        this.sample = new Listing[SAMPLE_CAPACITY];
+        this.sampleSlots = new HashMap<>();
+        this.randomState = INITIAL_RANDOM_STATE;
+    }
+
+    /**
+     * add method
+     * @param listing - a listing now in the agency
+     */
+    synchronized void add(final Listing listing)
+    {
+        AddressKey address = listing.getAddressKey();
+        cities.add(HyperLogLog.hash64(address.getCity()));
+        long streetHash = HyperLogLog.hash64(address.getStreet() + STREET_CITY_SEPARATOR + address.getCity());
+        streets.add(streetHash);
+        postalCodes.add(HyperLogLog.hash64(address.getPostalCode()));
+        streetCounts.add(streetHash, 1);
+        listingCount++;
+        if (listing.hasSwimmingPool())
+        {
+            poolCount++;
+        }
+        offer(listing);
+    }
+
+    /**
+     * remove method
+     * @param listing - a listing no longer in the agency
+     */
+    synchronized void remove(final Listing listing)
+    {
+        AddressKey address = listing.getAddressKey();
+        streetCounts.add(HyperLogLog.hash64(address.getStreet() + STREET_CITY_SEPARATOR + address.getCity()), -1);
+        listingCount--;
+        if (listing.hasSwimmingPool())
+        {
+            poolCount--;
+        }
+
+        // the last sampled listing takes the removed one's slot
+        Integer slot = sampleSlots.remove(listing.getPropertyId());
+        if (slot != null)
+        {
+            sampleSize--;
+            if (slot != sampleSize)
+            {
+                sample[slot] = sample[sampleSize];
+                sampleSlots.put(sample[slot].getPropertyId(), slot);
+            }
+            sample[sampleSize] = null;
+        }
+    }
+
+    /**
+     * priceChanged method
+     * @param oldListing    - the listing at its old price
+     * @param newListing    - the listing at its new price
+     */
+    synchronized void priceChanged(final Listing oldListing, final Listing newListing)
+    {
+        Integer slot = sampleSlots.get(newListing.getPropertyId());
+        if (slot != null)
+        {
+            sample[slot] = newListing;
+        }
+    }
+
+    /**
+     * rebuild method: refills the sketches, counts and sample from the listings in one step
+     * @param listings - every listing in the agency
+     */
+    synchronized void rebuild(final Iterable<Listing> listings)
+    {
+        cities.clear();
+        streets.clear();
+        postalCodes.clear();
+        streetCounts.clear();
+        listingCount = 0;
+        poolCount = 0;
+        clearSample();
+        for (Listing listing : listings)
+        {
+            add(listing);
+        }
+    }
+
+    /**
+     * needsRefill method
+     * @return - true if removals have left the sample with under half the listings it should hold
+     */
+    synchronized boolean needsRefill()
+    {
+        return sampleSize < Math.min(listingCount, SAMPLE_CAPACITY) / 2;
+    }
+
+    /**
+     * refill method: draws a new sample from every listing
+     * @param listings - every listing in the agency
+     */
+    synchronized void refill(final Iterable<Listing> listings)
+    {
+        clearSample();
+        for (Listing listing : listings)
+        {
+            offer(listing);
+        }
+    }
+
+    /**
+     * getters
+     * @return listingCount, share of listings with a pool (0 if there are none)
+     */
+    public synchronized int getListingCount()
+    {
+        return listingCount;
+    }
+
+    public synchronized double getPoolShare()
+    {
+        return listingCount == 0 ? 0 : (double) poolCount / listingCount;
+    }
+
+    /**
+     * distinct count methods
+     * @return - the estimated number of distinct cities, streets (a street name in a city) and postal codes
+     */
+    public synchronized long getDistinctCities()
+    {
+        return cities.estimate();
+    }
+
+    public synchronized long getDistinctStreets()
+    {
+        return streets.estimate();
+    }
+
+    public synchronized long getDistinctPostalCodes()
+    {
+        return postalCodes.estimate();
+    }
+
+    /**
+     * getStreetFrequency method
+     * @param streetName    - a street name, written any way AddressKey treats as the same
+     * @param city          - its city
+     * @return              - the estimated number of listings on that street (never fewer than there are)
+     */
+    public synchronized int getStreetFrequency(final String streetName, final String city)
+    {
+        if (streetName == null || city == null)
+        {
+            throw new NullPointerException("Street name and city cannot be null");
+        }
+        String street = AddressKey.normalizeStreet(streetName) + STREET_CITY_SEPARATOR + AddressKey.normalizeCity(city);
+        return streetCounts.estimate(HyperLogLog.hash64(street));
+    }
+
+    /**
+     * getPriceQuantile method
+     * @param quantile  - a share of the listings, 0 to 1
+     * @return          - the estimated price at or below which that share of the listings are priced, or NaN
+     *                    if there are no listings
+     */
+    public synchronized double getPriceQuantile(final double quantile)
+    {
+        if (!(quantile >= 0 && quantile <= 1))
+        {
+            throw new IllegalArgumentException("Invalid quantile: " + quantile);
+        }
+        if (sampleSize == 0)
+        {
+            return Double.NaN;
+        }
+        double[] prices = new double[sampleSize];
+        for (int slot = 0; slot < sampleSize; slot++)
+        {
+            prices[slot] = sample[slot].getPriceUsd();
+        }
+        Arrays.sort(prices);
+        return prices[(int) Math.min(sampleSize - 1, Math.floor(quantile * sampleSize))];
+    }
+
+    /**
+     * getPriceBandShare method
+     * @param minUsd    - minimum price in usd
+     * @param maxUsd    - maximum price in usd
+     * @return          - the estimated share of the listings priced in the band, 0 to 1 (0 if there are none)
+     */
+    public synchronized double getPriceBandShare(final double minUsd, final double maxUsd)
+    {
+        if (sampleSize == 0)
+        {
+            return 0;
+        }
+        int inBand = 0;
+        for (int slot = 0; slot < sampleSize; slot++)
+        {
+            double priceUsd = sample[slot].getPriceUsd();
+            if (priceUsd >= minUsd && priceUsd <= maxUsd)
+            {
+                inBand++;
+            }
+        }
+        return (double) inBand / sampleSize;
+    }
+
+    /**
+     * getSampleSize method
+     * @return - the number of listings in the sample
+     */
+    public synchronized int getSampleSize()
+    {
+        return sampleSize;
+    }
+
+    /**
+     * getSample method
+     * @return - the properties in the sample (a cold one is read back but stays cold)
+     */
+    public synchronized List<Property> getSample()
+    {
+        List<Property> properties = new ArrayList<>(sampleSize);
+        for (int slot = 0; slot < sampleSize; slot++)
+        {
+            properties.add(sample[slot].peekProperty());
+        }
+        return properties;
+    }
+
+    /**
+     * combine method
+     * @param parts - the analytics of several agencies
+     * @return      - a read-only view of their listings together; property ids need not be unique across parts
+     */
+    public static AgencyAnalytics combine(final AgencyAnalytics... parts)
+    {
+        if (parts == null)
+        {
+            throw new NullPointerException("Analytics cannot be null");
+        }
+        AgencyAnalytics combined = new AgencyAnalytics();
+        Listing[][] samples = new Listing[parts.length][];
+        int[] listingCounts = new int[parts.length];
+        for (int part = 0; part < parts.length; part++)
+        {
+            AgencyAnalytics analytics = parts[part];
+            if (analytics == null)
+            {
+                throw new NullPointerException("Analytics cannot be null");
+            }
+            synchronized (analytics)
+            {
+                combined.cities.merge(analytics.cities);
+                combined.streets.merge(analytics.streets);
+                combined.postalCodes.merge(analytics.postalCodes);
+                combined.streetCounts.merge(analytics.streetCounts);
+                combined.listingCount += analytics.listingCount;
+                combined.poolCount += analytics.poolCount;
+                samples[part] = Arrays.copyOf(analytics.sample, analytics.sampleSize);
+                listingCounts[part] = analytics.listingCount;
+            }
+        }
+        if (combined.listingCount == 0)
+        {
+            return combined;
+        }
+
+        // a part's sample stands for all its listings, so the combined sample is as large as the most
+        // thinly sampled part allows while still taking from every part in proportion to its listings
+        long size = SAMPLE_CAPACITY;
+        for (int part = 0; part < parts.length; part++)
+        {
+            if (listingCounts[part] > 0)
+            {
+                size = Math.min(size, (long) samples[part].length * combined.listingCount / listingCounts[part]);
+            }
+        }
+        int[] shares = new int[parts.length];
+        long left = size;
+        for (int part = 0; part < parts.length; part++)
+        {
+            shares[part] = (int) (size * listingCounts[part] / combined.listingCount);
+            left -= shares[part];
+        }
+        // rounding down leaves fewer than one slot per part, handed to parts with listings to spare
+        for (int part = 0; part < parts.length && left > 0; part++)
+        {
+            if (shares[part] < samples[part].length)
+            {
+                shares[part]++;
+                left--;
+            }
+        }
+        for (int part = 0; part < parts.length; part++)
+        {
+            // a partial shuffle picks the part's share of its sample uniformly
+            Listing[] partSample = samples[part];
+            for (int taken = 0; taken < shares[part]; taken++)
+            {
+                int slot = taken + (int) ((combined.nextRandom() >>> 1) % (partSample.length - taken));
+                Listing picked = partSample[slot];
+                partSample[slot] = partSample[taken];
+                partSample[taken] = picked;
+                combined.sample[combined.sampleSize++] = picked;
+            }
+        }
+        return combined;
+    }
+
+    /**
+     * estimateBytes method
+     * @return - bytes of the sketches and the sample (not the listings)
+     */
+    synchronized long estimateBytes()
+    {
+        return MemoryEstimator.shallowSizeOf(AgencyAnalytics.class)
+                + cities.estimateBytes() + streets.estimateBytes() + postalCodes.estimateBytes()
+                + streetCounts.estimateBytes()
+                + MemoryEstimator.sizeOfArray(SAMPLE_CAPACITY, MemoryEstimator.REFERENCE_BYTES)
+                + MemoryEstimator.sizeOfHashMap(sampleSlots.size())
+                + sampleSlots.size() * MemoryEstimator.shallowSizeOf(Integer.class);
+    }
+
+    /**
+     * offer method: one step of reservoir sampling (algorithm R)
+     * @param listing - a listing not in the sample
+     */
+    private void offer(final Listing listing)
+    {
+        offered++;
+        if (sampleSize < SAMPLE_CAPACITY)
+        {
+            sample[sampleSize] = listing;
+            sampleSlots.put(listing.getPropertyId(), sampleSize);
+            sampleSize++;
+            return;
+        }
+        long slot = (nextRandom() >>> 1) % offered;
+        if (slot < SAMPLE_CAPACITY)
+        {
+            sampleSlots.remove(sample[(int) slot].getPropertyId());
+            sample[(int) slot] = listing;
+            sampleSlots.put(listing.getPropertyId(), (int) slot);
+        }
+    }
+
+    private void clearSample()
+    {
+        Arrays.fill(sample, null);
+        sampleSize = 0;
+        sampleSlots.clear();
+        offered = 0;
+    }
+
+    private long nextRandom()
+    {
+        randomState ^= randomState << XORSHIFT_A;
+        randomState ^= randomState >>> XORSHIFT_B;
+        randomState ^= randomState << XORSHIFT_C;
+        return randomState;
+    }
+}
@@ -0,0 +1,197 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Class: AgencyJoin
+ *
+ * A hash join of two agencies' latest snapshots: every pair of listings, one from each agency,
+ * with the same key, where the key is the normalized address (AddressKey) or the property id.
+ * Keys come from the fields a Listing keeps in memory, so the join never reads a cold property.
+ *
+ * A hash table is built on the smaller agency and probed with the larger. To run in parallel,
+ * both sides are first split by key hash into the same number of partitions; a key's matches can
+ * only be in the same partition on the other side, so each partition is built and probed as an
+ * independent task, with a table a fraction of the size.
+ *
+ * Methods:
+ *      1. join(left, right, key): returns every shared listing, on the calling thread
+ *      2. join(left, right, key, partitions, executor): the same, in partitions run on executor
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class AgencyJoin {
+
+    /**
+     * Enum: Key
+     *
+     * What makes two listings the same property.
+     */
+    enum Key {
+        ADDRESS,
+        PROPERTY_ID
+    }
+
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+    private static final long UNSIGNED_INT_MASK = 0xFFFFFFFFL;
+
+    private AgencyJoin()
+    {
+    }
+
+    /**
+     * join method
+     * @param left  - the first agency
+     * @param right - the second agency
+     * @param key   - what makes two listings the same property
+     * @return      - every pair of listings sharing a key, in no particular order; empty if there are none
+     */
+    static ArrayList<SharedListing> join(final Agency left, final Agency right, final Key key)
+    {
+        return join(left, right, key, 1, Runnable::run);
+    }
+
+    /**
+     * join method
+     * @param left          - the first agency
+     * @param right         - the second agency
+     * @param key           - what makes two listings the same property
+     * @param partitions    - number of independent tasks (at least 1)
+     * @param executor      - runs the tasks
+     * @return              - every pair of listings sharing a key, in no particular order; empty if there are none
+     */
+    static ArrayList<SharedListing> join(final Agency left,
+                                         final Agency right,
+                                         final Key key,
+                                         final int partitions,
+                                         final Executor executor)
+    {
+        if (left == null || right == null)
+        {
+            throw new NullPointerException("Agency cannot be null");
+        }
+        if (key == null || executor == null)
+        {
+            throw new NullPointerException("Key and executor cannot be null");
+        }
+        if (partitions < 1)
+        {
+            throw new IllegalArgumentException("Invalid partitions: " + partitions);
+        }
+
+        ListingColumns leftRows = left.snapshot().columns();
+        ListingColumns rightRows = right.snapshot().columns();
+        boolean buildLeft = leftRows.size() <= rightRows.size();
+        ListingColumns build = buildLeft ? leftRows : rightRows;
+        ListingColumns probe = buildLeft ? rightRows : leftRows;
+        int[][] buildPartitions = partition(build, key, partitions);
+        int[][] probePartitions = partition(probe, key, partitions);
+
+        List<CompletableFuture<ArrayList<SharedListing>>> tasks = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++)
+        {
+            int[] buildRows = buildPartitions[partition];
+            int[] probeRows = probePartitions[partition];
+            tasks.add(CompletableFuture.supplyAsync(
+                    () -> joinPartition(build, buildRows, probe, probeRows, key, buildLeft), executor));
+        }
+
+        ArrayList<SharedListing> shared = new ArrayList<>();
+        for (CompletableFuture<ArrayList<SharedListing>> task : tasks)
+        {
+            shared.addAll(task.join());
+        }
+        return shared;
+    }
+
+    /**
+     * partition method
+     * @param rows          - one side's listings
+     * @param key           - the join key
+     * @param partitions    - number of partitions
+     * @return              - the rows of each partition, in row order
+     */
+    private static int[][] partition(final ListingColumns rows, final Key key, final int partitions)
+    {
+        int[] partitionOf = new int[rows.size()];
+        int[] counts = new int[partitions];
+        for (int row = 0; row < rows.size(); row++)
+        {
+            partitionOf[row] = partitionOf(keyOf(rows.listing(row), key), partitions);
+            counts[partitionOf[row]]++;
+        }
+
+        int[][] partitionRows = new int[partitions][];
+        for (int partition = 0; partition < partitions; partition++)
+        {
+            partitionRows[partition] = new int[counts[partition]];
+            counts[partition] = 0;
+        }
+        for (int row = 0; row < rows.size(); row++)
+        {
+            int partition = partitionOf[row];
+            partitionRows[partition][counts[partition]++] = row;
+        }
+        return partitionRows;
+    }
+
+    /**
+     * joinPartition method
+     * @param build     - the smaller side's listings
+     * @param buildRows - its rows in this partition
+     * @param probe     - the larger side's listings
+     * @param probeRows - its rows in this partition
+     * @param key       - the join key
+     * @param buildLeft - true if the build side is the left agency
+     * @return          - the pairs found in this partition
+     */
+    private static ArrayList<SharedListing> joinPartition(final ListingColumns build,
+                                                          final int[] buildRows,
+                                                          final ListingColumns probe,
+                                                          final int[] probeRows,
+                                                          final Key key,
+                                                          final boolean buildLeft)
+    {
+        ArrayList<SharedListing> shared = new ArrayList<>();
+        if (buildRows.length == 0 || probeRows.length == 0)
+        {
+            return shared;
+        }
+
+        // one table entry per distinct key, chaining the other rows with that key through next
+        HashMap<Object, Integer> firstWithKey = new HashMap<>(buildRows.length * 2);
+        int[] next = new int[buildRows.length];
+        for (int index = 0; index < buildRows.length; index++)
+        {
+            Integer previous = firstWithKey.put(keyOf(build.listing(buildRows[index]), key), index);
+            next[index] = previous == null ? -1 : previous;
+        }
+
+        for (int probeRow : probeRows)
+        {
+            Listing probed = probe.listing(probeRow);
+            Integer first = firstWithKey.get(keyOf(probed, key));
+            for (int index = first == null ? -1 : first; index >= 0; index = next[index])
+            {
+                Listing built = build.listing(buildRows[index]);
+                shared.add(buildLeft ? new SharedListing(built, probed) : new SharedListing(probed, built));
+            }
+        }
+        return shared;
+    }
+
+    private static Object keyOf(final Listing listing, final Key key)
+    {
+        return key == Key.ADDRESS ? listing.getAddressKey() : listing.getPropertyId();
+    }
+
+    private static int partitionOf(final Object key, final int partitions)
+    {
+        // the high bits of a multiplicative hash, since each partition's HashMap indexes by the low bits
+        long mixed = (key.hashCode() * GOLDEN_RATIO) & UNSIGNED_INT_MASK;
+        return (int) ((mixed * partitions) >>> Integer.SIZE);
+    }
+}
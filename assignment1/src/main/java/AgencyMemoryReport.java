@@ -0,0 +1,106 @@
+/**
+ * Class: AgencyMemoryReport
+ *
+ * An estimate of the heap retained by one Agency, split by component. Objects
+ * shared between listings (pooled strings, shared addresses) are counted once.
+ * Sizes come from MemoryEstimator, so they assume a 64-bit JVM with compressed
+ * references.
+ *
+ * Instance Variables:
+ *      1. Listing count (int: number of properties)
+ *      2. Property bytes (long: the Property objects themselves)
+ *      3. Address bytes (long: distinct Address objects)
+ *      4. String bytes (long: distinct Strings reachable from properties and addresses)
+ *      5. Map bytes (long: the main PersistentMap's trie nodes and entries, and the Listings they hold)
+ *      6. Index bytes (long: every secondary structure kept alongside the main map)
+ *
+ * Methods:
+ *      1. Get methods for all instance variables
+ *      2. getTotalBytes(): returns the sum of every component
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public class AgencyMemoryReport {
+
+    private final int listingCount;
+    private final long propertyBytes;
+    private final long addressBytes;
+    private final long stringBytes;
+    private final long mapBytes;
+    private final long indexBytes;
+
+    /**
+     * constructor
+     * @param listingCount  - number of properties
+     * @param propertyBytes - bytes of the Property objects
+     * @param addressBytes  - bytes of the distinct Address objects
+     * @param stringBytes   - bytes of the distinct Strings
+     * @param mapBytes      - bytes of the main map and its Listings
+     * @param indexBytes    - bytes of the secondary structures
+     */
+    AgencyMemoryReport(final int listingCount,
+                       final long propertyBytes,
+                       final long addressBytes,
+                       final long stringBytes,
+                       final long mapBytes,
+                       final long indexBytes)
+    {
+        this.listingCount = listingCount;
+        this.propertyBytes = propertyBytes;
+        this.addressBytes = addressBytes;
+        this.stringBytes = stringBytes;
+        this.mapBytes = mapBytes;
+        this.indexBytes = indexBytes;
+    }
+
+    /**
+     * getters
+     * @return listingCount, propertyBytes, addressBytes, stringBytes, mapBytes, indexBytes
+     */
+    public int getListingCount()
+    {
+        return listingCount;
+    }
+
+    public long getPropertyBytes()
+    {
+        return propertyBytes;
+    }
+
+    public long getAddressBytes()
+    {
+        return addressBytes;
+    }
+
+    public long getStringBytes()
+    {
+        return stringBytes;
+    }
+
+    public long getMapBytes()
+    {
+        return mapBytes;
+    }
+
+    public long getIndexBytes()
+    {
+        return indexBytes;
+    }
+
+    /**
+     * getTotalBytes method
+     * @return - the sum of every component
+     */
+    public long getTotalBytes()
+    {
+        return propertyBytes + addressBytes + stringBytes + mapBytes + indexBytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d listings: %d bytes (properties %d, addresses %d, strings %d, map %d, indexes %d)",
+                listingCount, getTotalBytes(), propertyBytes, addressBytes, stringBytes, mapBytes, indexBytes);
+    }
+}
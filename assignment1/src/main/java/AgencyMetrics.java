@@ -0,0 +1,248 @@
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class: AgencyMetrics
+ *
+ * Per-method counters and latency histograms for one Agency, plus the JDK Flight
+ * Recorder QueryEvent for each call, plus an optional SlowQueryLog. Every Agency method
+ * brackets its work with start() and record(...): start() creates the call's QueryEvent and
+ * begins it, and record(...) ends it and commits it if the recording wants it, so the event's
+ * own start time and duration are those of the call. A query also marks with lap(event) where
+ * finding its matches ended and building its result began, and names the index it read.
+ * When metrics are disabled, there is no slow query log and no recording has the QueryEvent
+ * enabled, start() returns null and the method skips record(...) entirely, so the only cost is
+ * two volatile reads and one JFR enablement check.
+ *
+ * Instance Variables:
+ *      1. Agency name (String: copied into every QueryEvent)
+ *      2. Enabled (boolean: whether counters and histograms are updated; off by default)
+ *      3. Methods (ConcurrentHashMap; key is method name, value is that method's MethodMetrics)
+ *      4. Slow query log (SlowQueryLog: given every call to keep or skip; null by default)
+ *
+ * Methods:
+ *      1. setEnabled(enabled), isEnabled()
+ *      2. start(): returns the begun QueryEvent of a call, or null if nothing is listening
+ *      3. record(method, parameters, rowsScanned, resultSize, event): records one call
+ *          (record(method, parameters, index, rowsScanned, resultSize, event, scannedNanos) also says
+ *          which index was read and when scanning ended; lap(event) takes that second timestamp)
+ *      4. getMethods(): returns the names of every method recorded so far
+ *      5. getMethodMetrics(method): returns the counters of one method...or null if it was never recorded
+ *      6. reset(): forgets everything recorded so far
+ *      7. setSlowQueryLog(log), getSlowQueryLog()
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public class AgencyMetrics {
+
+    private final String agencyName;
+    private volatile boolean enabled;
+    private final ConcurrentHashMap<String, MethodMetrics> methods;
+    private volatile SlowQueryLog slowQueryLog;
+
+    static final long NOT_RECORDING = Long.MIN_VALUE;
+
+    /**
+     * constructor
+     * @param agencyName - name of the agency being measured
+     */
+    AgencyMetrics(final String agencyName)
+    {
+        this.agencyName = agencyName;
+        this.methods = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * setEnabled method
+     * @param enabled - true to update counters and histograms on every call
+     */
+    public void setEnabled(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * setSlowQueryLog method
+     * @param slowQueryLog - the log to offer every call to, or null to stop
+     */
+    public void setSlowQueryLog(final SlowQueryLog slowQueryLog)
+    {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    public SlowQueryLog getSlowQueryLog()
+    {
+        return slowQueryLog;
+    }
+
+    /**
+     * start method
+     * @return - a new QueryEvent, begun and holding the current System.nanoTime(), or null if neither metrics,
+     *           the slow query log nor JFR are listening
+     */
+    QueryEvent start()
+    {
+        if (!enabled && slowQueryLog == null && !QueryEvent.isRecording())
+        {
+            return null;
+        }
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        event.startNanos = System.nanoTime();
+        return event;
+    }
+
+    /**
+     * lap method
+     * @param event - the value returned by start()
+     * @return      - the current System.nanoTime(), or NOT_RECORDING if event is null
+     */
+    long lap(final QueryEvent event)
+    {
+        return event == null ? NOT_RECORDING : System.nanoTime();
+    }
+
+    /**
+     * record method
+     * @param method        - name of the Agency method
+     * @param parameters    - the method's arguments, as text
+     * @param rowsScanned   - listings examined
+     * @param resultSize    - listings or lines returned
+     * @param event         - the value returned by start()
+     */
+    void record(final String method,
+                final String parameters,
+                final long rowsScanned,
+                final long resultSize,
+                final QueryEvent event)
+    {
+        record(method, parameters, null, rowsScanned, resultSize, event, NOT_RECORDING);
+    }
+
+    /**
+     * record method
+     * @param method        - name of the Agency method
+     * @param parameters    - the method's arguments, as text
+     * @param index         - the structure the method read (e.g. "price column"), or null
+     * @param rowsScanned   - listings examined
+     * @param resultSize    - listings or lines returned
+     * @param event         - the value returned by start()
+     * @param scannedNanos  - the value returned by lap(event) once the matches were found, or
+     *                        NOT_RECORDING if the method does not tell scanning from building its result
+     */
+    void record(final String method,
+                final String parameters,
+                final String index,
+                final long rowsScanned,
+                final long resultSize,
+                final QueryEvent event,
+                final long scannedNanos)
+    {
+        if (event == null)
+        {
+            return;
+        }
+        event.end();
+        long startNanos = event.startNanos;
+        long durationNanos = System.nanoTime() - startNanos;
+
+        if (enabled)
+        {
+            MethodMetrics methodMetrics = methods.computeIfAbsent(method, key -> new MethodMetrics());
+            methodMetrics.calls.increment();
+            methodMetrics.rowsScanned.add(rowsScanned);
+            methodMetrics.resultSize.add(resultSize);
+            methodMetrics.latency.record(durationNanos);
+        }
+
+        // the recording's threshold is checked against the event's duration before its fields are filled
+        if (event.shouldCommit())
+        {
+            event.agency = agencyName;
+            event.method = method;
+            event.parameters = parameters;
+            event.rowsScanned = rowsScanned;
+            event.resultSize = resultSize;
+            event.commit();
+        }
+
+        SlowQueryLog log = slowQueryLog;
+        if (log != null)
+        {
+            long scanNanos = scannedNanos == NOT_RECORDING ? durationNanos : scannedNanos - startNanos;
+            log.offer(agencyName, method, parameters, index, rowsScanned, resultSize, durationNanos, scanNanos);
+        }
+    }
+
+    /**
+     * getMethods method
+     * @return - the names of every method recorded so far, in alphabetical order
+     */
+    public Set<String> getMethods()
+    {
+        return new TreeSet<>(methods.keySet());
+    }
+
+    /**
+     * getMethodMetrics method
+     * @param method    - name of the Agency method
+     * @return          - the counters of that method, or null if it was never recorded
+     */
+    public MethodMetrics getMethodMetrics(final String method)
+    {
+        return methods.get(method);
+    }
+
+    /**
+     * reset method
+     */
+    public void reset()
+    {
+        methods.clear();
+    }
+
+    /**
+     * Class: MethodMetrics
+     *
+     * Counters and latency histogram of one Agency method.
+     */
+    public static class MethodMetrics {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder rowsScanned = new LongAdder();
+        private final LongAdder resultSize = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        /**
+         * getters
+         * @return calls, rowsScanned, resultSize, latency
+         */
+        public long getCalls()
+        {
+            return calls.sum();
+        }
+
+        public long getRowsScanned()
+        {
+            return rowsScanned.sum();
+        }
+
+        public long getResultSize()
+        {
+            return resultSize.sum();
+        }
+
+        public LatencyHistogram getLatency()
+        {
+            return latency;
+        }
+    }
+}
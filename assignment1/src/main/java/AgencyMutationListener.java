@@ -0,0 +1,43 @@
+/**
+ * Interface: AgencyMutationListener
+ *
+ * Told by an Agency of every change to its listings, in the order the changes were
+ * made, each with the agency's mutation sequence number (1 for the first change, then
+ * one more for each). Replaying the calls, in order, on a copy of a snapshot whose
+ * getSequence() is below the first sequence number seen reproduces the agency exactly.
+ *
+ * Methods are called while the agency holds its write lock, so they must be quick
+ * (e.g. put the change on a queue) and must not call back into the agency.
+ *
+ * Methods:
+ *      1. propertyAdded(sequence, listing): a property was added, or replaced one with the same id
+ *      2. propertyRemoved(sequence, propertyId): a property was removed
+ *      3. priceChanged(sequence, oldListing, newListing): a listed property's price changed
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+interface AgencyMutationListener {
+
+    /**
+     * propertyAdded method
+     * @param sequence  - number of this change
+     * @param listing   - the new listing, at the price it was added with
+     */
+    void propertyAdded(long sequence, Listing listing);
+
+    /**
+     * propertyRemoved method
+     * @param sequence      - number of this change
+     * @param propertyId    - id of the removed property
+     */
+    void propertyRemoved(long sequence, String propertyId);
+
+    /**
+     * priceChanged method
+     * @param sequence      - number of this change
+     * @param oldListing    - the listing at its old price
+     * @param newListing    - the listing at its new price
+     */
+    void priceChanged(long sequence, Listing oldListing, Listing newListing);
+}
@@ -0,0 +1,346 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Class: AgencyScheduler
+ *
+ * Runs Agency queries asynchronously on a fixed set of worker threads, so a few heavy
+ * reports cannot starve latency-sensitive lookups. Every query is submitted with a
+ * Priority and a timeout and returns a CompletableFuture.
+ *
+ * Scheduling: a free worker always takes the oldest INTERACTIVE query first, then NORMAL,
+ * then REPORT. NORMAL and REPORT queries together may occupy at most threads - 1 workers,
+ * so one worker is always left for INTERACTIVE queries however many reports are running.
+ * At most queueCapacity queries may wait; beyond that, submit fails the future at once
+ * with a RejectedExecutionException rather than queueing without bound.
+ *
+ * Deadlines and cancellation: when a query's timeout passes, its future completes with a
+ * TimeoutException; when the caller cancels the future, it completes with a
+ * CancellationException. Either way the query's QueryContext is cancelled: a query still
+ * waiting is dropped when it reaches the front, and a running scan stops at its next
+ * checkpoint and frees its worker.
+ *
+ * Instance Variables:
+ *      1. Agency (Agency: the agency queried)
+ *      2. Queues (EnumMap of ArrayDeque; key is Priority, value is the queries waiting at that priority)
+ *      3. Workers (Thread[]: the worker threads)
+ *      4. Background threads (int: most workers NORMAL and REPORT queries may occupy at once)
+ *      5. Queue capacity (int: most queries waiting at once)
+ *      6. Running background (int: workers now running NORMAL or REPORT queries)
+ *      7. Closed (boolean: set by close())
+ *
+ * Methods:
+ *      1. submit(priority, timeoutMillis, query): runs query(context) and returns its future result
+ *      2. getProperty(propertyId, timeoutMillis): getProperty as an INTERACTIVE query
+ *      3. getPropertiesBetween(minUsd, maxUsd, priority, timeoutMillis): a cancellable getPropertiesBetween
+ *      4. getPropertiesOfType(propertyType, priority, timeoutMillis): a cancellable getPropertiesOfType
+ *      5. getQueuedCount(priority): returns the number of queries waiting at that priority
+ *      6. close(): stops the workers and fails every query still waiting
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public class AgencyScheduler implements AutoCloseable {
+
+    /**
+     * Priority classes, most urgent first
+     */
+    public enum Priority
+    {
+        INTERACTIVE,
+        NORMAL,
+        REPORT
+    }
+
+    private final Agency agency;
+    private final EnumMap<Priority, ArrayDeque<Task<?>>> queues;
+    private final Thread[] workers;
+    private final int backgroundThreads;
+    private final int queueCapacity;
+    private final Object lock;
+    private int queued;
+    private int runningBackground;
+    private boolean closed;
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    /**
+     * constructor
+     * @param agency        - the agency to query
+     * @param threads       - number of worker threads (at least 2, so one can be kept for INTERACTIVE queries)
+     * @param queueCapacity - most queries that may wait at once (at least 1)
+     */
+    public AgencyScheduler(final Agency agency, final int threads, final int queueCapacity)
+    {
+        if (agency == null)
+        {
+            throw new NullPointerException("Invalid agency: " + agency);
+        }
+        if (threads < 2)
+        {
+            throw new IllegalArgumentException("Invalid threads: " + threads);
+        }
+        if (queueCapacity < 1)
+        {
+            throw new IllegalArgumentException("Invalid capacity: " + queueCapacity);
+        }
+        this.agency = agency;
+        this.backgroundThreads = threads - 1;
+        this.queueCapacity = queueCapacity;
+        this.lock = new Object();
+        this.queues = new EnumMap<>(Priority.class);
+        for (Priority priority : Priority.values())
+        {
+            queues.put(priority, new ArrayDeque<>());
+        }
+        this.workers = new Thread[threads];
+        for (int index = 0; index < threads; index++)
+        {
+            workers[index] = new Thread(this::work, "agency-scheduler-" + index);
+            workers[index].setDaemon(true);
+            workers[index].start();
+        }
+    }
+
+    /**
+     * submit method
+     * @param priority      - the query's priority class
+     * @param timeoutMillis - time from now after which the query is abandoned (at least 1)
+     * @param query         - the query; long scans should call context.checkpoint() as they go
+     * @return              - the query's result, or a TimeoutException, CancellationException,
+     *                        RejectedExecutionException or whatever the query threw
+     */
+    public <T> CompletableFuture<T> submit(final Priority priority,
+                                           final long timeoutMillis,
+                                           final Function<QueryContext, T> query)
+    {
+        if (priority == null || query == null)
+        {
+            throw new NullPointerException("Invalid query: " + priority + ", " + query);
+        }
+        if (timeoutMillis < 1)
+        {
+            throw new IllegalArgumentException("Invalid timeout: " + timeoutMillis);
+        }
+
+        QueryContext context = new QueryContext(System.nanoTime() + timeoutMillis * NANOS_PER_MILLI);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        synchronized (lock)
+        {
+            if (closed)
+            {
+                future.completeExceptionally(new RejectedExecutionException("Scheduler closed"));
+                return future;
+            }
+            if (queued == queueCapacity)
+            {
+                future.completeExceptionally(new RejectedExecutionException("Queue full: " + queueCapacity));
+                return future;
+            }
+            queues.get(priority).add(new Task<>(priority, context, query, future));
+            queued++;
+            lock.notifyAll();
+        }
+
+        // a deadline or a cancel by the caller completes the future; either way, stop the query
+        future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((result, error) -> context.cancel());
+        return future;
+    }
+
+    /**
+     * getProperty method
+     * @param propertyId    - id of the property
+     * @param timeoutMillis - time from now after which the lookup is abandoned
+     * @return              - the property, or null if there is no match
+     */
+    public CompletableFuture<Property> getProperty(final String propertyId, final long timeoutMillis)
+    {
+        return submit(Priority.INTERACTIVE, timeoutMillis, context -> agency.getProperty(propertyId));
+    }
+
+    /**
+     * getPropertiesBetween method
+     * @param minUsd        - minimum price in usd
+     * @param maxUsd        - maximum price in usd
+     * @param priority      - the query's priority class
+     * @param timeoutMillis - time from now after which the query is abandoned
+     * @return              - the properties whose price falls in the range
+     */
+    public CompletableFuture<Property[]> getPropertiesBetween(final int minUsd,
+                                                             final int maxUsd,
+                                                             final Priority priority,
+                                                             final long timeoutMillis)
+    {
+        return submit(priority, timeoutMillis, context -> agency.getPropertiesBetween(minUsd, maxUsd, context));
+    }
+
+    /**
+     * getPropertiesOfType method
+     * @param propertyType  - property type you want to find
+     * @param priority      - the query's priority class
+     * @param timeoutMillis - time from now after which the query is abandoned
+     * @return              - the lines getPropertiesOfType returns
+     */
+    public CompletableFuture<ArrayList<String>> getPropertiesOfType(final String propertyType,
+                                                                   final Priority priority,
+                                                                   final long timeoutMillis)
+    {
+        return submit(priority, timeoutMillis, context -> agency.getPropertiesOfType(propertyType, context));
+    }
+
+    /**
+     * getQueuedCount method
+     * @param priority  - a priority class
+     * @return          - number of queries waiting at that priority, including abandoned ones not yet dropped
+     */
+    public int getQueuedCount(final Priority priority)
+    {
+        synchronized (lock)
+        {
+            return queues.get(priority).size();
+        }
+    }
+
+    /**
+     * close method
+     */
+    @Override
+    public void close()
+    {
+        ArrayList<Task<?>> abandoned = new ArrayList<>();
+        synchronized (lock)
+        {
+            closed = true;
+            for (ArrayDeque<Task<?>> queue : queues.values())
+            {
+                abandoned.addAll(queue);
+                queue.clear();
+            }
+            queued = 0;
+            lock.notifyAll();
+        }
+        for (Task<?> task : abandoned)
+        {
+            task.future.completeExceptionally(new RejectedExecutionException("Scheduler closed"));
+        }
+    }
+
+    private void work()
+    {
+        while (true)
+        {
+            Task<?> task;
+            synchronized (lock)
+            {
+                task = next();
+                while (task == null && !closed)
+                {
+                    try
+                    {
+                        lock.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    task = next();
+                }
+                if (task == null)
+                {
+                    return;
+                }
+                if (task.priority != Priority.INTERACTIVE)
+                {
+                    runningBackground++;
+                }
+            }
+
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                if (task.priority != Priority.INTERACTIVE)
+                {
+                    synchronized (lock)
+                    {
+                        runningBackground--;
+                        lock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * next method (holding lock)
+     * @return - the next query a worker may start, or null if there is none
+     */
+    private Task<?> next()
+    {
+        for (Priority priority : Priority.values())
+        {
+            if (priority != Priority.INTERACTIVE && runningBackground >= backgroundThreads)
+            {
+                return null;
+            }
+            ArrayDeque<Task<?>> queue = queues.get(priority);
+            while (!queue.isEmpty())
+            {
+                Task<?> task = queue.poll();
+                queued--;
+                // timed out or cancelled while waiting; its future is already complete
+                if (!task.future.isDone())
+                {
+                    return task;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Class: Task
+     *
+     * One submitted query, its context and the future it completes.
+     */
+    private static final class Task<T> {
+
+        private final Priority priority;
+        private final QueryContext context;
+        private final Function<QueryContext, T> query;
+        private final CompletableFuture<T> future;
+
+        private Task(final Priority priority,
+                     final QueryContext context,
+                     final Function<QueryContext, T> query,
+                     final CompletableFuture<T> future)
+        {
+            this.priority = priority;
+            this.context = context;
+            this.query = query;
+            this.future = future;
+        }
+
+        private void run()
+        {
+            try
+            {
+                future.complete(query.apply(context));
+            }
+            catch (Throwable e)
+            {
+                // a CancellationException from a checkpoint means the future is already complete, and this does nothing;
+                // an Error fails only this query, so the worker (and the runningBackground count) carries on
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Class: AgencySnapshot
+ *
+ * An immutable, point-in-time view of an Agency's listings. Agency publishes a new
+ * snapshot after every change; because the maps inside are persistent, publishing
+ * copies only the changed path and taking a snapshot is a single volatile read.
+ * A reader holding a snapshot is never affected by later adds, removes or price
+ * changes, and never blocks a writer.
+ *
+ * Prices seen through a snapshot are the prices at publication time; the Property
+ * objects returned are the live ones, so getPriceUsd() on them returns the current price.
+ *
+ * Instance Variables:
+ *      1. Listings (PersistentMap; key is property id, value is the Listing)
+ *      2. Listings by type (EnumMap of PersistentMaps; the same listings partitioned by PropertyType)
+ *      3. Total price in USD (double: sum of every listing's price)
+ *      4. Columns (ListingColumns: the listings as primitive arrays, sharing unchanged chunks with other snapshots)
+ *      5. Price ranks (PriceRankIndex: the listings by bedrooms and price, sharing unchanged nodes with other snapshots)
+ *      6. Sequence (long: the agency's mutation sequence number of the last change included)
+ *
+ * Methods:
+ *      1. size(): returns the number of listings
+ *      2. getProperty(propertyId): returns the property with that id...or null if there is none
+ *      3. getPriceUsd(propertyId): returns the listing's price in this snapshot...or NaN if there is none
+ *      4. getProperties(): returns the properties, in no particular order
+ *      5. getPropertiesOfType(propertyType): returns the properties of one type
+ *      6. getTotalPropertyValues(): returns the total price of every listing
+ *      7. stream(), parallelStream(): return a Stream of the properties, split over the trie without copying
+ *      8. getSequence(): returns the number of the last change included (0 before any change)
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public final class AgencySnapshot {
+
+    private final PersistentMap<String, Listing> listings;
+    private final EnumMap<PropertyType, PersistentMap<String, Listing>> listingsByType;
+    private final double totalPriceUsd;
+    private final long sequence;
+    private final ListingColumns columns;
+    private final PriceRankIndex priceRanks;
+
+    /**
+     * constructor
+     * @param listings          - every listing
+     * @param listingsByType    - the same listings by type (copied, so the caller may keep changing its map)
+     * @param totalPriceUsd     - total price of every listing
+     * @param columns           - the same listings as columns
+     * @param priceRanks        - the same listings by bedrooms and price
+     * @param sequence          - mutation sequence number of the last change included
+     */
+    AgencySnapshot(final PersistentMap<String, Listing> listings,
+                   final EnumMap<PropertyType, PersistentMap<String, Listing>> listingsByType,
+                   final double totalPriceUsd,
+                   final ListingColumns columns,
+                   final PriceRankIndex priceRanks,
+                   final long sequence)
+    {
+        this.listings = listings;
+        this.listingsByType = new EnumMap<>(listingsByType);
+        this.totalPriceUsd = totalPriceUsd;
+        this.columns = columns;
+        this.priceRanks = priceRanks;
+        this.sequence = sequence;
+    }
+
+    /**
+     * getSequence method
+     * @return - the agency's mutation sequence number of the last change in this snapshot, or 0 if none
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * size method
+     * @return - the number of listings
+     */
+    public int size()
+    {
+        return listings.size();
+    }
+
+    /**
+     * getProperty method
+     * @param propertyId    - property id you want to find
+     * @return              - the property with that id, or null if there is none
+     */
+    public Property getProperty(final String propertyId)
+    {
+        if (propertyId == null)
+        {
+            return null;
+        }
+        Listing listing = listings.get(propertyId);
+        return listing == null ? null : listing.getProperty();
+    }
+
+    /**
+     * getPriceUsd method
+     * @param propertyId    - property id you want to find
+     * @return              - the listing's price in this snapshot, or NaN if there is none
+     */
+    public double getPriceUsd(final String propertyId)
+    {
+        if (propertyId == null)
+        {
+            return Double.NaN;
+        }
+        Listing listing = listings.get(propertyId);
+        return listing == null ? Double.NaN : listing.getPriceUsd();
+    }
+
+    /**
+     * getProperties method
+     * @return - every property in this snapshot, in no particular order
+     */
+    public Iterable<Property> getProperties()
+    {
+        return () -> propertiesOf(listings.iterator());
+    }
+
+    /**
+     * getPropertiesOfType method
+     * @param propertyType  - the type
+     * @return              - every property of that type in this snapshot, in no particular order
+     */
+    public Iterable<Property> getPropertiesOfType(final PropertyType propertyType)
+    {
+        PersistentMap<String, Listing> partition = listingsOfType(propertyType);
+        return () -> propertiesOf(partition.iterator());
+    }
+
+    /**
+     * stream method
+     * @return - a sequential Stream of every property in this snapshot
+     */
+    public Stream<Property> stream()
+    {
+        return StreamSupport.stream(listings.spliterator(), false).map(Listing::getProperty);
+    }
+
+    /**
+     * parallelStream method
+     * @return - a parallel Stream of every property in this snapshot; it splits by subtree of the
+     *           listings map, with exact sizes, so it needs no copy into a list first
+     */
+    public Stream<Property> parallelStream()
+    {
+        return StreamSupport.stream(listings.spliterator(), true).map(Listing::getProperty);
+    }
+
+    /**
+     * getTotalPropertyValues method
+     * @return - the total price of every listing in this snapshot
+     */
+    public double getTotalPropertyValues()
+    {
+        return totalPriceUsd;
+    }
+
+    /**
+     * listings method
+     * @return - every listing
+     */
+    PersistentMap<String, Listing> listings()
+    {
+        return listings;
+    }
+
+    /**
+     * listingsOfType method
+     * @param propertyType  - the type
+     * @return              - the listings of that type
+     */
+    PersistentMap<String, Listing> listingsOfType(final PropertyType propertyType)
+    {
+        return listingsByType.get(propertyType);
+    }
+
+    /**
+     * columns method
+     * @return - the listings as primitive columns, in no particular order
+     */
+    ListingColumns columns()
+    {
+        return columns;
+    }
+
+    /**
+     * priceRanks method
+     * @return - the listings by bedrooms and price, for range lists, counts and totals
+     */
+    PriceRankIndex priceRanks()
+    {
+        return priceRanks;
+    }
+
+    /**
+     * columnsBytes method
+     * @return - bytes of the columns
+     */
+    long columnsBytes()
+    {
+        return columns.estimateBytes();
+    }
+
+    private static Iterator<Property> propertiesOf(final Iterator<Listing> listings)
+    {
+        return new Iterator<>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return listings.hasNext();
+            }
+
+            @Override
+            public Property next()
+            {
+                return listings.next().getProperty();
+            }
+        };
+    }
+}
@@ -0,0 +1,433 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class: AgencyWorkload
+ *
+ * Drives one Agency with a synthetic production mix from several threads at once:
+ * by default 85% reads (lookups by id, price-range and bedroom-range queries), 10%
+ * price updates and 5% adds and removes. Each thread paces itself to its share of
+ * the target rate, and every latency is measured from when the operation was due to
+ * start rather than when it did, so a stall (a GC pause, a lock) shows up in the
+ * percentiles of every operation that queued behind it instead of being hidden.
+ *
+ * Adds use new ids that cannot clash with the agency's own ("~" followed by a counter),
+ * and each thread removes only properties it added, so the agency ends the run with
+ * about the size it started with.
+ *
+ * The workload follows the agency's own data: price ranges run between two of the prices
+ * listed when the run starts (covering up to 5% of the listings), so they return a
+ * realistic share of the listings instead of almost always nothing, and each add is priced
+ * near a listed price, at its own address on one of a few streets in one of a few cities.
+ * The listed ids and prices are read from the listings without reading back cold properties.
+ *
+ * Instance Variables:
+ *      1. Agency (Agency: the agency under load; must already hold some properties)
+ *      2. Threads (int: number of driver threads)
+ *      3. Target rate (int: operations per second across all threads; 0 means as fast as possible)
+ *      4. Duration (long: milliseconds to run)
+ *      5. Read and update percentages (int: the rest of the mix is adds and removes)
+ *      6. Seed (long: makes the sequence of operations repeatable)
+ *
+ * Methods:
+ *      1. setMix(readPercent, updatePercent): changes the mix; adds and removes take the rest
+ *      2. run(): runs the workload and returns a Report
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public class AgencyWorkload {
+
+    /**
+     * the operations the workload issues
+     */
+    public enum Operation
+    {
+        GET_PROPERTY,
+        PRICE_RANGE,
+        BEDROOM_RANGE,
+        PRICE_UPDATE,
+        ADD_PROPERTY,
+        REMOVE_PROPERTY
+    }
+
+    private final Agency agency;
+    private final int threads;
+    private final int targetOpsPerSecond;
+    private final long durationMillis;
+    private final long seed;
+    private int readPercent;
+    private int updatePercent;
+
+    private static final int DEFAULT_READ_PERCENT = 85;
+    private static final int DEFAULT_UPDATE_PERCENT = 10;
+    private static final int PERCENT = 100;
+    private static final int READ_OPERATIONS = 3;
+    private static final double MAXIMUM_PRICE_CHANGE = 0.05;
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAXIMUM_NUMBER_OF_BEDROOMS = 20;
+    private static final String ADDED_ID_PREFIX = "~";
+    private static final int ID_RADIX = 36;
+    private static final int PRICE_RANGE_SHARE_DIVISOR = 20;
+    private static final String[] STREETS = {"oak street", "cedar avenue", "pine road", "birch lane",
+            "main street", "river drive", "hill crescent", "park way"};
+    private static final String[] CITIES = {"vancouver", "surrey", "burnaby", "richmond", "coquitlam", "langley"};
+    private static final String[] POSTAL_CODES = {"v5k0a1", "v3t1z2", "v5h2e3", "v6x1b4", "v3k3p5", "v2y1n6"};
+
+    /**
+     * constructor
+     * @param agency                - the agency to drive; must hold at least one property
+     * @param threads               - number of driver threads (at least 1)
+     * @param targetOpsPerSecond    - operations per second across all threads, or 0 for no limit
+     * @param durationMillis        - how long to run (more than 0)
+     * @param seed                  - seed of the random operation sequence
+     */
+    public AgencyWorkload(final Agency agency,
+                          final int threads,
+                          final int targetOpsPerSecond,
+                          final long durationMillis,
+                          final long seed)
+    {
+        if (agency == null)
+        {
+            throw new NullPointerException("Invalid agency: " + agency);
+        }
+        if (threads < 1)
+        {
+            throw new IllegalArgumentException("Invalid threads: " + threads);
+        }
+        if (targetOpsPerSecond < 0)
+        {
+            throw new IllegalArgumentException("Invalid target rate: " + targetOpsPerSecond);
+        }
+        if (durationMillis <= 0)
+        {
+            throw new IllegalArgumentException("Invalid duration: " + durationMillis);
+        }
+        this.agency = agency;
+        this.threads = threads;
+        this.targetOpsPerSecond = targetOpsPerSecond;
+        this.durationMillis = durationMillis;
+        this.seed = seed;
+        this.readPercent = DEFAULT_READ_PERCENT;
+        this.updatePercent = DEFAULT_UPDATE_PERCENT;
+    }
+
+    /**
+     * setMix method
+     * @param readPercent   - percentage of reads
+     * @param updatePercent - percentage of price updates; adds and removes take the rest
+     */
+    public void setMix(final int readPercent, final int updatePercent)
+    {
+        if (readPercent < 0 || updatePercent < 0 || readPercent + updatePercent > PERCENT)
+        {
+            throw new IllegalArgumentException("Invalid mix: " + readPercent + ", " + updatePercent);
+        }
+        this.readPercent = readPercent;
+        this.updatePercent = updatePercent;
+    }
+
+    /**
+     * run method
+     * @return                      - throughput and latency percentiles per operation
+     * @throws InterruptedException - if interrupted while waiting for the driver threads
+     */
+    public Report run() throws InterruptedException
+    {
+        PersistentMap<String, Listing> listings = agency.snapshot().listings();
+        if (listings.size() == 0)
+        {
+            throw new IllegalStateException("Agency has no properties to query");
+        }
+        String[] existingIds = new String[listings.size()];
+        double[] existingPrices = new double[listings.size()];
+        int next = 0;
+        for (Listing listing : listings)
+        {
+            existingIds[next] = listing.getPropertyId();
+            existingPrices[next++] = listing.getPriceUsd();
+        }
+        Arrays.sort(existingPrices);
+
+        EnumMap<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values())
+        {
+            latencies.put(operation, new LatencyHistogram());
+        }
+        AtomicLong errors = new AtomicLong();
+        AtomicLong nextAddedId = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> drivers = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++)
+        {
+            Driver driver = new Driver(new Random(seed + thread), existingIds, existingPrices, latencies, errors,
+                    nextAddedId, start);
+            Thread driverThread = new Thread(driver, "agency-workload-" + thread);
+            driverThread.setDaemon(true);
+            driverThread.start();
+            drivers.add(driverThread);
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Thread driverThread : drivers)
+        {
+            driverThread.join();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        return new Report(latencies, errors.get(), elapsedNanos);
+    }
+
+    /**
+     * Class: Driver
+     *
+     * One driver thread: issues operations at its share of the target rate until the duration is up.
+     */
+    private final class Driver implements Runnable {
+
+        private final Random random;
+        private final String[] existingIds;
+        private final double[] existingPrices;
+        private final EnumMap<Operation, LatencyHistogram> latencies;
+        private final AtomicLong errors;
+        private final AtomicLong nextAddedId;
+        private final CountDownLatch start;
+        private final List<String> addedIds = new ArrayList<>();
+
+        private Driver(final Random random,
+                       final String[] existingIds,
+                       final double[] existingPrices,
+                       final EnumMap<Operation, LatencyHistogram> latencies,
+                       final AtomicLong errors,
+                       final AtomicLong nextAddedId,
+                       final CountDownLatch start)
+        {
+            this.random = random;
+            this.existingIds = existingIds;
+            this.existingPrices = existingPrices;
+            this.latencies = latencies;
+            this.errors = errors;
+            this.nextAddedId = nextAddedId;
+            this.start = start;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                start.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            long intervalNanos = targetOpsPerSecond == 0 ? 0 : NANOS_PER_SECOND * threads / targetOpsPerSecond;
+            long endNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+            long dueNanos = System.nanoTime();
+            while (dueNanos < endNanos && !Thread.currentThread().isInterrupted())
+            {
+                long now = System.nanoTime();
+                if (now < dueNanos)
+                {
+                    LockSupport.parkNanos(dueNanos - now);
+                    continue;
+                }
+
+                Operation operation = nextOperation();
+                try
+                {
+                    perform(operation);
+                }
+                catch (RuntimeException e)
+                {
+                    errors.incrementAndGet();
+                }
+                // measured from when the operation was due, so time spent behind schedule counts
+                latencies.get(operation).record(System.nanoTime() - dueNanos);
+                dueNanos = intervalNanos == 0 ? System.nanoTime() : dueNanos + intervalNanos;
+            }
+        }
+
+        private Operation nextOperation()
+        {
+            int roll = random.nextInt(PERCENT);
+            if (roll < readPercent)
+            {
+                switch (random.nextInt(READ_OPERATIONS))
+                {
+                    case 0:
+                        return Operation.GET_PROPERTY;
+                    case 1:
+                        return Operation.PRICE_RANGE;
+                    default:
+                        return Operation.BEDROOM_RANGE;
+                }
+            }
+            else if (roll < readPercent + updatePercent)
+            {
+                return Operation.PRICE_UPDATE;
+            }
+            // alternate, so each thread's adds and removes balance out
+            return addedIds.isEmpty() || random.nextBoolean() ? Operation.ADD_PROPERTY : Operation.REMOVE_PROPERTY;
+        }
+
+        private void perform(final Operation operation)
+        {
+            switch (operation)
+            {
+                case GET_PROPERTY:
+                    agency.getProperty(randomId());
+                    break;
+                case PRICE_RANGE:
+                    // between two listed prices, at most 1 in PRICE_RANGE_SHARE_DIVISOR of the listings apart
+                    int low = random.nextInt(existingPrices.length);
+                    int high = Math.min(existingPrices.length - 1,
+                            low + random.nextInt(Math.max(1, existingPrices.length / PRICE_RANGE_SHARE_DIVISOR)));
+                    agency.getPropertiesBetween(toUsd(Math.floor(existingPrices[low])),
+                            toUsd(Math.ceil(existingPrices[high])));
+                    break;
+                case BEDROOM_RANGE:
+                    int minBedrooms = 1 + random.nextInt(MAXIMUM_NUMBER_OF_BEDROOMS);
+                    agency.getPropertiesWithBedrooms(minBedrooms, minBedrooms + random.nextInt(3));
+                    break;
+                case PRICE_UPDATE:
+                    Property property = agency.getProperty(randomId());
+                    if (property != null)
+                    {
+                        double change = 1 + (random.nextDouble() * 2 - 1) * MAXIMUM_PRICE_CHANGE;
+                        property.setPriceUsd(Math.rint(property.getPriceUsd() * change));
+                    }
+                    break;
+                case ADD_PROPERTY:
+                    long added = nextAddedId.getAndIncrement();
+                    String id = ADDED_ID_PREFIX + Long.toString(added, ID_RADIX);
+                    double listedUsd = existingPrices[random.nextInt(existingPrices.length)];
+                    double nearby = 1 + (random.nextDouble() * 2 - 1) * MAXIMUM_PRICE_CHANGE;
+                    double priceUsd = Math.max(1, Math.rint(listedUsd * nearby));
+                    agency.addProperty(new Property(priceUsd, addressOf(added),
+                            1 + random.nextInt(MAXIMUM_NUMBER_OF_BEDROOMS), random.nextBoolean(), "residence", id));
+                    addedIds.add(id);
+                    break;
+                default:
+                    agency.removeProperty(addedIds.remove(addedIds.size() - 1));
+                    break;
+            }
+        }
+
+        private String randomId()
+        {
+            return existingIds[random.nextInt(existingIds.length)];
+        }
+
+        private Address addressOf(final long added)
+        {
+            // every added property gets its own address, spread over the streets and cities
+            int city = (int) ((added / STREETS.length) % CITIES.length);
+            int streetNumber = 1 + (int) (added / ((long) STREETS.length * CITIES.length));
+            return new Address(null, streetNumber, STREETS[(int) (added % STREETS.length)], POSTAL_CODES[city],
+                    CITIES[city]);
+        }
+
+        private int toUsd(final double priceUsd)
+        {
+            return (int) Math.min(Integer.MAX_VALUE, priceUsd);
+        }
+    }
+
+    /**
+     * Class: Report
+     *
+     * Counts, throughput and latency histograms of one run, per operation.
+     */
+    public static final class Report {
+
+        private final EnumMap<Operation, LatencyHistogram> latencies;
+        private final long errors;
+        private final long elapsedNanos;
+
+        private static final double P50 = 50.0;
+        private static final double P99 = 99.0;
+        private static final double P999 = 99.9;
+        private static final double NANOS_PER_MICRO = 1_000.0;
+
+        private Report(final EnumMap<Operation, LatencyHistogram> latencies, final long errors, final long elapsedNanos)
+        {
+            this.latencies = latencies;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * getters
+         * @return latency(operation), errors, elapsedNanos
+         */
+        public LatencyHistogram getLatency(final Operation operation)
+        {
+            return latencies.get(operation);
+        }
+
+        public long getErrors()
+        {
+            return errors;
+        }
+
+        public long getElapsedNanos()
+        {
+            return elapsedNanos;
+        }
+
+        /**
+         * getOperations method
+         * @return - the number of operations completed, of every kind
+         */
+        public long getOperations()
+        {
+            long operations = 0;
+            for (LatencyHistogram latency : latencies.values())
+            {
+                operations += latency.getCount();
+            }
+            return operations;
+        }
+
+        /**
+         * getThroughput method
+         * @return - operations completed per second
+         */
+        public double getThroughput()
+        {
+            return getOperations() * (double) NANOS_PER_SECOND / elapsedNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder report = new StringBuilder();
+            report.append(String.format("%d operations in %.1f s: %.0f ops/s, %d errors%n",
+                    getOperations(), elapsedNanos / (double) NANOS_PER_SECOND, getThroughput(), errors));
+            report.append(String.format("%-16s %10s %10s %10s %10s%n", "operation", "count", "p50 us", "p99 us", "p99.9 us"));
+            for (Operation operation : Operation.values())
+            {
+                LatencyHistogram latency = latencies.get(operation);
+                report.append(String.format("%-16s %10d %10.1f %10.1f %10.1f%n", operation, latency.getCount(),
+                        latency.getPercentileNanos(P50) / NANOS_PER_MICRO,
+                        latency.getPercentileNanos(P99) / NANOS_PER_MICRO,
+                        latency.getPercentileNanos(P999) / NANOS_PER_MICRO));
+            }
+            return report.toString();
+        }
+    }
+}
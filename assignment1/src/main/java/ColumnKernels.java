@@ -0,0 +1,181 @@
+/**
+ * Class: ColumnKernels
+ *
+ * Filter and sum loops over primitive columns. A filter returns a selection bitmap
+ * (bit i of word i / 64 is set when row i matches) built without branches, so the
+ * loops run at the same speed whatever the selectivity and the JIT can unroll and
+ * vectorize the comparisons. A sum over fully selected words keeps two independent
+ * accumulators so consecutive additions do not wait on each other.
+ *
+ * Columns are kept in chunks of a multiple of 64 rows, each filtered and summed one chunk
+ * at a time into one selection over the whole column, starting at the chunk's first word.
+ * Selections from different filters over the same rows combine with and(...).
+ *
+ * Methods:
+ *      1. selectBetween(values, length, min, max, selection, firstWord): writes the rows of one chunk whose value
+ *          is in [min, max] into its part of a selection (double and int columns)
+ *      2. and(selection, other): keeps only the rows selected in both
+ *      3. count(selection): returns the number of selected rows
+ *      4. nextSelected(selection, from): returns the first selected row at or after from...or -1 if there is none
+ *      5. sumSelected(values, length, selection, firstWord): returns the sum of one chunk's selected rows
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class ColumnKernels {
+
+    private static final int WORD_SHIFT = 6;
+    private static final int BITS_PER_WORD = 1 << WORD_SHIFT;
+
+    private ColumnKernels()
+    {
+    }
+
+    /**
+     * selectBetween method
+     * @param values    - one chunk of a column
+     * @param length    - number of rows in use in the chunk
+     * @param min       - smallest matching value
+     * @param max       - largest matching value
+     * @param selection - a selection over the whole column, whose words for this chunk are overwritten
+     * @param firstWord - the word of the chunk's first row (the chunk's first row is a multiple of 64)
+     */
+    static void selectBetween(final double[] values, final int length, final double min, final double max,
+                              final long[] selection, final int firstWord)
+    {
+        int words = wordsFor(length);
+        for (int word = 0; word < words; word++)
+        {
+            int base = word << WORD_SHIFT;
+            int end = Math.min(base + BITS_PER_WORD, length);
+            long bits = 0;
+            for (int index = base; index < end; index++)
+            {
+                double value = values[index];
+                bits |= (value >= min & value <= max ? 1L : 0L) << (index - base);
+            }
+            selection[firstWord + word] = bits;
+        }
+    }
+
+    /**
+     * selectBetween method
+     * @param values    - one chunk of a column
+     * @param length    - number of rows in use in the chunk
+     * @param min       - smallest matching value
+     * @param max       - largest matching value
+     * @param selection - a selection over the whole column, whose words for this chunk are overwritten
+     * @param firstWord - the word of the chunk's first row (the chunk's first row is a multiple of 64)
+     */
+    static void selectBetween(final int[] values, final int length, final int min, final int max,
+                              final long[] selection, final int firstWord)
+    {
+        int words = wordsFor(length);
+        for (int word = 0; word < words; word++)
+        {
+            int base = word << WORD_SHIFT;
+            int end = Math.min(base + BITS_PER_WORD, length);
+            long bits = 0;
+            for (int index = base; index < end; index++)
+            {
+                int value = values[index];
+                bits |= (value >= min & value <= max ? 1L : 0L) << (index - base);
+            }
+            selection[firstWord + word] = bits;
+        }
+    }
+
+    /**
+     * and method
+     * @param selection - a selection, changed in place
+     * @param other     - a selection over the same rows
+     */
+    static void and(final long[] selection, final long[] other)
+    {
+        for (int word = 0; word < selection.length; word++)
+        {
+            selection[word] &= other[word];
+        }
+    }
+
+    /**
+     * count method
+     * @param selection - a selection
+     * @return          - the number of selected rows
+     */
+    static int count(final long[] selection)
+    {
+        int count = 0;
+        for (long bits : selection)
+        {
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+
+    /**
+     * nextSelected method
+     * @param selection - a selection
+     * @param from      - first row to look at
+     * @return          - the first selected row at or after from, or -1 if there is none
+     */
+    static int nextSelected(final long[] selection, final int from)
+    {
+        int word = from >>> WORD_SHIFT;
+        if (word >= selection.length)
+        {
+            return -1;
+        }
+        long bits = selection[word] & (-1L << from);
+        while (bits == 0)
+        {
+            if (++word == selection.length)
+            {
+                return -1;
+            }
+            bits = selection[word];
+        }
+        return (word << WORD_SHIFT) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * sumSelected method
+     * @param values    - one chunk of a column
+     * @param length    - number of rows in use in the chunk
+     * @param selection - a selection over the whole column
+     * @param firstWord - the word of the chunk's first row (the chunk's first row is a multiple of 64)
+     * @return          - the sum of the chunk's selected values
+     */
+    static double sumSelected(final double[] values, final int length, final long[] selection, final int firstWord)
+    {
+        double sum0 = 0;
+        double sum1 = 0;
+        int words = Math.min(wordsFor(length), selection.length - firstWord);
+        for (int word = 0; word < words; word++)
+        {
+            long bits = selection[firstWord + word];
+            int base = word << WORD_SHIFT;
+            // a full word needs no bit tests
+            if (bits == -1L)
+            {
+                for (int index = base; index < base + BITS_PER_WORD; index += 2)
+                {
+                    sum0 += values[index];
+                    sum1 += values[index + 1];
+                }
+                continue;
+            }
+            while (bits != 0)
+            {
+                sum0 += values[base + Long.numberOfTrailingZeros(bits)];
+                bits &= bits - 1;
+            }
+        }
+        return sum0 + sum1;
+    }
+
+    private static int wordsFor(final int length)
+    {
+        return (length + BITS_PER_WORD - 1) >>> WORD_SHIFT;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Class: ComparableWeights
+ *
+ * How much each feature counts when comparing two properties. Features are measured
+ * so that one unit is a meaningful difference: a doubling in price, two bedrooms,
+ * having a pool or not, and being of a different type. The distance between two
+ * properties is the square root of the weighted sum of the squared differences, so a
+ * weight of 4 makes a feature's difference count twice as far.
+ *
+ * Instance Variables:
+ *      1. Price weight (double, not negative)
+ *      2. Bedrooms weight (double, not negative)
+ *      3. Pool weight (double, not negative)
+ *      4. Type weight (double, not negative)
+ *
+ * Methods: Get methods for all instance variables
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public final class ComparableWeights {
+
+    public static final ComparableWeights EQUAL = new ComparableWeights(1, 1, 1, 1);
+
+    private final double price;
+    private final double bedrooms;
+    private final double pool;
+    private final double type;
+
+    /**
+     * constructor
+     * @param price     - weight of the price difference
+     * @param bedrooms  - weight of the bedroom difference
+     * @param pool      - weight of a pool difference
+     * @param type      - weight of a type difference
+     */
+    public ComparableWeights(final double price, final double bedrooms, final double pool, final double type)
+    {
+        checkWeight(price);
+        checkWeight(bedrooms);
+        checkWeight(pool);
+        checkWeight(type);
+        this.price = price;
+        this.bedrooms = bedrooms;
+        this.pool = pool;
+        this.type = type;
+    }
+
+    private static void checkWeight(final double weight)
+    {
+        if (!(weight >= 0) || Double.isInfinite(weight))
+        {
+            throw new IllegalArgumentException("Invalid weight: " + weight);
+        }
+    }
+
+    /**
+     * getters
+     * @return price, bedrooms, pool, type
+     */
+    public double getPrice()
+    {
+        return price;
+    }
+
+    public double getBedrooms()
+    {
+        return bedrooms;
+    }
+
+    public double getPool()
+    {
+        return pool;
+    }
+
+    public double getType()
+    {
+        return type;
+    }
+}
@@ -0,0 +1,574 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Class: ComparablesIndex
+ *
+ * A k-d tree of listings over normalized features, for "the k listings most similar to
+ * this property". Each listing is a point with one coordinate per feature, scaled so one
+ * unit is a meaningful difference (see ComparableWeights): log2 of the price, half the
+ * bedrooms, 0 or 1 for the pool, and the type one-hot with each coordinate 1/sqrt(2) so
+ * two different types are exactly one unit apart. Weights are applied at query time, so
+ * one tree serves every weighting.
+ *
+ * Listings with identical features share one node, so a thousand copies of the same
+ * listing cost one level, not a thousand. A split sends smaller coordinates left and
+ * larger ones right; equal coordinates may be on either side, which the search allows for.
+ *
+ * A search descends to the query's cell first, then visits the other side of a split
+ * only if the weighted distance to the splitting plane is less than the k-th best found
+ * so far, so it reads O(log n) nodes for well-spread data instead of every listing. It
+ * keeps its own stack rather than recursing.
+ *
+ * Inserts go to a leaf; removes take the listing out of its node and mark an emptied
+ * node deleted. An insert that lands deeper than log base 1/SCAPEGOAT_ALPHA of the node
+ * count rebuilds the smallest unbalanced subtree above it (a scapegoat), so the depth stays
+ * O(log n) whatever order listings arrive in. When deleted nodes reach half of the tree,
+ * or the tree has doubled since it was last balanced, it is rebuilt balanced (median
+ * splits) from the live nodes, so every update is amortized O(log n).
+ *
+ * Every method is synchronized: writers call it under the agency's write lock and
+ * queries call it directly, so a query waits at most for one insert or remove.
+ *
+ * Instance Variables:
+ *      1. Root (Node: the top of the tree, or null)
+ *      2. Nodes by id (HashMap; key is property id, value is the node holding that listing)
+ *      3. Live count, deleted count (int: nodes holding listings, and nodes still in the tree but emptied)
+ *      4. Balanced size (int: listings at the last rebuild)
+ *
+ * Methods:
+ *      1. insert(listing), remove(listing), replace(oldListing, newListing), clear(), rebuild()
+ *      2. nearest(property, k, weights): returns up to k listings nearest to property, nearest first
+ *      3. size(), estimateBytes(), estimateBytesPerListing()
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class ComparablesIndex {
+
+    private Node root;
+    private final HashMap<String, Node> nodesById;
+    private int liveCount;
+    private int deletedCount;
+    private int balancedSize;
+
+    static final int DIMENSIONS = 6;
+    private static final int PRICE = 0;
+    private static final int BEDROOMS = 1;
+    private static final int POOL = 2;
+    private static final int FIRST_TYPE = 3;
+    private static final double BEDROOMS_PER_UNIT = 2.0;
+    private static final double TYPE_COORDINATE = Math.sqrt(0.5);
+    private static final int REBUILD_FACTOR = 2;
+    private static final double SCAPEGOAT_ALPHA = 0.75;
+    private static final int INITIAL_STACK_DEPTH = 64;
+    private static final int POSITIONS_THRESHOLD = 8;
+    private static final int NOT_FOUND = -1;
+
+    /**
+     * constructor
+     */
+    ComparablesIndex()
+    {
+        this.nodesById = new HashMap<>();
+    }
+
+    /**
+     * insert method
+     * @param listing - a listing whose id is not in the index
+     */
+    synchronized void insert(final Listing listing)
+    {
+        double[] point = featuresOf(listing.getNumberOfBedrooms(), listing.hasSwimmingPool(),
+                listing.getPropertyType(), listing.getPriceUsd());
+        ArrayList<Node> path = new ArrayList<>();
+        Node parent = root;
+        boolean left = false;
+        while (parent != null)
+        {
+            if (Arrays.equals(parent.point, point))
+            {
+                // same features as a node on the way down: join it
+                if (parent.count == 0)
+                {
+                    deletedCount--;
+                    liveCount++;
+                }
+                parent.add(listing);
+                nodesById.put(listing.getPropertyId(), parent);
+                return;
+            }
+            path.add(parent);
+            left = point[parent.axis] < parent.point[parent.axis];
+            Node child = left ? parent.left : parent.right;
+            if (child == null)
+            {
+                break;
+            }
+            parent = child;
+        }
+
+        Node node = new Node(listing, point);
+        nodesById.put(listing.getPropertyId(), node);
+        liveCount++;
+        if (parent == null)
+        {
+            root = node;
+            return;
+        }
+        node.axis = (parent.axis + 1) % DIMENSIONS;
+        if (left)
+        {
+            parent.left = node;
+        }
+        else
+        {
+            parent.right = node;
+        }
+
+        if (nodesById.size() > Math.max(balancedSize, 1) * REBUILD_FACTOR)
+        {
+            rebuild();
+        }
+        else if (path.size() > Math.log(liveCount + deletedCount) / Math.log(1 / SCAPEGOAT_ALPHA))
+        {
+            rebuildScapegoat(path, node);
+        }
+    }
+
+    /**
+     * remove method
+     * @param listing - a listing in the index (a listing whose id is not in it is ignored)
+     */
+    synchronized void remove(final Listing listing)
+    {
+        Node node = nodesById.remove(listing.getPropertyId());
+        if (node == null)
+        {
+            return;
+        }
+        node.remove(listing.getPropertyId());
+        if (node.count > 0)
+        {
+            return;
+        }
+        liveCount--;
+        deletedCount++;
+        if (deletedCount * REBUILD_FACTOR >= liveCount + deletedCount)
+        {
+            rebuild();
+        }
+    }
+
+    /**
+     * replace method: removes one listing and inserts another as one step, so a query never sees neither
+     * @param oldListing    - a listing in the index
+     * @param newListing    - a listing whose id is not in the index once oldListing is removed
+     */
+    synchronized void replace(final Listing oldListing, final Listing newListing)
+    {
+        remove(oldListing);
+        insert(newListing);
+    }
+
+    /**
+     * clear method
+     */
+    synchronized void clear()
+    {
+        root = null;
+        nodesById.clear();
+        liveCount = 0;
+        deletedCount = 0;
+        balancedSize = 0;
+    }
+
+    /**
+     * rebuild method: rebuilds a balanced tree from the live nodes
+     */
+    synchronized void rebuild()
+    {
+        Node[] live = liveNodesOf(root);
+        root = build(live, 0, live.length, 0);
+        deletedCount = 0;
+        balancedSize = nodesById.size();
+    }
+
+    /**
+     * size method
+     * @return - number of listings in the index
+     */
+    synchronized int size()
+    {
+        return nodesById.size();
+    }
+
+    /**
+     * nearest method
+     * @param property  - the property to compare with (the listing with its id is never returned)
+     * @param k         - number of listings wanted
+     * @param weights   - how much each feature counts
+     * @return          - up to k listings, nearest first
+     */
+    synchronized List<Listing> nearest(final Property property, final int k, final ComparableWeights weights)
+    {
+        double[] query = featuresOf(property, property.getPriceUsd());
+        double[] weightOf = new double[DIMENSIONS];
+        weightOf[PRICE] = weights.getPrice();
+        weightOf[BEDROOMS] = weights.getBedrooms();
+        weightOf[POOL] = weights.getPool();
+        for (int dimension = FIRST_TYPE; dimension < DIMENSIONS; dimension++)
+        {
+            weightOf[dimension] = weights.getType();
+        }
+
+        // farthest of the best k at the head, so it is the one replaced
+        PriorityQueue<Candidate> best = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.distance).reversed());
+        search(query, weightOf, k, property.getPropertyId(), best);
+
+        List<Listing> nearest = new ArrayList<>(best.size());
+        while (!best.isEmpty())
+        {
+            nearest.add(best.poll().listing);
+        }
+        Collections.reverse(nearest);
+        return nearest;
+    }
+
+    /**
+     * estimateBytes method
+     * @return - bytes of the nodes, their points and listing arrays, and the id map (not the listings)
+     */
+    synchronized long estimateBytes()
+    {
+        long nodes = liveCount + deletedCount;
+        return MemoryEstimator.shallowSizeOf(ComparablesIndex.class)
+                + nodes * (MemoryEstimator.shallowSizeOf(Node.class) + MemoryEstimator.sizeOfArray(DIMENSIONS, Double.BYTES)
+                        + MemoryEstimator.sizeOfArray(1, MemoryEstimator.REFERENCE_BYTES))
+                + (long) (nodesById.size() - liveCount) * MemoryEstimator.REFERENCE_BYTES
+                + MemoryEstimator.sizeOfHashMap(nodesById.size());
+    }
+
+    /**
+     * estimateBytesPerListing method
+     * @return - bytes one listing adds: its node, point and listing array, and its id map entry
+     */
+    static long estimateBytesPerListing()
+    {
+        return MemoryEstimator.shallowSizeOf(Node.class) + MemoryEstimator.sizeOfArray(DIMENSIONS, Double.BYTES)
+                + MemoryEstimator.sizeOfArray(1, MemoryEstimator.REFERENCE_BYTES)
+                + MemoryEstimator.sizeOfHashMapEntry();
+    }
+
+    /**
+     * featuresOf method
+     * @param property  - a property
+     * @param priceUsd  - the price to use for it
+     * @return          - its point in feature space
+     */
+    static double[] featuresOf(final Property property, final double priceUsd)
+    {
+        return featuresOf(property.getNumberOfBedrooms(), property.hasSwimmingPool(), property.getPropertyType(), priceUsd);
+    }
+
+    /**
+     * featuresOf method
+     * @param bedrooms      - number of bedrooms
+     * @param swimmingPool  - whether there is a pool
+     * @param propertyType  - the type
+     * @param priceUsd      - the price
+     * @return              - the point in feature space of a property with those features
+     */
+    static double[] featuresOf(final int bedrooms,
+                               final boolean swimmingPool,
+                               final PropertyType propertyType,
+                               final double priceUsd)
+    {
+        double[] point = new double[DIMENSIONS];
+        point[PRICE] = Math.log1p(Math.max(priceUsd, 0)) / Math.log(2);
+        point[BEDROOMS] = bedrooms / BEDROOMS_PER_UNIT;
+        point[POOL] = swimmingPool ? 1 : 0;
+        point[FIRST_TYPE + propertyType.ordinal()] = TYPE_COORDINATE;
+        return point;
+    }
+
+    private void search(final double[] query,
+                        final double[] weightOf,
+                        final int k,
+                        final String excludeId,
+                        final PriorityQueue<Candidate> best)
+    {
+        // each pending subtree with a lower bound on the distance to anything in it
+        Node[] pending = new Node[INITIAL_STACK_DEPTH];
+        double[] bounds = new double[INITIAL_STACK_DEPTH];
+        int top = 0;
+        pending[top] = root;
+        bounds[top++] = 0;
+        while (top > 0)
+        {
+            Node node = pending[--top];
+            double bound = bounds[top];
+            if (node == null || (best.size() == k && bound >= best.peek().distance))
+            {
+                continue;
+            }
+
+            if (node.count > 0)
+            {
+                double distance = distanceOf(node.point, query, weightOf);
+                for (int index = 0; index < node.count; index++)
+                {
+                    Listing listing = node.listings[index];
+                    if (listing.getPropertyId().equals(excludeId))
+                    {
+                        continue;
+                    }
+                    if (best.size() < k)
+                    {
+                        best.add(new Candidate(listing, distance));
+                    }
+                    else if (distance < best.peek().distance)
+                    {
+                        best.poll();
+                        best.add(new Candidate(listing, distance));
+                    }
+                    else
+                    {
+                        break;
+                    }
+                }
+            }
+
+            // the far side can only hold something nearer than the plane itself; it is pushed first so
+            // the near side is searched first
+            double difference = query[node.axis] - node.point[node.axis];
+            if (top + 2 > pending.length)
+            {
+                pending = Arrays.copyOf(pending, pending.length * 2);
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            pending[top] = difference < 0 ? node.right : node.left;
+            bounds[top++] = Math.max(bound, weightOf[node.axis] * difference * difference);
+            pending[top] = difference < 0 ? node.left : node.right;
+            bounds[top++] = bound;
+        }
+    }
+
+    /**
+     * rebuildScapegoat method: rebuilds balanced the lowest subtree on the path whose one side holds
+     * more than SCAPEGOAT_ALPHA of it
+     * @param path  - the nodes from the root down to the new node's parent
+     * @param node  - the node just inserted
+     */
+    private void rebuildScapegoat(final List<Node> path, final Node node)
+    {
+        int size = 1;
+        Node child = node;
+        for (int depth = path.size() - 1; depth >= 0; depth--)
+        {
+            Node ancestor = path.get(depth);
+            int ancestorSize = size + 1 + countNodes(ancestor.left == child ? ancestor.right : ancestor.left);
+            if (size > SCAPEGOAT_ALPHA * ancestorSize)
+            {
+                Node[] live = liveNodesOf(ancestor);
+                deletedCount -= ancestorSize - live.length;
+                Node rebuilt = build(live, 0, live.length, ancestor.axis);
+                if (depth == 0)
+                {
+                    root = rebuilt;
+                }
+                else if (path.get(depth - 1).left == ancestor)
+                {
+                    path.get(depth - 1).left = rebuilt;
+                }
+                else
+                {
+                    path.get(depth - 1).right = rebuilt;
+                }
+                return;
+            }
+            size = ancestorSize;
+            child = ancestor;
+        }
+    }
+
+    private static int countNodes(final Node subtree)
+    {
+        int count = 0;
+        ArrayDeque<Node> pending = new ArrayDeque<>();
+        if (subtree != null)
+        {
+            pending.push(subtree);
+        }
+        while (!pending.isEmpty())
+        {
+            Node node = pending.pop();
+            count++;
+            if (node.left != null)
+            {
+                pending.push(node.left);
+            }
+            if (node.right != null)
+            {
+                pending.push(node.right);
+            }
+        }
+        return count;
+    }
+
+    private static Node[] liveNodesOf(final Node subtree)
+    {
+        ArrayList<Node> live = new ArrayList<>();
+        ArrayDeque<Node> pending = new ArrayDeque<>();
+        if (subtree != null)
+        {
+            pending.push(subtree);
+        }
+        while (!pending.isEmpty())
+        {
+            Node node = pending.pop();
+            if (node.count > 0)
+            {
+                live.add(node);
+            }
+            if (node.left != null)
+            {
+                pending.push(node.left);
+            }
+            if (node.right != null)
+            {
+                pending.push(node.right);
+            }
+        }
+        return live.toArray(new Node[0]);
+    }
+
+    private static double distanceOf(final double[] a, final double[] b, final double[] weightOf)
+    {
+        double distance = 0;
+        for (int dimension = 0; dimension < DIMENSIONS; dimension++)
+        {
+            double difference = a[dimension] - b[dimension];
+            distance += weightOf[dimension] * difference * difference;
+        }
+        return distance;
+    }
+
+    private static Node build(final Node[] nodes, final int from, final int to, final int axis)
+    {
+        if (from >= to)
+        {
+            return null;
+        }
+        // the median index splits evenly even when coordinates repeat; equal ones may end up on either side
+        Arrays.sort(nodes, from, to, Comparator.comparingDouble((Node n) -> n.point[axis]));
+        int middle = (from + to) >>> 1;
+        Node median = nodes[middle];
+        median.axis = axis;
+        median.left = build(nodes, from, middle, (axis + 1) % DIMENSIONS);
+        median.right = build(nodes, middle + 1, to, (axis + 1) % DIMENSIONS);
+        return median;
+    }
+
+    /**
+     * the listings at one point in the tree
+     */
+    private static final class Node {
+
+        private Listing[] listings;
+        private int count;
+        private HashMap<String, Integer> positions;
+        private final double[] point;
+        private int axis;
+        private Node left;
+        private Node right;
+
+        private Node(final Listing listing, final double[] point)
+        {
+            this.listings = new Listing[] {listing};
+            this.count = 1;
+            this.point = point;
+        }
+
+        private void add(final Listing listing)
+        {
+            if (count == listings.length)
+            {
+                listings = Arrays.copyOf(listings, count * 2);
+            }
+            listings[count] = listing;
+            if (positions != null)
+            {
+                positions.put(listing.getPropertyId(), count);
+            }
+            count++;
+            // a crowded point finds its listings by id instead of by scanning them
+            if (positions == null && count > POSITIONS_THRESHOLD)
+            {
+                positions = new HashMap<>();
+                for (int index = 0; index < count; index++)
+                {
+                    positions.put(listings[index].getPropertyId(), index);
+                }
+            }
+        }
+
+        private void remove(final String propertyId)
+        {
+            int index = NOT_FOUND;
+            if (positions != null)
+            {
+                index = positions.getOrDefault(propertyId, NOT_FOUND);
+                positions.remove(propertyId);
+            }
+            else
+            {
+                for (int scanned = 0; scanned < count; scanned++)
+                {
+                    if (listings[scanned].getPropertyId().equals(propertyId))
+                    {
+                        index = scanned;
+                        break;
+                    }
+                }
+            }
+            if (index == NOT_FOUND)
+            {
+                return;
+            }
+
+            // the last listing takes the removed one's place
+            count--;
+            if (index < count)
+            {
+                listings[index] = listings[count];
+                if (positions != null)
+                {
+                    positions.put(listings[index].getPropertyId(), index);
+                }
+            }
+            listings[count] = null;
+        }
+    }
+
+    /**
+     * a listing found by a search, with its weighted squared distance
+     */
+    private static final class Candidate {
+
+        private final Listing listing;
+        private final double distance;
+
+        private Candidate(final Listing listing, final double distance)
+        {
+            this.listing = listing;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * Class: CountMinSketch
+ *
+ * Estimates how often each value occurs, in depth rows of width counters whatever the number
+ * of distinct values. A value adds to one counter per row, picked by its 64-bit hash, and its
+ * estimate is the smallest of its counters. An estimate is never below the true count, and
+ * exceeds it by more than e / width of the total only with probability e^-depth: with the
+ * default 2048 by 4, by more than 0.14% of the total less than 2% of the time.
+ *
+ * Counts can be taken away again (a negative delta), as long as no value goes below zero.
+ *
+ * Instance Variables:
+ *      1. Width (int: counters per row, a power of two)
+ *      2. Counters (int[]: depth rows of width counters, row after row)
+ *
+ * Methods:
+ *      1. add(hash, delta): adds delta to the count of a value, by its 64-bit hash (see HyperLogLog.hash64)
+ *      2. estimate(hash): returns the estimated count of a value
+ *      3. merge(other): adds every count other holds (same shape only)
+ *      4. clear(), estimateBytes()
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final int[] counters;
+
+    static final int DEFAULT_WIDTH = 2048;
+    static final int DEFAULT_DEPTH = 4;
+
+    /**
+     * constructor
+     * @param width - counters per row (a power of two)
+     * @param depth - number of rows (at least 1)
+     */
+    CountMinSketch(final int width, final int depth)
+    {
+        if (width < 1 || Integer.bitCount(width) != 1)
+        {
+            throw new IllegalArgumentException("Invalid width: " + width);
+        }
+        if (depth < 1)
+        {
+            throw new IllegalArgumentException("Invalid depth: " + depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counters = new int[width * depth];
+    }
+
+    /**
+     * add method
+     * @param hash  - the 64-bit hash of a value
+     * @param delta - how much to add to its count (negative to take away)
+     */
+    void add(final long hash, final int delta)
+    {
+        for (int row = 0; row < depth; row++)
+        {
+            counters[row * width + column(hash, row)] += delta;
+        }
+    }
+
+    /**
+     * estimate method
+     * @param hash  - the 64-bit hash of a value
+     * @return      - at least its count, and rarely more than e / width of the total above it
+     */
+    int estimate(final long hash)
+    {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++)
+        {
+            estimate = Math.min(estimate, counters[row * width + column(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * merge method
+     * @param other - a sketch of the same width and depth; afterwards this one holds the counts of both
+     */
+    void merge(final CountMinSketch other)
+    {
+        if (other.width != width || other.depth != depth)
+        {
+            throw new IllegalArgumentException("Invalid shape: " + other.width + " by " + other.depth);
+        }
+        for (int index = 0; index < counters.length; index++)
+        {
+            counters[index] += other.counters[index];
+        }
+    }
+
+    /**
+     * clear method
+     */
+    void clear()
+    {
+        Arrays.fill(counters, 0);
+    }
+
+    /**
+     * estimateBytes method
+     * @return - bytes of this object and its counters
+     */
+    long estimateBytes()
+    {
+        return MemoryEstimator.shallowSizeOf(CountMinSketch.class)
+                + MemoryEstimator.sizeOfArray(counters.length, Integer.BYTES);
+    }
+
+    /**
+     * column method: the row-th of a family of hashes made from the two halves of one (Kirsch and Mitzenmacher)
+     */
+    private int column(final long hash, final int row)
+    {
+        int low = (int) hash;
+        int high = (int) (hash >>> Integer.SIZE);
+        return (low + row * (high | 1)) & (width - 1);
+    }
+}
@@ -0,0 +1,81 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Class: DirectBufferPool
+ *
+ * A bounded pool of equally sized direct ByteBuffers. Direct buffers live outside the
+ * heap and are expensive to allocate and free, so callers borrow one, fill it, write
+ * it to a channel and give it back; the pool keeps up to its capacity of them for the
+ * next caller and lets any extra ones be collected.
+ *
+ * Instance Variables:
+ *      1. Buffer bytes (int: size of every buffer)
+ *      2. Idle buffers (ArrayBlockingQueue: buffers ready to be borrowed, at most the pool's capacity)
+ *
+ * Methods:
+ *      1. acquire(): returns a cleared buffer, from the pool if one is idle
+ *      2. release(buffer): gives a buffer back
+ *      3. getBufferBytes(), getIdleCount()
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class DirectBufferPool {
+
+    private final int bufferBytes;
+    private final ArrayBlockingQueue<ByteBuffer> idleBuffers;
+
+    /**
+     * constructor
+     * @param bufferBytes   - size of every buffer (at least 64 bytes)
+     * @param capacity      - most idle buffers kept (at least 1)
+     */
+    DirectBufferPool(final int bufferBytes, final int capacity)
+    {
+        if (bufferBytes < Long.SIZE)
+        {
+            throw new IllegalArgumentException("Invalid buffer size: " + bufferBytes);
+        }
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.bufferBytes = bufferBytes;
+        this.idleBuffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * acquire method
+     * @return - a cleared direct buffer of getBufferBytes() bytes
+     */
+    ByteBuffer acquire()
+    {
+        ByteBuffer buffer = idleBuffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferBytes);
+    }
+
+    /**
+     * release method
+     * @param buffer - a buffer from acquire(); it must not be used afterwards
+     */
+    void release(final ByteBuffer buffer)
+    {
+        buffer.clear();
+        idleBuffers.offer(buffer);
+    }
+
+    /**
+     * getters
+     * @return bufferBytes, the number of idle buffers
+     */
+    int getBufferBytes()
+    {
+        return bufferBytes;
+    }
+
+    int getIdleCount()
+    {
+        return idleBuffers.size();
+    }
+}
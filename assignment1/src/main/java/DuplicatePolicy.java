@@ -0,0 +1,19 @@
+/**
+ * Enum: DuplicatePolicy
+ *
+ * What an Agency does when a property arrives under a new id at an address another
+ * listed property already has (the same AddressKey).
+ *
+ *      ALLOW: list it (the default); findDuplicates still reports it
+ *      FLAG: list it, and add its id to the agency's flagged duplicates
+ *      REJECT: throw an IllegalArgumentException and leave the agency unchanged
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public enum DuplicatePolicy {
+
+    ALLOW,
+    FLAG,
+    REJECT
+}
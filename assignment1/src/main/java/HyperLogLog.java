@@ -0,0 +1,170 @@
+import java.util.Arrays;
+
+/**
+ * Class: HyperLogLog
+ *
+ * Estimates the number of distinct values added, in a fixed number of one-byte registers
+ * whatever the number of values. Each value's 64-bit hash picks a register with its top
+ * precision bits, and the register keeps the longest run of leading zeros seen in the rest.
+ * The standard error is about 1.04 / sqrt(registers): 1.6% with the default 4096 registers.
+ *
+ * Values cannot be taken out again: a value that is no longer present still counts until
+ * the sketch is cleared and refilled.
+ *
+ * Instance Variables:
+ *      1. Precision (int: log2 of the number of registers, 4 to 16)
+ *      2. Registers (byte[]: the longest run of leading zeros plus one seen by each register)
+ *
+ * Methods:
+ *      1. add(hash): adds a value by its 64-bit hash (see hash64)
+ *      2. estimate(): returns the estimated number of distinct values added
+ *      3. merge(other): adds every value other has seen (same precision only)
+ *      4. clear(), estimateBytes()
+ *      5. hash64(text): returns a well-mixed 64-bit hash of a String
+ *      6. mix64(value): returns value with every bit depending on every input bit
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class HyperLogLog {
+
+    private final int precision;
+    private final byte[] registers;
+
+    static final int DEFAULT_PRECISION = 12;
+    private static final int MINIMUM_PRECISION = 4;
+    private static final int MAXIMUM_PRECISION = 16;
+    private static final double ALPHA = 0.7213;
+    private static final double ALPHA_CORRECTION = 1.079;
+    private static final double SMALL_RANGE_FACTOR = 2.5;
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final long FMIX_FIRST = 0xFF51AFD7ED558CCDL;
+    private static final long FMIX_SECOND = 0xC4CEB9FE1A85EC53L;
+    private static final int FMIX_SHIFT = 33;
+
+    /**
+     * constructor
+     * @param precision - log2 of the number of registers, 4 to 16
+     */
+    HyperLogLog(final int precision)
+    {
+        if (precision < MINIMUM_PRECISION || precision > MAXIMUM_PRECISION)
+        {
+            throw new IllegalArgumentException("Invalid precision: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * add method
+     * @param hash - the 64-bit hash of a value
+     */
+    void add(final long hash)
+    {
+        int register = (int) (hash >>> (Long.SIZE - precision));
+        // a sentinel bit stops the count of leading zeros at the end of the bits left
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[register])
+        {
+            registers[register] = rank;
+        }
+    }
+
+    /**
+     * estimate method
+     * @return - the estimated number of distinct values added
+     */
+    long estimate()
+    {
+        int count = registers.length;
+        double harmonicSum = 0;
+        int emptyRegisters = 0;
+        for (byte rank : registers)
+        {
+            harmonicSum += 1.0 / (1L << rank);
+            if (rank == 0)
+            {
+                emptyRegisters++;
+            }
+        }
+        double alpha = ALPHA / (1 + ALPHA_CORRECTION / count);
+        double estimate = alpha * count * count / harmonicSum;
+
+        // few values: linear counting of the empty registers is more accurate
+        if (estimate <= SMALL_RANGE_FACTOR * count && emptyRegisters > 0)
+        {
+            estimate = count * Math.log((double) count / emptyRegisters);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * merge method
+     * @param other - a sketch of the same precision; afterwards this one estimates the union of both
+     */
+    void merge(final HyperLogLog other)
+    {
+        if (other.precision != precision)
+        {
+            throw new IllegalArgumentException("Invalid precision: " + other.precision);
+        }
+        for (int register = 0; register < registers.length; register++)
+        {
+            if (other.registers[register] > registers[register])
+            {
+                registers[register] = other.registers[register];
+            }
+        }
+    }
+
+    /**
+     * clear method
+     */
+    void clear()
+    {
+        Arrays.fill(registers, (byte) 0);
+    }
+
+    /**
+     * estimateBytes method
+     * @return - bytes of this object and its registers
+     */
+    long estimateBytes()
+    {
+        return MemoryEstimator.shallowSizeOf(HyperLogLog.class) + MemoryEstimator.sizeOfArray(registers.length, Byte.BYTES);
+    }
+
+    /**
+     * hash64 method
+     * @param text  - a String
+     * @return      - FNV-1a over its chars, finished with the MurmurHash3 mixer so every bit depends on every char
+     */
+    static long hash64(final String text)
+    {
+        long hash = FNV_OFFSET_BASIS;
+        for (int index = 0; index < text.length(); index++)
+        {
+            hash ^= text.charAt(index);
+            hash *= FNV_PRIME;
+        }
+        return mix64(hash);
+    }
+
+    /**
+     * mix64 method
+     * @param value - any 64 bits
+     * @return      - the MurmurHash3 finalizer of value (a bijection, so distinct values stay distinct)
+     */
+    static long mix64(long value)
+    {
+        value ^= value >>> FMIX_SHIFT;
+        value *= FMIX_FIRST;
+        value ^= value >>> FMIX_SHIFT;
+        value *= FMIX_SECOND;
+        value ^= value >>> FMIX_SHIFT;
+        return value;
+    }
+}
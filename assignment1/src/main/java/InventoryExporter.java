@@ -0,0 +1,416 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class: InventoryExporter
+ *
+ * Writes every listing of a snapshot as CSV or JSON to an NIO channel. Fields are
+ * encoded straight from the Property and Address getters into a pooled direct
+ * ByteBuffer (numbers digit by digit, text as UTF-8 char by char), and each full buffer
+ * is written to the channel and reused. No String, StringBuilder or byte[] is made per
+ * listing, so the heap used by an export stays flat however large the inventory is.
+ *
+ * An export written to a file once can be sent to any number of channels with transfer,
+ * which uses FileChannel.transferTo so the operating system copies the file without it
+ * passing through the JVM.
+ *
+ * Columns, in order: id, type, price, bedrooms, pool, unit, street number, street, postal code, city.
+ * Prices are those of the snapshot, to the cent. A missing unit is an empty CSV field or JSON null.
+ *
+ * Instance Variables:
+ *      1. Pool (DirectBufferPool: where the export's buffer is borrowed from)
+ *
+ * Methods:
+ *      1. export(snapshot, format, channel): writes the snapshot and returns the bytes written
+ *      2. exportToFile(snapshot, format, file): writes the snapshot to a file (replacing it)
+ *      3. transfer(file, channel): copies a file written earlier to the channel
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public class InventoryExporter {
+
+    /**
+     * the export formats
+     */
+    public enum Format
+    {
+        CSV,
+        JSON
+    }
+
+    private final DirectBufferPool pool;
+
+    private static final int DEFAULT_BUFFER_BYTES = 64 * 1024;
+    private static final int DEFAULT_POOL_CAPACITY = 8;
+    private static final DirectBufferPool SHARED_POOL = new DirectBufferPool(DEFAULT_BUFFER_BYTES, DEFAULT_POOL_CAPACITY);
+
+    private static final String CSV_HEADER =
+            "id,type,price,bedrooms,pool,unit,street_number,street,postal_code,city\n";
+    private static final int MAXIMUM_BYTES_PER_CHAR = 4;
+    private static final int MAXIMUM_LONG_DIGITS = 20;
+    private static final int CENTS_PER_DOLLAR = 100;
+    private static final int RADIX = 10;
+    private static final char FIRST_PRINTABLE = ' ';
+    private static final String HEX_DIGITS = "0123456789abcdef";
+
+    /**
+     * constructor: buffers come from a pool shared by every exporter
+     */
+    public InventoryExporter()
+    {
+        this(SHARED_POOL);
+    }
+
+    /**
+     * constructor
+     * @param pool - where to borrow buffers
+     */
+    InventoryExporter(final DirectBufferPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * export method
+     * @param snapshot      - the listings to write
+     * @param format        - CSV (with a header line) or JSON (an array of objects)
+     * @param channel       - where to write; left open
+     * @return              - the number of bytes written
+     * @throws IOException  - if the channel fails
+     */
+    public long export(final AgencySnapshot snapshot, final Format format, final WritableByteChannel channel)
+            throws IOException
+    {
+        Encoder encoder = new Encoder(channel, pool.acquire());
+        try
+        {
+            if (format == Format.CSV)
+            {
+                encoder.ascii(CSV_HEADER);
+                for (Listing listing : snapshot.listings())
+                {
+                    writeCsv(encoder, listing);
+                }
+            }
+            else
+            {
+                encoder.ascii("[");
+                boolean first = true;
+                for (Listing listing : snapshot.listings())
+                {
+                    encoder.ascii(first ? "\n" : ",\n");
+                    writeJson(encoder, listing);
+                    first = false;
+                }
+                encoder.ascii("\n]\n");
+            }
+            encoder.flush();
+            return encoder.written;
+        }
+        finally
+        {
+            pool.release(encoder.buffer);
+        }
+    }
+
+    /**
+     * exportToFile method
+     * @param snapshot      - the listings to write
+     * @param format        - CSV or JSON
+     * @param file          - the file to write; created, or replaced if it exists
+     * @return              - the number of bytes written
+     * @throws IOException  - if the file cannot be written
+     */
+    public long exportToFile(final AgencySnapshot snapshot, final Format format, final Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            return export(snapshot, format, channel);
+        }
+    }
+
+    /**
+     * transfer method
+     * @param file          - an export written earlier
+     * @param channel       - where to copy it; left open
+     * @return              - the number of bytes copied
+     * @throws IOException  - if the file cannot be read or the channel fails
+     */
+    public long transfer(final Path file, final WritableByteChannel channel) throws IOException
+    {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            long size = source.size();
+            long position = 0;
+            // transferTo may copy less than asked, e.g. to a socket
+            while (position < size)
+            {
+                position += source.transferTo(position, size - position, channel);
+            }
+            return position;
+        }
+    }
+
+    private static void writeCsv(final Encoder encoder, final Listing listing) throws IOException
+    {
+        Property property = listing.peekProperty();
+        Address address = property.getAddress();
+        encoder.csv(property.getPropertyId());
+        encoder.ascii(",");
+        encoder.ascii(property.getPropertyType().name());
+        encoder.ascii(",");
+        encoder.price(listing.getPriceUsd());
+        encoder.ascii(",");
+        encoder.number(property.getNumberOfBedrooms());
+        encoder.ascii(property.hasSwimmingPool() ? ",true," : ",false,");
+        if (address.getUnitNumber() != null)
+        {
+            encoder.csv(address.getUnitNumber());
+        }
+        encoder.ascii(",");
+        encoder.number(address.getStreetNumber());
+        encoder.ascii(",");
+        encoder.csv(address.getStreetName());
+        encoder.ascii(",");
+        encoder.csv(address.getPostalCode());
+        encoder.ascii(",");
+        encoder.csv(address.getCity());
+        encoder.ascii("\n");
+    }
+
+    private static void writeJson(final Encoder encoder, final Listing listing) throws IOException
+    {
+        Property property = listing.peekProperty();
+        Address address = property.getAddress();
+        encoder.ascii("{\"id\":");
+        encoder.json(property.getPropertyId());
+        encoder.ascii(",\"type\":\"");
+        encoder.ascii(property.getPropertyType().name());
+        encoder.ascii("\",\"price\":");
+        encoder.price(listing.getPriceUsd());
+        encoder.ascii(",\"bedrooms\":");
+        encoder.number(property.getNumberOfBedrooms());
+        encoder.ascii(property.hasSwimmingPool() ? ",\"pool\":true,\"unit\":" : ",\"pool\":false,\"unit\":");
+        if (address.getUnitNumber() == null)
+        {
+            encoder.ascii("null");
+        }
+        else
+        {
+            encoder.json(address.getUnitNumber());
+        }
+        encoder.ascii(",\"street_number\":");
+        encoder.number(address.getStreetNumber());
+        encoder.ascii(",\"street\":");
+        encoder.json(address.getStreetName());
+        encoder.ascii(",\"postal_code\":");
+        encoder.json(address.getPostalCode());
+        encoder.ascii(",\"city\":");
+        encoder.json(address.getCity());
+        encoder.ascii("}");
+    }
+
+    /**
+     * Class: Encoder
+     *
+     * Puts text and numbers into one buffer, writing it to the channel whenever the next value might not fit.
+     */
+    private static final class Encoder {
+
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer;
+        private long written;
+
+        private Encoder(final WritableByteChannel channel, final ByteBuffer buffer)
+        {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * ascii method
+         * @param text - text known to be ASCII, with nothing to escape (field names, punctuation)
+         */
+        private void ascii(final String text) throws IOException
+        {
+            for (int index = 0; index < text.length(); index++)
+            {
+                put(text.charAt(index));
+            }
+        }
+
+        private void put(final char c) throws IOException
+        {
+            ensure(1);
+            buffer.put((byte) c);
+        }
+
+        /**
+         * csv method
+         * @param text - a field value; quoted, with quotes doubled, if it holds a comma, quote or line break
+         */
+        private void csv(final String text) throws IOException
+        {
+            boolean quote = false;
+            for (int index = 0; index < text.length() && !quote; index++)
+            {
+                char c = text.charAt(index);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote)
+            {
+                utf8(text);
+                return;
+            }
+            put('"');
+            for (int index = 0; index < text.length(); index++)
+            {
+                char c = text.charAt(index);
+                if (c == '"')
+                {
+                    put('"');
+                }
+                index = utf8(text, index);
+            }
+            ascii("\"");
+        }
+
+        /**
+         * json method
+         * @param text - a string value; written quoted, with quotes, backslashes and control characters escaped
+         */
+        private void json(final String text) throws IOException
+        {
+            ascii("\"");
+            for (int index = 0; index < text.length(); index++)
+            {
+                char c = text.charAt(index);
+                if (c == '"' || c == '\\')
+                {
+                    put('\\');
+                    put(c);
+                }
+                else if (c < FIRST_PRINTABLE)
+                {
+                    ascii("\\u00");
+                    put(HEX_DIGITS.charAt(c >> 4));
+                    put(HEX_DIGITS.charAt(c & 0xF));
+                }
+                else
+                {
+                    index = utf8(text, index);
+                }
+            }
+            ascii("\"");
+        }
+
+        private void utf8(final String text) throws IOException
+        {
+            for (int index = 0; index < text.length(); index++)
+            {
+                index = utf8(text, index);
+            }
+        }
+
+        /**
+         * utf8 method
+         * @param text  - text
+         * @param index - index of the char to write
+         * @return      - index of the last char written (index + 1 for a surrogate pair)
+         */
+        private int utf8(final String text, final int index) throws IOException
+        {
+            ensure(MAXIMUM_BYTES_PER_CHAR);
+            int codePoint = text.codePointAt(index);
+            if (codePoint < 0x80)
+            {
+                buffer.put((byte) codePoint);
+            }
+            else if (codePoint < 0x800)
+            {
+                buffer.put((byte) (0xC0 | codePoint >> 6));
+                buffer.put((byte) (0x80 | codePoint & 0x3F));
+            }
+            else if (codePoint < 0x10000)
+            {
+                buffer.put((byte) (0xE0 | codePoint >> 12));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint & 0x3F));
+            }
+            else
+            {
+                buffer.put((byte) (0xF0 | codePoint >> 18));
+                buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint & 0x3F));
+            }
+            return index + Character.charCount(codePoint) - 1;
+        }
+
+        /**
+         * number method
+         * @param value - a value (not negative) written in decimal
+         */
+        private void number(final long value) throws IOException
+        {
+            ensure(MAXIMUM_LONG_DIGITS);
+            long divisor = 1;
+            while (value / divisor >= RADIX)
+            {
+                divisor *= RADIX;
+            }
+            for (; divisor > 0; divisor /= RADIX)
+            {
+                buffer.put((byte) ('0' + value / divisor % RADIX));
+            }
+        }
+
+        /**
+         * price method
+         * @param priceUsd - a price, written to the cent with no trailing ".00"
+         */
+        private void price(final double priceUsd) throws IOException
+        {
+            long cents = Math.round(priceUsd * CENTS_PER_DOLLAR);
+            // setPriceUsd does not check the sign
+            if (cents < 0)
+            {
+                put('-');
+                cents = -cents;
+            }
+            number(cents / CENTS_PER_DOLLAR);
+            long fraction = cents % CENTS_PER_DOLLAR;
+            if (fraction != 0)
+            {
+                ensure(3);
+                buffer.put((byte) '.');
+                buffer.put((byte) ('0' + fraction / RADIX));
+                buffer.put((byte) ('0' + fraction % RADIX));
+            }
+        }
+
+        private void ensure(final int bytes) throws IOException
+        {
+            if (buffer.remaining() < bytes)
+            {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
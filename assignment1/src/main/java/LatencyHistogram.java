@@ -0,0 +1,186 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class: LatencyHistogram
+ *
+ * A fixed-size, lock-free histogram of latencies in nanoseconds. Values are grouped
+ * into log-linear buckets: every power of two is split into sixteen equal sub-buckets,
+ * so any percentile read back is within about 6% of the true value, whatever the scale.
+ * Recording is a few atomic adds and never allocates.
+ *
+ * Instance Variables:
+ *      1. Counts (AtomicLongArray; one counter per bucket)
+ *      2. Count (AtomicLong; number of recorded values)
+ *      3. Total (AtomicLong; sum of recorded values)
+ *      4. Max (AtomicLong; largest recorded value)
+ *
+ * Methods:
+ *      1. record(nanos): adds one value (negative values count as 0)
+ *      2. getCount(), getTotalNanos(), getMaxNanos(), getMeanNanos()
+ *      3. getPercentileNanos(percentile): returns the value below which the given percentage
+ *          (0 to 100) of the recorded values fall
+ *      4. reset(): clears every counter
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public class LatencyHistogram {
+
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong total;
+    private final AtomicLong max;
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final double MINIMUM_PERCENTILE = 0.0;
+    private static final double MAXIMUM_PERCENTILE = 100.0;
+
+    /**
+     * constructor
+     */
+    public LatencyHistogram()
+    {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new AtomicLong();
+        this.total = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * record method
+     * @param nanos - latency to add, in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        if (nanos < 0)
+        {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+
+        long currentMax = max.get();
+        while (nanos > currentMax && !max.compareAndSet(currentMax, nanos))
+        {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * getters
+     * @return count, total, max and mean of the recorded values
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getTotalNanos()
+    {
+        return total.get();
+    }
+
+    public long getMaxNanos()
+    {
+        return max.get();
+    }
+
+    public double getMeanNanos()
+    {
+        long recorded = count.get();
+        if (recorded == 0)
+        {
+            return 0;
+        }
+        return (double) total.get() / recorded;
+    }
+
+    /**
+     * getPercentileNanos method
+     * @param percentile    - percentile to read, from 0 to 100 (e.g. 99.9)
+     * @return              - upper bound of the bucket holding that percentile, or 0 if nothing was recorded
+     */
+    public long getPercentileNanos(final double percentile)
+    {
+        if (percentile < MINIMUM_PERCENTILE || percentile > MAXIMUM_PERCENTILE || Double.isNaN(percentile))
+        {
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        }
+
+        long recorded = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+        {
+            snapshot[bucket] = counts.get(bucket);
+            recorded += snapshot[bucket];
+        }
+        if (recorded == 0)
+        {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / MAXIMUM_PERCENTILE * recorded));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+        {
+            seen += snapshot[bucket];
+            if (seen >= rank)
+            {
+                return Math.min(upperBoundOf(bucket), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * reset method
+     */
+    public void reset()
+    {
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+        {
+            counts.set(bucket, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * bucketOf method
+     * @param nanos - a non-negative value
+     * @return      - the bucket the value falls in
+     */
+    static int bucketOf(final long nanos)
+    {
+        if (nanos < SUB_BUCKETS)
+        {
+            return (int) nanos;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * upperBoundOf method
+     * @param bucket    - a bucket index
+     * @return          - the largest value that falls in the bucket
+     */
+    static long upperBoundOf(final int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowerBound = (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + width - 1;
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class: Listing
+ *
+ * One version of a listed property: the Property and the price it had when this
+ * version was published. Property's only mutable field is its price, so a Listing
+ * is a complete point-in-time view of the property, and an AgencySnapshot made of
+ * Listings stays consistent however prices change afterwards.
+ *
+ * A listing also keeps the fields the agency's indexes are built from (id, type,
+ * bedrooms and pool), so that its Property can be spilled to a ListingStore while the
+ * listing, and every index entry pointing at it, stays in memory. A spilled (cold)
+ * listing reads its Property back the next time getProperty() is called and keeps it
+ * (promotion). The agency spills with a CLOCK sweep: getProperty() sets a referenced
+ * bit, and a sweep spills only listings whose bit is clear, clearing the bits it passes.
+ *
+ * The times of the property's first and latest price change are kept too, so a scan over
+ * past prices can pass over a listing that was not listed yet, or whose price has not
+ * changed since, without reading a cold property back.
+ *
+ * Instance Variables:
+ *      1. Property (Property: or null while cold)
+ *      2. Price in USD (double: the property's price when this version was made)
+ *      3. Property id, type, number of bedrooms, swimming pool, address key (copied from the property)
+ *      4. Content hash (long: hash of every field of the property but its price, for the agency's ListingDigest)
+ *      5. Referenced (boolean: set by getProperty(), cleared by a sweep)
+ *      6. Store and offset (ListingStore, long: where the property was spilled)
+ *      7. Listed sequence (long: when the property was listed, from a counter shared by every listing; a
+ *          repriced version keeps it, so it orders listings oldest first)
+ *      8. Flagged duplicate (boolean: listed at an already listed address while the policy was FLAG; a repriced
+ *          version keeps it)
+ *      9. First and last change millis (long: times of the first and latest change in the property's price
+ *          history when this version was made)
+ *
+ * Methods:
+ *      1. Get methods for all instance variables (getProperty() promotes a cold listing)
+ *      2. reprice(): returns the next version of a resident listing, at its property's current price
+ *      3. residentProperty(): returns the property if it is in memory...or null if cold
+ *      4. peekProperty(): returns the property, reading a cold one without promoting it
+ *      5. sweep(store, listener): spills the property if it was not referenced since the last sweep
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class Listing {
+
+    private volatile Property property;
+    private final double priceUsd;
+    private final String propertyId;
+    private final PropertyType propertyType;
+    private final int numberOfBedrooms;
+    private final boolean swimmingPool;
+    private final AddressKey addressKey;
+    private final long contentHash;
+    private final long listedSequence;
+    private final long firstChangeMillis;
+    private final long lastChangeMillis;
+    private volatile boolean flaggedDuplicate;
+    private volatile boolean referenced;
+    private ListingStore store;
+    private long offset;
+
+    private static final AtomicLong LISTED = new AtomicLong();
+
+    /**
+     * constructor
+     * @param property - the property, at its current price
+     */
+    Listing(final Property property)
+    {
+        this.property = property;
+        // the price and its latest change are set together under the history's lock
+        PriceHistory history = property.getPriceHistory();
+        synchronized (history)
+        {
+            this.priceUsd = property.getPriceUsd();
+            this.firstChangeMillis = history.getFirstMillis();
+            this.lastChangeMillis = history.getLastMillis();
+        }
+        this.propertyId = property.getPropertyId();
+        this.propertyType = property.getPropertyType();
+        this.numberOfBedrooms = property.getNumberOfBedrooms();
+        this.swimmingPool = property.hasSwimmingPool();
+        this.addressKey = AddressKey.of(property.getAddress());
+        this.contentHash = ListingDigest.contentHashOf(property);
+        this.listedSequence = LISTED.incrementAndGet();
+        this.referenced = true;
+    }
+
+    private Listing(final Listing previous, final Property property)
+    {
+        this.property = property;
+        PriceHistory history = property.getPriceHistory();
+        synchronized (history)
+        {
+            this.priceUsd = property.getPriceUsd();
+            this.firstChangeMillis = history.getFirstMillis();
+            this.lastChangeMillis = history.getLastMillis();
+        }
+        this.propertyId = previous.propertyId;
+        this.propertyType = previous.propertyType;
+        this.numberOfBedrooms = previous.numberOfBedrooms;
+        this.swimmingPool = previous.swimmingPool;
+        this.addressKey = previous.addressKey;
+        this.contentHash = previous.contentHash;
+        this.listedSequence = previous.listedSequence;
+        this.flaggedDuplicate = previous.flaggedDuplicate;
+        this.referenced = true;
+    }
+
+    /**
+     * reprice method
+     * @return - a listing of the same property at its current price, sharing this listing's other fields
+     */
+    Listing reprice()
+    {
+        return new Listing(this, getProperty());
+    }
+
+    /**
+     * getProperty method
+     * @return - the property, read back from the store and kept if the listing was cold
+     */
+    Property getProperty()
+    {
+        Property resident = property;
+        if (resident == null)
+        {
+            resident = promote();
+        }
+        if (!referenced)
+        {
+            referenced = true;
+        }
+        return resident;
+    }
+
+    /**
+     * getters
+     * @return priceUsd, propertyId, propertyType, numberOfBedrooms, swimmingPool, addressKey, contentHash,
+     *         listedSequence, flaggedDuplicate, firstChangeMillis, lastChangeMillis
+     */
+    double getPriceUsd()
+    {
+        return priceUsd;
+    }
+
+    String getPropertyId()
+    {
+        return propertyId;
+    }
+
+    PropertyType getPropertyType()
+    {
+        return propertyType;
+    }
+
+    int getNumberOfBedrooms()
+    {
+        return numberOfBedrooms;
+    }
+
+    boolean hasSwimmingPool()
+    {
+        return swimmingPool;
+    }
+
+    AddressKey getAddressKey()
+    {
+        return addressKey;
+    }
+
+    long getContentHash()
+    {
+        return contentHash;
+    }
+
+    long getListedSequence()
+    {
+        return listedSequence;
+    }
+
+    boolean isFlaggedDuplicate()
+    {
+        return flaggedDuplicate;
+    }
+
+    long getFirstChangeMillis()
+    {
+        return firstChangeMillis;
+    }
+
+    long getLastChangeMillis()
+    {
+        return lastChangeMillis;
+    }
+
+    /**
+     * flagDuplicate method: marks this listing as added at an already listed address
+     */
+    void flagDuplicate()
+    {
+        flaggedDuplicate = true;
+    }
+
+    /**
+     * residentProperty method
+     * @return - the property if it is in memory, or null if the listing is cold
+     */
+    Property residentProperty()
+    {
+        return property;
+    }
+
+    /**
+     * peekProperty method
+     * @return - the property; a cold listing's is read into a copy that is not kept and not listened to
+     */
+    Property peekProperty()
+    {
+        Property resident = property;
+        if (resident != null)
+        {
+            return resident;
+        }
+        synchronized (this)
+        {
+            return property != null ? property : readBack();
+        }
+    }
+
+    /**
+     * sweep method (called by the agency holding its write lock)
+     * @param store     - where to spill the property
+     * @param listener  - the agency's price change listener, removed from a spilled property
+     * @return          - true if the property was spilled
+     * @throws IOException - if the store fails
+     */
+    synchronized boolean sweep(final ListingStore store, final PriceChangeListener listener) throws IOException
+    {
+        if (property == null)
+        {
+            return false;
+        }
+        if (referenced)
+        {
+            // second chance: spilled on the next sweep unless read again before it
+            referenced = false;
+            return false;
+        }
+        this.offset = store.append(property);
+        this.store = store;
+        property.removePriceChangeListener(listener);
+        property = null;
+        return true;
+    }
+
+    private synchronized Property promote()
+    {
+        if (property == null)
+        {
+            Property loaded = readBack();
+            loaded.addPriceChangeListener(store.getListener());
+            property = loaded;
+            store.getPromotionListener().accept(this);
+        }
+        return property;
+    }
+
+    private Property readBack()
+    {
+        try
+        {
+            return store.read(offset);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Invalid cold listing: " + propertyId, e);
+        }
+    }
+}
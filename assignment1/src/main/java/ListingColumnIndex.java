@@ -0,0 +1,179 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Class: ListingColumnIndex
+ *
+ * Keeps an agency's ListingColumns up to date through its index hooks, so a new snapshot's
+ * columns cost one copy of each chunk the writes since the last publish touched, plus a
+ * copy of the chunk array (one reference per CHUNK_ROWS rows), instead of a rebuild of
+ * every column on the first query after every write.
+ *
+ * A removed row is filled by the last row, so rows stay dense. Chunks made or copied since
+ * the last publish carry the current edit number and are changed in place; columns()
+ * hands them to a snapshot and moves to a new edit number, so the next change to any of
+ * them copies it first. It is changed under the agency's write lock.
+ *
+ * Instance Variables:
+ *      1. Chunks (ListingColumns.Chunk[]: the rows, CHUNK_ROWS to a chunk), chunk count (int)
+ *      2. Size (int: number of rows)
+ *      3. Rows by id (HashMap; key is property id, value is its row)
+ *      4. Edit (long: chunks with this edit number were made since the last publish)
+ *      5. Published (ListingColumns: the columns handed out by the last columns(), or null once changed)
+ *
+ * Methods:
+ *      1. insert(listing), remove(listing), replace(oldListing, newListing), clear()
+ *      2. columns(): returns the columns as they are now, for a snapshot
+ *      3. estimateBytes(): returns the bytes of the chunk array and the row map (the chunks are counted with the
+ *          snapshot's columns)
+ *      4. estimateBytesPerListing(): returns the bytes one listing adds to the current columns and the row map
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class ListingColumnIndex {
+
+    private ListingColumns.Chunk[] chunks;
+    private int chunkCount;
+    private int size;
+    private final HashMap<String, Integer> rowsById;
+    private long edit;
+    private ListingColumns published;
+
+    private static final int INITIAL_CHUNKS = 1;
+    private static final int INITIAL_CHUNK_ROWS = 16;
+
+    /**
+     * constructor
+     */
+    ListingColumnIndex()
+    {
+        this.chunks = new ListingColumns.Chunk[INITIAL_CHUNKS];
+        this.rowsById = new HashMap<>();
+    }
+
+    /**
+     * insert method
+     * @param listing - a listing now in the agency
+     */
+    void insert(final Listing listing)
+    {
+        int row = size++;
+        if ((row & (ListingColumns.CHUNK_ROWS - 1)) == 0)
+        {
+            if (chunkCount == chunks.length)
+            {
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            }
+            chunks[chunkCount++] = new ListingColumns.Chunk(INITIAL_CHUNK_ROWS, edit);
+        }
+        set(row, listing);
+        rowsById.put(listing.getPropertyId(), row);
+    }
+
+    /**
+     * remove method
+     * @param listing - a listing no longer in the agency
+     */
+    void remove(final Listing listing)
+    {
+        Integer row = rowsById.remove(listing.getPropertyId());
+        if (row == null)
+        {
+            return;
+        }
+
+        // the last row takes the removed one's place
+        int last = --size;
+        if (row != last)
+        {
+            Listing moved = chunks[last >>> ListingColumns.CHUNK_SHIFT].get(last & (ListingColumns.CHUNK_ROWS - 1));
+            set(row, moved);
+            rowsById.put(moved.getPropertyId(), row);
+        }
+        if ((last & (ListingColumns.CHUNK_ROWS - 1)) == 0)
+        {
+            chunks[--chunkCount] = null;
+        }
+        else
+        {
+            set(last, null);
+        }
+    }
+
+    /**
+     * replace method
+     * @param oldListing    - the listing at its old price
+     * @param newListing    - the listing at its new price
+     */
+    void replace(final Listing oldListing, final Listing newListing)
+    {
+        Integer row = rowsById.get(newListing.getPropertyId());
+        if (row == null)
+        {
+            insert(newListing);
+            return;
+        }
+        set(row, newListing);
+    }
+
+    /**
+     * clear method
+     */
+    void clear()
+    {
+        chunks = new ListingColumns.Chunk[INITIAL_CHUNKS];
+        chunkCount = 0;
+        size = 0;
+        rowsById.clear();
+        published = null;
+    }
+
+    /**
+     * columns method
+     * @return - the columns as they are now; they never change, however this index changes afterwards
+     */
+    ListingColumns columns()
+    {
+        if (published == null)
+        {
+            published = new ListingColumns(Arrays.copyOf(chunks, chunkCount), size);
+            edit++;
+        }
+        return published;
+    }
+
+    /**
+     * estimateBytes method
+     * @return - bytes of this object, its chunk array and the row map (not the chunks, the listings or their ids)
+     */
+    long estimateBytes()
+    {
+        return MemoryEstimator.shallowSizeOf(ListingColumnIndex.class)
+                + MemoryEstimator.sizeOfArray(chunks.length, MemoryEstimator.REFERENCE_BYTES)
+                + MemoryEstimator.sizeOfHashMap(rowsById.size())
+                + rowsById.size() * MemoryEstimator.shallowSizeOf(Integer.class);
+    }
+
+    /**
+     * estimateBytesPerListing method
+     * @return - bytes one listing adds: its row in the current chunks and its row map entry (chunks kept alive
+     *           only by older snapshots are not counted)
+     */
+    static long estimateBytesPerListing()
+    {
+        return MemoryEstimator.REFERENCE_BYTES + Double.BYTES + Integer.BYTES
+                + MemoryEstimator.sizeOfHashMapEntry() + MemoryEstimator.shallowSizeOf(Integer.class);
+    }
+
+    private void set(final int row, final Listing listing)
+    {
+        int chunk = row >>> ListingColumns.CHUNK_SHIFT;
+        if (chunks[chunk].getEdit() != edit)
+        {
+            chunks[chunk] = chunks[chunk].copy(edit);
+        }
+        chunks[chunk].set(row & (ListingColumns.CHUNK_ROWS - 1), listing);
+        published = null;
+    }
+}
@@ -0,0 +1,228 @@
+import java.util.Arrays;
+
+/**
+ * Class: ListingColumns
+ *
+ * The listings of one AgencySnapshot laid out as parallel primitive arrays for the loops in
+ * ColumnKernels. Row i of every column describes listing(i); rows are in no particular order.
+ * The rows are kept in chunks of CHUNK_ROWS, and a snapshot's columns share every chunk a
+ * write did not touch with the columns before and after it: the agency's ListingColumnIndex
+ * copies a chunk only the first time a write changes it after a publish. A snapshot never
+ * changes its columns, so queries on it need no locks.
+ *
+ * Filters run chunk by chunk into one selection over all the rows; CHUNK_ROWS is a multiple
+ * of 64, so each chunk starts on a word of the selection.
+ *
+ * Instance Variables:
+ *      1. Chunks (Chunk[]: the rows, CHUNK_ROWS to a chunk; each chunk holds listings, prices in USD
+ *          and bedrooms)
+ *      2. Size (int: number of rows)
+ *
+ * Methods:
+ *      1. size(): returns the number of rows
+ *      2. listing(row): returns the listing in that row
+ *      3. selectPricesBetween(minUsd, maxUsd), selectBedroomsBetween(minBedrooms, maxBedrooms): return a selection
+ *          of the rows in the range
+ *      4. sumPricesSelected(selection): returns the total price of the selected rows
+ *      5. estimateBytes(): returns the bytes of the chunks
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class ListingColumns {
+
+    private final Chunk[] chunks;
+    private final int size;
+
+    static final int CHUNK_SHIFT = 10;
+    static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    private static final int WORDS_PER_CHUNK = CHUNK_ROWS / Long.SIZE;
+
+    /**
+     * constructor
+     * @param chunks    - the chunks (not copied; none of them may change afterwards)
+     * @param size      - number of rows
+     */
+    ListingColumns(final Chunk[] chunks, final int size)
+    {
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    /**
+     * size method
+     * @return - the number of rows
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * listing method
+     * @param row   - a row
+     * @return      - the listing in that row
+     */
+    Listing listing(final int row)
+    {
+        return chunks[row >>> CHUNK_SHIFT].listings[row & (CHUNK_ROWS - 1)];
+    }
+
+    /**
+     * selectPricesBetween method
+     * @param minUsd    - minimum price in usd
+     * @param maxUsd    - maximum price in usd
+     * @return          - a selection of the rows priced in the range
+     */
+    long[] selectPricesBetween(final double minUsd, final double maxUsd)
+    {
+        long[] selection = new long[(size + Long.SIZE - 1) / Long.SIZE];
+        for (int chunk = 0; chunk < chunks.length; chunk++)
+        {
+            ColumnKernels.selectBetween(chunks[chunk].pricesUsd, rowsIn(chunk), minUsd, maxUsd, selection,
+                    chunk * WORDS_PER_CHUNK);
+        }
+        return selection;
+    }
+
+    /**
+     * selectBedroomsBetween method
+     * @param minBedrooms   - minimum number of bedrooms
+     * @param maxBedrooms   - maximum number of bedrooms
+     * @return              - a selection of the rows with bedrooms in the range
+     */
+    long[] selectBedroomsBetween(final int minBedrooms, final int maxBedrooms)
+    {
+        long[] selection = new long[(size + Long.SIZE - 1) / Long.SIZE];
+        for (int chunk = 0; chunk < chunks.length; chunk++)
+        {
+            ColumnKernels.selectBetween(chunks[chunk].bedrooms, rowsIn(chunk), minBedrooms, maxBedrooms, selection,
+                    chunk * WORDS_PER_CHUNK);
+        }
+        return selection;
+    }
+
+    /**
+     * sumPricesSelected method
+     * @param selection - a selection over these rows
+     * @return          - the total price of the selected rows
+     */
+    double sumPricesSelected(final long[] selection)
+    {
+        double sum = 0;
+        for (int chunk = 0; chunk < chunks.length; chunk++)
+        {
+            sum += ColumnKernels.sumSelected(chunks[chunk].pricesUsd, rowsIn(chunk), selection,
+                    chunk * WORDS_PER_CHUNK);
+        }
+        return sum;
+    }
+
+    /**
+     * estimateBytes method
+     * @return - bytes of this object, its chunk array and its chunks (not the listings)
+     */
+    long estimateBytes()
+    {
+        long bytes = MemoryEstimator.shallowSizeOf(ListingColumns.class)
+                + MemoryEstimator.sizeOfArray(chunks.length, MemoryEstimator.REFERENCE_BYTES);
+        for (Chunk chunk : chunks)
+        {
+            bytes += chunk.estimateBytes();
+        }
+        return bytes;
+    }
+
+    private int rowsIn(final int chunk)
+    {
+        return Math.min(CHUNK_ROWS, size - (chunk << CHUNK_SHIFT));
+    }
+
+    /**
+     * Class: Chunk
+     *
+     * Up to CHUNK_ROWS rows of the three columns. A chunk is changed in place only by the
+     * ListingColumnIndex that made it, and only until the next publish (its edit number is the
+     * index's current one); after that it is shared and a change copies it.
+     */
+    static final class Chunk {
+
+        private Listing[] listings;
+        private double[] pricesUsd;
+        private int[] bedrooms;
+        private final long edit;
+
+        /**
+         * constructor
+         * @param capacity  - rows allocated (grown up to CHUNK_ROWS as rows are added)
+         * @param edit      - edit number of the index that may change it in place
+         */
+        Chunk(final int capacity, final long edit)
+        {
+            this.listings = new Listing[capacity];
+            this.pricesUsd = new double[capacity];
+            this.bedrooms = new int[capacity];
+            this.edit = edit;
+        }
+
+        /**
+         * copy method
+         * @param copyEdit  - edit number of the copy
+         * @return          - a chunk with the same rows that may be changed under copyEdit
+         */
+        Chunk copy(final long copyEdit)
+        {
+            Chunk copy = new Chunk(0, copyEdit);
+            copy.listings = listings.clone();
+            copy.pricesUsd = pricesUsd.clone();
+            copy.bedrooms = bedrooms.clone();
+            return copy;
+        }
+
+        /**
+         * getEdit method
+         * @return - edit number under which this chunk may be changed in place
+         */
+        long getEdit()
+        {
+            return edit;
+        }
+
+        /**
+         * set method
+         * @param index     - row within the chunk
+         * @param listing   - the listing for that row, or null to clear it
+         */
+        void set(final int index, final Listing listing)
+        {
+            if (index >= listings.length)
+            {
+                int capacity = Math.min(CHUNK_ROWS, Math.max(index + 1, listings.length * 2));
+                listings = Arrays.copyOf(listings, capacity);
+                pricesUsd = Arrays.copyOf(pricesUsd, capacity);
+                bedrooms = Arrays.copyOf(bedrooms, capacity);
+            }
+            listings[index] = listing;
+            pricesUsd[index] = listing == null ? 0 : listing.getPriceUsd();
+            bedrooms[index] = listing == null ? 0 : listing.getNumberOfBedrooms();
+        }
+
+        /**
+         * get method
+         * @param index - row within the chunk
+         * @return      - the listing in that row
+         */
+        Listing get(final int index)
+        {
+            return listings[index];
+        }
+
+        private long estimateBytes()
+        {
+            return MemoryEstimator.shallowSizeOf(Chunk.class)
+                    + MemoryEstimator.sizeOfArray(listings.length, MemoryEstimator.REFERENCE_BYTES)
+                    + MemoryEstimator.sizeOfArray(pricesUsd.length, Double.BYTES)
+                    + MemoryEstimator.sizeOfArray(bedrooms.length, Integer.BYTES);
+        }
+    }
+}
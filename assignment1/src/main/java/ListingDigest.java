@@ -0,0 +1,485 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class: ListingDigest
+ *
+ * A Merkle tree over the content of an agency's listings, so that two agencies holding
+ * the same listings can tell in one comparison, and two that differ can find exactly which
+ * listings differ by comparing only the branches whose hashes disagree.
+ *
+ * Each listing falls in a bucket by the leading bits of the hash of its property id, so the
+ * same listing lands in the same branch in every agency. Every node's hash is the sum of the
+ * hashes of the listings under it, so adding, removing or repricing one listing is one
+ * addition on each of the depth + 1 nodes between its bucket and the root, and the same
+ * listings hash the same however deep either tree has grown. An empty branch hashes to 0.
+ *
+ * The tree starts with FANOUT^MIN_DEPTH buckets and grows a level (FANOUT times the buckets)
+ * whenever the listings average more than MAX_BUCKET_AVERAGE a bucket, up to MAX_DEPTH; growing
+ * redistributes the listings in one pass. A bucket keeps its listings sorted by id hash, so a
+ * change finds its listing by binary search.
+ *
+ * A listing's hash covers every field of its property (the address as written, not normalized)
+ * and its price, but not its price history. It is built from Listing.getContentHash(), which is
+ * worked out once when the property is listed, so a cold listing is never read back.
+ *
+ * Finding the differences between two digests visits FANOUT nodes per level for each differing
+ * branch, then merges the two sides' sorted listings under each differing node at the shallower
+ * tree's bucket level, so it takes time proportional to the number of differing listings times
+ * the bucket size (at most MAX_BUCKET_AVERAGE on average, times FANOUT^(difference in depth))
+ * rather than to the number of listings. It is changed in place under the agency's write lock.
+ *
+ * Instance Variables:
+ *      1. Depth (int: levels below the root; there are FANOUT^depth buckets)
+ *      2. Levels (long[][]: node hashes; levels[0] holds the root, levels[depth] the buckets)
+ *      3. Bucket keys, bucket ids, bucket hashes (long[][], String[][], long[][]: the id hashes, ids and
+ *          hashes of the listings in each bucket, sorted by id hash; null while the bucket is empty),
+ *          bucket sizes (int[])
+ *      4. Size (int: number of listings)
+ *      5. Root hash (long: levels[0][0], readable without the write lock)
+ *
+ * Methods:
+ *      1. add(listing), remove(listing), replace(oldListing, newListing), clear()
+ *      2. getRootHash(): returns the hash of every listing
+ *      3. diff(left, right): returns the ids of the listings in only one digest, or in both with different content
+ *      4. contentHashOf(property): returns the hash of every field of a property but its price
+ *      5. estimateBytes(): returns the bytes of the tree and buckets
+ *      6. estimateBytesPerListing(): returns the bytes one listing adds to its bucket
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class ListingDigest {
+
+    private int depth;
+    private long[][] levels;
+    private long[][] bucketKeys;
+    private String[][] bucketIds;
+    private long[][] bucketHashes;
+    private int[] bucketSizes;
+    private int size;
+    private volatile long rootHash;
+
+    static final int FANOUT = 16;
+    static final int MIN_DEPTH = 2;
+    static final int MAX_DEPTH = 6;
+    static final int MAX_BUCKET_AVERAGE = 32;
+    private static final int FANOUT_BITS = 4;
+    private static final int INITIAL_BUCKET_CAPACITY = 2;
+
+    /**
+     * constructor
+     */
+    ListingDigest()
+    {
+        allocate(MIN_DEPTH);
+    }
+
+    /**
+     * add method
+     * @param listing - a listing now in the agency
+     */
+    void add(final Listing listing)
+    {
+        String propertyId = listing.getPropertyId();
+        long key = HyperLogLog.hash64(propertyId);
+        int bucket = bucketOf(key);
+        int position = find(bucket, key, propertyId);
+        if (position >= 0)
+        {
+            replaceAt(bucket, position, hashOf(listing));
+            return;
+        }
+        long hash = hashOf(listing);
+        insertAt(bucket, -position - 1, key, propertyId, hash);
+        addAbove(bucket, hash);
+        size++;
+        if (depth < MAX_DEPTH && size > bucketSizes.length * MAX_BUCKET_AVERAGE)
+        {
+            grow();
+        }
+    }
+
+    /**
+     * remove method
+     * @param listing - a listing no longer in the agency
+     */
+    void remove(final Listing listing)
+    {
+        String propertyId = listing.getPropertyId();
+        long key = HyperLogLog.hash64(propertyId);
+        int bucket = bucketOf(key);
+        int position = find(bucket, key, propertyId);
+        if (position < 0)
+        {
+            return;
+        }
+
+        long hash = bucketHashes[bucket][position];
+        int last = --bucketSizes[bucket];
+        System.arraycopy(bucketKeys[bucket], position + 1, bucketKeys[bucket], position, last - position);
+        System.arraycopy(bucketIds[bucket], position + 1, bucketIds[bucket], position, last - position);
+        System.arraycopy(bucketHashes[bucket], position + 1, bucketHashes[bucket], position, last - position);
+        bucketIds[bucket][last] = null;
+        if (last == 0)
+        {
+            bucketKeys[bucket] = null;
+            bucketIds[bucket] = null;
+            bucketHashes[bucket] = null;
+        }
+        addAbove(bucket, -hash);
+        size--;
+    }
+
+    /**
+     * replace method
+     * @param oldListing    - the listing at its old price
+     * @param newListing    - the listing at its new price
+     */
+    void replace(final Listing oldListing, final Listing newListing)
+    {
+        add(newListing);
+    }
+
+    /**
+     * clear method
+     */
+    void clear()
+    {
+        allocate(MIN_DEPTH);
+        size = 0;
+        rootHash = 0;
+    }
+
+    /**
+     * getRootHash method
+     * @return - the hash of every listing; equal digests hold the same listings (0 if there are none)
+     */
+    long getRootHash()
+    {
+        return rootHash;
+    }
+
+    /**
+     * diff method (the caller holds both agencies' write locks)
+     * @param left  - a digest
+     * @param right - another digest
+     * @return      - the ids of the listings in only one of them, or in both with different content, in order
+     */
+    static List<String> diff(final ListingDigest left, final ListingDigest right)
+    {
+        ArrayList<String> differing = new ArrayList<>();
+        diffNode(left, right, 0, 0, differing);
+        differing.sort(null);
+        return differing;
+    }
+
+    /**
+     * contentHashOf method
+     * @param property  - a property
+     * @return          - a hash of its id, type, bedrooms, pool and every address field (not its price)
+     */
+    static long contentHashOf(final Property property)
+    {
+        Address address = property.getAddress();
+        long hash = HyperLogLog.hash64(property.getPropertyId());
+        hash = combine(hash, HyperLogLog.hash64(property.getType()));
+        hash = combine(hash, property.getNumberOfBedrooms());
+        hash = combine(hash, property.hasSwimmingPool() ? 1 : 0);
+        hash = combine(hash, address.getUnitNumber() == null ? 0 : HyperLogLog.hash64(address.getUnitNumber()));
+        hash = combine(hash, address.getStreetNumber());
+        hash = combine(hash, HyperLogLog.hash64(address.getStreetName()));
+        hash = combine(hash, HyperLogLog.hash64(address.getPostalCode()));
+        return combine(hash, HyperLogLog.hash64(address.getCity()));
+    }
+
+    /**
+     * estimateBytes method
+     * @return - bytes of the node arrays and the buckets (not the ids, which the listings hold)
+     */
+    long estimateBytes()
+    {
+        int buckets = bucketSizes.length;
+        long bytes = MemoryEstimator.shallowSizeOf(ListingDigest.class)
+                + MemoryEstimator.sizeOfArray(levels.length, MemoryEstimator.REFERENCE_BYTES)
+                + 3 * MemoryEstimator.sizeOfArray(buckets, MemoryEstimator.REFERENCE_BYTES)
+                + MemoryEstimator.sizeOfArray(buckets, Integer.BYTES);
+        for (long[] level : levels)
+        {
+            bytes += MemoryEstimator.sizeOfArray(level.length, Long.BYTES);
+        }
+        for (int bucket = 0; bucket < buckets; bucket++)
+        {
+            if (bucketIds[bucket] != null)
+            {
+                int capacity = bucketIds[bucket].length;
+                bytes += MemoryEstimator.sizeOfArray(capacity, MemoryEstimator.REFERENCE_BYTES)
+                        + 2 * MemoryEstimator.sizeOfArray(capacity, Long.BYTES);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * estimateBytesPerListing method
+     * @return - bytes one listing adds: its key, id and hash slots in its bucket (the node levels depend only
+     *           on the depth)
+     */
+    static long estimateBytesPerListing()
+    {
+        return MemoryEstimator.REFERENCE_BYTES + 2 * Long.BYTES;
+    }
+
+    private static void diffNode(final ListingDigest left, final ListingDigest right, final int level, final int node,
+                                 final List<String> differing)
+    {
+        if (left.levels[level][node] == right.levels[level][node])
+        {
+            return;
+        }
+        if (level == left.depth || level == right.depth)
+        {
+            mergeBranches(new Cursor(left, level, node), new Cursor(right, level, node), differing);
+            return;
+        }
+        for (int child = node * FANOUT; child < (node + 1) * FANOUT; child++)
+        {
+            diffNode(left, right, level + 1, child, differing);
+        }
+    }
+
+    private static void mergeBranches(final Cursor left, final Cursor right, final List<String> differing)
+    {
+        // both sides are sorted the same way, so one pass pairs up the listings they share
+        while (left.valid() && right.valid())
+        {
+            int order = compare(left.key(), left.id(), right.key(), right.id());
+            if (order < 0)
+            {
+                differing.add(left.id());
+                left.advance();
+            }
+            else if (order > 0)
+            {
+                differing.add(right.id());
+                right.advance();
+            }
+            else
+            {
+                if (left.hash() != right.hash())
+                {
+                    differing.add(left.id());
+                }
+                left.advance();
+                right.advance();
+            }
+        }
+        for (; left.valid(); left.advance())
+        {
+            differing.add(left.id());
+        }
+        for (; right.valid(); right.advance())
+        {
+            differing.add(right.id());
+        }
+    }
+
+    private void allocate(final int newDepth)
+    {
+        depth = newDepth;
+        levels = new long[newDepth + 1][];
+        for (int level = 0; level <= newDepth; level++)
+        {
+            levels[level] = new long[1 << (level * FANOUT_BITS)];
+        }
+        int buckets = levels[newDepth].length;
+        bucketKeys = new long[buckets][];
+        bucketIds = new String[buckets][];
+        bucketHashes = new long[buckets][];
+        bucketSizes = new int[buckets];
+    }
+
+    private void grow()
+    {
+        long[][] oldKeys = bucketKeys;
+        String[][] oldIds = bucketIds;
+        long[][] oldHashes = bucketHashes;
+        int[] oldSizes = bucketSizes;
+        allocate(depth + 1);
+
+        // the old buckets are in key order, so each new bucket is filled in order by appending
+        long[] leaves = levels[depth];
+        for (int oldBucket = 0; oldBucket < oldSizes.length; oldBucket++)
+        {
+            for (int position = 0; position < oldSizes[oldBucket]; position++)
+            {
+                long key = oldKeys[oldBucket][position];
+                int bucket = bucketOf(key);
+                long hash = oldHashes[oldBucket][position];
+                insertAt(bucket, bucketSizes[bucket], key, oldIds[oldBucket][position], hash);
+                leaves[bucket] += hash;
+            }
+        }
+        for (int level = depth - 1; level >= 0; level--)
+        {
+            for (int node = 0; node < levels[level].length; node++)
+            {
+                long hash = 0;
+                for (int child = node * FANOUT; child < (node + 1) * FANOUT; child++)
+                {
+                    hash += levels[level + 1][child];
+                }
+                levels[level][node] = hash;
+            }
+        }
+        rootHash = levels[0][0];
+    }
+
+    private void insertAt(final int bucket, final int position, final long key, final String propertyId,
+                          final long hash)
+    {
+        int count = bucketSizes[bucket];
+        if (bucketIds[bucket] == null)
+        {
+            bucketKeys[bucket] = new long[INITIAL_BUCKET_CAPACITY];
+            bucketIds[bucket] = new String[INITIAL_BUCKET_CAPACITY];
+            bucketHashes[bucket] = new long[INITIAL_BUCKET_CAPACITY];
+        }
+        else if (count == bucketIds[bucket].length)
+        {
+            bucketKeys[bucket] = Arrays.copyOf(bucketKeys[bucket], count * 2);
+            bucketIds[bucket] = Arrays.copyOf(bucketIds[bucket], count * 2);
+            bucketHashes[bucket] = Arrays.copyOf(bucketHashes[bucket], count * 2);
+        }
+        System.arraycopy(bucketKeys[bucket], position, bucketKeys[bucket], position + 1, count - position);
+        System.arraycopy(bucketIds[bucket], position, bucketIds[bucket], position + 1, count - position);
+        System.arraycopy(bucketHashes[bucket], position, bucketHashes[bucket], position + 1, count - position);
+        bucketKeys[bucket][position] = key;
+        bucketIds[bucket][position] = propertyId;
+        bucketHashes[bucket][position] = hash;
+        bucketSizes[bucket] = count + 1;
+    }
+
+    private void replaceAt(final int bucket, final int position, final long hash)
+    {
+        long change = hash - bucketHashes[bucket][position];
+        bucketHashes[bucket][position] = hash;
+        addAbove(bucket, change);
+    }
+
+    private void addAbove(final int bucket, final long change)
+    {
+        int node = bucket;
+        for (int level = depth; level >= 0; level--)
+        {
+            levels[level][node] += change;
+            node >>>= FANOUT_BITS;
+        }
+        rootHash = levels[0][0];
+    }
+
+    // the listing's position in the bucket, or (-(the position it would take) - 1) if it is not there
+    private int find(final int bucket, final long key, final String propertyId)
+    {
+        int low = 0;
+        int high = bucketSizes[bucket] - 1;
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            int order = compare(bucketKeys[bucket][middle], bucketIds[bucket][middle], key, propertyId);
+            if (order < 0)
+            {
+                low = middle + 1;
+            }
+            else if (order > 0)
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    private int bucketOf(final long key)
+    {
+        return (int) (key >>> (Long.SIZE - depth * FANOUT_BITS));
+    }
+
+    private static int compare(final long key, final String propertyId, final long otherKey, final String otherId)
+    {
+        // unsigned, so that the order within a bucket continues the order of the buckets
+        int order = Long.compareUnsigned(key, otherKey);
+        return order != 0 ? order : propertyId.compareTo(otherId);
+    }
+
+    private static long hashOf(final Listing listing)
+    {
+        return combine(listing.getContentHash(), Double.doubleToLongBits(listing.getPriceUsd()));
+    }
+
+    private static long combine(final long hash, final long value)
+    {
+        return HyperLogLog.mix64(hash ^ HyperLogLog.mix64(value + hash));
+    }
+
+    /**
+     * Class: Cursor
+     *
+     * Walks, in order, the listings of one digest under one node, across the buckets below it.
+     */
+    private static final class Cursor {
+
+        private final ListingDigest digest;
+        private int bucket;
+        private final int endBucket;
+        private int position;
+
+        Cursor(final ListingDigest digest, final int level, final int node)
+        {
+            int shift = (digest.depth - level) * FANOUT_BITS;
+            this.digest = digest;
+            this.bucket = node << shift;
+            this.endBucket = (node + 1) << shift;
+            skipEmpty();
+        }
+
+        boolean valid()
+        {
+            return bucket < endBucket;
+        }
+
+        long key()
+        {
+            return digest.bucketKeys[bucket][position];
+        }
+
+        String id()
+        {
+            return digest.bucketIds[bucket][position];
+        }
+
+        long hash()
+        {
+            return digest.bucketHashes[bucket][position];
+        }
+
+        void advance()
+        {
+            position++;
+            skipEmpty();
+        }
+
+        private void skipEmpty()
+        {
+            while (bucket < endBucket && position >= digest.bucketSizes[bucket])
+            {
+                bucket++;
+                position = 0;
+            }
+        }
+    }
+}
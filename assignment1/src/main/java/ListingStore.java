@@ -0,0 +1,159 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Class: ListingStore
+ *
+ * The disk segment an Agency spills cold properties to. Each spilled property is
+ * appended as one record: its length, then the property (PropertyCodec) and its whole
+ * PriceHistory, so a property read back is the same as the one spilled. Reads are
+ * positional, so any number of threads can load cold properties at once.
+ *
+ * The segment is a private scratch file, not a backup: it is emptied when opened and
+ * deleted when closed. It only grows; a record is left behind when its property is
+ * promoted or removed.
+ *
+ * Instance Variables:
+ *      1. Channel (FileChannel: the segment file)
+ *      2. Listener (PriceChangeListener: the agency's, given to every property read back)
+ *      3. Promotion listener (Consumer: the agency's, told of every listing whose property is read back and kept)
+ *      4. Size (long: bytes written so far)
+ *      5. Reads (AtomicLong: number of properties read back so far)
+ *
+ * Methods:
+ *      1. append(property): writes a property and returns its offset
+ *      2. read(offset): returns a new Property read from an offset returned by append
+ *      3. getListener(), getPromotionListener(), getSizeBytes(), getReadCount()
+ *      4. close(): closes and deletes the file
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class ListingStore implements Closeable {
+
+    private final FileChannel channel;
+    private final PriceChangeListener listener;
+    private final Consumer<Listing> promotionListener;
+    private long size;
+    private final AtomicLong reads;
+
+    /**
+     * constructor
+     * @param file                  - the segment file (created, or emptied if it exists)
+     * @param listener              - the agency's price change listener
+     * @param promotionListener     - told of each listing just promoted, holding the listing's lock
+     * @throws IOException          - if the file cannot be opened
+     */
+    ListingStore(final Path file, final PriceChangeListener listener, final Consumer<Listing> promotionListener)
+            throws IOException
+    {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        this.listener = listener;
+        this.promotionListener = promotionListener;
+        this.reads = new AtomicLong();
+    }
+
+    /**
+     * append method
+     * @param property      - a property
+     * @return              - the offset to read it back from
+     * @throws IOException  - if the write fails
+     */
+    synchronized long append(final Property property) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(0);
+        PropertyCodec.write(output, property, property.getPriceUsd());
+        property.getPriceHistory().writeTo(output);
+
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        record.putInt(0, record.remaining() - Integer.BYTES);
+        long offset = size;
+        while (record.hasRemaining())
+        {
+            size += channel.write(record, size);
+        }
+        return offset;
+    }
+
+    /**
+     * read method
+     * @param offset        - an offset returned by append
+     * @return              - a new Property equal to the one appended, with its price history
+     * @throws IOException  - if the read fails
+     */
+    Property read(final long offset) throws IOException
+    {
+        reads.incrementAndGet();
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, offset);
+        ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+        readFully(record, offset + Integer.BYTES);
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(record.array()));
+        Property property = PropertyCodec.read(input);
+        property.getPriceHistory().readFrom(input);
+        return property;
+    }
+
+    private void readFully(final ByteBuffer buffer, final long offset) throws IOException
+    {
+        long position = offset;
+        while (buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+            {
+                throw new EOFException("Invalid offset: " + offset);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * getters
+     * @return listener, promotionListener, size in bytes, number of reads
+     */
+    PriceChangeListener getListener()
+    {
+        return listener;
+    }
+
+    Consumer<Listing> getPromotionListener()
+    {
+        return promotionListener;
+    }
+
+    synchronized long getSizeBytes()
+    {
+        return size;
+    }
+
+    long getReadCount()
+    {
+        return reads.get();
+    }
+
+    /**
+     * close method
+     * @throws IOException - if the file fails to close
+     */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+}
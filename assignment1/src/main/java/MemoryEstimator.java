@@ -0,0 +1,226 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class: MemoryEstimator
+ *
+ * Estimates heap sizes for a 64-bit HotSpot JVM with compressed references
+ * (the default below 32 GB of heap): 12-byte object headers, 16-byte array
+ * headers, 4-byte references and 8-byte alignment. Shallow sizes of classes are
+ * worked out once from their declared fields and cached, so adding a field to
+ * Property or Address is picked up without touching this class.
+ *
+ * Methods:
+ *      1. shallowSizeOf(type): bytes of one instance of type, not counting what it references
+ *      2. sizeOfString(string): bytes of a String and its backing array
+ *      3. sizeOfArray(length, elementBytes): bytes of an array
+ *      4. sizeOfHashMap(size): bytes of a HashMap's own table and nodes for that many entries
+ *      5. sizeOfListing(property): bytes one listing adds to an Agency, not counting pooled address strings
+ *          (sizeOfColdListing(propertyId) while its property is spilled, sizeOfSpilledProperty(property) less)
+ *      6. sizeOfPersistentMapEntry(): bytes one entry adds to a PersistentMap, on average
+ *      7. sizeOfHashMapEntry(): bytes one entry adds to a HashMap, on average
+ *      8. align(bytes): rounds up to the 8-byte object alignment
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class MemoryEstimator {
+
+    static final int OBJECT_HEADER_BYTES = 12;
+    static final int ARRAY_HEADER_BYTES = 16;
+    static final int REFERENCE_BYTES = 4;
+    static final int OBJECT_ALIGNMENT_BYTES = 8;
+
+    private static final int HASH_MAP_MINIMUM_CAPACITY = 16;
+    private static final float HASH_MAP_LOAD_FACTOR = 0.75f;
+    private static final int LATIN1_LIMIT = 0xFF;
+
+    private static final ConcurrentHashMap<Class<?>, Long> SHALLOW_SIZES = new ConcurrentHashMap<>();
+
+    private MemoryEstimator()
+    {
+    }
+
+    /**
+     * shallowSizeOf method
+     * @param type  - a class
+     * @return      - bytes of one instance of type, including inherited fields, not counting referenced objects
+     */
+    static long shallowSizeOf(final Class<?> type)
+    {
+        return SHALLOW_SIZES.computeIfAbsent(type, MemoryEstimator::computeShallowSize);
+    }
+
+    /**
+     * sizeOfString method
+     * @param string    - a String (may be null)
+     * @return          - bytes of the String and its backing array, or 0 for null
+     */
+    static long sizeOfString(final String string)
+    {
+        if (string == null)
+        {
+            return 0;
+        }
+
+        // compact strings store one byte per char unless a char is outside Latin-1
+        int bytesPerChar = 1;
+        for (int index = 0; index < string.length(); index++)
+        {
+            if (string.charAt(index) > LATIN1_LIMIT)
+            {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return shallowSizeOf(String.class) + sizeOfArray(string.length(), bytesPerChar);
+    }
+
+    /**
+     * sizeOfArray method
+     * @param length        - number of elements
+     * @param elementBytes  - bytes per element
+     * @return              - bytes of the array
+     */
+    static long sizeOfArray(final long length, final int elementBytes)
+    {
+        return align(ARRAY_HEADER_BYTES + length * elementBytes);
+    }
+
+    /**
+     * sizeOfHashMap method
+     * @param size  - number of entries
+     * @return      - bytes of the HashMap object, its table and its nodes (not the keys or values)
+     */
+    static long sizeOfHashMap(final int size)
+    {
+        int capacity = HASH_MAP_MINIMUM_CAPACITY;
+        while (capacity * HASH_MAP_LOAD_FACTOR < size)
+        {
+            capacity <<= 1;
+        }
+        return shallowSizeOf(HashMap.class)
+                + sizeOfArray(capacity, REFERENCE_BYTES)
+                + size * sizeOfHashMapNode();
+    }
+
+    /**
+     * sizeOfHashMapNode method
+     * @return - bytes of one HashMap node (hash, key, value, next)
+     */
+    static long sizeOfHashMapNode()
+    {
+        return align(OBJECT_HEADER_BYTES + Integer.BYTES + 3 * REFERENCE_BYTES);
+    }
+
+    /**
+     * sizeOfHashMapEntry method
+     * @return - bytes of one HashMap node and its share of the table (between 1.33 and 2.67 slots at the
+     *           default load factor, so two on average)
+     */
+    static long sizeOfHashMapEntry()
+    {
+        return sizeOfHashMapNode() + 2 * REFERENCE_BYTES;
+    }
+
+    /**
+     * sizeOfListing method
+     * @param property  - a property
+     * @return          - bytes of the Property, its price history as first listed, its Address, its id and
+     *                    type strings, its Listing and one entry in the main map and one in its type partition
+     *                    (the same for the listing's whole life, so adds and removes cancel out); Agency adds
+     *                    the listing's entries in its secondary indexes
+     */
+    static long sizeOfListing(final Property property)
+    {
+        return sizeOfSpilledProperty(property) + sizeOfColdListing(property.getPropertyId());
+    }
+
+    /**
+     * sizeOfSpilledProperty method
+     * @param property  - a property
+     * @return          - the part of sizeOfListing that spilling the property to cold storage frees: the Property,
+     *                    its price history as first listed, its Address and its type string
+     */
+    static long sizeOfSpilledProperty(final Property property)
+    {
+        return shallowSizeOf(Property.class)
+                + PriceHistory.estimateInitialBytes()
+                + shallowSizeOf(Address.class)
+                + sizeOfString(property.getType());
+    }
+
+    /**
+     * sizeOfColdListing method
+     * @param propertyId    - the id of a listed property
+     * @return              - the part of sizeOfListing that stays in memory while the property is spilled: its id
+     *                        string, its Listing and its map entries
+     */
+    static long sizeOfColdListing(final String propertyId)
+    {
+        return sizeOfString(propertyId)
+                + shallowSizeOf(Listing.class)
+                + 2 * sizeOfPersistentMapEntry();
+    }
+
+    /**
+     * sizeOfPersistentMapEntry method
+     * @return - bytes of one entry, its slot and its share of the trie nodes above it
+     */
+    static long sizeOfPersistentMapEntry()
+    {
+        return shallowSizeOf(PersistentMap.Entry.class) + 2 * REFERENCE_BYTES;
+    }
+
+    /**
+     * align method
+     * @param bytes - unaligned size
+     * @return      - bytes rounded up to the object alignment
+     */
+    static long align(final long bytes)
+    {
+        return (bytes + OBJECT_ALIGNMENT_BYTES - 1) / OBJECT_ALIGNMENT_BYTES * OBJECT_ALIGNMENT_BYTES;
+    }
+
+    private static long computeShallowSize(final Class<?> type)
+    {
+        long bytes = OBJECT_HEADER_BYTES;
+        for (Class<?> current = type; current != null; current = current.getSuperclass())
+        {
+            for (Field field : current.getDeclaredFields())
+            {
+                if (!Modifier.isStatic(field.getModifiers()))
+                {
+                    bytes += sizeOfField(field.getType());
+                }
+            }
+        }
+        return align(bytes);
+    }
+
+    private static int sizeOfField(final Class<?> fieldType)
+    {
+        if (fieldType == long.class || fieldType == double.class)
+        {
+            return Long.BYTES;
+        }
+        else if (fieldType == int.class || fieldType == float.class)
+        {
+            return Integer.BYTES;
+        }
+        else if (fieldType == short.class || fieldType == char.class)
+        {
+            return Short.BYTES;
+        }
+        else if (fieldType == byte.class || fieldType == boolean.class)
+        {
+            return Byte.BYTES;
+        }
+        else
+        {
+            return REFERENCE_BYTES;
+        }
+    }
+}
@@ -0,0 +1,702 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Class: PersistentMap
+ *
+ * An immutable hash map (a hash array mapped trie). put and remove never change the
+ * map they are called on; they return a new map that shares every untouched node
+ * with the old one, so a change costs O(log32 n) new nodes and any number of readers
+ * can keep iterating older versions without locks or copies.
+ *
+ * Each trie node holds up to 32 slots selected by five bits of the key's hash; a slot
+ * holds either one entry or a child node. Keys whose full hashes collide share a
+ * collision node. Every node knows how many entries lie below it.
+ *
+ * Instance Variables:
+ *      1. Root (Node: the top of the trie, or null when the map is empty)
+ *
+ * Methods:
+ *      1. empty(): returns the empty map
+ *      2. get(key): returns the value for key...or null if there is none
+ *      3. put(key, value): returns a map that also maps key to value
+ *      4. remove(key): returns a map without key
+ *      5. size(), isEmpty()
+ *      6. iterator(): iterates over the values, in hash order
+ *      7. spliterator(): splits the values by subtree, with exact sizes on both sides of every split
+ *      8. estimateBytes(): returns the bytes of the trie's own nodes and entries
+ *
+ * @param <K> - key type (must have consistent equals and hashCode)
+ * @param <V> - value type
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class PersistentMap<K, V> implements Iterable<V> {
+
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null);
+
+    private static final int BITS_PER_LEVEL = 5;
+    private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+
+    private final Node root;
+
+    private PersistentMap(final Node root)
+    {
+        this.root = root;
+    }
+
+    /**
+     * empty method
+     * @param <K>   - key type
+     * @param <V>   - value type
+     * @return      - the empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty()
+    {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * get method
+     * @param key   - key to find
+     * @return      - the value mapped to key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    V get(final K key)
+    {
+        int hash = hashOf(key);
+        Object slot = root;
+        int shift = 0;
+        while (slot != null)
+        {
+            if (slot instanceof Entry)
+            {
+                Entry entry = (Entry) slot;
+                return entry.hash == hash && entry.key.equals(key) ? (V) entry.value : null;
+            }
+            else if (slot instanceof CollisionNode)
+            {
+                return (V) ((CollisionNode) slot).get(hash, key);
+            }
+
+            BitmapNode node = (BitmapNode) slot;
+            int bit = bitOf(hash, shift);
+            if ((node.bitmap & bit) == 0)
+            {
+                return null;
+            }
+            slot = node.slots[node.indexOf(bit)];
+            shift += BITS_PER_LEVEL;
+        }
+        return null;
+    }
+
+    /**
+     * put method
+     * @param key   - key (not null)
+     * @param value - value (not null)
+     * @return      - a map with key mapped to value; this map if it already was
+     */
+    PersistentMap<K, V> put(final K key, final V value)
+    {
+        Entry entry = new Entry(hashOf(key), key, value);
+        Node newRoot = root == null ? BitmapNode.of(0, entry) : root.put(0, entry);
+        return newRoot == root ? this : new PersistentMap<>(newRoot);
+    }
+
+    /**
+     * remove method
+     * @param key   - key to remove
+     * @return      - a map without key; this map if key was not in it
+     */
+    PersistentMap<K, V> remove(final K key)
+    {
+        if (root == null)
+        {
+            return this;
+        }
+        Node newRoot = root.remove(0, hashOf(key), key);
+        if (newRoot == root)
+        {
+            return this;
+        }
+        return newRoot == null ? empty() : new PersistentMap<>(newRoot);
+    }
+
+    /**
+     * size method
+     * @return - the number of entries
+     */
+    int size()
+    {
+        return root == null ? 0 : root.size;
+    }
+
+    boolean isEmpty()
+    {
+        return root == null;
+    }
+
+    /**
+     * iterator method
+     * @return - an iterator over the values of this version of the map
+     */
+    @Override
+    public Iterator<V> iterator()
+    {
+        return new ValueIterator<>(root);
+    }
+
+    /**
+     * spliterator method
+     * @return - a spliterator over the values of this version of the map; it splits a node's slots near
+     *           the middle of the entries below them, and both halves know their exact size
+     */
+    @Override
+    public Spliterator<V> spliterator()
+    {
+        if (root == null)
+        {
+            return new ValueSpliterator<>(new Object[0], 0, 0, 0);
+        }
+        return new ValueSpliterator<>(root.slots, 0, root.slots.length, root.size);
+    }
+
+    /**
+     * estimateBytes method
+     * @return - bytes of the nodes, slot arrays and entries (not the keys or values)
+     */
+    long estimateBytes()
+    {
+        return estimateBytes(root);
+    }
+
+    /**
+     * root method
+     * @return - the root node, or null if the map is empty
+     */
+    Node root()
+    {
+        return root;
+    }
+
+    private static long estimateBytes(final Object slot)
+    {
+        if (slot == null)
+        {
+            return 0;
+        }
+        else if (slot instanceof Entry)
+        {
+            return MemoryEstimator.shallowSizeOf(Entry.class);
+        }
+
+        Node node = (Node) slot;
+        long bytes = MemoryEstimator.shallowSizeOf(node.getClass())
+                + MemoryEstimator.sizeOfArray(node.slots.length, MemoryEstimator.REFERENCE_BYTES);
+        for (Object child : node.slots)
+        {
+            bytes += estimateBytes(child);
+        }
+        return bytes;
+    }
+
+    private static int sizeOf(final Object slot)
+    {
+        return slot instanceof Node ? ((Node) slot).size : 1;
+    }
+
+    private static int hashOf(final Object key)
+    {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int bitOf(final int hash, final int shift)
+    {
+        return 1 << ((hash >>> shift) & LEVEL_MASK);
+    }
+
+    /**
+     * merge method
+     * @param shift - level at which a and b collide
+     * @param a     - an entry or collision node already in the trie
+     * @param aHash - hash of a
+     * @param b     - the entry being added
+     * @return      - the smallest node holding both
+     */
+    private static Node merge(final int shift, final Object a, final int aHash, final Entry b)
+    {
+        if (aHash == b.hash)
+        {
+            if (a instanceof CollisionNode)
+            {
+                return ((CollisionNode) a).put(shift, b);
+            }
+            return new CollisionNode(aHash, new Object[] {a, b});
+        }
+
+        int aBit = bitOf(aHash, shift);
+        int bBit = bitOf(b.hash, shift);
+        if (aBit == bBit)
+        {
+            Node child = merge(shift + BITS_PER_LEVEL, a, aHash, b);
+            return new BitmapNode(aBit, new Object[] {child}, child.size);
+        }
+        int aSize = sizeOf(a);
+        Object[] slots = Integer.compareUnsigned(aBit, bBit) < 0 ? new Object[] {a, b} : new Object[] {b, a};
+        return new BitmapNode(aBit | bBit, slots, aSize + 1);
+    }
+
+    /**
+     * one key and its value
+     */
+    static final class Entry {
+
+        final int hash;
+        final Object key;
+        final Object value;
+
+        Entry(final int hash, final Object key, final Object value)
+        {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * a trie node: its slots hold entries or child nodes
+     */
+    abstract static class Node {
+
+        final Object[] slots;
+        final int size;
+
+        Node(final Object[] slots, final int size)
+        {
+            this.slots = slots;
+            this.size = size;
+        }
+
+        abstract Node put(int shift, Entry entry);
+
+        abstract Node remove(int shift, int hash, Object key);
+
+        /**
+         * singleEntry method
+         * @return - the entry if this node holds exactly one entry directly, otherwise null
+         */
+        Entry singleEntry()
+        {
+            if (size == 1 && slots.length == 1 && slots[0] instanceof Entry)
+            {
+                return (Entry) slots[0];
+            }
+            return null;
+        }
+    }
+
+    /**
+     * a node whose bitmap marks which of its 32 possible slots are present
+     */
+    static final class BitmapNode extends Node {
+
+        final int bitmap;
+
+        BitmapNode(final int bitmap, final Object[] slots, final int size)
+        {
+            super(slots, size);
+            this.bitmap = bitmap;
+        }
+
+        static BitmapNode of(final int shift, final Entry entry)
+        {
+            return new BitmapNode(bitOf(entry.hash, shift), new Object[] {entry}, 1);
+        }
+
+        int indexOf(final int bit)
+        {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Node put(final int shift, final Entry entry)
+        {
+            int bit = bitOf(entry.hash, shift);
+            int index = indexOf(bit);
+            if ((bitmap & bit) == 0)
+            {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = entry;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                return new BitmapNode(bitmap | bit, newSlots, size + 1);
+            }
+
+            Object slot = slots[index];
+            if (slot instanceof Entry)
+            {
+                Entry existing = (Entry) slot;
+                if (existing.hash == entry.hash && existing.key.equals(entry.key))
+                {
+                    if (existing.value == entry.value)
+                    {
+                        return this;
+                    }
+                    return withSlot(index, entry, size);
+                }
+                Node child = merge(shift + BITS_PER_LEVEL, existing, existing.hash, entry);
+                return withSlot(index, child, size + 1);
+            }
+
+            Node child = (Node) slot;
+            Node newChild = child.put(shift + BITS_PER_LEVEL, entry);
+            if (newChild == child)
+            {
+                return this;
+            }
+            return withSlot(index, newChild, size + newChild.size - child.size);
+        }
+
+        @Override
+        Node remove(final int shift, final int hash, final Object key)
+        {
+            int bit = bitOf(hash, shift);
+            if ((bitmap & bit) == 0)
+            {
+                return this;
+            }
+            int index = indexOf(bit);
+            Object slot = slots[index];
+
+            if (slot instanceof Entry)
+            {
+                Entry existing = (Entry) slot;
+                if (existing.hash != hash || !existing.key.equals(key))
+                {
+                    return this;
+                }
+                return withoutSlot(index, bit);
+            }
+
+            Node child = (Node) slot;
+            Node newChild = child.remove(shift + BITS_PER_LEVEL, hash, key);
+            if (newChild == child)
+            {
+                return this;
+            }
+            if (newChild == null)
+            {
+                return withoutSlot(index, bit);
+            }
+
+            // a child left with one entry is folded back into this node
+            Entry single = newChild.singleEntry();
+            return withSlot(index, single != null ? single : newChild, size - 1);
+        }
+
+        private BitmapNode withSlot(final int index, final Object slot, final int newSize)
+        {
+            Object[] newSlots = slots.clone();
+            newSlots[index] = slot;
+            return new BitmapNode(bitmap, newSlots, newSize);
+        }
+
+        private BitmapNode withoutSlot(final int index, final int bit)
+        {
+            if (slots.length == 1)
+            {
+                return null;
+            }
+            Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            System.arraycopy(slots, index + 1, newSlots, index, newSlots.length - index);
+            return new BitmapNode(bitmap ^ bit, newSlots, size - 1);
+        }
+    }
+
+    /**
+     * a node for keys whose full hashes are equal
+     */
+    static final class CollisionNode extends Node {
+
+        final int hash;
+
+        CollisionNode(final int hash, final Object[] entries)
+        {
+            super(entries, entries.length);
+            this.hash = hash;
+        }
+
+        Object get(final int keyHash, final Object key)
+        {
+            if (keyHash != hash)
+            {
+                return null;
+            }
+            for (Object slot : slots)
+            {
+                Entry entry = (Entry) slot;
+                if (entry.key.equals(key))
+                {
+                    return entry.value;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        Node put(final int shift, final Entry entry)
+        {
+            if (entry.hash != hash)
+            {
+                return merge(shift, this, hash, entry);
+            }
+            for (int index = 0; index < slots.length; index++)
+            {
+                Entry existing = (Entry) slots[index];
+                if (existing.key.equals(entry.key))
+                {
+                    if (existing.value == entry.value)
+                    {
+                        return this;
+                    }
+                    Object[] newSlots = slots.clone();
+                    newSlots[index] = entry;
+                    return new CollisionNode(hash, newSlots);
+                }
+            }
+            Object[] newSlots = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, newSlots, 0, slots.length);
+            newSlots[slots.length] = entry;
+            return new CollisionNode(hash, newSlots);
+        }
+
+        @Override
+        Node remove(final int shift, final int keyHash, final Object key)
+        {
+            if (keyHash != hash)
+            {
+                return this;
+            }
+            for (int index = 0; index < slots.length; index++)
+            {
+                if (((Entry) slots[index]).key.equals(key))
+                {
+                    if (slots.length == 1)
+                    {
+                        return null;
+                    }
+                    Object[] newSlots = new Object[slots.length - 1];
+                    System.arraycopy(slots, 0, newSlots, 0, index);
+                    System.arraycopy(slots, index + 1, newSlots, index, newSlots.length - index);
+                    return new CollisionNode(hash, newSlots);
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * depth-first iterator over the values under a range of one node's slots
+     */
+    private static final class ValueIterator<V> implements Iterator<V> {
+
+        private final ArrayDeque<Object[]> slotStack = new ArrayDeque<>();
+        private final ArrayDeque<Integer> indexStack = new ArrayDeque<>();
+        private final int to;
+        private Object[] slots;
+        private int index;
+        private Entry next;
+
+        ValueIterator(final Node root)
+        {
+            this(root == null ? null : root.slots, 0, root == null ? 0 : root.slots.length);
+        }
+
+        ValueIterator(final Object[] slots, final int from, final int to)
+        {
+            this.slots = slots;
+            this.index = from;
+            this.to = to;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next()
+        {
+            if (next == null)
+            {
+                throw new NoSuchElementException();
+            }
+            Entry entry = next;
+            advance();
+            return (V) entry.value;
+        }
+
+        private void advance()
+        {
+            next = null;
+            while (slots != null)
+            {
+                // the range limit applies only to the slots the iterator started in
+                if (index < (slotStack.isEmpty() ? to : slots.length))
+                {
+                    Object slot = slots[index++];
+                    if (slot instanceof Entry)
+                    {
+                        next = (Entry) slot;
+                        return;
+                    }
+                    slotStack.push(slots);
+                    indexStack.push(index);
+                    slots = ((Node) slot).slots;
+                    index = 0;
+                }
+                else if (slotStack.isEmpty())
+                {
+                    slots = null;
+                }
+                else
+                {
+                    slots = slotStack.pop();
+                    index = indexStack.pop();
+                }
+            }
+        }
+    }
+
+    /**
+     * spliterator over the values under a range of one node's slots
+     */
+    private static final class ValueSpliterator<V> implements Spliterator<V> {
+
+        private Object[] slots;
+        private int from;
+        private int to;
+        private long size;
+        private ValueIterator<V> iterator;
+
+        ValueSpliterator(final Object[] slots, final int from, final int to, final long size)
+        {
+            this.slots = slots;
+            this.from = from;
+            this.to = to;
+            this.size = size;
+        }
+
+        @Override
+        public Spliterator<V> trySplit()
+        {
+            if (iterator != null)
+            {
+                return null;
+            }
+
+            // a range of one child node is replaced by that node's own slots
+            while (to - from == 1 && slots[from] instanceof Node)
+            {
+                slots = ((Node) slots[from]).slots;
+                from = 0;
+                to = slots.length;
+            }
+            if (to - from < 2)
+            {
+                return null;
+            }
+
+            // the last boundary before the prefix would hold more than half of the entries
+            long half = size / 2;
+            long prefixSize = 0;
+            int split = from;
+            while (split < to - 1 && prefixSize + sizeOf(slots[split]) <= half)
+            {
+                prefixSize += sizeOf(slots[split]);
+                split++;
+            }
+            if (split == from)
+            {
+                prefixSize = sizeOf(slots[from]);
+                split++;
+            }
+
+            ValueSpliterator<V> prefix = new ValueSpliterator<>(slots, from, split, prefixSize);
+            from = split;
+            size -= prefixSize;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super V> action)
+        {
+            if (iterator == null)
+            {
+                iterator = new ValueIterator<>(slots, from, to);
+            }
+            if (!iterator.hasNext())
+            {
+                return false;
+            }
+            size--;
+            action.accept(iterator.next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super V> action)
+        {
+            if (iterator != null)
+            {
+                while (tryAdvance(action))
+                {
+                    // tryAdvance does the work
+                }
+                return;
+            }
+            for (int index = from; index < to; index++)
+            {
+                forEach(slots[index], action);
+            }
+            from = to;
+            size = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> void forEach(final Object slot, final Consumer<? super V> action)
+        {
+            if (slot instanceof Entry)
+            {
+                action.accept((V) ((Entry) slot).value);
+                return;
+            }
+            for (Object child : ((Node) slot).slots)
+            {
+                forEach(child, action);
+            }
+        }
+
+        @Override
+        public long estimateSize()
+        {
+            return size;
+        }
+
+        @Override
+        public int characteristics()
+        {
+            return SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+}
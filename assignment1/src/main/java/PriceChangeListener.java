@@ -0,0 +1,21 @@
+/**
+ * Interface: PriceChangeListener
+ *
+ * Told by a Property whenever its price changes, so that whoever indexes the
+ * property by price (an Agency) can keep its indexes and aggregates current.
+ *
+ * Methods:
+ *      1. priceChanged(property, oldPriceUsd): called after the new price is set
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+interface PriceChangeListener {
+
+    /**
+     * priceChanged method
+     * @param property      - the property whose price changed; getPriceUsd() returns the new price
+     * @param oldPriceUsd   - the price before the change
+     */
+    void priceChanged(Property property, double oldPriceUsd);
+}
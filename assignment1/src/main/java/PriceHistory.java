@@ -0,0 +1,323 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Class: PriceHistory
+ *
+ * Every price a property has had, with the time it was set, packed into a byte array.
+ * Each change is stored as the difference from the previous one: the time difference in
+ * milliseconds as a varint, and the price difference in cents zig-zag encoded as a varint.
+ * A typical change therefore takes four to six bytes instead of sixteen.
+ *
+ * Every CHECKPOINT_INTERVAL changes, the absolute time, price and byte offset are also
+ * kept in small primitive arrays, so priceAt(time) binary searches the checkpoints and
+ * decodes at most CHECKPOINT_INTERVAL changes.
+ *
+ * Instance Variables:
+ *      1. Data (byte[]: the encoded changes)
+ *      2. Length (int: bytes of data in use)
+ *      3. Count (int: number of changes recorded)
+ *      4. First and last time (long: epoch milliseconds of the first and latest change)
+ *      5. Last price in cents (long: the latest price)
+ *      6. Checkpoints (long[] times, long[] prices in cents, int[] offsets)
+ *
+ * Methods:
+ *      1. record(epochMillis, priceUsd): appends a change (times must not go backwards)
+ *      2. priceAt(epochMillis): returns the price in effect at that time...or NaN before the first change
+ *      3. getCount(), getFirstMillis(), getLastMillis()
+ *      4. estimateBytes(): returns the bytes this history retains
+ *      5. estimateInitialBytes(): returns the bytes a new history retains
+ *      6. writeTo(output), readFrom(input): copy the encoded history out and back in (for cold storage)
+ *      7. roundToCent(priceUsd): returns a price as a history keeps it
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public class PriceHistory {
+
+    private byte[] data;
+    private int length;
+    private int count;
+    private long firstMillis;
+    private long lastMillis;
+    private long lastCents;
+    private long[] checkpointMillis;
+    private long[] checkpointCents;
+    private int[] checkpointOffsets;
+
+    static final int CHECKPOINT_INTERVAL = 32;
+    private static final int INITIAL_DATA_BYTES = 16;
+    private static final int INITIAL_CHECKPOINTS = 1;
+    private static final int MAXIMUM_VARINT_BYTES = 10;
+    private static final double CENTS_PER_DOLLAR = 100.0;
+    private static final int VARINT_PAYLOAD_BITS = 7;
+    private static final int VARINT_PAYLOAD_MASK = 0x7F;
+    private static final int VARINT_CONTINUATION = 0x80;
+
+    /**
+     * constructor
+     */
+    PriceHistory()
+    {
+        this.data = new byte[INITIAL_DATA_BYTES];
+        this.checkpointMillis = new long[INITIAL_CHECKPOINTS];
+        this.checkpointCents = new long[INITIAL_CHECKPOINTS];
+        this.checkpointOffsets = new int[INITIAL_CHECKPOINTS];
+    }
+
+    /**
+     * record method
+     * @param epochMillis   - time the price was set; not earlier than the latest change
+     * @param priceUsd      - the new price (kept to the cent)
+     */
+    synchronized void record(final long epochMillis, final double priceUsd)
+    {
+        if (count > 0 && epochMillis < lastMillis)
+        {
+            throw new IllegalArgumentException("Invalid time: " + epochMillis);
+        }
+
+        long cents = centsOf(priceUsd);
+        if (count % CHECKPOINT_INTERVAL == 0)
+        {
+            int checkpoint = count / CHECKPOINT_INTERVAL;
+            if (checkpoint == checkpointMillis.length)
+            {
+                checkpointMillis = Arrays.copyOf(checkpointMillis, checkpoint * 2);
+                checkpointCents = Arrays.copyOf(checkpointCents, checkpoint * 2);
+                checkpointOffsets = Arrays.copyOf(checkpointOffsets, checkpoint * 2);
+            }
+            checkpointMillis[checkpoint] = epochMillis;
+            checkpointCents[checkpoint] = cents;
+            checkpointOffsets[checkpoint] = length;
+        }
+
+        if (count == 0)
+        {
+            firstMillis = epochMillis;
+            writeVarint(epochMillis);
+            writeVarint(zigZag(cents));
+        }
+        else
+        {
+            writeVarint(epochMillis - lastMillis);
+            writeVarint(zigZag(cents - lastCents));
+        }
+        lastMillis = epochMillis;
+        lastCents = cents;
+        count++;
+    }
+
+    /**
+     * priceAt method
+     * @param epochMillis   - a time
+     * @return              - the price in effect at that time, or NaN if it is before the first change
+     */
+    public synchronized double priceAt(final long epochMillis)
+    {
+        if (count == 0 || epochMillis < firstMillis)
+        {
+            return Double.NaN;
+        }
+        if (epochMillis >= lastMillis)
+        {
+            return lastCents / CENTS_PER_DOLLAR;
+        }
+
+        // last checkpoint at or before the time
+        int checkpoints = (count + CHECKPOINT_INTERVAL - 1) / CHECKPOINT_INTERVAL;
+        int low = 0;
+        int high = checkpoints - 1;
+        while (low < high)
+        {
+            int middle = (low + high + 1) >>> 1;
+            if (checkpointMillis[middle] <= epochMillis)
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+
+        // decode forward from the checkpoint until the next change is after the time
+        int[] offset = {checkpointOffsets[low]};
+        int index = low * CHECKPOINT_INTERVAL;
+        long millis = 0;
+        long cents = 0;
+        if (index == 0)
+        {
+            millis = readVarint(offset);
+            cents = unZigZag(readVarint(offset));
+        }
+        else
+        {
+            readVarint(offset);
+            readVarint(offset);
+            millis = checkpointMillis[low];
+            cents = checkpointCents[low];
+        }
+        for (index++; index < count; index++)
+        {
+            long nextMillis = millis + readVarint(offset);
+            long nextCents = cents + unZigZag(readVarint(offset));
+            if (nextMillis > epochMillis)
+            {
+                break;
+            }
+            millis = nextMillis;
+            cents = nextCents;
+        }
+        return cents / CENTS_PER_DOLLAR;
+    }
+
+    /**
+     * getters
+     * @return count, firstMillis, lastMillis
+     */
+    public synchronized int getCount()
+    {
+        return count;
+    }
+
+    public synchronized long getFirstMillis()
+    {
+        return firstMillis;
+    }
+
+    public synchronized long getLastMillis()
+    {
+        return lastMillis;
+    }
+
+    /**
+     * estimateBytes method
+     * @return - bytes of this object and its arrays
+     */
+    synchronized long estimateBytes()
+    {
+        return MemoryEstimator.shallowSizeOf(PriceHistory.class)
+                + MemoryEstimator.sizeOfArray(data.length, Byte.BYTES)
+                + MemoryEstimator.sizeOfArray(checkpointMillis.length, Long.BYTES)
+                + MemoryEstimator.sizeOfArray(checkpointCents.length, Long.BYTES)
+                + MemoryEstimator.sizeOfArray(checkpointOffsets.length, Integer.BYTES);
+    }
+
+    /**
+     * roundToCent method
+     * @param priceUsd  - a price
+     * @return          - the price priceAt returns once it has been recorded
+     */
+    static double roundToCent(final double priceUsd)
+    {
+        return centsOf(priceUsd) / CENTS_PER_DOLLAR;
+    }
+
+    /**
+     * estimateInitialBytes method
+     * @return - bytes of a history before its arrays grow
+     */
+    static long estimateInitialBytes()
+    {
+        return MemoryEstimator.shallowSizeOf(PriceHistory.class)
+                + MemoryEstimator.sizeOfArray(INITIAL_DATA_BYTES, Byte.BYTES)
+                + MemoryEstimator.sizeOfArray(INITIAL_CHECKPOINTS, Long.BYTES)
+                + MemoryEstimator.sizeOfArray(INITIAL_CHECKPOINTS, Long.BYTES)
+                + MemoryEstimator.sizeOfArray(INITIAL_CHECKPOINTS, Integer.BYTES);
+    }
+
+    /**
+     * writeTo method
+     * @param output        - where to write the history, as it is encoded in memory
+     * @throws IOException  - if output fails
+     */
+    synchronized void writeTo(final DataOutput output) throws IOException
+    {
+        int checkpoints = (count + CHECKPOINT_INTERVAL - 1) / CHECKPOINT_INTERVAL;
+        output.writeInt(count);
+        output.writeLong(firstMillis);
+        output.writeLong(lastMillis);
+        output.writeLong(lastCents);
+        output.writeInt(length);
+        output.write(data, 0, length);
+        for (int checkpoint = 0; checkpoint < checkpoints; checkpoint++)
+        {
+            output.writeLong(checkpointMillis[checkpoint]);
+            output.writeLong(checkpointCents[checkpoint]);
+            output.writeInt(checkpointOffsets[checkpoint]);
+        }
+    }
+
+    /**
+     * readFrom method: replaces this history with one written by writeTo
+     * @param input         - where to read
+     * @throws IOException  - if input fails or ends early
+     */
+    synchronized void readFrom(final DataInput input) throws IOException
+    {
+        count = input.readInt();
+        firstMillis = input.readLong();
+        lastMillis = input.readLong();
+        lastCents = input.readLong();
+        length = input.readInt();
+        data = new byte[Math.max(INITIAL_DATA_BYTES, length)];
+        input.readFully(data, 0, length);
+        int checkpoints = (count + CHECKPOINT_INTERVAL - 1) / CHECKPOINT_INTERVAL;
+        checkpointMillis = new long[Math.max(INITIAL_CHECKPOINTS, checkpoints)];
+        checkpointCents = new long[checkpointMillis.length];
+        checkpointOffsets = new int[checkpointMillis.length];
+        for (int checkpoint = 0; checkpoint < checkpoints; checkpoint++)
+        {
+            checkpointMillis[checkpoint] = input.readLong();
+            checkpointCents[checkpoint] = input.readLong();
+            checkpointOffsets[checkpoint] = input.readInt();
+        }
+    }
+
+    private void writeVarint(long value)
+    {
+        if (length + MAXIMUM_VARINT_BYTES > data.length)
+        {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + MAXIMUM_VARINT_BYTES));
+        }
+        while ((value & ~VARINT_PAYLOAD_MASK) != 0)
+        {
+            data[length++] = (byte) ((value & VARINT_PAYLOAD_MASK) | VARINT_CONTINUATION);
+            value >>>= VARINT_PAYLOAD_BITS;
+        }
+        data[length++] = (byte) value;
+    }
+
+    private long readVarint(final int[] offset)
+    {
+        long value = 0;
+        int shift = 0;
+        byte current;
+        do
+        {
+            current = data[offset[0]++];
+            value |= (long) (current & VARINT_PAYLOAD_MASK) << shift;
+            shift += VARINT_PAYLOAD_BITS;
+        }
+        while ((current & VARINT_CONTINUATION) != 0);
+        return value;
+    }
+
+    private static long zigZag(final long value)
+    {
+        return (value << 1) ^ (value >> (Long.SIZE - 1));
+    }
+
+    private static long unZigZag(final long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long centsOf(final double priceUsd)
+    {
+        return Math.round(priceUsd * CENTS_PER_DOLLAR);
+    }
+}
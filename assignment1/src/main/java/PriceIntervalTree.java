@@ -0,0 +1,268 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Class: PriceIntervalTree
+ *
+ * The saved searches of one SavedSearchEngine bucket, arranged by price range so that
+ * the searches whose range contains a price are found in O(log^2 n + matches) instead of
+ * testing every search. The searches are split into levels, and each level is a centered
+ * interval tree: each node takes the median of its ranges' endpoints as its center, keeps
+ * the ranges that contain the center (sorted by lowest price and, separately, by highest
+ * price) and passes the ranges wholly below or above it to its two children. At each node
+ * a lookup reads only the sorted ranges that contain the price, stopping at the first that
+ * does not.
+ *
+ * A tree is immutable, and a new one shares every level it does not change. Adding searches
+ * works like a binary counter: level k holds at most 2^k searches, and with(search) builds
+ * the new search together with the full levels below the first free one into that level, so
+ * each search is rebuilt O(log n) times over its life and an add costs O(log^2 n) amortized
+ * rather than a rebuild of the whole bucket. without(searchId) rebuilds only the level that
+ * holds the search.
+ *
+ * Instance Variables:
+ *      1. Roots (Node[]: the tree of each level, null where the level is empty)
+ *      2. Levels (SavedSearch[][]: the searches of each level, for building the next tree)
+ *      3. Size (int: number of searches)
+ *
+ * Methods:
+ *      1. with(search), withAll(searches), without(searchId): return a tree with the searches added or removed
+ *      2. stab(priceUsd, action): calls action with every search whose price range contains priceUsd
+ *      3. size()
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class PriceIntervalTree {
+
+    static final PriceIntervalTree EMPTY = new PriceIntervalTree(new Node[0], new SavedSearch[0][], 0);
+
+    private static final Comparator<SavedSearch> BY_MIN = Comparator.comparingDouble(SavedSearch::getMinUsd);
+    private static final Comparator<SavedSearch> BY_MAX_DESCENDING =
+            Comparator.comparingDouble(SavedSearch::getMaxUsd).reversed();
+
+    private final Node[] roots;
+    private final SavedSearch[][] levels;
+    private final int size;
+
+    private PriceIntervalTree(final Node[] roots, final SavedSearch[][] levels, final int size)
+    {
+        this.roots = roots;
+        this.levels = levels;
+        this.size = size;
+    }
+
+    /**
+     * with method
+     * @param search    - a search not in this tree
+     * @return          - a tree of this tree's searches and search
+     */
+    PriceIntervalTree with(final SavedSearch search)
+    {
+        return withAll(List.of(search));
+    }
+
+    /**
+     * withAll method
+     * @param added - searches not in this tree, with distinct ids
+     * @return      - a tree of this tree's searches and the added ones; they are built into one level together
+     */
+    PriceIntervalTree withAll(final List<SavedSearch> added)
+    {
+        if (added.isEmpty())
+        {
+            return this;
+        }
+
+        // the first level that can hold the added searches, then the first free one at or above it,
+        // taking in the full levels passed on the way (so level k still holds at most 2^k)
+        ArrayList<SavedSearch> carried = new ArrayList<>(added);
+        int first = Integer.SIZE - Integer.numberOfLeadingZeros(added.size() - 1);
+        int level = first;
+        while (level < levels.length && levels[level] != null)
+        {
+            carried.addAll(Arrays.asList(levels[level]));
+            level++;
+        }
+        int depth = Math.max(levels.length, level + 1);
+        Node[] grownRoots = Arrays.copyOf(roots, depth);
+        SavedSearch[][] grownLevels = Arrays.copyOf(levels, depth);
+        for (int emptied = first; emptied < level; emptied++)
+        {
+            grownRoots[emptied] = null;
+            grownLevels[emptied] = null;
+        }
+        grownLevels[level] = carried.toArray(new SavedSearch[0]);
+        grownRoots[level] = build(carried);
+        return new PriceIntervalTree(grownRoots, grownLevels, size + added.size());
+    }
+
+    /**
+     * without method
+     * @param searchId  - id of a search
+     * @return          - a tree of this tree's searches except that one (this tree if it is not here)
+     */
+    PriceIntervalTree without(final String searchId)
+    {
+        for (int level = 0; level < levels.length; level++)
+        {
+            if (levels[level] == null)
+            {
+                continue;
+            }
+            ArrayList<SavedSearch> remaining = new ArrayList<>(levels[level].length);
+            for (SavedSearch search : levels[level])
+            {
+                if (!search.getSearchId().equals(searchId))
+                {
+                    remaining.add(search);
+                }
+            }
+            if (remaining.size() < levels[level].length)
+            {
+                if (size == 1)
+                {
+                    return EMPTY;
+                }
+                Node[] shrunkRoots = roots.clone();
+                SavedSearch[][] shrunkLevels = levels.clone();
+                shrunkLevels[level] = remaining.isEmpty() ? null : remaining.toArray(new SavedSearch[0]);
+                shrunkRoots[level] = build(remaining);
+                return new PriceIntervalTree(shrunkRoots, shrunkLevels, size - 1);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * stab method
+     * @param priceUsd  - a price
+     * @param action    - called once with every search whose price range contains priceUsd
+     */
+    void stab(final double priceUsd, final Consumer<SavedSearch> action)
+    {
+        for (Node root : roots)
+        {
+            stab(root, priceUsd, action);
+        }
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    private static void stab(final Node root, final double priceUsd, final Consumer<SavedSearch> action)
+    {
+        Node node = root;
+        while (node != null)
+        {
+            if (priceUsd < node.center)
+            {
+                // every range here reaches the center, so it contains the price if it starts at or below it
+                for (SavedSearch search : node.byMin)
+                {
+                    if (search.getMinUsd() > priceUsd)
+                    {
+                        break;
+                    }
+                    action.accept(search);
+                }
+                node = node.left;
+            }
+            else if (priceUsd > node.center)
+            {
+                for (SavedSearch search : node.byMaxDescending)
+                {
+                    if (search.getMaxUsd() < priceUsd)
+                    {
+                        break;
+                    }
+                    action.accept(search);
+                }
+                node = node.right;
+            }
+            else
+            {
+                for (SavedSearch search : node.byMin)
+                {
+                    action.accept(search);
+                }
+                return;
+            }
+        }
+    }
+
+    private static Node build(final List<SavedSearch> ranges)
+    {
+        if (ranges.isEmpty())
+        {
+            return null;
+        }
+
+        // the median endpoint is an endpoint of some range, so at least one range stays at this node
+        double[] endpoints = new double[ranges.size() * 2];
+        for (int index = 0; index < ranges.size(); index++)
+        {
+            endpoints[2 * index] = ranges.get(index).getMinUsd();
+            endpoints[2 * index + 1] = ranges.get(index).getMaxUsd();
+        }
+        Arrays.sort(endpoints);
+        double center = endpoints[endpoints.length / 2];
+
+        List<SavedSearch> below = new ArrayList<>();
+        List<SavedSearch> above = new ArrayList<>();
+        List<SavedSearch> containing = new ArrayList<>();
+        for (SavedSearch range : ranges)
+        {
+            if (range.getMaxUsd() < center)
+            {
+                below.add(range);
+            }
+            else if (range.getMinUsd() > center)
+            {
+                above.add(range);
+            }
+            else
+            {
+                containing.add(range);
+            }
+        }
+
+        SavedSearch[] byMin = containing.toArray(new SavedSearch[0]);
+        SavedSearch[] byMaxDescending = byMin.clone();
+        Arrays.sort(byMin, BY_MIN);
+        Arrays.sort(byMaxDescending, BY_MAX_DESCENDING);
+        return new Node(center, byMin, byMaxDescending, build(below), build(above));
+    }
+
+    /**
+     * Class: Node
+     *
+     * The ranges containing one center price, and the subtrees of the ranges below and above it.
+     */
+    private static final class Node {
+
+        private final double center;
+        private final SavedSearch[] byMin;
+        private final SavedSearch[] byMaxDescending;
+        private final Node left;
+        private final Node right;
+
+        private Node(final double center,
+                     final SavedSearch[] byMin,
+                     final SavedSearch[] byMaxDescending,
+                     final Node left,
+                     final Node right)
+        {
+            this.center = center;
+            this.byMin = byMin;
+            this.byMaxDescending = byMaxDescending;
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
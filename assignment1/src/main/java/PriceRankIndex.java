@@ -0,0 +1,516 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Class: PriceRankIndex
+ *
+ * A two-dimensional range index over (bedrooms, price). Bedrooms take only 20 values, so the
+ * index keeps one price-ordered tree per bedroom count, and a rectangle query reads one price
+ * range from each bedroom count it covers: at most 20 searches of O(log n) plus the size of the
+ * output, however the two ranges are shaped. Each tree is a treap whose nodes also hold the
+ * number of listings and the total price under them, so the listings in a rectangle can also be
+ * counted and summed without visiting them, along two root-to-leaf paths per bedroom count.
+ *
+ * The index is immutable, like PersistentMap: put and remove copy only the nodes on the path
+ * they change and return a new index sharing the rest, so Agency publishes each version in its
+ * AgencySnapshot and queries read it without locks, at the same point in time as everything else.
+ * A node's priority is a hash of its property id, so every version agrees on the shape without
+ * keeping a generator. Subtree totals are recomputed from the children in every new node rather
+ * than adjusted by differences, so removing and re-adding a price never leaves rounding error behind.
+ *
+ * Instance Variables:
+ *      1. Roots (Node[]; index is number of bedrooms, value is the root of that bedroom count's treap)
+ *      2. Size (int: number of listings indexed)
+ *
+ * Methods:
+ *      1. empty(), of(listings): return the empty index, or one of the listings built in O(n log n)
+ *      2. put(listing), remove(listing): return an index with the listing added or removed
+ *      3. query(minUsd, maxUsd, minBedrooms, maxBedrooms): returns the listings in the rectangle,
+ *          by bedrooms and then by price
+ *      4. count(minUsd, maxUsd, minBedrooms, maxBedrooms): returns the number of listings in the rectangle
+ *      5. sum(minUsd, maxUsd, minBedrooms, maxBedrooms): returns their total price
+ *      6. size(), estimateBytes(), estimateBytesPerListing()
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class PriceRankIndex {
+
+    private static final int MINIMUM_NUMBER_OF_BEDROOMS = 1;
+    private static final int MAXIMUM_NUMBER_OF_BEDROOMS = 20;
+    private static final int FMIX_SHIFT_A = 16;
+    private static final int FMIX_SHIFT_B = 13;
+    private static final int FMIX_MULTIPLIER_A = 0x85EBCA6B;
+    private static final int FMIX_MULTIPLIER_B = 0xC2B2AE35;
+    private static final Comparator<Listing> BY_PRICE_AND_ID =
+            Comparator.comparingDouble(Listing::getPriceUsd).thenComparing(Listing::getPropertyId);
+
+    private static final PriceRankIndex EMPTY = new PriceRankIndex(new Node[MAXIMUM_NUMBER_OF_BEDROOMS + 1], 0);
+
+    private final Node[] roots;
+    private final int size;
+
+    private PriceRankIndex(final Node[] roots, final int size)
+    {
+        this.roots = roots;
+        this.size = size;
+    }
+
+    /**
+     * empty method
+     * @return - the empty index
+     */
+    static PriceRankIndex empty()
+    {
+        return EMPTY;
+    }
+
+    /**
+     * of method
+     * @param listings  - listings with distinct ids, each at the price it is indexed under
+     * @return          - an index of the listings; each treap is built from its sorted listings in one pass
+     */
+    static PriceRankIndex of(final Iterable<Listing> listings)
+    {
+        List<List<Listing>> byBedrooms = new ArrayList<>(MAXIMUM_NUMBER_OF_BEDROOMS + 1);
+        for (int bedrooms = 0; bedrooms <= MAXIMUM_NUMBER_OF_BEDROOMS; bedrooms++)
+        {
+            byBedrooms.add(new ArrayList<>());
+        }
+        int size = 0;
+        for (Listing listing : listings)
+        {
+            byBedrooms.get(listing.getNumberOfBedrooms()).add(listing);
+            size++;
+        }
+        Node[] roots = new Node[MAXIMUM_NUMBER_OF_BEDROOMS + 1];
+        for (int bedrooms = MINIMUM_NUMBER_OF_BEDROOMS; bedrooms <= MAXIMUM_NUMBER_OF_BEDROOMS; bedrooms++)
+        {
+            List<Listing> sorted = byBedrooms.get(bedrooms);
+            sorted.sort(BY_PRICE_AND_ID);
+            roots[bedrooms] = build(sorted);
+        }
+        return size == 0 ? EMPTY : new PriceRankIndex(roots, size);
+    }
+
+    /**
+     * put method
+     * @param listing   - a listing whose id is not in the index, at the price it is indexed under
+     * @return          - an index of this index's listings and listing
+     */
+    PriceRankIndex put(final Listing listing)
+    {
+        int bedrooms = listing.getNumberOfBedrooms();
+        Node[] changed = roots.clone();
+        changed[bedrooms] = insert(roots[bedrooms], new Node(listing, priorityOf(listing.getPropertyId()), null, null));
+        return new PriceRankIndex(changed, size + 1);
+    }
+
+    /**
+     * remove method
+     * @param listing   - a listing put earlier (with the same price)
+     * @return          - an index without it (this index if it was not put)
+     */
+    PriceRankIndex remove(final Listing listing)
+    {
+        int bedrooms = listing.getNumberOfBedrooms();
+        Node root = remove(roots[bedrooms], listing.getPriceUsd(), listing.getPropertyId());
+        if (root == roots[bedrooms])
+        {
+            return this;
+        }
+        if (size == 1)
+        {
+            return EMPTY;
+        }
+        Node[] changed = roots.clone();
+        changed[bedrooms] = root;
+        return new PriceRankIndex(changed, size - 1);
+    }
+
+    /**
+     * query method
+     * @param minUsd        - minimum price in usd
+     * @param maxUsd        - maximum price in usd
+     * @param minBedrooms   - minimum number of bedroom
+     * @param maxBedrooms   - maximum number of bedroom
+     * @return              - the listings in both ranges, by number of bedrooms and then by price
+     */
+    List<Listing> query(final double minUsd, final double maxUsd, final int minBedrooms, final int maxBedrooms)
+    {
+        List<Listing> matches = new ArrayList<>();
+        for (int bedrooms = Math.max(minBedrooms, MINIMUM_NUMBER_OF_BEDROOMS);
+             bedrooms <= Math.min(maxBedrooms, MAXIMUM_NUMBER_OF_BEDROOMS); bedrooms++)
+        {
+            collect(splitNode(roots[bedrooms], minUsd, maxUsd), minUsd, maxUsd, matches);
+        }
+        return matches;
+    }
+
+    /**
+     * count method
+     * @param minUsd        - minimum price in usd
+     * @param maxUsd        - maximum price in usd
+     * @param minBedrooms   - minimum number of bedroom
+     * @param maxBedrooms   - maximum number of bedroom
+     * @return              - the number of listings in both ranges
+     */
+    int count(final double minUsd, final double maxUsd, final int minBedrooms, final int maxBedrooms)
+    {
+        int count = 0;
+        for (int bedrooms = Math.max(minBedrooms, MINIMUM_NUMBER_OF_BEDROOMS);
+             bedrooms <= Math.min(maxBedrooms, MAXIMUM_NUMBER_OF_BEDROOMS); bedrooms++)
+        {
+            Node split = splitNode(roots[bedrooms], minUsd, maxUsd);
+            if (split != null)
+            {
+                count += 1 + countAtLeast(split.left, minUsd) + countAtMost(split.right, maxUsd);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * sum method
+     * @param minUsd        - minimum price in usd
+     * @param maxUsd        - maximum price in usd
+     * @param minBedrooms   - minimum number of bedroom
+     * @param maxBedrooms   - maximum number of bedroom
+     * @return              - the total price in USD of the listings in both ranges
+     */
+    double sum(final double minUsd, final double maxUsd, final int minBedrooms, final int maxBedrooms)
+    {
+        double sum = 0;
+        for (int bedrooms = Math.max(minBedrooms, MINIMUM_NUMBER_OF_BEDROOMS);
+             bedrooms <= Math.min(maxBedrooms, MAXIMUM_NUMBER_OF_BEDROOMS); bedrooms++)
+        {
+            Node split = splitNode(roots[bedrooms], minUsd, maxUsd);
+            if (split != null)
+            {
+                sum += split.priceUsd + sumAtLeast(split.left, minUsd) + sumAtMost(split.right, maxUsd);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * size method
+     * @return - the number of listings indexed
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * estimateBytes method
+     * @return - bytes of the nodes and the roots (not the listings); nodes shared with other versions are
+     *           counted here too
+     */
+    long estimateBytes()
+    {
+        return MemoryEstimator.shallowSizeOf(PriceRankIndex.class)
+                + MemoryEstimator.sizeOfArray(roots.length, MemoryEstimator.REFERENCE_BYTES)
+                + size * estimateBytesPerListing();
+    }
+
+    /**
+     * estimateBytesPerListing method
+     * @return - bytes one listing adds: its node
+     */
+    static long estimateBytesPerListing()
+    {
+        return MemoryEstimator.shallowSizeOf(Node.class);
+    }
+
+    /**
+     * build method
+     * @param sorted    - listings in (price, id) order
+     * @return          - the treap of them: each listing pops the lower-priority nodes on the right spine into
+     *                    its left subtree, so every node is pushed and popped once
+     */
+    private static Node build(final List<Listing> sorted)
+    {
+        // the shape is worked out on indexes first, then made into nodes bottom up, totals included
+        int[] priorities = new int[sorted.size()];
+        int[] lefts = new int[sorted.size()];
+        int[] rights = new int[sorted.size()];
+        Arrays.fill(lefts, -1);
+        Arrays.fill(rights, -1);
+        int[] spine = new int[sorted.size()];
+        int top = -1;
+        for (int index = 0; index < sorted.size(); index++)
+        {
+            priorities[index] = priorityOf(sorted.get(index).getPropertyId());
+            int last = -1;
+            while (top >= 0 && priorities[spine[top]] < priorities[index])
+            {
+                last = spine[top--];
+            }
+            lefts[index] = last;
+            if (top >= 0)
+            {
+                rights[spine[top]] = index;
+            }
+            spine[++top] = index;
+        }
+        return top < 0 ? null : link(spine[0], sorted, priorities, lefts, rights);
+    }
+
+    private static Node link(final int index, final List<Listing> sorted, final int[] priorities,
+                             final int[] lefts, final int[] rights)
+    {
+        Node left = lefts[index] < 0 ? null : link(lefts[index], sorted, priorities, lefts, rights);
+        Node right = rights[index] < 0 ? null : link(rights[index], sorted, priorities, lefts, rights);
+        return new Node(sorted.get(index), priorities[index], left, right);
+    }
+
+    /**
+     * splitNode method
+     * @return - the highest node whose price is in [minUsd, maxUsd]: every other node in range is below it
+     */
+    private static Node splitNode(Node node, final double minUsd, final double maxUsd)
+    {
+        while (node != null && (node.priceUsd < minUsd || node.priceUsd > maxUsd))
+        {
+            node = node.priceUsd < minUsd ? node.right : node.left;
+        }
+        return node;
+    }
+
+    /**
+     * collect method: adds the listings under node priced in [minUsd, maxUsd] to matches, in price order
+     */
+    private static void collect(final Node node, final double minUsd, final double maxUsd, final List<Listing> matches)
+    {
+        if (node == null)
+        {
+            return;
+        }
+        if (node.priceUsd >= minUsd)
+        {
+            collect(node.left, minUsd, maxUsd, matches);
+            if (node.priceUsd <= maxUsd)
+            {
+                matches.add(node.listing);
+            }
+        }
+        if (node.priceUsd <= maxUsd)
+        {
+            collect(node.right, minUsd, maxUsd, matches);
+        }
+    }
+
+    private static int countAtLeast(Node node, final double minUsd)
+    {
+        int count = 0;
+        while (node != null)
+        {
+            if (node.priceUsd >= minUsd)
+            {
+                count += 1 + sizeOf(node.right);
+                node = node.left;
+            }
+            else
+            {
+                node = node.right;
+            }
+        }
+        return count;
+    }
+
+    private static int countAtMost(Node node, final double maxUsd)
+    {
+        int count = 0;
+        while (node != null)
+        {
+            if (node.priceUsd <= maxUsd)
+            {
+                count += 1 + sizeOf(node.left);
+                node = node.right;
+            }
+            else
+            {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    private static double sumAtLeast(Node node, final double minUsd)
+    {
+        double sum = 0;
+        while (node != null)
+        {
+            if (node.priceUsd >= minUsd)
+            {
+                sum += node.priceUsd + sumOf(node.right);
+                node = node.left;
+            }
+            else
+            {
+                node = node.right;
+            }
+        }
+        return sum;
+    }
+
+    private static double sumAtMost(Node node, final double maxUsd)
+    {
+        double sum = 0;
+        while (node != null)
+        {
+            if (node.priceUsd <= maxUsd)
+            {
+                sum += node.priceUsd + sumOf(node.left);
+                node = node.right;
+            }
+            else
+            {
+                node = node.left;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * insert method
+     * @return - a copy of the treap under node with added in it; only the nodes on added's path are new
+     */
+    private static Node insert(final Node node, final Node added)
+    {
+        if (node == null)
+        {
+            return added;
+        }
+        if (compare(added.priceUsd, added.listing.getPropertyId(), node) < 0)
+        {
+            Node left = insert(node.left, added);
+            if (left.priority > node.priority)
+            {
+                // rotate right: the new left child rises above node
+                return left.with(left.left, node.with(left.right, node.right));
+            }
+            return node.with(left, node.right);
+        }
+        Node right = insert(node.right, added);
+        if (right.priority > node.priority)
+        {
+            // rotate left
+            return right.with(node.with(node.left, right.left), right.right);
+        }
+        return node.with(node.left, right);
+    }
+
+    /**
+     * remove method
+     * @return - the treap under node without the listing (node itself if it is not there)
+     */
+    private static Node remove(final Node node, final double priceUsd, final String propertyId)
+    {
+        if (node == null)
+        {
+            return null;
+        }
+        int comparison = compare(priceUsd, propertyId, node);
+        if (comparison == 0)
+        {
+            return merge(node.left, node.right);
+        }
+        if (comparison < 0)
+        {
+            Node left = remove(node.left, priceUsd, propertyId);
+            return left == node.left ? node : node.with(left, node.right);
+        }
+        Node right = remove(node.right, priceUsd, propertyId);
+        return right == node.right ? node : node.with(node.left, right);
+    }
+
+    /**
+     * merge method
+     * @return - one treap of the nodes of lower and higher, where every node of lower sorts before every node of
+     *           higher; only the nodes on the seam between them are new
+     */
+    private static Node merge(final Node lower, final Node higher)
+    {
+        if (lower == null)
+        {
+            return higher;
+        }
+        if (higher == null)
+        {
+            return lower;
+        }
+        if (lower.priority > higher.priority)
+        {
+            return lower.with(lower.left, merge(lower.right, higher));
+        }
+        return higher.with(merge(lower, higher.left), higher.right);
+    }
+
+    private static int compare(final double priceUsd, final String propertyId, final Node node)
+    {
+        int byPrice = Double.compare(priceUsd, node.priceUsd);
+        return byPrice != 0 ? byPrice : propertyId.compareTo(node.listing.getPropertyId());
+    }
+
+    private static int sizeOf(final Node node)
+    {
+        return node == null ? 0 : node.size;
+    }
+
+    private static double sumOf(final Node node)
+    {
+        return node == null ? 0 : node.sum;
+    }
+
+    /**
+     * priorityOf method
+     * @param propertyId    - an id
+     * @return              - its treap priority: the id's hash, mixed (MurmurHash3's finalizer) so that similar ids
+     *                        get unrelated priorities
+     */
+    private static int priorityOf(final String propertyId)
+    {
+        int hash = propertyId.hashCode();
+        hash ^= hash >>> FMIX_SHIFT_A;
+        hash *= FMIX_MULTIPLIER_A;
+        hash ^= hash >>> FMIX_SHIFT_B;
+        hash *= FMIX_MULTIPLIER_B;
+        hash ^= hash >>> FMIX_SHIFT_A;
+        return hash;
+    }
+
+    /**
+     * one listing: its price and the Listing, its priority (a parent's is never lower than its children's),
+     * and the number and total price of the listings in its subtree. Never changed once made.
+     */
+    private static final class Node {
+
+        private final double priceUsd;
+        private final Listing listing;
+        private final int priority;
+        private final int size;
+        private final double sum;
+        private final Node left;
+        private final Node right;
+
+        private Node(final Listing listing, final int priority, final Node left, final Node right)
+        {
+            this.priceUsd = listing.getPriceUsd();
+            this.listing = listing;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + sizeOf(left) + sizeOf(right);
+            this.sum = priceUsd + sumOf(left) + sumOf(right);
+        }
+
+        private Node with(final Node newLeft, final Node newRight)
+        {
+            return new Node(listing, priority, newLeft, newRight);
+        }
+    }
+}
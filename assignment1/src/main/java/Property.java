@@ -1,152 +1,286 @@
-/**
- * Class: Property
- *
- * Instance Variables:
- *      1. Price in USD (double, must be positive)
- *      2. Address (Address, not null)
- *      3. Number of bedrooms (int: must be 1 to 20)
- *      4. Swimming pool (boolean)
- *      5. Type (String: must be one of: “residence”, “commercial”, or “retail”)
- *      6. Property ID (String: must be one to six characters)
- *
- * Methods:
- *      1. Get methods for all instance variables
- *      2. Set method for price
- *
- * @author Nattanicha Nilsriphaiwan
- * @version 1.0
- */
-public class Property {
-
-    private double priceUsd;
-    private Address address;
-    private int numberOfBedrooms;
-    private boolean swimmingPool;
-    private String type;
-    private String propertyId;
-
-    private static final int LOWEST_PRICE_USD = 0;
-    private static final int MINIMUM_NUMBER_OF_BEDROOMS = 1;
-    private static final int MAXIMUM_NUMBER_OF_BEDROOMS = 20;
-    private static final int MINIMUM_PROPERTY_ID_LENGTH = 1;
-    private static final int MAXIMUM_PROPERTY_ID_LENGTH = 6;
-
-    /**
-     * constructor
-     * @param priceUsd           - price in USD
-     * @param address            - property's address
-     * @param numberOfBedrooms   - number of bedroom
-     * @param swimmingPool       - whether it has a swimming pool or not
-     * @param type               - type of property (“residence”, “commercial”, or “retail”)
-     * @param propertyId         - property ID
-     */
-    public Property(final double priceUsd,
-                    final Address address,
-                    final int numberOfBedrooms,
-                    final boolean swimmingPool,
-                    final String type,
-                    final String propertyId) {
-        // price check
-        if (priceUsd < LOWEST_PRICE_USD) {
-            throw new IllegalArgumentException("Invalid price: " + priceUsd);
-        }
-        else
-        {
-            this.priceUsd = priceUsd;
-        }
-
-        // address check
-        if (address == null)
-        {
-            throw new NullPointerException("Invalid address: " + address);
-        }
-        else {
-            this.address = address;
-        }
-
-        // numOfBedrooms check
-        if (numberOfBedrooms < MINIMUM_NUMBER_OF_BEDROOMS || numberOfBedrooms > MAXIMUM_NUMBER_OF_BEDROOMS)
-        {
-            throw new IllegalArgumentException("Invalid number of bedrooms: " + numberOfBedrooms);
-        }
-        else
-        {
-            this.numberOfBedrooms = numberOfBedrooms;
-        }
-
-        // swimmingPool check
-        this.swimmingPool = swimmingPool;
-
-        // type check
-        if (type == null || type.isBlank())
-        {
-            throw new NullPointerException("Invalid property type: " + type);
-        }
-        else if (type.strip().equalsIgnoreCase("residence") ||
-                type.strip().equalsIgnoreCase("commercial") ||
-                type.strip().equalsIgnoreCase("retail"))
-        {
-            this.type = type;
-        }
-        else
-        {
-            throw new IllegalArgumentException("Invalid property type: " + type);
-        }
-
-        // propertyID check
-        if (propertyId == null)
-        {
-            throw new NullPointerException("Invalid property id: " + propertyId);
-        }
-        else if (propertyId.isBlank() || propertyId.length() < MINIMUM_PROPERTY_ID_LENGTH || propertyId.length() > MAXIMUM_PROPERTY_ID_LENGTH)
-        {
-            throw new IllegalArgumentException("Invalid property id: " + propertyId);
-        }
-        else
-        {
-            this.propertyId = propertyId;
-        }
-    }
-
-    /**
-     * getters
-     * @return priceUsd, address, numOfBedrooms, swimmingPool, type, propertyID
-     */
-    public double getPriceUsd()
-    {
-        return priceUsd;
-    }
-
-    public Address getAddress()
-    {
-        return address;
-    }
-
-    public int getNumberOfBedrooms()
-    {
-        return numberOfBedrooms;
-    }
-
-    public boolean hasSwimmingPool()
-    {
-        return swimmingPool;
-    }
-
-    public String getType()
-    {
-        return type;
-    }
-
-    public String getPropertyId()
-    {
-        return propertyId;
-    }
-
-    /**
-     * Setters
-     * @param priceUsd - new price in USD
-     */
-    public void setPriceUsd(double priceUsd) {
-        this.priceUsd = priceUsd;
-    }
-}
+import java.util.Arrays;
+
+/**
+ * Class: Property
+ *
+ * Instance Variables:
+ *      1. Price in USD (double, must be positive)
+ *      2. Address (Address, not null)
+ *      3. Number of bedrooms (int: must be 1 to 20)
+ *      4. Swimming pool (boolean)
+ *      5. Type (String: must be one of: “residence”, “commercial”, or “retail”)
+ *      6. Property ID (String: must be one to six characters)
+ *      7. Property type (PropertyType parsed once from the type string)
+ *      8. Price change listeners (PriceChangeListener[]: told after every price change; empty by default)
+ *      9. Price history (PriceHistory: every price the property has had and when it was set)
+ *
+ * Methods:
+ *      1. Get methods for all instance variables (getType() returns the type as given,
+ *          getPropertyType() returns the parsed PropertyType)
+ *      2. Set method for price (records the change in the price history and tells every price change
+ *          listener when the price changes)
+ *      3. addPriceChangeListener(listener), removePriceChangeListener(listener)
+ *      4. getPriceUsdAt(epochMillis): returns the price in effect at that time...or NaN before the property was listed
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public class Property {
+
+    private double priceUsd;
+    private Address address;
+    private int numberOfBedrooms;
+    private boolean swimmingPool;
+    private String type;
+    private String propertyId;
+    private PropertyType propertyType;
+    private volatile PriceChangeListener[] priceChangeListeners = NO_LISTENERS;
+    private final PriceHistory priceHistory;
+
+    private static final PriceChangeListener[] NO_LISTENERS = new PriceChangeListener[0];
+
+    private static final int LOWEST_PRICE_USD = 0;
+    private static final int MINIMUM_NUMBER_OF_BEDROOMS = 1;
+    private static final int MAXIMUM_NUMBER_OF_BEDROOMS = 20;
+    private static final int MINIMUM_PROPERTY_ID_LENGTH = 1;
+    private static final int MAXIMUM_PROPERTY_ID_LENGTH = 6;
+
+    /**
+     * constructor
+     * @param priceUsd           - price in USD
+     * @param address            - property's address
+     * @param numberOfBedrooms   - number of bedroom
+     * @param swimmingPool       - whether it has a swimming pool or not
+     * @param type               - type of property (“residence”, “commercial”, or “retail”)
+     * @param propertyId         - property ID
+     */
+    public Property(final double priceUsd,
+                    final Address address,
+                    final int numberOfBedrooms,
+                    final boolean swimmingPool,
+                    final String type,
+                    final String propertyId) {
+        this(priceUsd, address, numberOfBedrooms, swimmingPool, type, propertyId, System.currentTimeMillis());
+    }
+
+    /**
+     * constructor for a property listed at a known time (e.g. when loading older listings)
+     * @param priceUsd           - price in USD
+     * @param address            - property's address
+     * @param numberOfBedrooms   - number of bedroom
+     * @param swimmingPool       - whether it has a swimming pool or not
+     * @param type               - type of property (“residence”, “commercial”, or “retail”)
+     * @param propertyId         - property ID
+     * @param listedMillis       - epoch milliseconds at which the first price was set
+     */
+    Property(final double priceUsd,
+             final Address address,
+             final int numberOfBedrooms,
+             final boolean swimmingPool,
+             final String type,
+             final String propertyId,
+             final long listedMillis) {
+        // price check
+        if (priceUsd < LOWEST_PRICE_USD) {
+            throw new IllegalArgumentException("Invalid price: " + priceUsd);
+        }
+        else
+        {
+            this.priceUsd = priceUsd;
+        }
+
+        // address check
+        if (address == null)
+        {
+            throw new NullPointerException("Invalid address: " + address);
+        }
+        else {
+            this.address = address;
+        }
+
+        // numOfBedrooms check
+        if (numberOfBedrooms < MINIMUM_NUMBER_OF_BEDROOMS || numberOfBedrooms > MAXIMUM_NUMBER_OF_BEDROOMS)
+        {
+            throw new IllegalArgumentException("Invalid number of bedrooms: " + numberOfBedrooms);
+        }
+        else
+        {
+            this.numberOfBedrooms = numberOfBedrooms;
+        }
+
+        // swimmingPool check
+        this.swimmingPool = swimmingPool;
+
+        // type check
+        PropertyType parsedType = PropertyType.parse(type);
+        if (type == null || type.isBlank())
+        {
+            throw new NullPointerException("Invalid property type: " + type);
+        }
+        else if (parsedType == null)
+        {
+            throw new IllegalArgumentException("Invalid property type: " + type);
+        }
+        else
+        {
+            this.type = type;
+            this.propertyType = parsedType;
+        }
+
+        // propertyID check
+        if (propertyId == null)
+        {
+            throw new NullPointerException("Invalid property id: " + propertyId);
+        }
+        else if (propertyId.isBlank() || propertyId.length() < MINIMUM_PROPERTY_ID_LENGTH || propertyId.length() > MAXIMUM_PROPERTY_ID_LENGTH)
+        {
+            throw new IllegalArgumentException("Invalid property id: " + propertyId);
+        }
+        else
+        {
+            this.propertyId = propertyId;
+        }
+
+        this.priceHistory = new PriceHistory();
+        priceHistory.record(listedMillis, priceUsd);
+    }
+
+    /**
+     * getters
+     * @return priceUsd, address, numOfBedrooms, swimmingPool, type, propertyID, propertyType
+     */
+    public double getPriceUsd()
+    {
+        return priceUsd;
+    }
+
+    public Address getAddress()
+    {
+        return address;
+    }
+
+    public int getNumberOfBedrooms()
+    {
+        return numberOfBedrooms;
+    }
+
+    public boolean hasSwimmingPool()
+    {
+        return swimmingPool;
+    }
+
+    public String getType()
+    {
+        return type;
+    }
+
+    public String getPropertyId()
+    {
+        return propertyId;
+    }
+
+    public PropertyType getPropertyType()
+    {
+        return propertyType;
+    }
+
+    public PriceHistory getPriceHistory()
+    {
+        return priceHistory;
+    }
+
+    /**
+     * getPriceUsdAt method
+     * @param epochMillis   - a time
+     * @return              - the price in effect at that time, or NaN if it is before the property was listed
+     */
+    public double getPriceUsdAt(final long epochMillis)
+    {
+        return priceHistory.priceAt(epochMillis);
+    }
+
+    /**
+     * Setters
+     * @param priceUsd - new price in USD
+     */
+    public void setPriceUsd(double priceUsd) {
+        double oldPriceUsd;
+        synchronized (priceHistory)
+        {
+            // the clock may step back; the history must not
+            oldPriceUsd = changePrice(priceUsd, Math.max(System.currentTimeMillis(), priceHistory.getLastMillis()));
+        }
+        notifyPriceChanged(oldPriceUsd, priceUsd);
+    }
+
+    /**
+     * setPriceUsd method for a price set at a known time (e.g. when loading older changes)
+     * @param priceUsd      - new price in USD
+     * @param epochMillis   - time the price was set; not earlier than the latest change
+     */
+    void setPriceUsd(final double priceUsd, final long epochMillis)
+    {
+        double oldPriceUsd;
+        synchronized (priceHistory)
+        {
+            oldPriceUsd = changePrice(priceUsd, epochMillis);
+        }
+        notifyPriceChanged(oldPriceUsd, priceUsd);
+    }
+
+    private double changePrice(final double priceUsd, final long epochMillis)
+    {
+        if (epochMillis < priceHistory.getLastMillis())
+        {
+            throw new IllegalArgumentException("Invalid time: " + epochMillis);
+        }
+        double oldPriceUsd = this.priceUsd;
+        this.priceUsd = priceUsd;
+        if (oldPriceUsd != priceUsd)
+        {
+            priceHistory.record(epochMillis, priceUsd);
+        }
+        return oldPriceUsd;
+    }
+
+    private void notifyPriceChanged(final double oldPriceUsd, final double priceUsd)
+    {
+        if (oldPriceUsd != priceUsd)
+        {
+            for (PriceChangeListener listener : priceChangeListeners)
+            {
+                listener.priceChanged(this, oldPriceUsd);
+            }
+        }
+    }
+
+    /**
+     * addPriceChangeListener method
+     * @param listener - told after every later price change
+     */
+    synchronized void addPriceChangeListener(final PriceChangeListener listener)
+    {
+        PriceChangeListener[] listeners = Arrays.copyOf(priceChangeListeners, priceChangeListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        priceChangeListeners = listeners;
+    }
+
+    /**
+     * removePriceChangeListener method
+     * @param listener - a listener added earlier; removing one that was never added does nothing
+     */
+    synchronized void removePriceChangeListener(final PriceChangeListener listener)
+    {
+        for (int index = 0; index < priceChangeListeners.length; index++)
+        {
+            if (priceChangeListeners[index] == listener)
+            {
+                PriceChangeListener[] listeners = new PriceChangeListener[priceChangeListeners.length - 1];
+                System.arraycopy(priceChangeListeners, 0, listeners, 0, index);
+                System.arraycopy(priceChangeListeners, index + 1, listeners, index, listeners.length - index);
+                priceChangeListeners = listeners;
+                return;
+            }
+        }
+    }
+}
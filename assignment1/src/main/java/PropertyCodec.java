@@ -0,0 +1,76 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Class: PropertyCodec
+ *
+ * Writes a Property (with its Address) to a DataOutput and reads it back, for sending
+ * listings between JVMs. The price written is the one passed in (normally a listing's
+ * price), so what arrives matches the snapshot it was read from. The price history is
+ * not sent: a copy starts its history with the price it arrives with.
+ *
+ * Format: id, type as given, price, bedrooms, pool, whether there is a unit, the unit if there
+ * is one, street number, street name, postal code, city (strings as modified UTF-8).
+ *
+ * Methods:
+ *      1. write(output, property, priceUsd): writes one property
+ *      2. read(input): reads one property written by write
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class PropertyCodec {
+
+    private PropertyCodec()
+    {
+    }
+
+    /**
+     * write method
+     * @param output        - where to write
+     * @param property      - the property
+     * @param priceUsd      - the price to write for it
+     * @throws IOException  - if output fails
+     */
+    static void write(final DataOutput output, final Property property, final double priceUsd) throws IOException
+    {
+        Address address = property.getAddress();
+        output.writeUTF(property.getPropertyId());
+        output.writeUTF(property.getType());
+        output.writeDouble(priceUsd);
+        output.writeInt(property.getNumberOfBedrooms());
+        output.writeBoolean(property.hasSwimmingPool());
+        output.writeBoolean(address.getUnitNumber() != null);
+        if (address.getUnitNumber() != null)
+        {
+            output.writeUTF(address.getUnitNumber());
+        }
+        output.writeInt(address.getStreetNumber());
+        output.writeUTF(address.getStreetName());
+        output.writeUTF(address.getPostalCode());
+        output.writeUTF(address.getCity());
+    }
+
+    /**
+     * read method
+     * @param input         - where to read
+     * @return              - a new Property equal to the one written
+     * @throws IOException  - if input fails or ends early
+     */
+    static Property read(final DataInput input) throws IOException
+    {
+        String propertyId = input.readUTF();
+        String type = input.readUTF();
+        double priceUsd = input.readDouble();
+        int numberOfBedrooms = input.readInt();
+        boolean swimmingPool = input.readBoolean();
+        String unitNumber = input.readBoolean() ? input.readUTF() : null;
+        int streetNumber = input.readInt();
+        String streetName = input.readUTF();
+        String postalCode = input.readUTF();
+        String city = input.readUTF();
+        Address address = new Address(unitNumber, streetNumber, streetName, postalCode, city);
+        return new Property(priceUsd, address, numberOfBedrooms, swimmingPool, type, propertyId);
+    }
+}
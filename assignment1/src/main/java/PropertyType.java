@@ -0,0 +1,43 @@
+/**
+ * Enum: PropertyType
+ *
+ * The three kinds of property an Agency lists: residence, commercial and retail.
+ * Property types arrive from callers in any case ("resiDEnce", "commErcial"), so
+ * parse(type) is the one place that turns such a string into a type.
+ *
+ * Methods:
+ *      1. parse(type): returns the type named by the string (case-insensitive, surrounding
+ *          whitespace ignored)...or null if it names no type
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public enum PropertyType {
+
+    RESIDENCE,
+    COMMERCIAL,
+    RETAIL;
+
+    /**
+     * parse method
+     * @param type  - name of the type, in any case
+     * @return      - the matching PropertyType, or null if type is null or names no type
+     */
+    public static PropertyType parse(final String type)
+    {
+        if (type == null)
+        {
+            return null;
+        }
+
+        String stripped = type.strip();
+        for (PropertyType propertyType : values())
+        {
+            if (propertyType.name().equalsIgnoreCase(stripped))
+            {
+                return propertyType;
+            }
+        }
+        return null;
+    }
+}
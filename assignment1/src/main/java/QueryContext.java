@@ -0,0 +1,89 @@
+import java.util.concurrent.CancellationException;
+
+/**
+ * Class: QueryContext
+ *
+ * Lets a long-running query be stopped part-way. The query calls checkpoint() as it
+ * scans, and once the context is cancelled (by its caller, or by an AgencyScheduler when
+ * the query's deadline passes) the next checkpoint throws a CancellationException, so
+ * the query gives up its thread instead of finishing work nobody will read.
+ * Checking costs one volatile read, so scans can check on every row.
+ *
+ * Instance Variables:
+ *      1. Deadline (long: System.nanoTime() by which the query should finish)
+ *      2. Has deadline (boolean: false for NONE)
+ *      3. Cancelled (boolean: set once, never cleared)
+ *
+ * Methods:
+ *      1. checkpoint(): throws a CancellationException if the context has been cancelled
+ *      2. cancel(), isCancelled()
+ *      3. getRemainingNanos(): returns the time left before the deadline
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public final class QueryContext {
+
+    static final QueryContext NONE = new QueryContext();
+
+    private final long deadlineNanos;
+    private final boolean hasDeadline;
+    private volatile boolean cancelled;
+
+    /**
+     * constructor
+     * @param deadlineNanos - System.nanoTime() by which the query should finish
+     */
+    QueryContext(final long deadlineNanos)
+    {
+        this.deadlineNanos = deadlineNanos;
+        this.hasDeadline = true;
+    }
+
+    private QueryContext()
+    {
+        this.deadlineNanos = 0;
+        this.hasDeadline = false;
+    }
+
+    /**
+     * checkpoint method
+     * @throws CancellationException - if the context has been cancelled
+     */
+    public void checkpoint()
+    {
+        if (cancelled)
+        {
+            throw new CancellationException("Query cancelled");
+        }
+    }
+
+    /**
+     * cancel method
+     */
+    public void cancel()
+    {
+        if (this != NONE)
+        {
+            cancelled = true;
+        }
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * getRemainingNanos method
+     * @return - nanoseconds until the deadline (negative once it has passed), or Long.MAX_VALUE if there is none
+     */
+    public long getRemainingNanos()
+    {
+        if (!hasDeadline)
+        {
+            return Long.MAX_VALUE;
+        }
+        return deadlineNanos - System.nanoTime();
+    }
+}
@@ -0,0 +1,68 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Class: QueryEvent
+ *
+ * A JDK Flight Recorder event committed once for every Agency operation while a
+ * recording has the "realestate.AgencyQuery" event enabled, e.g.
+ *
+ *      java -XX:StartFlightRecording:settings=profile ...
+ *
+ * AgencyMetrics begins the event when the operation starts and ends it when the operation
+ * is recorded, so the event's own start time and duration cover the call, and a recording's
+ * threshold setting keeps only the slow ones.
+ *
+ * Instance Variables:
+ *      1. Agency (String: name of the agency queried)
+ *      2. Method (String: name of the Agency method)
+ *      3. Parameters (String: the method's arguments)
+ *      4. Rows scanned (long: listings examined)
+ *      5. Result size (long: listings or lines returned)
+ *      6. Start nanos (long: System.nanoTime() at the start, for AgencyMetrics; transient, so not recorded)
+ *
+ * Methods:
+ *      1. isRecording(): returns true if any running recording has this event enabled
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+@Name("realestate.AgencyQuery")
+@Label("Agency Query")
+@Category("Real Estate")
+@Description("An Agency method call with its arguments, rows scanned and result size")
+@StackTrace(false)
+class QueryEvent extends jdk.jfr.Event {
+
+    @Label("Agency")
+    String agency;
+
+    @Label("Method")
+    String method;
+
+    @Label("Parameters")
+    String parameters;
+
+    @Label("Rows Scanned")
+    long rowsScanned;
+
+    @Label("Result Size")
+    long resultSize;
+
+    transient long startNanos;
+
+    private static final EventType EVENT_TYPE = EventType.getEventType(QueryEvent.class);
+
+    /**
+     * isRecording method
+     * @return - true if a running recording has this event enabled
+     */
+    static boolean isRecording()
+    {
+        return EVENT_TYPE.isEnabled();
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class: QueryPublisher
+ *
+ * A Flow.Publisher of an Agency query's results, for consumers (such as a socket) that
+ * read more slowly than the agency can match. Nothing is collected: each subscription
+ * iterates the query's QueryView and emits a match only when the subscriber has requested
+ * one, so however slow the subscriber, at most one match is held ahead of its demand.
+ *
+ * Each subscription starts its own iteration, so it reads the agency's latest snapshot
+ * when the first request arrives. Matches are emitted on the executor given to
+ * executeOn, or by default on the thread that calls request(n); a request made from
+ * inside onNext adds to the demand instead of recursing.
+ *
+ * Instance Variables:
+ *      1. Source (Iterable: the query's matches, iterated once per subscription)
+ *      2. Executor (Executor: where matches are emitted)
+ *
+ * Methods:
+ *      1. subscribe(subscriber): starts a new subscription
+ *      2. executeOn(executor): returns a publisher of the same query that emits on executor
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ * @param <T> - type of the results
+ */
+public final class QueryPublisher<T> implements Flow.Publisher<T> {
+
+    private final Iterable<T> source;
+    private final Executor executor;
+
+    /**
+     * constructor
+     * @param source    - the query's matches; iterated once per subscription
+     * @param executor  - where matches are emitted
+     */
+    QueryPublisher(final Iterable<T> source, final Executor executor)
+    {
+        this.source = source;
+        this.executor = executor;
+    }
+
+    /**
+     * subscribe method
+     * @param subscriber - receives the matches it requests, then onComplete
+     */
+    @Override
+    public void subscribe(final Flow.Subscriber<? super T> subscriber)
+    {
+        if (subscriber == null)
+        {
+            throw new NullPointerException("Invalid subscriber: " + subscriber);
+        }
+        subscriber.onSubscribe(new QuerySubscription(subscriber));
+    }
+
+    /**
+     * executeOn method
+     * @param executor  - where matches should be emitted
+     * @return          - a publisher of the same query that emits on executor
+     */
+    public QueryPublisher<T> executeOn(final Executor executor)
+    {
+        if (executor == null)
+        {
+            throw new NullPointerException("Invalid executor: " + executor);
+        }
+        return new QueryPublisher<>(source, executor);
+    }
+
+    /**
+     * Class: QuerySubscription
+     *
+     * One subscriber's iteration. Only one thread emits at a time: whoever raises the
+     * work counter from zero drains, and anyone who raises it further leaves their
+     * demand for that drain to pick up.
+     */
+    private final class QuerySubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong requested;
+        private final AtomicInteger work;
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException invalidRequest;
+        private Iterator<T> matches;
+
+        private QuerySubscription(final Flow.Subscriber<? super T> subscriber)
+        {
+            this.subscriber = subscriber;
+            this.requested = new AtomicLong();
+            this.work = new AtomicInteger();
+        }
+
+        @Override
+        public void request(final long n)
+        {
+            if (n <= 0)
+            {
+                // the subscriber is told through onError, from the emitting thread
+                invalidRequest = new IllegalArgumentException("Invalid request: " + n);
+            }
+            else
+            {
+                requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            if (work.getAndIncrement() == 0)
+            {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+        }
+
+        @Override
+        public void run()
+        {
+            int missed = 1;
+            do
+            {
+                if (cancelled)
+                {
+                    return;
+                }
+                if (invalidRequest != null)
+                {
+                    fail(invalidRequest);
+                    return;
+                }
+
+                try
+                {
+                    if (matches == null)
+                    {
+                        matches = source.iterator();
+                    }
+                    long demand = requested.get();
+                    long emitted = 0;
+                    while (emitted != demand && !cancelled && matches.hasNext())
+                    {
+                        subscriber.onNext(matches.next());
+                        emitted++;
+                    }
+                    if (!cancelled && !matches.hasNext())
+                    {
+                        cancelled = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (demand != Long.MAX_VALUE)
+                    {
+                        requested.addAndGet(-emitted);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    fail(e);
+                    return;
+                }
+                missed = work.addAndGet(-missed);
+            }
+            while (missed != 0);
+        }
+
+        private void fail(final Throwable error)
+        {
+            cancelled = true;
+            subscriber.onError(error);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Class: QueryView
+ *
+ * The result of an Agency query, evaluated only when it is iterated. Nothing is
+ * copied: each iteration takes the agency's latest snapshot, tests its listings
+ * one at a time as next() asks for them, and stops as soon as the caller stops.
+ * isEmpty() and first() therefore cost one match, not a full scan and a collection.
+ * The agency tests the fields a Listing keeps in memory, so only the matches it
+ * returns read a cold property back.
+ *
+ * A view is live: iterating it twice may give different results if the agency
+ * changed in between. One iteration always reads one snapshot.
+ *
+ * Instance Variables:
+ *      1. Matches (Supplier: returns a new iterator that scans the source, tests each element with the
+ *          filter and maps each one included; the source is read again for every iteration)
+ *
+ * Methods:
+ *      1. iterator(): returns a new iterator over the current matches
+ *      2. isEmpty(): returns true if nothing matches now
+ *      3. first(): returns the first match...or null if nothing matches now
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ * @param <T> - type of the results
+ */
+public final class QueryView<T> implements Iterable<T> {
+
+    private final Supplier<Iterator<T>> matches;
+
+    /**
+     * constructor
+     * @param source    - returns the elements to scan (properties, or an agency's listings); called once per iteration
+     * @param filter    - the elements to include
+     * @param mapping   - what to return for each included element
+     * @param <S>       - type of the elements scanned
+     */
+    <S> QueryView(final Supplier<? extends Iterable<S>> source,
+                  final Predicate<? super S> filter,
+                  final Function<? super S, ? extends T> mapping)
+    {
+        this.matches = () -> new MatchIterator<>(source.get().iterator(), filter, mapping);
+    }
+
+    /**
+     * iterator method
+     * @return - a new iterator over the matches in the agency's latest snapshot
+     */
+    @Override
+    public Iterator<T> iterator()
+    {
+        return matches.get();
+    }
+
+    /**
+     * isEmpty method
+     * @return - true if nothing matches now
+     */
+    public boolean isEmpty()
+    {
+        return !iterator().hasNext();
+    }
+
+    /**
+     * first method
+     * @return - the first match, or null if nothing matches now
+     */
+    public T first()
+    {
+        Iterator<T> matches = iterator();
+        return matches.hasNext() ? matches.next() : null;
+    }
+
+    /**
+     * Class: MatchIterator
+     *
+     * Looks ahead one element, so hasNext() can answer without consuming a match.
+     */
+    private static final class MatchIterator<S, T> implements Iterator<T> {
+
+        private final Iterator<S> elements;
+        private final Predicate<? super S> filter;
+        private final Function<? super S, ? extends T> mapping;
+        private S next;
+
+        private MatchIterator(final Iterator<S> elements,
+                              final Predicate<? super S> filter,
+                              final Function<? super S, ? extends T> mapping)
+        {
+            this.elements = elements;
+            this.filter = filter;
+            this.mapping = mapping;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (next == null && elements.hasNext())
+            {
+                S candidate = elements.next();
+                if (filter.test(candidate))
+                {
+                    next = candidate;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            S match = next;
+            next = null;
+            return mapping.apply(match);
+        }
+    }
+}
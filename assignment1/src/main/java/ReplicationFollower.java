@@ -0,0 +1,288 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class: ReplicationFollower
+ *
+ * Keeps a local Agency a copy of a ReplicationLeader's agency, for serving reads. On
+ * connecting it replaces the local agency's contents with the leader's snapshot in one
+ * change (readers see the old contents until the new ones are all in place), then
+ * applies each change as it arrives, in sequence order. If the connection drops it
+ * reconnects every RECONNECT_MILLIS and catches up from a new snapshot. A change the local
+ * agency refuses (for example over its memory budget) is counted and kept as the last
+ * failure, and the follower drops the connection the same way, so the next snapshot puts
+ * the local agency back in step. Added properties skip the local duplicate policy, as a
+ * snapshot does: the leader has already applied its own.
+ *
+ * The local agency should only be read: a change made to it directly is not sent
+ * anywhere and may be overwritten by the next change from the leader.
+ *
+ * Lag is measured two ways: in changes (the leader's latest sequence, from its messages
+ * and heartbeats, less the last sequence applied here) and in milliseconds (how long ago,
+ * by the leader's clock, the last applied change was made, while any are outstanding;
+ * this assumes the two clocks agree, as they do on one machine).
+ *
+ * Instance Variables:
+ *      1. Agency (Agency: the local copy)
+ *      2. Host and port (String, int: where the leader listens)
+ *      3. Applied sequence (long: the last change applied here)
+ *      4. Leader sequence (long: the latest change the leader has reported)
+ *      5. Applied millis (long: the leader's time of the last change applied here)
+ *      6. Snapshots loaded (int: number of times the local agency was replaced by a snapshot)
+ *      7. Failures (int: number of changes the local agency refused), last failure (RuntimeException)
+ *
+ * Methods:
+ *      1. start(): connects and starts applying changes in the background
+ *      2. getAppliedSequence(), getLeaderSequence(), getSnapshotsLoaded()
+ *      3. getSequenceLag(), getLagMillis(): how far behind the leader this follower is
+ *      4. awaitSequence(sequence, timeoutMillis): waits until a change has been applied here
+ *      5. getFailures(), getLastFailure(): the changes the local agency refused, each followed by a resync
+ *      6. close(): disconnects and stops
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public class ReplicationFollower implements Closeable {
+
+    static final long RECONNECT_MILLIS = 100;
+
+    private final Agency agency;
+    private final String host;
+    private final int port;
+    private final Object progress;
+    private final Thread readerThread;
+    private volatile Socket socket;
+    private volatile boolean closed;
+    private volatile long appliedSequence;
+    private volatile long leaderSequence;
+    private volatile long appliedMillis;
+    private volatile int snapshotsLoaded;
+    private volatile int failures;
+    private volatile RuntimeException lastFailure;
+
+    /**
+     * constructor
+     * @param agency    - the local agency to keep in step with the leader
+     * @param host      - the leader's host
+     * @param port      - the leader's port
+     */
+    public ReplicationFollower(final Agency agency, final String host, final int port)
+    {
+        if (agency == null)
+        {
+            throw new NullPointerException("Invalid agency: " + agency);
+        }
+        this.agency = agency;
+        this.host = host;
+        this.port = port;
+        this.progress = new Object();
+        this.readerThread = new Thread(this::follow, "replication-follower-" + port);
+        readerThread.setDaemon(true);
+    }
+
+    /**
+     * start method
+     */
+    public void start()
+    {
+        readerThread.start();
+    }
+
+    /**
+     * getters
+     * @return appliedSequence, leaderSequence, snapshotsLoaded, failures, lastFailure (null if there has been none)
+     */
+    public long getAppliedSequence()
+    {
+        return appliedSequence;
+    }
+
+    public long getLeaderSequence()
+    {
+        return leaderSequence;
+    }
+
+    public int getSnapshotsLoaded()
+    {
+        return snapshotsLoaded;
+    }
+
+    public int getFailures()
+    {
+        return failures;
+    }
+
+    public RuntimeException getLastFailure()
+    {
+        return lastFailure;
+    }
+
+    /**
+     * getSequenceLag method
+     * @return - number of the leader's changes not yet applied here, as far as this follower knows
+     */
+    public long getSequenceLag()
+    {
+        return Math.max(0, leaderSequence - appliedSequence);
+    }
+
+    /**
+     * getLagMillis method
+     * @return - how long ago (leader's clock) the last applied change was made, or 0 if none are outstanding
+     */
+    public long getLagMillis()
+    {
+        if (getSequenceLag() == 0)
+        {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - appliedMillis);
+    }
+
+    /**
+     * awaitSequence method
+     * @param sequence              - a leader sequence number
+     * @param timeoutMillis         - longest time to wait
+     * @return                      - true if that change has been applied here, false on timeout
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public boolean awaitSequence(final long sequence, final long timeoutMillis) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (progress)
+        {
+            while (appliedSequence < sequence)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    return false;
+                }
+                progress.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * close method
+     * @throws IOException - if the connection fails to close
+     */
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        readerThread.interrupt();
+        Socket current = socket;
+        if (current != null)
+        {
+            current.close();
+        }
+    }
+
+    private void follow()
+    {
+        while (!closed)
+        {
+            try (Socket connection = new Socket(host, port))
+            {
+                socket = connection;
+                if (closed)
+                {
+                    return;
+                }
+                // with no leader listening, a local connect can pick the leader's port as its own and connect to itself
+                if (connection.getLocalPort() == connection.getPort()
+                        && connection.getLocalAddress().equals(connection.getInetAddress()))
+                {
+                    throw new IOException("Connected to self: " + port);
+                }
+                DataInputStream input = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                while (!closed)
+                {
+                    apply(input);
+                }
+            }
+            catch (IOException e)
+            {
+                // the leader went away or is not up yet; try again shortly
+            }
+            catch (RuntimeException e)
+            {
+                // the local agency refused a change and is out of step; reconnecting loads a fresh snapshot
+                lastFailure = e;
+                failures++;
+            }
+
+            try
+            {
+                Thread.sleep(RECONNECT_MILLIS);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+        }
+    }
+
+    private void apply(final DataInputStream input) throws IOException
+    {
+        byte type = input.readByte();
+        long sequence = input.readLong();
+        long changedMillis = input.readLong();
+
+        if (type == ReplicationLeader.SNAPSHOT)
+        {
+            int count = input.readInt();
+            List<Property> properties = new ArrayList<>(count);
+            for (int index = 0; index < count; index++)
+            {
+                properties.add(PropertyCodec.read(input));
+            }
+            agency.replaceAll(properties);
+            snapshotsLoaded++;
+        }
+        else if (type == ReplicationLeader.ADD)
+        {
+            agency.addReplicated(PropertyCodec.read(input));
+        }
+        else if (type == ReplicationLeader.REMOVE)
+        {
+            String propertyId = input.readUTF();
+            if (agency.getProperty(propertyId) != null)
+            {
+                agency.removeProperty(propertyId);
+            }
+        }
+        else if (type == ReplicationLeader.PRICE)
+        {
+            String propertyId = input.readUTF();
+            double priceUsd = input.readDouble();
+            Property property = agency.getProperty(propertyId);
+            if (property != null)
+            {
+                property.setPriceUsd(priceUsd);
+            }
+        }
+        else if (type != ReplicationLeader.HEARTBEAT)
+        {
+            throw new IOException("Invalid message type: " + type);
+        }
+
+        leaderSequence = Math.max(leaderSequence, sequence);
+        if (type != ReplicationLeader.HEARTBEAT)
+        {
+            synchronized (progress)
+            {
+                appliedSequence = sequence;
+                appliedMillis = changedMillis;
+                progress.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class: ReplicationLeader
+ *
+ * Serves an Agency's changes to ReplicationFollowers over TCP. For each follower that
+ * connects, the leader registers an AgencyMutationListener and, in the same step, takes
+ * the agency's snapshot; it sends the snapshot, then every change after it in sequence
+ * order, then a heartbeat carrying the leader's latest sequence whenever it has been
+ * idle for HEARTBEAT_MILLIS, so followers can tell how far behind they are.
+ *
+ * Each follower has its own bounded queue. A follower that falls more than
+ * MAXIMUM_QUEUED changes behind is disconnected; when it reconnects it catches up from
+ * a fresh snapshot rather than holding the leader's memory hostage.
+ *
+ * Messages (DataOutput): a type byte, the change's sequence number and the leader's
+ * wall-clock time in milliseconds when the change was made, then
+ *      SNAPSHOT: a count and that many properties (PropertyCodec, at their snapshot prices)
+ *      ADD: one property
+ *      REMOVE: a property id
+ *      PRICE: a property id and its new price
+ *      HEARTBEAT: nothing more
+ *
+ * Instance Variables:
+ *      1. Agency (Agency: the agency whose changes are served)
+ *      2. Server socket (ServerSocket: accepts followers)
+ *      3. Sessions (Set of Session: one per connected follower)
+ *
+ * Methods:
+ *      1. start(): starts accepting followers
+ *      2. getPort(): returns the port followers connect to
+ *      3. getFollowerCount(): returns the number of connected followers
+ *      4. close(): disconnects every follower and stops accepting
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public class ReplicationLeader implements Closeable {
+
+    static final byte SNAPSHOT = 1;
+    static final byte ADD = 2;
+    static final byte REMOVE = 3;
+    static final byte PRICE = 4;
+    static final byte HEARTBEAT = 5;
+
+    static final long HEARTBEAT_MILLIS = 100;
+    static final int MAXIMUM_QUEUED = 100_000;
+
+    private final Agency agency;
+    private final ServerSocket serverSocket;
+    private final Set<Session> sessions;
+    private final Thread acceptThread;
+    private volatile boolean closed;
+
+    /**
+     * constructor
+     * @param agency        - the agency to replicate
+     * @param port          - port to listen on, or 0 for any free port
+     * @param bindAddress   - address to listen on (e.g. InetAddress.getLoopbackAddress())
+     * @throws IOException  - if the port cannot be bound
+     */
+    public ReplicationLeader(final Agency agency, final int port, final InetAddress bindAddress) throws IOException
+    {
+        if (agency == null)
+        {
+            throw new NullPointerException("Invalid agency: " + agency);
+        }
+        this.agency = agency;
+        this.serverSocket = new ServerSocket();
+        // a restarted leader can take its port back while old connections are still closing
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(bindAddress, port));
+        this.sessions = ConcurrentHashMap.newKeySet();
+        this.acceptThread = new Thread(this::acceptFollowers, "replication-leader-" + serverSocket.getLocalPort());
+        acceptThread.setDaemon(true);
+    }
+
+    /**
+     * start method
+     */
+    public void start()
+    {
+        acceptThread.start();
+    }
+
+    /**
+     * getPort method
+     * @return - the port followers connect to
+     */
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * getFollowerCount method
+     * @return - the number of followers connected now
+     */
+    public int getFollowerCount()
+    {
+        return sessions.size();
+    }
+
+    /**
+     * close method
+     * @throws IOException - if the server socket fails to close
+     */
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        serverSocket.close();
+        for (Session session : sessions)
+        {
+            session.close();
+        }
+    }
+
+    private void acceptFollowers()
+    {
+        while (!closed)
+        {
+            try
+            {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Session session = new Session(socket);
+                sessions.add(session);
+                Thread sender = new Thread(session, "replication-session-" + socket.getPort());
+                sender.setDaemon(true);
+                sender.start();
+            }
+            catch (IOException e)
+            {
+                // closing the server socket ends accept with an exception; anything else, keep serving
+            }
+        }
+    }
+
+    /**
+     * one change waiting to be sent
+     */
+    private static final class Mutation {
+
+        private final byte type;
+        private final long sequence;
+        private final long changedMillis;
+        private final Listing listing;
+        private final String propertyId;
+
+        private Mutation(final byte type, final long sequence, final Listing listing, final String propertyId)
+        {
+            this.type = type;
+            this.sequence = sequence;
+            this.changedMillis = System.currentTimeMillis();
+            this.listing = listing;
+            this.propertyId = propertyId;
+        }
+    }
+
+    /**
+     * Class: Session
+     *
+     * One follower: queues the agency's changes as they happen and sends them from its own thread.
+     */
+    private final class Session implements AgencyMutationListener, Runnable {
+
+        private final Socket socket;
+        private final LinkedBlockingQueue<Mutation> queue;
+        private volatile boolean overflowed;
+
+        private Session(final Socket socket)
+        {
+            this.socket = socket;
+            this.queue = new LinkedBlockingQueue<>(MAXIMUM_QUEUED);
+        }
+
+        @Override
+        public void propertyAdded(final long sequence, final Listing listing)
+        {
+            enqueue(new Mutation(ADD, sequence, listing, null));
+        }
+
+        @Override
+        public void propertyRemoved(final long sequence, final String propertyId)
+        {
+            enqueue(new Mutation(REMOVE, sequence, null, propertyId));
+        }
+
+        @Override
+        public void priceChanged(final long sequence, final Listing oldListing, final Listing newListing)
+        {
+            enqueue(new Mutation(PRICE, sequence, newListing, null));
+        }
+
+        private void enqueue(final Mutation mutation)
+        {
+            // never block the agency's writers; a follower this far behind starts again from a snapshot
+            if (!queue.offer(mutation))
+            {
+                overflowed = true;
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                AgencySnapshot snapshot = agency.addMutationListener(this);
+                output.writeByte(SNAPSHOT);
+                output.writeLong(snapshot.getSequence());
+                output.writeLong(System.currentTimeMillis());
+                output.writeInt(snapshot.size());
+                for (Listing listing : snapshot.listings())
+                {
+                    PropertyCodec.write(output, listing.peekProperty(), listing.getPriceUsd());
+                }
+                output.flush();
+
+                while (!closed && !overflowed)
+                {
+                    Mutation mutation = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (mutation == null)
+                    {
+                        output.writeByte(HEARTBEAT);
+                        output.writeLong(agency.snapshot().getSequence());
+                        output.writeLong(System.currentTimeMillis());
+                    }
+                    else
+                    {
+                        write(output, mutation);
+                    }
+                    if (queue.isEmpty())
+                    {
+                        output.flush();
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                // the follower went away; it catches up from a snapshot when it reconnects
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                agency.removeMutationListener(this);
+                sessions.remove(this);
+                close();
+            }
+        }
+
+        private void write(final DataOutputStream output, final Mutation mutation) throws IOException
+        {
+            output.writeByte(mutation.type);
+            output.writeLong(mutation.sequence);
+            output.writeLong(mutation.changedMillis);
+            if (mutation.type == ADD)
+            {
+                PropertyCodec.write(output, mutation.listing.peekProperty(), mutation.listing.getPriceUsd());
+            }
+            else if (mutation.type == REMOVE)
+            {
+                output.writeUTF(mutation.propertyId);
+            }
+            else
+            {
+                output.writeUTF(mutation.listing.getPropertyId());
+                output.writeDouble(mutation.listing.getPriceUsd());
+            }
+        }
+
+        private void close()
+        {
+            try
+            {
+                socket.close();
+            }
+            catch (IOException e)
+            {
+                // already closed
+            }
+        }
+    }
+}
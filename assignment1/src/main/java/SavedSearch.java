@@ -0,0 +1,157 @@
+import java.util.Locale;
+
+/**
+ * Class: SavedSearch
+ *
+ * A buyer's standing query, such as "up to $800,000, at least 3 bedrooms, with a pool,
+ * in Burnaby". A property matches when its price and bedrooms are in range and it has
+ * the type, pool and city asked for; a null type, pool or city matches any.
+ *
+ * Instance Variables:
+ *      1. Search id (String: unique within a SavedSearchEngine)
+ *      2. Price range (double minUsd, maxUsd: inclusive)
+ *      3. Bedroom range (int minBedrooms, maxBedrooms: inclusive)
+ *      4. Type (PropertyType: or null for any)
+ *      5. Pool (Boolean: true or false to require or exclude one, or null for either)
+ *      6. City (String: compared without case or surrounding whitespace, or null for any)
+ *
+ * Methods:
+ *      1. Get methods for all instance variables
+ *      2. matches(property, priceUsd): returns true if the property at that price matches
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public final class SavedSearch {
+
+    private final String searchId;
+    private final double minUsd;
+    private final double maxUsd;
+    private final int minBedrooms;
+    private final int maxBedrooms;
+    private final PropertyType type;
+    private final Boolean pool;
+    private final String city;
+
+    /**
+     * constructor
+     * @param searchId      - id of the search
+     * @param minUsd        - lowest price, inclusive
+     * @param maxUsd        - highest price, inclusive
+     * @param minBedrooms   - fewest bedrooms, inclusive
+     * @param maxBedrooms   - most bedrooms, inclusive
+     * @param type          - the type required, or null for any
+     * @param pool          - whether a pool is required (true) or excluded (false), or null for either
+     * @param city          - the city required, or null for any
+     */
+    public SavedSearch(final String searchId,
+                       final double minUsd,
+                       final double maxUsd,
+                       final int minBedrooms,
+                       final int maxBedrooms,
+                       final PropertyType type,
+                       final Boolean pool,
+                       final String city)
+    {
+        if (searchId == null || searchId.isBlank())
+        {
+            throw new NullPointerException("Invalid search id: " + searchId);
+        }
+        if (!(minUsd >= 0 && minUsd <= maxUsd))
+        {
+            throw new IllegalArgumentException("Invalid price range: " + minUsd + " to " + maxUsd);
+        }
+        if (minBedrooms > maxBedrooms)
+        {
+            throw new IllegalArgumentException("Invalid bedroom range: " + minBedrooms + " to " + maxBedrooms);
+        }
+        if (city != null && city.isBlank())
+        {
+            throw new IllegalArgumentException("Invalid city: " + city);
+        }
+        this.searchId = searchId;
+        this.minUsd = minUsd;
+        this.maxUsd = maxUsd;
+        this.minBedrooms = minBedrooms;
+        this.maxBedrooms = maxBedrooms;
+        this.type = type;
+        this.pool = pool;
+        this.city = city == null ? null : normalizeCity(city);
+    }
+
+    /**
+     * getters
+     * @return searchId, minUsd, maxUsd, minBedrooms, maxBedrooms, type, pool, city (normalized)
+     */
+    public String getSearchId()
+    {
+        return searchId;
+    }
+
+    public double getMinUsd()
+    {
+        return minUsd;
+    }
+
+    public double getMaxUsd()
+    {
+        return maxUsd;
+    }
+
+    public int getMinBedrooms()
+    {
+        return minBedrooms;
+    }
+
+    public int getMaxBedrooms()
+    {
+        return maxBedrooms;
+    }
+
+    public PropertyType getType()
+    {
+        return type;
+    }
+
+    public Boolean getPool()
+    {
+        return pool;
+    }
+
+    public String getCity()
+    {
+        return city;
+    }
+
+    /**
+     * matches method
+     * @param property  - a property
+     * @param priceUsd  - the price to test it at
+     * @return          - true if the property, at that price, meets every condition of this search
+     */
+    public boolean matches(final Property property, final double priceUsd)
+    {
+        return priceUsd >= minUsd && priceUsd <= maxUsd
+                && property.getNumberOfBedrooms() >= minBedrooms
+                && property.getNumberOfBedrooms() <= maxBedrooms
+                && (type == null || type == property.getPropertyType())
+                && (pool == null || pool == property.hasSwimmingPool())
+                && (city == null || city.equals(normalizeCity(property.getAddress().getCity())));
+    }
+
+    /**
+     * normalizeCity method
+     * @param city  - a city name
+     * @return      - the name as searches compare it: lower case, without surrounding whitespace
+     */
+    static String normalizeCity(final String city)
+    {
+        return city.strip().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String toString()
+    {
+        return searchId;
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Class: SavedSearchEngine
+ *
+ * Matches an Agency's new listings and price changes against buyers' saved searches as
+ * they happen, instead of re-running every search against every listing on a timer.
+ * The searches themselves are indexed: they are bucketed by type (or any), pool (yes, no
+ * or either) and city (or any), and each bucket keeps its searches in a PriceIntervalTree
+ * by price range. A property can only match searches in the eight buckets for its own
+ * type, pool and city, and within each the tree returns just the searches whose range
+ * contains its price, so matching costs a few lookups plus a bedroom check per candidate
+ * rather than one test per saved search.
+ *
+ * The engine listens to the agency's mutations. When a property is added, the listener
+ * is told of every search it matches; when a price changes, only of the searches it
+ * matches at the new price and did not at the old one. A search saved later is not run
+ * against what is already listed; query the agency once for that.
+ *
+ * Instance Variables:
+ *      1. Agency (Agency: the agency listened to)
+ *      2. Listener (SavedSearchListener: told of each new match, under the agency's write lock)
+ *      3. Searches (LinkedHashMap; key is search id, value is the SavedSearch)
+ *      4. Buckets (ConcurrentHashMap[][]; indexed by type and pool, key is city or "" for any, value is
+ *          the PriceIntervalTree of those searches)
+ *
+ * Methods:
+ *      1. register(search), registerAll(searches): saves searches (each replacing one with the same id)
+ *      2. unregister(searchId): removes a search; returns false if there was none
+ *      3. matching(property): returns the saved searches the property matches at its current price
+ *      4. size(): returns the number of saved searches
+ *      5. close(): stops listening to the agency
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public class SavedSearchEngine implements Closeable {
+
+    private final Agency agency;
+    private final SavedSearchListener listener;
+    private final LinkedHashMap<String, SavedSearch> searches;
+    private final ConcurrentHashMap<String, PriceIntervalTree>[][] buckets;
+    private final AgencyMutationListener mutationListener;
+
+    private static final int ANY_TYPE = PropertyType.values().length;
+    private static final int NO_POOL = 0;
+    private static final int POOL = 1;
+    private static final int ANY_POOL = 2;
+    private static final String ANY_CITY = "";
+
+    /**
+     * constructor
+     * @param agency    - the agency whose new listings and price changes are matched
+     * @param listener  - told of each new match
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SavedSearchEngine(final Agency agency, final SavedSearchListener listener)
+    {
+        if (agency == null)
+        {
+            throw new NullPointerException("Invalid agency: " + agency);
+        }
+        if (listener == null)
+        {
+            throw new NullPointerException("Invalid listener: " + listener);
+        }
+        this.agency = agency;
+        this.listener = listener;
+        this.searches = new LinkedHashMap<>();
+        this.buckets = new ConcurrentHashMap[ANY_TYPE + 1][ANY_POOL + 1];
+        for (ConcurrentHashMap<String, PriceIntervalTree>[] byPool : buckets)
+        {
+            for (int pool = NO_POOL; pool <= ANY_POOL; pool++)
+            {
+                byPool[pool] = new ConcurrentHashMap<>();
+            }
+        }
+        this.mutationListener = new AgencyMutationListener()
+        {
+            @Override
+            public void propertyAdded(final long sequence, final Listing listing)
+            {
+                Property property = listing.getProperty();
+                double priceUsd = listing.getPriceUsd();
+                forEachMatch(property, priceUsd, search -> listener.matched(search, property, priceUsd));
+            }
+
+            @Override
+            public void propertyRemoved(final long sequence, final String propertyId)
+            {
+            }
+
+            @Override
+            public void priceChanged(final long sequence, final Listing oldListing, final Listing newListing)
+            {
+                // only the price changed, so a search matched before exactly when the old price is in its range
+                Property property = newListing.getProperty();
+                double oldPriceUsd = oldListing.getPriceUsd();
+                double priceUsd = newListing.getPriceUsd();
+                forEachMatch(property, priceUsd, search -> {
+                    if (oldPriceUsd < search.getMinUsd() || oldPriceUsd > search.getMaxUsd())
+                    {
+                        listener.matched(search, property, priceUsd);
+                    }
+                });
+            }
+        };
+        agency.addMutationListener(mutationListener);
+    }
+
+    /**
+     * register method
+     * @param search - the search to save; replaces any saved search with the same id
+     */
+    public void register(final SavedSearch search)
+    {
+        registerAll(Collections.singletonList(search));
+    }
+
+    /**
+     * registerAll method
+     * @param saved - the searches to save; each replaces any saved search with the same id (the last one wins
+     *                within saved); the new searches of each bucket are built into its tree together
+     */
+    public synchronized void registerAll(final Collection<SavedSearch> saved)
+    {
+        if (saved == null)
+        {
+            throw new NullPointerException("Invalid searches: " + saved);
+        }
+        LinkedHashMap<String, SavedSearch> byId = new LinkedHashMap<>();
+        for (SavedSearch search : saved)
+        {
+            if (search == null)
+            {
+                throw new NullPointerException("Invalid search: " + search);
+            }
+            byId.put(search.getSearchId(), search);
+        }
+
+        IdentityHashMap<ConcurrentHashMap<String, PriceIntervalTree>, HashMap<String, List<SavedSearch>>> added =
+                new IdentityHashMap<>();
+        for (SavedSearch search : byId.values())
+        {
+            SavedSearch replaced = searches.put(search.getSearchId(), search);
+            if (replaced != null)
+            {
+                bucketOf(replaced).computeIfPresent(cityOf(replaced), (city, tree) -> orNull(tree.without(replaced.getSearchId())));
+            }
+            added.computeIfAbsent(bucketOf(search), bucket -> new HashMap<>())
+                    .computeIfAbsent(cityOf(search), city -> new ArrayList<>())
+                    .add(search);
+        }
+        added.forEach((bucket, byCity) -> byCity.forEach((city, searchesOfCity) ->
+                bucket.compute(city, (key, tree) ->
+                        (tree == null ? PriceIntervalTree.EMPTY : tree).withAll(searchesOfCity))));
+    }
+
+    /**
+     * unregister method
+     * @param searchId  - id of a saved search
+     * @return          - true if it was saved
+     */
+    public synchronized boolean unregister(final String searchId)
+    {
+        SavedSearch removed = searches.remove(searchId);
+        if (removed == null)
+        {
+            return false;
+        }
+        bucketOf(removed).computeIfPresent(cityOf(removed), (city, tree) -> orNull(tree.without(searchId)));
+        return true;
+    }
+
+    /**
+     * matching method
+     * @param property  - a property
+     * @return          - the saved searches it matches at its current price, in no particular order
+     */
+    public List<SavedSearch> matching(final Property property)
+    {
+        List<SavedSearch> matches = new ArrayList<>();
+        forEachMatch(property, property.getPriceUsd(), matches::add);
+        return matches;
+    }
+
+    /**
+     * size method
+     * @return - the number of saved searches
+     */
+    public synchronized int size()
+    {
+        return searches.size();
+    }
+
+    /**
+     * close method: stops listening to the agency
+     */
+    @Override
+    public void close()
+    {
+        agency.removeMutationListener(mutationListener);
+    }
+
+    private void forEachMatch(final Property property,
+                              final double priceUsd,
+                              final Consumer<SavedSearch> action)
+    {
+        int[] types = {property.getPropertyType().ordinal(), ANY_TYPE};
+        int[] pools = {property.hasSwimmingPool() ? POOL : NO_POOL, ANY_POOL};
+        String[] cities = {SavedSearch.normalizeCity(property.getAddress().getCity()), ANY_CITY};
+        int bedrooms = property.getNumberOfBedrooms();
+        for (int type : types)
+        {
+            for (int pool : pools)
+            {
+                for (String city : cities)
+                {
+                    PriceIntervalTree tree = buckets[type][pool].get(city);
+                    if (tree != null)
+                    {
+                        tree.stab(priceUsd, search -> {
+                            if (bedrooms >= search.getMinBedrooms() && bedrooms <= search.getMaxBedrooms())
+                            {
+                                action.accept(search);
+                            }
+                        });
+                    }
+                }
+            }
+        }
+    }
+
+    private ConcurrentHashMap<String, PriceIntervalTree> bucketOf(final SavedSearch search)
+    {
+        int type = search.getType() == null ? ANY_TYPE : search.getType().ordinal();
+        int pool = search.getPool() == null ? ANY_POOL : search.getPool() ? POOL : NO_POOL;
+        return buckets[type][pool];
+    }
+
+    private static String cityOf(final SavedSearch search)
+    {
+        return search.getCity() == null ? ANY_CITY : search.getCity();
+    }
+
+    private static PriceIntervalTree orNull(final PriceIntervalTree tree)
+    {
+        return tree.size() == 0 ? null : tree;
+    }
+}
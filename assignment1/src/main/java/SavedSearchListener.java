@@ -0,0 +1,24 @@
+/**
+ * Interface: SavedSearchListener
+ *
+ * Told by a SavedSearchEngine each time a property comes to match a saved search. It is
+ * called while the agency holds its write lock, so it must be quick (e.g. put the match
+ * on a queue for whatever notifies the buyer) and must not call back into the agency.
+ *
+ * Methods:
+ *      1. matched(search, property, priceUsd): property, at priceUsd, now matches search
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface SavedSearchListener {
+
+    /**
+     * matched method
+     * @param search    - the saved search
+     * @param property  - the property that now matches it
+     * @param priceUsd  - the property's price
+     */
+    void matched(SavedSearch search, Property property, double priceUsd);
+}
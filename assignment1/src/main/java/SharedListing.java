@@ -0,0 +1,85 @@
+/**
+ * Class: SharedListing
+ *
+ * One match of an AgencyJoin: the same property (by normalized address or by id) as
+ * listed by two agencies, with the price each lists it at. The properties themselves
+ * are only read when asked for, so a join never reads a cold property back.
+ *
+ * Instance Variables:
+ *      1. Left (Listing: the listing in the first agency joined)
+ *      2. Right (Listing: the listing in the second agency joined)
+ *
+ * Methods:
+ *      1. getLeft(), getRight(): return the two properties; getLeftId(), getRightId(): their ids
+ *      2. getLeftPriceUsd(), getRightPriceUsd(): return the two prices at the time of the join
+ *      3. getPriceDifferenceUsd(): returns the right price minus the left price
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class SharedListing {
+
+    private final Listing left;
+    private final Listing right;
+
+    /**
+     * constructor
+     * @param left  - the listing in the first agency
+     * @param right - the listing in the second agency
+     */
+    SharedListing(final Listing left, final Listing right)
+    {
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * getters
+     * @return left, right, leftId, rightId, leftPriceUsd, rightPriceUsd
+     */
+    Property getLeft()
+    {
+        return left.getProperty();
+    }
+
+    Property getRight()
+    {
+        return right.getProperty();
+    }
+
+    String getLeftId()
+    {
+        return left.getPropertyId();
+    }
+
+    String getRightId()
+    {
+        return right.getPropertyId();
+    }
+
+    double getLeftPriceUsd()
+    {
+        return left.getPriceUsd();
+    }
+
+    double getRightPriceUsd()
+    {
+        return right.getPriceUsd();
+    }
+
+    /**
+     * getPriceDifferenceUsd method
+     * @return - the right agency's price minus the left agency's
+     */
+    double getPriceDifferenceUsd()
+    {
+        return right.getPriceUsd() - left.getPriceUsd();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s $%.2f / %s $%.2f", left.getPropertyId(), left.getPriceUsd(),
+                right.getPropertyId(), right.getPriceUsd());
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Class: SlowQuery
+ *
+ * One entry of a SlowQueryLog: an Agency method call that took at least the log's
+ * threshold, or one picked at random from the faster calls, with what it did.
+ *
+ * Instance Variables:
+ *      1. Epoch millis (long: when the call finished)
+ *      2. Agency (String: name of the agency queried)
+ *      3. Method (String: name of the Agency method)
+ *      4. Parameters (String: the method's arguments)
+ *      5. Index (String: the structure the method read, e.g. "price column"; null if it did not say)
+ *      6. Rows scanned (long: listings examined)
+ *      7. Result size (long: listings or lines returned)
+ *      8. Duration (long: nanoseconds spent in the method)
+ *      9. Scan duration (long: nanoseconds spent finding the matches; the rest went to building the result)
+ *     10. Slow (boolean: true if over the threshold, false if sampled)
+ *     11. Thread (String: name of the thread that made the call)
+ *
+ * Methods:
+ *      1. Get methods for all instance variables
+ *      2. getFormatNanos(): returns the nanoseconds spent building the result
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public final class SlowQuery {
+
+    private final long epochMillis;
+    private final String agency;
+    private final String method;
+    private final String parameters;
+    private final String index;
+    private final long rowsScanned;
+    private final long resultSize;
+    private final long durationNanos;
+    private final long scanNanos;
+    private final boolean slow;
+    private final String thread;
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    /**
+     * constructor
+     * @param epochMillis   - when the call finished
+     * @param agency        - name of the agency
+     * @param method        - name of the method
+     * @param parameters    - the method's arguments
+     * @param index         - the structure read, or null
+     * @param rowsScanned   - listings examined
+     * @param resultSize    - listings or lines returned
+     * @param durationNanos - nanoseconds in the method
+     * @param scanNanos     - nanoseconds finding the matches (at most durationNanos)
+     * @param slow          - true if over the threshold
+     * @param thread        - name of the calling thread
+     */
+    SlowQuery(final long epochMillis,
+              final String agency,
+              final String method,
+              final String parameters,
+              final String index,
+              final long rowsScanned,
+              final long resultSize,
+              final long durationNanos,
+              final long scanNanos,
+              final boolean slow,
+              final String thread)
+    {
+        this.epochMillis = epochMillis;
+        this.agency = agency;
+        this.method = method;
+        this.parameters = parameters;
+        this.index = index;
+        this.rowsScanned = rowsScanned;
+        this.resultSize = resultSize;
+        this.durationNanos = durationNanos;
+        this.scanNanos = scanNanos;
+        this.slow = slow;
+        this.thread = thread;
+    }
+
+    /**
+     * getters
+     * @return epochMillis, agency, method, parameters, index, rowsScanned, resultSize, durationNanos, scanNanos,
+     *         slow, thread
+     */
+    public long getEpochMillis()
+    {
+        return epochMillis;
+    }
+
+    public String getAgency()
+    {
+        return agency;
+    }
+
+    public String getMethod()
+    {
+        return method;
+    }
+
+    public String getParameters()
+    {
+        return parameters;
+    }
+
+    public String getIndex()
+    {
+        return index;
+    }
+
+    public long getRowsScanned()
+    {
+        return rowsScanned;
+    }
+
+    public long getResultSize()
+    {
+        return resultSize;
+    }
+
+    public long getDurationNanos()
+    {
+        return durationNanos;
+    }
+
+    public long getScanNanos()
+    {
+        return scanNanos;
+    }
+
+    public boolean isSlow()
+    {
+        return slow;
+    }
+
+    public String getThread()
+    {
+        return thread;
+    }
+
+    /**
+     * getFormatNanos method
+     * @return - nanoseconds spent building the result after the matches were found
+     */
+    public long getFormatNanos()
+    {
+        return durationNanos - scanNanos;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s %s.%s(%s) via %s: %d scanned, %d returned in %.3f ms (scan %.3f ms, format %.3f ms) on %s",
+                slow ? "SLOW" : "SAMPLE", agency, method, parameters, index == null ? "?" : index, rowsScanned,
+                resultSize, durationNanos / NANOS_PER_MILLI, scanNanos / NANOS_PER_MILLI,
+                getFormatNanos() / NANOS_PER_MILLI, thread);
+    }
+}
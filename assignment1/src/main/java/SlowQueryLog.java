@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class: SlowQueryLog
+ *
+ * Keeps the latest Agency calls that took at least a threshold, plus a random sample of the
+ * faster ones, so a latency spike can be traced to the arguments that caused it. Attach it
+ * with agency.getMetrics().setSlowQueryLog(log); one log can serve several agencies.
+ *
+ * A query only decides whether its call is logged and hands the entry to a small bounded
+ * queue without waiting; a background thread moves entries from the queue into a fixed-size
+ * ring that keeps the newest capacity entries. If the writer falls behind and the queue is
+ * full, the entry is dropped and counted rather than making the query wait.
+ *
+ * Instance Variables:
+ *      1. Threshold (long: nanoseconds at or over which every call is logged)
+ *      2. Sample rate (double: fraction of the faster calls logged, 0 to 1)
+ *      3. Ring (SlowQuery[]: the newest entries, overwritten oldest first)
+ *      4. Written (long: entries written to the ring so far)
+ *      5. Pending (ArrayBlockingQueue: entries handed over by queries, not yet written)
+ *      6. Accepted, dropped (counters of entries handed over and of entries lost to a full queue)
+ *      7. Writer (Thread: moves pending entries into the ring)
+ *
+ * Methods:
+ *      1. setThresholdMillis(millis), getThresholdMillis(), setSampleRate(rate), getSampleRate()
+ *      2. getEntries(): returns the entries in the ring, oldest first
+ *      3. getWrittenCount(), getDroppedCount(), getCapacity()
+ *      4. flush(): waits until every entry accepted so far is in the ring
+ *      5. close(): stops the writer; later calls are not logged
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+public final class SlowQueryLog implements AutoCloseable {
+
+    private volatile long thresholdNanos;
+    private volatile double sampleRate;
+    private final SlowQuery[] ring;
+    private long written;
+    private final ArrayBlockingQueue<SlowQuery> pending;
+    private final AtomicLong accepted;
+    private final LongAdder dropped;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * constructor
+     * @param thresholdMillis   - calls taking at least this many milliseconds are always logged
+     * @param sampleRate        - fraction of the faster calls logged (0 for none, 1 for all)
+     * @param capacity          - number of entries kept (at least 1)
+     */
+    public SlowQueryLog(final long thresholdMillis, final double sampleRate, final int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        setThresholdMillis(thresholdMillis);
+        setSampleRate(sampleRate);
+        this.ring = new SlowQuery[capacity];
+        this.pending = new ArrayBlockingQueue<>(capacity);
+        this.accepted = new AtomicLong();
+        this.dropped = new LongAdder();
+        this.writer = new Thread(this::drain, "slow-query-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * setThresholdMillis method
+     * @param thresholdMillis - calls taking at least this many milliseconds are always logged (0 logs every call)
+     */
+    public void setThresholdMillis(final long thresholdMillis)
+    {
+        if (thresholdMillis < 0)
+        {
+            throw new IllegalArgumentException("Invalid threshold: " + thresholdMillis);
+        }
+        this.thresholdNanos = thresholdMillis * NANOS_PER_MILLI;
+    }
+
+    public long getThresholdMillis()
+    {
+        return thresholdNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * setSampleRate method
+     * @param sampleRate - fraction of the calls under the threshold that are logged, 0 to 1
+     */
+    public void setSampleRate(final double sampleRate)
+    {
+        if (!(sampleRate >= 0 && sampleRate <= 1))
+        {
+            throw new IllegalArgumentException("Invalid sample rate: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public double getSampleRate()
+    {
+        return sampleRate;
+    }
+
+    /**
+     * offer method: called by AgencyMetrics at the end of every call; never blocks
+     * @param agency        - name of the agency
+     * @param method        - name of the method
+     * @param parameters    - the method's arguments
+     * @param index         - the structure read, or null
+     * @param rowsScanned   - listings examined
+     * @param resultSize    - listings or lines returned
+     * @param durationNanos - nanoseconds in the method
+     * @param scanNanos     - nanoseconds finding the matches
+     */
+    void offer(final String agency,
+               final String method,
+               final String parameters,
+               final String index,
+               final long rowsScanned,
+               final long resultSize,
+               final long durationNanos,
+               final long scanNanos)
+    {
+        if (closed)
+        {
+            return;
+        }
+        boolean slow = durationNanos >= thresholdNanos;
+        if (!slow)
+        {
+            double rate = sampleRate;
+            if (rate == 0 || ThreadLocalRandom.current().nextDouble() >= rate)
+            {
+                return;
+            }
+        }
+
+        SlowQuery entry = new SlowQuery(System.currentTimeMillis(), agency, method, parameters, index,
+                rowsScanned, resultSize, durationNanos, scanNanos, slow, Thread.currentThread().getName());
+        if (pending.offer(entry))
+        {
+            accepted.incrementAndGet();
+        }
+        else
+        {
+            dropped.increment();
+        }
+    }
+
+    private void drain()
+    {
+        while (!closed)
+        {
+            try
+            {
+                SlowQuery entry = pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (entry != null)
+                {
+                    synchronized (ring)
+                    {
+                        ring[(int) (written % ring.length)] = entry;
+                        written++;
+                        ring.notifyAll();
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // closing
+            }
+        }
+        synchronized (ring)
+        {
+            ring.notifyAll();
+        }
+    }
+
+    /**
+     * getEntries method
+     * @return - the entries in the ring (at most capacity, the newest), oldest first
+     */
+    public List<SlowQuery> getEntries()
+    {
+        synchronized (ring)
+        {
+            int size = (int) Math.min(written, ring.length);
+            List<SlowQuery> entries = new ArrayList<>(size);
+            for (long next = written - size; next < written; next++)
+            {
+                entries.add(ring[(int) (next % ring.length)]);
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * getters
+     * @return entries written to the ring so far, entries dropped because the writer fell behind, capacity
+     */
+    public long getWrittenCount()
+    {
+        synchronized (ring)
+        {
+            return written;
+        }
+    }
+
+    public long getDroppedCount()
+    {
+        return dropped.sum();
+    }
+
+    public int getCapacity()
+    {
+        return ring.length;
+    }
+
+    /**
+     * flush method
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public void flush() throws InterruptedException
+    {
+        long target = accepted.get();
+        synchronized (ring)
+        {
+            while (written < target && !closed)
+            {
+                ring.wait(POLL_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * close method: stops the writer; entries still pending are discarded
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        writer.interrupt();
+        try
+        {
+            writer.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Class: StringPool
+ *
+ * A flyweight dictionary for the short strings repeated across many listings
+ * (street names, cities, postal codes, unit numbers). Every distinct value is
+ * stored once; all later requests for an equal value get back the same canonical
+ * instance, so thousands of addresses in "surrey" share one String.
+ *
+ * The pool holds its values weakly: once no Address (or anything else) refers to a
+ * canonical instance, the garbage collector may reclaim it and its entry, so values
+ * that were only ever seen in removed listings do not stay in memory for the life of
+ * the JVM. The values are spread over STRIPES WeakHashMaps by hash, each locked on its
+ * own, so threads building addresses rarely wait for each other.
+ *
+ * Class Variables:
+ *      1. Stripes (Stripe[]: each a WeakHashMap; key is the canonical value, value is a weak reference to it)
+ *
+ * Methods:
+ *      1. intern(value): returns the canonical instance equal to value (or null for null)
+ *      2. size(): returns the number of distinct values in the pool that are still referenced
+ *
+ * @author Nattanicha Nilsriphaiwan
+ * @version 1.0
+ */
+final class StringPool {
+
+    private static final int STRIPES = 16;
+    private static final Stripe[] POOL = new Stripe[STRIPES];
+
+    static
+    {
+        for (int stripe = 0; stripe < STRIPES; stripe++)
+        {
+            POOL[stripe] = new Stripe();
+        }
+    }
+
+    private StringPool()
+    {
+    }
+
+    /**
+     * intern method
+     * @param value - value to look up
+     * @return      - the canonical instance equal to value, or null if value is null
+     */
+    static String intern(final String value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        Stripe stripe = POOL[(value.hashCode() & Integer.MAX_VALUE) % STRIPES];
+        synchronized (stripe)
+        {
+            WeakReference<String> reference = stripe.values.get(value);
+            String canonical = reference == null ? null : reference.get();
+            if (canonical == null)
+            {
+                // the value refers to itself only weakly, so the entry does not keep its own key alive
+                stripe.values.put(value, new WeakReference<>(value));
+                canonical = value;
+            }
+            return canonical;
+        }
+    }
+
+    /**
+     * size method
+     * @return - the number of distinct values in the pool that have not been reclaimed
+     */
+    static int size()
+    {
+        int size = 0;
+        for (Stripe stripe : POOL)
+        {
+            synchronized (stripe)
+            {
+                size += stripe.values.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Class: Stripe
+     *
+     * The values whose hash falls in one stripe, guarded by the stripe itself.
+     */
+    private static final class Stripe {
+
+        private final WeakHashMap<String, WeakReference<String>> values = new WeakHashMap<>();
+    }
+}
@@ -0,0 +1,35 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AddressKeyTest
+{
+    @Test
+    void normalizes()
+    {
+        AddressKey key = AddressKey.of(new Address("1a", 777, "56th avenue", "v7n2m8", "surrey"));
+        assertEquals("1a-777 56th ave V7N2M8 surrey", key.toString());
+
+        // case, punctuation, spacing, "#" and street words do not matter
+        AddressKey same = AddressKey.of(new Address("#1A", 777, "56th  Ave.", "V7N2m8", " Surrey "));
+        assertEquals(key, same);
+        assertEquals(key.hashCode(), same.hashCode());
+
+        assertNotEquals(key, AddressKey.of(new Address("1b", 777, "56th avenue", "v7n2m8", "surrey")));
+        assertNotEquals(key, AddressKey.of(new Address(null, 777, "56th avenue", "v7n2m8", "surrey")));
+        assertNotEquals(key, AddressKey.of(new Address("1a", 778, "56th avenue", "v7n2m8", "surrey")));
+        assertNotEquals(key, AddressKey.of(new Address("1a", 777, "56th avenue", "v7n2m8", "langley")));
+        assertEquals("123 main st V7R2G2 west vancouver",
+                AddressKey.of(new Address(null, 123, "Main Street", "v7r2g2", "west vancouver")).toString());
+    }
+
+    @Test
+    void keysShareTheirStrings()
+    {
+        AddressKey first = AddressKey.of(new Address(null, 1, "56th Avenue", "v7n2m8", "Surrey"));
+        AddressKey second = AddressKey.of(new Address(null, 2, "56th avenue", "V7N2M8", "surrey"));
+        assertSame(first.getStreet(), second.getStreet());
+        assertSame(first.getPostalCode(), second.getPostalCode());
+        assertSame(first.getCity(), second.getCity());
+    }
+}
\ No newline at end of file
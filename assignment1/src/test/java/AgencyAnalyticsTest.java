@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgencyAnalyticsTest
+{
+    @Test
+    void sampleStaysUniformAndFull()
+    {
+        AgencyAnalytics analytics = new AgencyAnalytics();
+        List<Listing> listings = new ArrayList<>();
+        for (int count = 0; count < 20_000; count++)
+        {
+            Address address = new Address(null, count, "street " + count % 500, "v1v" + (100 + count % 50), "city " + count % 7);
+            Listing listing = new Listing(new Property(1_000 + count, address, 1 + count % 5, count % 4 == 0,
+                    "residence", "s" + count));
+            analytics.add(listing);
+            listings.add(listing);
+        }
+        assertEquals(AgencyAnalytics.SAMPLE_CAPACITY, analytics.getSampleSize());
+        assertEquals(20_000, analytics.getListingCount());
+        assertEquals(0.25, analytics.getPoolShare(), 1e-9);
+        assertEquals(7, analytics.getDistinctCities());
+        assertEquals(3_500, analytics.getDistinctStreets(), 3_500 * 0.05);
+        assertEquals(50, analytics.getDistinctPostalCodes(), 2);
+        // listings 3, 3503, ... 17503 are on street 3 in city 3
+        int frequency = analytics.getStreetFrequency("Street 3", "City 3");
+        assertTrue(frequency >= 6 && frequency <= 6 + Math.E / CountMinSketch.DEFAULT_WIDTH * 20_000);
+
+        // prices are uniform from 1000 to 21000
+        assertEquals(11_000, analytics.getPriceQuantile(0.5), 20_000 * 0.05);
+        assertEquals(0.25, analytics.getPriceBandShare(1_000, 6_000), 0.05);
+
+        // removing most listings leaves a thinned sample of only listed ones until it is refilled
+        for (Listing listing : listings.subList(0, 18_000))
+        {
+            analytics.remove(listing);
+        }
+        assertTrue(analytics.getSampleSize() < AgencyAnalytics.SAMPLE_CAPACITY / 2);
+        assertTrue(analytics.needsRefill());
+        for (Property property : analytics.getSample())
+        {
+            assertTrue(Integer.parseInt(property.getPropertyId().substring(1)) >= 18_000);
+        }
+        analytics.refill(listings.subList(18_000, 20_000));
+        assertEquals(AgencyAnalytics.SAMPLE_CAPACITY, analytics.getSampleSize());
+        assertEquals(20_000, analytics.getPriceQuantile(0.5), 2_000 * 0.1);
+
+        assertThrows(IllegalArgumentException.class, () -> analytics.getPriceQuantile(1.5));
+        assertThrows(NullPointerException.class, () -> analytics.getStreetFrequency(null, "city 1"));
+    }
+
+    @Test
+    void combineWeighsEachAgencyByItsListings()
+    {
+        // 9000 listings at 1000 to 10000 in one agency and 1000 at 20000 to 21000 in another, on shared streets
+        AgencyAnalytics large = new AgencyAnalytics();
+        AgencyAnalytics small = new AgencyAnalytics();
+        for (int count = 0; count < 10_000; count++)
+        {
+            boolean inLarge = count < 9_000;
+            Address address = new Address(null, count, "street " + count % 100, "v1v" + (100 + count % 50), "city " + count % 3);
+            Listing listing = new Listing(new Property((inLarge ? 1_000 : 11_000) + count, address, 2,
+                    count % 2 == 0, "residence", "c" + count % 5_000));
+            (inLarge ? large : small).add(listing);
+        }
+
+        AgencyAnalytics combined = AgencyAnalytics.combine(large, small);
+        assertEquals(10_000, combined.getListingCount());
+        assertEquals(0.5, combined.getPoolShare(), 1e-9);
+        assertEquals(3, combined.getDistinctCities());
+        assertEquals(300, combined.getDistinctStreets(), 300 * 0.05);
+        assertEquals(50, combined.getDistinctPostalCodes(), 2);
+        // listings 7, 307, ... 9907 are on street 7 in city 1
+        assertTrue(combined.getStreetFrequency("Street 7", "City 1") >= 34);
+        assertEquals(AgencyAnalytics.SAMPLE_CAPACITY, combined.getSampleSize());
+        assertEquals(0.1, combined.getPriceBandShare(20_000, 21_000), 0.01);
+        assertEquals(large.getPriceQuantile(0.5), combined.getPriceQuantile(0.45), 9_000 * 0.1);
+
+        // the parts are unchanged, and combining nothing answers for no listings
+        assertEquals(9_000, large.getListingCount());
+        assertEquals(0, AgencyAnalytics.combine().getListingCount());
+        assertTrue(Double.isNaN(AgencyAnalytics.combine(new AgencyAnalytics()).getPriceQuantile(0.5)));
+        assertThrows(NullPointerException.class, () -> AgencyAnalytics.combine(large, null));
+    }
+}
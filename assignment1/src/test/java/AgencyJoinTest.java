@@ -0,0 +1,150 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgencyJoinTest
+{
+    private Address a1 = new Address("1a", 777, "56th avenue", "v7n2m8", "surrey");
+    private Property p1 = new Property(499000.00, a1, 2, false, "residence", "abc123");
+
+    private Address a2 = new Address(null, 123, "main street", "v7r2g2", "west vancouver");
+    private Property p2 = new Property(5999999.00, a2, 5, true, "residence", "xyz789");
+
+    private Address a3 = new Address("9", 99, "gretzky way", "t6v7h3", "toronto");
+    private Property p3 = new Property(99999.00, a3, 1, false, "commercial", "9999");
+
+    @Test
+    void joinByAddress()
+    {
+        Agency left = new Agency("BCIT Ltd");
+        left.addProperty(p1);
+        left.addProperty(p2);
+        left.addProperty(p3);
+
+        // the same two addresses written another way, under other ids, plus one address only listed here
+        Agency right = new Agency("Feed Ltd");
+        right.addProperty(new Property(510000.00, new Address("#1A", 777, "56th Ave.", "V7N2m8", "Surrey"),
+                2, false, "residence", "feed1"));
+        right.addProperty(new Property(95000.00, new Address("9", 99, "Gretzky Way", "T6V7H3", "Toronto"),
+                1, false, "commercial", "feed3"));
+        right.addProperty(new Property(1.00, new Address(null, 1, "nowhere road", "a1a1a1", "nowhere"),
+                1, false, "retail", "feed4"));
+
+        ArrayList<SharedListing> shared = AgencyJoin.join(left, right, AgencyJoin.Key.ADDRESS);
+        assertEquals(new TreeSet<>(List.of("abc123/feed1", "9999/feed3")), pairsOf(shared));
+        for (SharedListing listing : shared)
+        {
+            if (listing.getLeftId().equals("abc123"))
+            {
+                assertSame(p1, listing.getLeft());
+                assertEquals(499000.00, listing.getLeftPriceUsd());
+                assertEquals(510000.00, listing.getRightPriceUsd());
+                assertEquals(11000.00, listing.getPriceDifferenceUsd());
+            }
+        }
+
+        // left is still the first agency when it is the larger one and the table is built on the right
+        right.removeProperty("feed4");
+        assertEquals(new TreeSet<>(List.of("abc123/feed1", "9999/feed3")),
+                pairsOf(AgencyJoin.join(left, right, AgencyJoin.Key.ADDRESS)));
+        assertTrue(AgencyJoin.join(left, right, AgencyJoin.Key.PROPERTY_ID).isEmpty());
+    }
+
+    @Test
+    void joinById()
+    {
+        Agency left = new Agency("BCIT Ltd");
+        left.addProperty(p1);
+        left.addProperty(p2);
+        Agency right = new Agency("Feed Ltd");
+        right.addProperty(new Property(6100000.00, a2, 5, true, "residence", "xyz789"));
+
+        ArrayList<SharedListing> shared = AgencyJoin.join(left, right, AgencyJoin.Key.PROPERTY_ID);
+        assertEquals(1, shared.size());
+        assertEquals("xyz789 $5999999.00 / xyz789 $6100000.00", shared.get(0).toString());
+    }
+
+    @Test
+    void duplicateAddressesJoinEveryPair()
+    {
+        Agency left = new Agency("BCIT Ltd");
+        left.addProperty(p1);
+        left.addProperty(new Property(500000.00, a1, 2, false, "residence", "abc124"));
+        Agency right = new Agency("Feed Ltd");
+        right.addProperty(new Property(510000.00, a1, 2, false, "residence", "feed1"));
+        right.addProperty(new Property(520000.00, a1, 2, false, "residence", "feed2"));
+
+        assertEquals(new TreeSet<>(List.of("abc123/feed1", "abc123/feed2", "abc124/feed1", "abc124/feed2")),
+                pairsOf(AgencyJoin.join(left, right, AgencyJoin.Key.ADDRESS)));
+    }
+
+    @Test
+    void partitionedMatchesSequential()
+    {
+        Agency left = new Agency("BCIT Ltd");
+        Agency right = new Agency("Feed Ltd");
+        ArrayList<Property> leftBatch = new ArrayList<>();
+        ArrayList<Property> rightBatch = new ArrayList<>();
+        for (int index = 0; index < 3_000; index++)
+        {
+            Address address = new Address(null, index % 2_000 + 1, "main street", "v7r2g2", "west vancouver");
+            leftBatch.add(new Property(100000 + index, address, index % 5 + 1, false, "residence", "L" + index));
+            if (index % 3 == 0)
+            {
+                rightBatch.add(new Property(200000 + index, address, index % 5 + 1, false, "residence", "R" + index));
+            }
+        }
+        left.addAll(leftBatch);
+        right.addAll(rightBatch);
+
+        TreeSet<String> sequential = pairsOf(AgencyJoin.join(left, right, AgencyJoin.Key.ADDRESS));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            for (int partitions : new int[] {2, 7, 16})
+            {
+                ArrayList<SharedListing> partitioned = AgencyJoin.join(left, right, AgencyJoin.Key.ADDRESS,
+                        partitions, executor);
+                assertEquals(sequential, pairsOf(partitioned));
+                assertEquals(sequential.size(), partitioned.size());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        // street numbers 1 to 1000 are listed twice on the left, so their right listings match twice
+        assertTrue(sequential.size() > rightBatch.size());
+    }
+
+    @Test
+    void getExpectedExceptions()
+    {
+        Agency agency = new Agency("BCIT Ltd");
+        NullPointerException nullEx = assertThrows(NullPointerException.class, ()->{
+            AgencyJoin.join(agency, null, AgencyJoin.Key.ADDRESS);
+        });
+        assertEquals("Agency cannot be null", nullEx.getMessage());
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            AgencyJoin.join(agency, agency, AgencyJoin.Key.ADDRESS, 0, Runnable::run);
+        });
+        assertEquals("Invalid partitions: 0", ex.getMessage());
+    }
+
+    private static TreeSet<String> pairsOf(final List<SharedListing> shared)
+    {
+        TreeSet<String> pairs = new TreeSet<>();
+        for (SharedListing listing : shared)
+        {
+            pairs.add(listing.getLeftId() + "/" + listing.getRightId());
+        }
+        return pairs;
+    }
+}
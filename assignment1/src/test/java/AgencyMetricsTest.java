@@ -0,0 +1,132 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgencyMetricsTest
+{
+    private Agency agency;
+
+    private Address a1 = new Address("1a", 777, "56th avenue", "v7n2m8", "surrey");
+    private Property p1 = new Property(499000.00, a1, 2, false, "residence", "abc123");
+
+    private Address a2 = new Address(null, 123, "main street", "v7r2g2", "west vancouver");
+    private Property p2 = new Property(5999999.00, a2, 5, true, "residence", "xyz789");
+
+    private Address a3 = new Address("9", 99, "gretzky way", "t6v7h3", "toronto");
+    private Property p3 = new Property(99999.00, a3, 1, false, "commercial", "9999");
+
+    @BeforeEach
+    void setUp()
+    {
+        agency = new Agency("BCIT Ltd");
+        agency.addProperty(p1);
+        agency.addProperty(p2);
+        agency.addProperty(p3);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        agency = null;
+    }
+
+    @Test
+    void disabledByDefault()
+    {
+        agency.getPropertiesWithPools();
+
+        assertFalse(agency.getMetrics().isEnabled());
+        assertTrue(agency.getMetrics().getMethods().isEmpty());
+    }
+
+    @Test
+    void getMethodMetrics()
+    {
+        AgencyMetrics metrics = agency.getMetrics();
+        metrics.setEnabled(true);
+
+        agency.getPropertiesWithPools();
+        agency.getPropertiesWithPools();
+        agency.getProperty("9999");
+
+        AgencyMetrics.MethodMetrics pools = metrics.getMethodMetrics("getPropertiesWithPools");
+        assertEquals(2, pools.getCalls());
+        assertEquals(6, pools.getRowsScanned());
+        assertEquals(2, pools.getResultSize());
+        assertEquals(2, pools.getLatency().getCount());
+
+        assertEquals(1, metrics.getMethodMetrics("getProperty").getResultSize());
+        assertNull(metrics.getMethodMetrics("getPropertiesOn"));
+
+        metrics.reset();
+        assertTrue(metrics.getMethods().isEmpty());
+    }
+
+    @Test
+    void queryEvents() throws Exception
+    {
+        Path file = Files.createTempFile("agency", ".jfr");
+        try (Recording recording = new Recording())
+        {
+            recording.enable("realestate.AgencyQuery");
+            recording.start();
+            agency.getPropertiesOfType("residence");
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals("BCIT Ltd", event.getString("agency"));
+        assertEquals("getPropertiesOfType", event.getString("method"));
+        assertEquals("residence", event.getString("parameters"));
+        assertEquals(2, event.getLong("rowsScanned"));
+        assertEquals(2, event.getLong("resultSize"));
+        // begun when the call started, not built once it was over
+        assertTrue(event.getDuration().toNanos() > 0);
+        assertFalse(event.hasField("queryDuration"));
+    }
+
+    @Test
+    void slowQueryLog() throws InterruptedException
+    {
+        try (SlowQueryLog log = new SlowQueryLog(0, 0, 16))
+        {
+            AgencyMetrics metrics = agency.getMetrics();
+            metrics.setSlowQueryLog(log);
+            assertSame(log, metrics.getSlowQueryLog());
+
+            agency.getPropertiesBetween(0, 500000);
+            agency.getPropertiesOfType("residence");
+            metrics.setSlowQueryLog(null);
+            agency.getProperty("abc123");
+            log.flush();
+
+            List<SlowQuery> entries = log.getEntries();
+            assertEquals(2, entries.size());
+            SlowQuery between = entries.get(0);
+            assertEquals("BCIT Ltd", between.getAgency());
+            assertEquals("getPropertiesBetween", between.getMethod());
+            assertEquals("0, 500000", between.getParameters());
+            assertEquals("price column", between.getIndex());
+            assertEquals(3, between.getRowsScanned());
+            assertEquals(2, between.getResultSize());
+            assertTrue(between.getScanNanos() >= 0 && between.getFormatNanos() >= 0);
+            assertEquals("type partition", entries.get(1).getIndex());
+            // metrics themselves stay off
+            assertTrue(metrics.getMethods().isEmpty());
+        }
+    }
+}
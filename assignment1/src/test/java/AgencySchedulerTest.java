@@ -0,0 +1,211 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgencySchedulerTest
+{
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private Agency agency()
+    {
+        Agency agency = new Agency("Scheduled Ltd");
+        for (int number = 1; number <= 10; number++)
+        {
+            agency.addProperty(new Property(100000 * number, new Address(null, number, "main street", "v1v1v1", "vancouver"),
+                    2, false, "residence", "id" + number));
+        }
+        return agency;
+    }
+
+    @Test
+    void runsQueries() throws Exception
+    {
+        Agency agency = agency();
+        try (AgencyScheduler scheduler = new AgencyScheduler(agency, 2, 10))
+        {
+            assertSame(agency.getProperty("id3"), scheduler.getProperty("id3", TIMEOUT_MILLIS).get());
+            assertEquals(3, scheduler.getPropertiesBetween(0, 300000, AgencyScheduler.Priority.NORMAL, TIMEOUT_MILLIS).get().length);
+            assertEquals(agency.getPropertiesOfType("residence"),
+                    scheduler.getPropertiesOfType("residence", AgencyScheduler.Priority.REPORT, TIMEOUT_MILLIS).get());
+        }
+    }
+
+    @Test
+    void interactiveQueriesPassRunningReports() throws Exception
+    {
+        Agency agency = agency();
+        CountDownLatch release = new CountDownLatch(1);
+        try (AgencyScheduler scheduler = new AgencyScheduler(agency, 3, 10))
+        {
+            List<CompletableFuture<Boolean>> reports = new ArrayList<>();
+            for (int index = 0; index < 4; index++)
+            {
+                reports.add(scheduler.submit(AgencyScheduler.Priority.REPORT, TIMEOUT_MILLIS, context -> {
+                    try
+                    {
+                        return release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return false;
+                    }
+                }));
+            }
+
+            // two reports hold the background workers and two wait; the third worker is kept for this
+            assertNotNull(scheduler.getProperty("id1", TIMEOUT_MILLIS).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            for (CompletableFuture<Boolean> report : reports)
+            {
+                assertFalse(report.isDone());
+            }
+
+            release.countDown();
+            for (CompletableFuture<Boolean> report : reports)
+            {
+                assertTrue(report.get());
+            }
+        }
+    }
+
+    @Test
+    void deadlinesAndCancellation() throws Exception
+    {
+        Agency agency = agency();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch stopped = new CountDownLatch(2);
+        try (AgencyScheduler scheduler = new AgencyScheduler(agency, 3, 10))
+        {
+            CompletableFuture<Integer> late = scheduler.submit(AgencyScheduler.Priority.REPORT, 200,
+                    context -> spin(context, started, stopped));
+            assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            ExecutionException ex = assertThrows(ExecutionException.class, ()->{
+                late.get();
+            });
+            assertInstanceOf(TimeoutException.class, ex.getCause());
+
+            CountDownLatch restarted = new CountDownLatch(1);
+            CompletableFuture<Integer> cancelled = scheduler.submit(AgencyScheduler.Priority.REPORT, TIMEOUT_MILLIS,
+                    context -> spin(context, restarted, stopped));
+            assertTrue(restarted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            cancelled.cancel(true);
+            assertThrows(CancellationException.class, ()->{
+                cancelled.get();
+            });
+
+            // both scans saw their context cancelled and gave up their workers
+            assertTrue(stopped.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private static int spin(final QueryContext context, final CountDownLatch started, final CountDownLatch stopped)
+    {
+        started.countDown();
+        try
+        {
+            while (true)
+            {
+                context.checkpoint();
+                Thread.onSpinWait();
+            }
+        }
+        finally
+        {
+            stopped.countDown();
+        }
+    }
+
+    @Test
+    void rejectsWhenFullOrClosed() throws Exception
+    {
+        Agency agency = agency();
+        CountDownLatch release = new CountDownLatch(1);
+        AgencyScheduler scheduler = new AgencyScheduler(agency, 2, 1);
+        CompletableFuture<Boolean> running = scheduler.submit(AgencyScheduler.Priority.REPORT, TIMEOUT_MILLIS, context -> {
+            try
+            {
+                return release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                return false;
+            }
+        });
+        // wait for the worker to take it, leaving the queue empty
+        while (scheduler.getQueuedCount(AgencyScheduler.Priority.REPORT) > 0)
+        {
+            Thread.sleep(1);
+        }
+
+        CompletableFuture<Property[]> waiting = scheduler.getPropertiesBetween(0, 1, AgencyScheduler.Priority.REPORT, TIMEOUT_MILLIS);
+        CompletableFuture<Property[]> rejected = scheduler.getPropertiesBetween(0, 1, AgencyScheduler.Priority.REPORT, TIMEOUT_MILLIS);
+        ExecutionException ex = assertThrows(ExecutionException.class, ()->{
+            rejected.get();
+        });
+        assertEquals("Queue full: 1", ex.getCause().getMessage());
+
+        scheduler.close();
+        ex = assertThrows(ExecutionException.class, ()->{
+            waiting.get();
+        });
+        assertInstanceOf(RejectedExecutionException.class, ex.getCause());
+        release.countDown();
+        assertTrue(running.get());
+    }
+
+    @Test
+    void getExpectedExceptions()
+    {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            new AgencyScheduler(agency(), 1, 10);
+        });
+        assertEquals("Invalid threads: 1", ex.getMessage());
+
+        ex = assertThrows(IllegalArgumentException.class, ()->{
+            new AgencyScheduler(agency(), 2, 0);
+        });
+        assertEquals("Invalid capacity: 0", ex.getMessage());
+
+        try (AgencyScheduler scheduler = new AgencyScheduler(agency(), 2, 10))
+        {
+            ex = assertThrows(IllegalArgumentException.class, ()->{
+                scheduler.getProperty("id1", 0);
+            });
+            assertEquals("Invalid timeout: 0", ex.getMessage());
+        }
+    }
+
+    @Test
+    void errorsFailOnlyTheirQuery() throws Exception
+    {
+        Agency agency = agency();
+        // each priority fails more queries than there are workers
+        try (AgencyScheduler scheduler = new AgencyScheduler(agency, 2, 10))
+        {
+            for (AgencyScheduler.Priority priority : AgencyScheduler.Priority.values())
+            {
+                for (int attempt = 0; attempt < 4; attempt++)
+                {
+                    CompletableFuture<Object> failed = scheduler.submit(priority, TIMEOUT_MILLIS, context -> {
+                        throw new StackOverflowError("too deep");
+                    });
+                    ExecutionException ex = assertThrows(ExecutionException.class, failed::get);
+                    assertInstanceOf(StackOverflowError.class, ex.getCause());
+
+                    // the workers are still there, and a background query can still start
+                    assertEquals(3, scheduler.getPropertiesBetween(0, 300000, priority, TIMEOUT_MILLIS)
+                            .get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).length);
+                }
+            }
+        }
+    }
+}
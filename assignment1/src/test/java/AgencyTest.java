@@ -1,313 +1,1285 @@
-import org.junit.jupiter.api.AfterEach;
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
-
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Set;
-
-import static org.junit.jupiter.api.Assertions.*;
-
-class AgencyTest
-{
-    private Agency agency;
-
-    private Address a1 = new Address("1a", 777, "56th avenue", "v7n2m8", "surrey");
-    private Property p1 = new Property(499000.00, a1, 2, false, "residence", "abc123");
-
-    private Address a2 = new Address(null, 123, "main street", "v7r2g2", "west vancouver");
-    private Property p2 = new Property(5999999.00, a2, 5, true, "residence", "xyz789");
-
-    private Address a3 = new Address(null, 456, "elm street", "90210", "los angeles");
-    private Property p3 = new Property(2500000.00, a3, 6, true, "residence", "777def");
-
-    private Address a4 = new Address("44", 1111, "maple street", "v8y3r5", "vancouver");
-    private Property p4 = new Property(1000000.00, a4, 1, false, "retail", "876tru");
-
-    private Address a5 = new Address("9", 99, "gretzky way", "t6v7h3", "toronto");
-    private Property p5 = new Property(99999.00, a5, 1, false, "commercial", "9999");
-
-    private Address a6 = new Address("b", 711, "country road", "v8h5f5", "maple ridge");
-    private Property p6 = new Property(740100.00, a6, 3, false, "residence", "mr6789");
-
-    private Address a7 = new Address(null, 8785, "pinnacle avenue", "v9u3h3", "north vancouver");
-    private Property p7 = new Property(15000000.00, a7, 20, true, "residence", "78444a");
-
-    private Address a8 = new Address(null, 800, "elm street", "90557", "los angeles");
-    private Property p8 = new Property(7100000.00, a8, 10, false, "residence", "mmm33");
-
-    private Address a9 = new Address(null, 1515,"main street", "v8y7r3", "west vancouver");
-    private Property p9 = new Property(4000000.00, a9, 2, true, "commercial", "678T");
-
-    private Address a10 = new Address("6", 60, "60th street", "v8u9b1", "burnaby");
-    private Property p10 = new Property(700000.00, a10, 2, true, "retail", "y6yyy");
-
-    private Address a11 = new Address("7h", 1500, "railway avenue", "v9v5v4", "richmond");
-    private Property p11 = new Property(840000.00, a11, 4, false, "commercial", "A1212");
-
-    private Address a12 = new Address(null, 333, "elm street", "90111", "los angeles");
-    private Property p12 = new Property(1600000.00, a12, 3, false, "residence", "9000a");
-
-
-    @BeforeEach
-    void setUp()
-    {
-        agency = new Agency("BCIT Ltd");
-        agency.addProperty(p1);
-        agency.addProperty(p2);
-        agency.addProperty(p3);
-        agency.addProperty(p4);
-        agency.addProperty(p5);
-        agency.addProperty(p6);
-        agency.addProperty(p7);
-        agency.addProperty(p8);
-        agency.addProperty(p9);
-        agency.addProperty(p10);
-        agency.addProperty(p11);
-        agency.addProperty(p12);
-    }
-
-
-    @AfterEach
-    void tearDown()
-    {
-        agency = null;
-    }
-
-
-
-
-    @Test
-    void addGetProperty()
-    {
-        assertNull(agency.getProperty("x"));
-
-        Address a13 = new Address(null, 333, "elm street", "90111", "los angeles");
-        Property p13 = new Property(1600000.00, a13, 3, false, "residence", "x");
-
-        agency.addProperty(p13);
-
-        assertSame(p13, agency.getProperty("x"));
-    }
-
-
-    @Test
-    void removeProperty()
-    {
-        assertNull(agency.getProperty("x"));
-
-        Address a13 = new Address(null, 333, "elm street", "90111", "los angeles");
-        Property p13 = new Property(1600000.00, a13, 3, false, "residence", "x");
-
-        agency.addProperty(p13);
-
-        assertSame(p13, agency.getProperty("x"));
-
-        agency.removeProperty("x");
-
-        assertNull(agency.getProperty("x"));
-
-    }
-
-    @Test
-    void getTotalPropertyValues()
-    {
-        assertEquals(40079098, agency.getTotalPropertyValues());
-    }
-
-    @Test
-    void getPropertiesWithPools()
-    {
-        ArrayList<Property> propertiesWithPools = new ArrayList<>();
-        propertiesWithPools.add(p2);
-        propertiesWithPools.add(p3);
-        propertiesWithPools.add(p7);
-        propertiesWithPools.add(p9);
-        propertiesWithPools.add(p10);
-
-
-
-
-        assertTrue(propertiesWithPools.size() == agency.getPropertiesWithPools().size() &&
-                propertiesWithPools.containsAll(agency.getPropertiesWithPools()) &&
-                agency.getPropertiesWithPools().containsAll(propertiesWithPools));
-
-
-
-    }
-
-    @Test
-    void getPropertiesBetween()
-    {
-        Property[] matches = new Property[5];
-        Property[] agencyResults = agency.getPropertiesBetween(700001, 2500000);
-
-        assertTrue(agencyResults.length == 5);
-
-        matches[0] = p3;
-        matches[1] = p4;
-        matches[2] = p6;
-        matches[3] = p11;
-        matches[4] = p12;
-
-        boolean found0 = false;
-        boolean found1 = false;
-        boolean found2 = false;
-        boolean found3 = false;
-        boolean found4 = false;
-
-
-
-        for(Property property: agencyResults)
-        {
-            if(property.getPropertyId().equalsIgnoreCase(matches[0].getPropertyId()))
-            {
-                found0 = true;
-            }
-
-            if(property.getPropertyId().equalsIgnoreCase(matches[1].getPropertyId()))
-            {
-                found1 = true;
-            }
-
-            if(property.getPropertyId().equalsIgnoreCase(matches[2].getPropertyId()))
-            {
-                found2 = true;
-            }
-
-            if(property.getPropertyId().equalsIgnoreCase(matches[3].getPropertyId()))
-            {
-                found3 = true;
-            }
-
-            if(property.getPropertyId().equalsIgnoreCase(matches[4].getPropertyId()))
-            {
-                found4 = true;
-            }
-        }
-
-        assertTrue(found0 && found1 && found2 && found3 && found4);
-
-
-
-    }
-
-    @Test
-    void getPropertiesOn()
-    {
-        ArrayList<Address> propertiesOnElmStreet = new ArrayList<>();
-        propertiesOnElmStreet.add(p3.getAddress());
-        propertiesOnElmStreet.add(p8.getAddress());
-        propertiesOnElmStreet.add(p12.getAddress());
-
-
-        assertTrue(propertiesOnElmStreet.size() == agency.getPropertiesOn("elm street").size() &&
-                propertiesOnElmStreet.containsAll(agency.getPropertiesOn("elm street")) &&
-                agency.getPropertiesOn("elm street").containsAll(propertiesOnElmStreet));
-
-        assertNull(agency.getPropertiesOn("fake street"));
-
-    }
-
-
-
-    @Test
-    void getPropertiesWithBedrooms()
-    {
-        HashMap<String, Property> expectedMatches = new HashMap<>();
-
-        expectedMatches.put(p2.getPropertyId(), p2);
-        expectedMatches.put(p3.getPropertyId(), p3);
-        expectedMatches.put(p8.getPropertyId(), p8);
-        expectedMatches.put(p11.getPropertyId(), p11);
-
-        HashMap<String, Property> fromAgency = agency.getPropertiesWithBedrooms(4,12);
-
-        assertEquals(expectedMatches.size(), fromAgency.size());
-
-
-        Set<String> propertyIds = expectedMatches.keySet();
-
-        // are all four expected properties in the agency?
-        for(String expectedPropertyId: propertyIds)
-        {
-            assertTrue(fromAgency.containsKey(expectedPropertyId));
-        }
-
-
-
-        assertNull(agency.getPropertiesWithBedrooms(7, 9));
-
-
-
-
-    }
-
-    @Test
-    void getPropertiesOfType()
-    {
-
-        ArrayList<String> agencyData = agency.getPropertiesOfType("commerCIAl");
-
-        boolean s1found = false;
-        boolean s2found = false;
-        boolean s3found = false;
-        boolean s4found = false;
-
-        String s1 = "Type: COMMERCIAL\n";
-        String s2 = ") Property 9999: unit #9 at 99 Gretzky Way T6V7H3 in Toronto (1 bedroom): $99999.\n";
-        String s3 = ") Property 678T: 1515 Main Street V8Y7R3 in West Vancouver (2 bedrooms plus pool): $4000000.\n";
-        String s4 = ") Property A1212: unit #7h at 1500 Railway Avenue V9V5V4 in Richmond (4 bedrooms): $840000.\n";
-
-        // order doesn't matter, so the numbers don't matter, but the strings must be present
-        for(String string: agencyData)
-        {
-            if(string.contains(s1))
-            {
-                s1found = true;
-
-            }
-            if(string.contains(s2))
-            {
-                s2found = true;
-
-            }
-            if(string.contains(s3))
-            {
-                s3found = true;
-
-            }
-            if(string.contains(s4))
-            {
-                s4found = true;
-
-            }
-        }
-        assertEquals(4, agencyData.size());
-        assertTrue(s1found && s2found && s3found && s4found);
-
-        // new check, for property type that does not exist
-
-        boolean s5found = false;
-        boolean s6found = false;
-
-        ArrayList<String> agencyData2 = agency.getPropertiesOfType("fake fake fake");
-        // order doesn't matter, so the numbers don't matter, but the strings must be present
-
-        assertEquals(2, agencyData2.size());
-        for(String string2: agencyData2)
-        {
-            if (string2.contains("Type: FAKE FAKE FAKE"))
-            {
-                s5found = true;
-
-            }
-            if (string2.contains("<none found>"))
-            {
-                s6found = true;
-            }
-        }
-        assertTrue(s5found && s6found);
-
-    }
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgencyTest
+{
+    private Agency agency;
+
+    private Address a1 = new Address("1a", 777, "56th avenue", "v7n2m8", "surrey");
+    private Property p1 = new Property(499000.00, a1, 2, false, "residence", "abc123");
+
+    private Address a2 = new Address(null, 123, "main street", "v7r2g2", "west vancouver");
+    private Property p2 = new Property(5999999.00, a2, 5, true, "residence", "xyz789");
+
+    private Address a3 = new Address(null, 456, "elm street", "90210", "los angeles");
+    private Property p3 = new Property(2500000.00, a3, 6, true, "residence", "777def");
+
+    private Address a4 = new Address("44", 1111, "maple street", "v8y3r5", "vancouver");
+    private Property p4 = new Property(1000000.00, a4, 1, false, "retail", "876tru");
+
+    private Address a5 = new Address("9", 99, "gretzky way", "t6v7h3", "toronto");
+    private Property p5 = new Property(99999.00, a5, 1, false, "commercial", "9999");
+
+    private Address a6 = new Address("b", 711, "country road", "v8h5f5", "maple ridge");
+    private Property p6 = new Property(740100.00, a6, 3, false, "residence", "mr6789");
+
+    private Address a7 = new Address(null, 8785, "pinnacle avenue", "v9u3h3", "north vancouver");
+    private Property p7 = new Property(15000000.00, a7, 20, true, "residence", "78444a");
+
+    private Address a8 = new Address(null, 800, "elm street", "90557", "los angeles");
+    private Property p8 = new Property(7100000.00, a8, 10, false, "residence", "mmm33");
+
+    private Address a9 = new Address(null, 1515,"main street", "v8y7r3", "west vancouver");
+    private Property p9 = new Property(4000000.00, a9, 2, true, "commercial", "678T");
+
+    private Address a10 = new Address("6", 60, "60th street", "v8u9b1", "burnaby");
+    private Property p10 = new Property(700000.00, a10, 2, true, "retail", "y6yyy");
+
+    private Address a11 = new Address("7h", 1500, "railway avenue", "v9v5v4", "richmond");
+    private Property p11 = new Property(840000.00, a11, 4, false, "commercial", "A1212");
+
+    private Address a12 = new Address(null, 333, "elm street", "90111", "los angeles");
+    private Property p12 = new Property(1600000.00, a12, 3, false, "residence", "9000a");
+
+
+    @BeforeEach
+    void setUp()
+    {
+        agency = new Agency("BCIT Ltd");
+        agency.addProperty(p1);
+        agency.addProperty(p2);
+        agency.addProperty(p3);
+        agency.addProperty(p4);
+        agency.addProperty(p5);
+        agency.addProperty(p6);
+        agency.addProperty(p7);
+        agency.addProperty(p8);
+        agency.addProperty(p9);
+        agency.addProperty(p10);
+        agency.addProperty(p11);
+        agency.addProperty(p12);
+    }
+
+
+    @AfterEach
+    void tearDown()
+    {
+        agency = null;
+    }
+
+
+
+
+    @Test
+    void addGetProperty()
+    {
+        assertNull(agency.getProperty("x"));
+
+        Address a13 = new Address(null, 333, "elm street", "90111", "los angeles");
+        Property p13 = new Property(1600000.00, a13, 3, false, "residence", "x");
+
+        agency.addProperty(p13);
+
+        assertSame(p13, agency.getProperty("x"));
+    }
+
+
+    @Test
+    void removeProperty()
+    {
+        assertNull(agency.getProperty("x"));
+
+        Address a13 = new Address(null, 333, "elm street", "90111", "los angeles");
+        Property p13 = new Property(1600000.00, a13, 3, false, "residence", "x");
+
+        agency.addProperty(p13);
+
+        assertSame(p13, agency.getProperty("x"));
+
+        agency.removeProperty("x");
+
+        assertNull(agency.getProperty("x"));
+
+    }
+
+    @Test
+    void getTotalPropertyValues()
+    {
+        assertEquals(40079098, agency.getTotalPropertyValues());
+    }
+
+    @Test
+    void getPropertiesWithPools()
+    {
+        ArrayList<Property> propertiesWithPools = new ArrayList<>();
+        propertiesWithPools.add(p2);
+        propertiesWithPools.add(p3);
+        propertiesWithPools.add(p7);
+        propertiesWithPools.add(p9);
+        propertiesWithPools.add(p10);
+
+
+
+
+        assertTrue(propertiesWithPools.size() == agency.getPropertiesWithPools().size() &&
+                propertiesWithPools.containsAll(agency.getPropertiesWithPools()) &&
+                agency.getPropertiesWithPools().containsAll(propertiesWithPools));
+
+
+
+    }
+
+    @Test
+    void getPropertiesBetween()
+    {
+        Property[] matches = new Property[5];
+        Property[] agencyResults = agency.getPropertiesBetween(700001, 2500000);
+
+        assertTrue(agencyResults.length == 5);
+
+        matches[0] = p3;
+        matches[1] = p4;
+        matches[2] = p6;
+        matches[3] = p11;
+        matches[4] = p12;
+
+        boolean found0 = false;
+        boolean found1 = false;
+        boolean found2 = false;
+        boolean found3 = false;
+        boolean found4 = false;
+
+
+
+        for(Property property: agencyResults)
+        {
+            if(property.getPropertyId().equalsIgnoreCase(matches[0].getPropertyId()))
+            {
+                found0 = true;
+            }
+
+            if(property.getPropertyId().equalsIgnoreCase(matches[1].getPropertyId()))
+            {
+                found1 = true;
+            }
+
+            if(property.getPropertyId().equalsIgnoreCase(matches[2].getPropertyId()))
+            {
+                found2 = true;
+            }
+
+            if(property.getPropertyId().equalsIgnoreCase(matches[3].getPropertyId()))
+            {
+                found3 = true;
+            }
+
+            if(property.getPropertyId().equalsIgnoreCase(matches[4].getPropertyId()))
+            {
+                found4 = true;
+            }
+        }
+
+        assertTrue(found0 && found1 && found2 && found3 && found4);
+
+
+
+    }
+
+    @Test
+    void getPropertiesOn()
+    {
+        ArrayList<Address> propertiesOnElmStreet = new ArrayList<>();
+        propertiesOnElmStreet.add(p3.getAddress());
+        propertiesOnElmStreet.add(p8.getAddress());
+        propertiesOnElmStreet.add(p12.getAddress());
+
+
+        assertTrue(propertiesOnElmStreet.size() == agency.getPropertiesOn("elm street").size() &&
+                propertiesOnElmStreet.containsAll(agency.getPropertiesOn("elm street")) &&
+                agency.getPropertiesOn("elm street").containsAll(propertiesOnElmStreet));
+
+        assertNull(agency.getPropertiesOn("fake street"));
+
+    }
+
+
+
+    @Test
+    void getPropertiesWithBedrooms()
+    {
+        HashMap<String, Property> expectedMatches = new HashMap<>();
+
+        expectedMatches.put(p2.getPropertyId(), p2);
+        expectedMatches.put(p3.getPropertyId(), p3);
+        expectedMatches.put(p8.getPropertyId(), p8);
+        expectedMatches.put(p11.getPropertyId(), p11);
+
+        HashMap<String, Property> fromAgency = agency.getPropertiesWithBedrooms(4,12);
+
+        assertEquals(expectedMatches.size(), fromAgency.size());
+
+
+        Set<String> propertyIds = expectedMatches.keySet();
+
+        // are all four expected properties in the agency?
+        for(String expectedPropertyId: propertyIds)
+        {
+            assertTrue(fromAgency.containsKey(expectedPropertyId));
+        }
+
+
+
+        assertNull(agency.getPropertiesWithBedrooms(7, 9));
+
+
+
+
+    }
+
+    @Test
+    void getPropertiesOfType()
+    {
+
+        ArrayList<String> agencyData = agency.getPropertiesOfType("commerCIAl");
+
+        boolean s1found = false;
+        boolean s2found = false;
+        boolean s3found = false;
+        boolean s4found = false;
+
+        String s1 = "Type: COMMERCIAL\n";
+        String s2 = ") Property 9999: unit #9 at 99 Gretzky Way T6V7H3 in Toronto (1 bedroom): $99999.\n";
+        String s3 = ") Property 678T: 1515 Main Street V8Y7R3 in West Vancouver (2 bedrooms plus pool): $4000000.\n";
+        String s4 = ") Property A1212: unit #7h at 1500 Railway Avenue V9V5V4 in Richmond (4 bedrooms): $840000.\n";
+
+        // order doesn't matter, so the numbers don't matter, but the strings must be present
+        for(String string: agencyData)
+        {
+            if(string.contains(s1))
+            {
+                s1found = true;
+
+            }
+            if(string.contains(s2))
+            {
+                s2found = true;
+
+            }
+            if(string.contains(s3))
+            {
+                s3found = true;
+
+            }
+            if(string.contains(s4))
+            {
+                s4found = true;
+
+            }
+        }
+        assertEquals(4, agencyData.size());
+        assertTrue(s1found && s2found && s3found && s4found);
+
+        // new check, for property type that does not exist
+
+        boolean s5found = false;
+        boolean s6found = false;
+
+        ArrayList<String> agencyData2 = agency.getPropertiesOfType("fake fake fake");
+        // order doesn't matter, so the numbers don't matter, but the strings must be present
+
+        assertEquals(2, agencyData2.size());
+        for(String string2: agencyData2)
+        {
+            if (string2.contains("Type: FAKE FAKE FAKE"))
+            {
+                s5found = true;
+
+            }
+            if (string2.contains("<none found>"))
+            {
+                s6found = true;
+            }
+        }
+        assertTrue(s5found && s6found);
+
+    }
+
+    @Test
+    void getPropertiesOfTypeAfterReplace()
+    {
+        // same id as p5, but now a retail property: it must leave the commercial partition
+        Address a13 = new Address("9", 99, "gretzky way", "t6v7h3", "toronto");
+        Property p13 = new Property(99999.00, a13, 1, false, "RETAIL", "9999");
+
+        agency.addProperty(p13);
+
+        assertEquals(3, agency.getPropertiesOfType("commercial").size());
+        assertEquals(4, agency.getPropertiesOfType("retail").size());
+
+        agency.removeProperty("9999");
+
+        assertEquals(3, agency.getPropertiesOfType("retail").size());
+    }
+
+    @Test
+    void getMemoryReport()
+    {
+        AgencyMemoryReport report = agency.getMemoryReport();
+
+        assertEquals(12, report.getListingCount());
+        assertEquals(12 * (MemoryEstimator.shallowSizeOf(Property.class) + PriceHistory.estimateInitialBytes()),
+                report.getPropertyBytes());
+        assertEquals(12 * MemoryEstimator.shallowSizeOf(Address.class), report.getAddressBytes());
+        assertTrue(report.getStringBytes() > 0);
+        assertTrue(report.getMapBytes() > 0);
+        assertTrue(report.getIndexBytes() > 0);
+        assertEquals(report.getPropertyBytes() + report.getAddressBytes() + report.getStringBytes()
+                + report.getMapBytes() + report.getIndexBytes(), report.getTotalBytes());
+
+        // a second listing at the same address adds no Address or address strings
+        agency.addProperty(new Property(1.00, a1, 1, false, "retail", "x"));
+        AgencyMemoryReport shared = agency.getMemoryReport();
+        assertEquals(report.getAddressBytes(), shared.getAddressBytes());
+    }
+
+    @Test
+    void setMemoryBudget()
+    {
+        long estimatedBytes = agency.getEstimatedBytes();
+        assertTrue(estimatedBytes > 0);
+
+        agency.setMemoryBudget(estimatedBytes);
+
+        Address a13 = new Address(null, 333, "elm street", "90111", "los angeles");
+        Property p13 = new Property(1600000.00, a13, 3, false, "residence", "x");
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, ()->{
+            agency.addProperty(p13);
+        });
+        assertTrue(ex.getMessage().equals("Memory budget exceeded: " + estimatedBytes));
+        assertNull(agency.getProperty("x"));
+
+        // freeing a listing makes room again
+        agency.removeProperty("abc123");
+        agency.addProperty(p13);
+        assertSame(p13, agency.getProperty("x"));
+
+        IllegalArgumentException ex2 = assertThrows(IllegalArgumentException.class, ()->{
+            agency.setMemoryBudget(-1);
+        });
+        assertTrue(ex2.getMessage().equals("Invalid memory budget: -1"));
+    }
+
+    @Test
+    void getTotalPropertyValuesAfterPriceChange()
+    {
+        p1.setPriceUsd(500000.00);
+        assertEquals(40080098, agency.getTotalPropertyValues());
+
+        agency.removeProperty("abc123");
+        assertEquals(39580098, agency.getTotalPropertyValues());
+
+        // a property no longer listed no longer counts
+        p1.setPriceUsd(1.00);
+        assertEquals(39580098, agency.getTotalPropertyValues());
+    }
+
+    @Test
+    void addAll()
+    {
+        Address a13 = new Address(null, 333, "elm street", "90111", "los angeles");
+        Property p13 = new Property(100.00, a13, 3, false, "retail", "x");
+        Property p14 = new Property(200.00, a13, 3, false, "retail", "y");
+
+        agency.addAll(List.of(p13, p14));
+
+        assertSame(p13, agency.getProperty("x"));
+        assertSame(p14, agency.getProperty("y"));
+        assertEquals(40079398, agency.getTotalPropertyValues());
+        assertEquals(5, agency.getPropertiesOfType("retail").size());
+
+        NullPointerException ex = assertThrows(NullPointerException.class, ()->{
+            agency.addAll(Arrays.asList(p1, null));
+        });
+        assertTrue(ex.getMessage().equals("Property cannot be null"));
+    }
+
+    @Test
+    void removeAll()
+    {
+        agency.removeAll(List.of("abc123", "xyz789"));
+
+        assertNull(agency.getProperty("abc123"));
+        assertNull(agency.getProperty("xyz789"));
+        assertEquals(33580099, agency.getTotalPropertyValues());
+
+        // an unknown id rejects the whole batch
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            agency.removeAll(List.of("9999", "fake"));
+        });
+        assertTrue(ex.getMessage().equals("Property ID doesn't match"));
+        assertSame(p5, agency.getProperty("9999"));
+    }
+
+    @Test
+    void updatePrices()
+    {
+        // one residence in surrey: patched
+        int repriced = agency.updatePrices(property -> property.getPropertyType() == PropertyType.RESIDENCE &&
+                property.getAddress().getCity().equalsIgnoreCase("surrey"), price -> price + 1000);
+
+        assertEquals(1, repriced);
+        assertEquals(500000.00, p1.getPriceUsd());
+        assertEquals(40080098, agency.getTotalPropertyValues());
+
+        // every listing: rebuilt
+        repriced = agency.updatePrices(property -> true, price -> price * 2);
+
+        assertEquals(12, repriced);
+        assertEquals(80160196, agency.getTotalPropertyValues());
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            agency.updatePrices(property -> property.getPropertyId().equals("9999"), price -> price - 1000000);
+        });
+        assertTrue(ex.getMessage().equals("Invalid price: -800002.0"));
+        assertEquals(80160196, agency.getTotalPropertyValues());
+    }
+
+    @Test
+    void snapshot()
+    {
+        AgencySnapshot before = agency.snapshot();
+
+        agency.removeProperty("abc123");
+        p2.setPriceUsd(1.00);
+
+        // the old snapshot still sees the listing, and the price it had
+        assertSame(p1, before.getProperty("abc123"));
+        assertEquals(12, before.size());
+        assertEquals(5999999.00, before.getPriceUsd("xyz789"));
+        assertEquals(40079098, before.getTotalPropertyValues());
+
+        AgencySnapshot after = agency.snapshot();
+        assertNull(after.getProperty("abc123"));
+        assertEquals(11, after.size());
+        assertEquals(1.00, after.getPriceUsd("xyz789"));
+        assertTrue(Double.isNaN(after.getPriceUsd("abc123")));
+        assertEquals(33580100, after.getTotalPropertyValues());
+
+        int residences = 0;
+        for (Property property : after.getPropertiesOfType(PropertyType.RESIDENCE))
+        {
+            assertEquals(PropertyType.RESIDENCE, property.getPropertyType());
+            residences++;
+        }
+        assertEquals(6, residences);
+    }
+
+    @Test
+    void readsDuringWrites() throws Exception
+    {
+        // a writer repricing and re-adding listings must never disturb a reader's scan
+        Thread writer = new Thread(() -> {
+            for (int round = 0; round < 2000; round++)
+            {
+                agency.updatePrices(property -> true, price -> price + 1);
+                agency.removeProperty("abc123");
+                agency.addProperty(p1);
+            }
+        });
+        writer.start();
+
+        while (writer.isAlive())
+        {
+            AgencySnapshot current = agency.snapshot();
+            double total = 0;
+            int count = 0;
+            for (Property property : current.getProperties())
+            {
+                total += current.getPriceUsd(property.getPropertyId());
+                count++;
+            }
+            assertEquals(current.size(), count);
+            assertEquals(current.getTotalPropertyValues(), total, 0.001);
+            assertNotNull(agency.getPropertiesBetween(0, Integer.MAX_VALUE));
+        }
+        writer.join();
+        assertEquals(12, agency.getPropertiesBetween(0, Integer.MAX_VALUE).length);
+    }
+
+    @Test
+    void rebuildsNeverTearRangeQueries() throws Exception
+    {
+        Agency large = new Agency("Large Ltd");
+        double total = 0;
+        for (int count = 0; count < 4000; count++)
+        {
+            double priceUsd = 100000 + count * 100;
+            large.addProperty(new Property(priceUsd, new Address(null, count + 1, "rebuild road", "v3v3v3", "richmond"),
+                    1 + count % 6, false, "residence", "t" + count));
+            total += priceUsd;
+        }
+
+        // a batch repricing every listing rebuilds the indexes each round
+        Thread writer = new Thread(() -> {
+            for (int round = 0; round < 100; round++)
+            {
+                large.updatePrices(property -> true, price -> price);
+            }
+        });
+        writer.start();
+        while (writer.isAlive())
+        {
+            assertEquals(4000, large.countBetween(0, Integer.MAX_VALUE));
+            assertEquals(total, large.sumBetween(0, Integer.MAX_VALUE), 0.001);
+            assertEquals(4000, large.getPropertiesWithin(0, Integer.MAX_VALUE, 1, 20).size());
+        }
+        writer.join();
+    }
+
+    @Test
+    void rebuildsNeverTearComparables() throws Exception
+    {
+        Agency large = new Agency("Large Ltd");
+        List<Property> listed = new ArrayList<>();
+        for (int count = 0; count < 2000; count++)
+        {
+            Property property = new Property(100000 + count * 100, new Address(null, count + 1, "rebuild road",
+                    "v3v3v3", "richmond"), 1 + count % 6, false, "residence", "c" + count);
+            large.addProperty(property);
+            listed.add(property);
+        }
+        Property probe = new Property(150000, a1, 3, false, "residence", "probe");
+        Property moving = listed.get(500);
+
+        // batches rebuild the tree; a single price change moves one listing within it
+        Thread writer = new Thread(() -> {
+            for (int round = 0; round < 100; round++)
+            {
+                large.updatePrices(property -> true, price -> price);
+                moving.setPriceUsd(150000 + round % 2);
+            }
+        });
+        writer.start();
+        while (writer.isAlive())
+        {
+            // moving is priced at or a dollar off the probe's price, so it is always the nearest
+            ArrayList<Property> nearest = large.getComparables(probe, 10);
+            assertEquals(10, nearest.size());
+            assertSame(moving, nearest.get(0));
+        }
+        writer.join();
+    }
+
+    @Test
+    void rebuildsNeverTearDuplicates() throws Exception
+    {
+        Agency large = new Agency("Large Ltd");
+        large.setDuplicatePolicy(DuplicatePolicy.FLAG);
+        large.addProperty(p1);
+        large.addProperty(new Property(510000.00, new Address("#1A", 777, "56th Ave.", "V7N2M8", "Surrey"),
+                2, false, "residence", "dup1"));
+        large.setDuplicatePolicy(DuplicatePolicy.ALLOW);
+        for (int count = 0; count < 2000; count++)
+        {
+            large.addProperty(new Property(100000 + count * 100, new Address(null, count + 1, "rebuild road",
+                    "v3v3v3", "richmond"), 1 + count % 6, false, "residence", "d" + count));
+        }
+
+        Thread writer = new Thread(() -> {
+            for (int round = 0; round < 100; round++)
+            {
+                large.updatePrices(property -> true, price -> price);
+            }
+        });
+        writer.start();
+        while (writer.isAlive())
+        {
+            assertEquals(1, large.findDuplicates().size());
+            assertEquals(Set.of("dup1"), large.getFlaggedDuplicates());
+        }
+        writer.join();
+    }
+
+    @Test
+    void rebuildsKeepContentHash() throws Exception
+    {
+        Agency large = new Agency("Large Ltd");
+        for (int count = 0; count < 2000; count++)
+        {
+            large.addProperty(new Property(100000 + count * 100, new Address(null, count + 1, "rebuild road",
+                    "v3v3v3", "richmond"), 1 + count % 6, false, "residence", "h" + count));
+        }
+        long hash = large.getContentHash();
+
+        // repricing to the same prices rebuilds the digest without changing the content
+        Thread writer = new Thread(() -> {
+            for (int round = 0; round < 100; round++)
+            {
+                large.updatePrices(property -> true, price -> price);
+            }
+        });
+        writer.start();
+        while (writer.isAlive())
+        {
+            assertEquals(hash, large.getContentHash());
+        }
+        writer.join();
+    }
+
+    @Test
+    void analyticsSampleLeavesListingsCold(@TempDir final Path directory) throws IOException
+    {
+        agency.setColdStorage(directory.resolve("cold.segment"));
+        agency.spillColdListings();
+        assertEquals(12, agency.spillColdListings());
+
+        assertEquals(12, agency.getAnalytics().getSample().size());
+        assertEquals(12, agency.getColdCount());
+    }
+
+    @Test
+    void spillsAndPromotionsKeepTheEstimate(@TempDir final Path directory) throws IOException
+    {
+        long residentBytes = agency.getEstimatedBytes();
+        agency.setColdStorage(directory.resolve("cold.segment"));
+        agency.spillColdListings();
+        assertEquals(12, agency.spillColdListings());
+        long coldBytes = agency.getEstimatedBytes();
+        assertTrue(coldBytes < residentBytes);
+
+        // a promotion puts a property's bytes back, and removing a cold listing takes off only what it still holds
+        agency.getProperty("abc123");
+        assertTrue(agency.getEstimatedBytes() > coldBytes);
+        agency.removeProperty("mmm33");
+        agency.addProperty(new Property(7100000.00, a8, 10, false, "residence", "mmm33"));
+        agency.spillColdListings();
+        agency.spillColdListings();
+        assertEquals(coldBytes, agency.getEstimatedBytes());
+
+        // reading everything back restores the resident estimate
+        agency.setColdStorage(null);
+        assertEquals(residentBytes, agency.getEstimatedBytes());
+    }
+
+    @Test
+    void timeScansSkipColdListingsOutsideTheirHistory(@TempDir final Path directory) throws IOException
+    {
+        Agency timed = new Agency("Timed Ltd");
+        long start = System.currentTimeMillis();
+        for (int count = 0; count < 20; count++)
+        {
+            timed.addProperty(new Property(100000 + count * 1000, new Address(null, count + 1, "history lane",
+                    "v4v4v4", "burnaby"), 2, false, "residence", "t" + count));
+        }
+        double total = timed.getTotalPropertyValues();
+        timed.setColdStorage(directory.resolve("cold.segment"));
+        timed.spillColdListings();
+        assertEquals(20, timed.spillColdListings());
+
+        // times outside a listing's history are answered from the listing alone
+        long later = System.currentTimeMillis() + 60_000;
+        assertEquals(0, timed.getTotalPropertyValuesAt(start - 1));
+        assertEquals(total, timed.getTotalPropertyValuesAt(later));
+        assertEquals(0, timed.getPropertiesBetween(0, Integer.MAX_VALUE, start - 1).length);
+        assertEquals(0, timed.getPropertiesBetween(0, 99999, later).length);
+        assertTrue(timed.getPropertiesWithPriceDrop(10, later, later + 1).isEmpty());
+        assertTrue(timed.getPropertiesWithPriceDrop(10, start - 2, start - 1).isEmpty());
+        assertEquals(0, timed.getColdReadCount());
+        assertEquals(1, timed.getPropertiesBetween(100000, 100000, later).length);
+        assertEquals(1, timed.getColdReadCount());
+    }
+
+    @Test
+    void priceHistoryQueries()
+    {
+        long day = 86_400_000L;
+        Agency history = new Agency("History Ltd");
+        Property falling = new Property(1000000.00, a1, 2, false, "residence", "fall", 0);
+        Property rising = new Property(500000.00, a2, 3, false, "residence", "rise", 0);
+        Property late = new Property(800000.00, a3, 1, false, "retail", "late", 20 * day);
+        history.addAll(List.of(falling, rising, late));
+
+        falling.setPriceUsd(980000.00, 10 * day);
+        falling.setPriceUsd(900000.00, 35 * day);
+        rising.setPriceUsd(550000.00, 40 * day);
+        late.setPriceUsd(700000.00, 45 * day);
+
+        assertEquals(1500000.00, history.getTotalPropertyValuesAt(5 * day));
+        assertEquals(2280000.00, history.getTotalPropertyValuesAt(30 * day));
+        assertEquals(2150000.00, history.getTotalPropertyValuesAt(50 * day));
+
+        assertEquals(2, history.getPropertiesBetween(0, 900000, 30 * day).length);
+        assertEquals(0, history.getPropertiesBetween(0, 100000, 30 * day).length);
+
+        // 980000 -> 900000 is an 8.2% drop; 800000 -> 700000 (listed inside the window) is 12.5%
+        ArrayList<Property> dropped = history.getPropertiesWithPriceDrop(5, 20 * day, 50 * day);
+        assertEquals(2, dropped.size());
+        assertTrue(dropped.contains(falling));
+        assertTrue(dropped.contains(late));
+        assertEquals(List.of(late), history.getPropertiesWithPriceDrop(10, 20 * day, 50 * day));
+        assertTrue(history.getPropertiesWithPriceDrop(5, 46 * day, 50 * day).isEmpty());
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            history.getPropertiesWithPriceDrop(101, 0, day);
+        });
+        assertEquals("Invalid percent: 101.0", ex.getMessage());
+
+        ex = assertThrows(IllegalArgumentException.class, ()->{
+            history.getPropertiesWithPriceDrop(5, day, 0);
+        });
+        assertEquals("Invalid time range: 86400000 to 0", ex.getMessage());
+    }
+
+    @Test
+    void queryViews()
+    {
+        QueryView<Property> pools = agency.propertiesWithPools();
+        List<Property> withPools = new ArrayList<>();
+        pools.forEach(withPools::add);
+        assertEquals(agency.getPropertiesWithPools().size(), withPools.size());
+        assertTrue(withPools.containsAll(agency.getPropertiesWithPools()));
+
+        QueryView<Address> onElm = agency.propertiesOn("ELM STREET");
+        int count = 0;
+        for (Address address : onElm)
+        {
+            assertEquals("elm street", address.getStreetName());
+            count++;
+        }
+        assertEquals(3, count);
+
+        QueryView<Property> large = agency.propertiesWithBedrooms(10, 20);
+        assertFalse(large.isEmpty());
+        assertTrue(agency.propertiesWithBedrooms(21, 30).isEmpty());
+        assertTrue(agency.propertiesOn("nowhere road").isEmpty());
+
+        // views are evaluated again on every iteration
+        agency.removeProperty("78444a");
+        agency.removeProperty("mmm33");
+        assertTrue(large.isEmpty());
+    }
+
+    @Test
+    void stream()
+    {
+        assertEquals(12, agency.stream().count());
+        assertEquals(agency.getTotalPropertyValues(),
+                agency.parallelStream().mapToDouble(Property::getPriceUsd).sum(), 0.001);
+        assertEquals(agency.getPropertiesWithPools().size(),
+                agency.parallelStream().filter(Property::hasSwimmingPool).count());
+        assertEquals(12, agency.stream().spliterator().getExactSizeIfKnown());
+    }
+
+    @Test
+    void getTotalPropertyValuesBetween()
+    {
+        // 2 to 3 bedrooms under $1,000,000: abc123, mr6789, y6yyy
+        assertEquals(1939100.00, agency.getTotalPropertyValuesBetween(0, 1000000, 2, 3));
+        assertEquals(agency.getTotalPropertyValues(), agency.getTotalPropertyValuesBetween(0, Integer.MAX_VALUE, 1, 20));
+        assertEquals(0, agency.getTotalPropertyValuesBetween(0, 1, 1, 20));
+
+        // columns belong to one snapshot; a price change is seen by the next query
+        agency.getProperty("abc123").setPriceUsd(100.00);
+        assertEquals(1440200.00, agency.getTotalPropertyValuesBetween(0, 1000000, 2, 3));
+        assertEquals(1, agency.getPropertiesBetween(0, 100).length);
+    }
+
+    @Test
+    void getComparables()
+    {
+        // the nearest to a $2,500,000 six-bedroom residence with a pool
+        ArrayList<Property> comparables = agency.getComparables(p3, 3);
+        assertEquals(3, comparables.size());
+        assertFalse(comparables.contains(p3));
+        assertEquals(p2, comparables.get(0));
+
+        // with type and pool ignored and price dominant, a commercial property is nearest to p9's price
+        ArrayList<Property> byPrice = agency.getComparables(p9, 1, new ComparableWeights(100, 0, 0, 0));
+        assertEquals(List.of(p2), byPrice);
+
+        // kept up to date on price changes and removes
+        p10.setPriceUsd(3500000.00);
+        assertEquals(p10, agency.getComparables(p9, 1, new ComparableWeights(100, 0, 0, 0)).get(0));
+        agency.removeProperty("y6yyy");
+        assertFalse(agency.getComparables(p9, 11).contains(p10));
+        assertEquals(10, agency.getComparables(p9, 20).size());
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            agency.getComparables(p1, 0);
+        });
+        assertEquals("Invalid k: 0", ex.getMessage());
+    }
+
+    @Test
+    void getPropertiesWithin()
+    {
+        // under $1,000,000 with 2 or 3 bedrooms, by bedrooms then price
+        assertEquals(List.of(p1, p10, p6), agency.getPropertiesWithin(0, 1000000, 2, 3));
+        assertEquals(12, agency.getPropertiesWithin(0, Integer.MAX_VALUE, 1, 20).size());
+        assertTrue(agency.getPropertiesWithin(0, 1000, 1, 20).isEmpty());
+
+        p6.setPriceUsd(1500000.00);
+        agency.removeProperty("abc123");
+        assertEquals(List.of(p10), agency.getPropertiesWithin(0, 1000000, 2, 3));
+        assertEquals(List.of(p10, p6), agency.getPropertiesWithin(0, 2000000, 2, 3).subList(0, 2));
+    }
+
+    @Test
+    void cancelledQueries()
+    {
+        QueryContext context = new QueryContext(System.nanoTime() + 1_000_000_000L);
+        assertEquals(agency.getPropertiesOfType("residence"), agency.getPropertiesOfType("residence", context));
+        assertArrayEquals(agency.getPropertiesBetween(0, 1000000), agency.getPropertiesBetween(0, 1000000, context));
+
+        context.cancel();
+        assertThrows(CancellationException.class, ()->{
+            agency.getPropertiesOfType("residence", context);
+        });
+        assertThrows(CancellationException.class, ()->{
+            agency.getPropertiesBetween(0, 1000000, context);
+        });
+    }
+
+    @Test
+    void publishers()
+    {
+        List<Property> received = new ArrayList<>();
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        boolean[] complete = new boolean[1];
+        agency.publishPropertiesWithPools().subscribe(new Flow.Subscriber<>()
+        {
+            @Override
+            public void onSubscribe(final Flow.Subscription s)
+            {
+                subscription[0] = s;
+            }
+
+            @Override
+            public void onNext(final Property property)
+            {
+                received.add(property);
+            }
+
+            @Override
+            public void onError(final Throwable throwable)
+            {
+                fail(throwable);
+            }
+
+            @Override
+            public void onComplete()
+            {
+                complete[0] = true;
+            }
+        });
+        subscription[0].request(1);
+        assertEquals(1, received.size());
+        assertFalse(complete[0]);
+        subscription[0].request(Long.MAX_VALUE);
+        assertTrue(complete[0]);
+        assertEquals(agency.getPropertiesWithPools().size(), received.size());
+        assertTrue(received.stream().allMatch(Property::hasSwimmingPool));
+
+        assertEquals(collect(agency.publishPropertiesWithBedrooms(2, 3)).size(), agency.getPropertiesWithBedrooms(2, 3).size());
+        assertEquals(collect(agency.publishPropertiesBetween(0, 1000000)).size(), agency.getPropertiesBetween(0, 1000000).length);
+        assertEquals(collect(agency.publishPropertiesOfType("RESIDENCE")).size(), agency.getPropertiesOfType("residence").size() - 1);
+        assertTrue(collect(agency.publishPropertiesOfType("castle")).isEmpty());
+    }
+
+    private static List<Property> collect(final Flow.Publisher<Property> publisher)
+    {
+        List<Property> received = new ArrayList<>();
+        publisher.subscribe(new Flow.Subscriber<>()
+        {
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription)
+            {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(final Property property)
+            {
+                received.add(property);
+            }
+
+            @Override
+            public void onError(final Throwable throwable)
+            {
+                fail(throwable);
+            }
+
+            @Override
+            public void onComplete()
+            {
+            }
+        });
+        return received;
+    }
+
+    @Test
+    void duplicateAddresses()
+    {
+        assertEquals(DuplicatePolicy.ALLOW, agency.getDuplicatePolicy());
+        assertTrue(agency.findDuplicates().isEmpty());
+
+        // the same address as p1, written the way another feed writes it
+        Property copy = new Property(510000.00, new Address("#1A", 777, "56th Ave.", "V7N2m8", "Surrey"),
+                2, false, "residence", "feed2a");
+        agency.addProperty(copy);
+        assertEquals(List.of(List.of(p1, copy)), agency.findDuplicates());
+        assertTrue(agency.getFlaggedDuplicates().isEmpty());
+
+        agency.setDuplicatePolicy(DuplicatePolicy.FLAG);
+        Property third = new Property(520000.00, new Address("1a", 777, "56th avenue", "v7n2m8", "surrey"),
+                2, false, "residence", "feed3a");
+        agency.addProperty(third);
+        assertEquals(Set.of("feed3a"), agency.getFlaggedDuplicates());
+        assertEquals(List.of(List.of(p1, copy, third)), agency.findDuplicates());
+
+        agency.setDuplicatePolicy(DuplicatePolicy.REJECT);
+        Property fourth = new Property(530000.00, new Address("1a", 777, "56th avenue", "v7n2m8", "surrey"),
+                2, false, "residence", "feed4a");
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            agency.addProperty(fourth);
+        });
+        assertEquals("Duplicate address: abc123", ex.getMessage());
+        assertNull(agency.getProperty("feed4a"));
+        // relisting the same id at its own address is not a duplicate
+        agency.addProperty(new Property(600000.00, a2, 5, true, "residence", "xyz789"));
+
+        // two new ids at one new address in a single batch
+        Property first = new Property(1, new Address(null, 1, "new road", "v1v1v1", "langley"), 1, false, "retail", "n1");
+        Property second = new Property(2, new Address(null, 1, "New Rd", "V1V1V1", "langley"), 1, false, "retail", "n2");
+        ex = assertThrows(IllegalArgumentException.class, ()->{
+            agency.addAll(List.of(first, second));
+        });
+        assertEquals("Duplicate address: n1", ex.getMessage());
+        assertNull(agency.getProperty("n1"));
+
+        agency.removeProperty("feed3a");
+        agency.removeProperty("feed2a");
+        assertTrue(agency.getFlaggedDuplicates().isEmpty());
+        assertTrue(agency.findDuplicates().isEmpty());
+
+        NullPointerException npe = assertThrows(NullPointerException.class, ()->{
+            agency.setDuplicatePolicy(null);
+        });
+        assertEquals("Invalid duplicate policy: null", npe.getMessage());
+    }
+
+    @Test
+    void coldStorage(@TempDir final Path directory) throws IOException
+    {
+        IllegalStateException ex = assertThrows(IllegalStateException.class, ()->{
+            agency.spillColdListings();
+        });
+        assertEquals("Cold storage not set", ex.getMessage());
+
+        p1.setPriceUsd(450000.00);
+        double total = agency.getTotalPropertyValues();
+        long residentBytes = agency.getMemoryReport().getPropertyBytes();
+        Path file = directory.resolve("cold.segment");
+        agency.setColdStorage(file);
+
+        // every listing was just read, so the first sweep only clears the referenced bits
+        assertEquals(0, agency.spillColdListings());
+        assertEquals(12, agency.spillColdListings());
+        assertEquals(12, agency.getColdCount());
+        assertEquals(0, agency.getMemoryReport().getPropertyBytes());
+
+        // the indexes never read a cold property; returning one reads it back
+        assertEquals(total, agency.getTotalPropertyValues());
+        assertEquals(3, agency.getPropertiesWithin(400000, 800000, 2, 3).size());
+        assertEquals(9, agency.getColdCount());
+        assertTrue(agency.getMemoryReport().getPropertyBytes() < residentBytes);
+
+        // a promoted property keeps its price history, and the agency listens to it again
+        Property promoted = agency.getProperty("abc123");
+        assertNotSame(p1, promoted);
+        assertSame(promoted, agency.getProperty("abc123"));
+        assertEquals(450000.00, promoted.getPriceUsd());
+        assertEquals(2, promoted.getPriceHistory().getCount());
+        assertEquals(499000.00, promoted.getPriceUsdAt(promoted.getPriceHistory().getFirstMillis()));
+        promoted.setPriceUsd(460000.00);
+        assertEquals(total + 10000.00, agency.getTotalPropertyValues());
+
+        // a property object held across a spill is detached
+        p3.setPriceUsd(1.00);
+        assertEquals(total + 10000.00, agency.getTotalPropertyValues());
+        assertEquals(2500000.00, agency.getProperty("777def").getPriceUsd());
+
+        // writers work on cold listings, reading back only what they change
+        agency.spillColdListings();
+        agency.spillColdListings();
+        assertEquals(12, agency.getColdCount());
+        agency.updatePrices(property -> property.getPropertyType() == PropertyType.COMMERCIAL, price -> price + 1.00);
+        assertEquals(100000.00, agency.getProperty("9999").getPriceUsd());
+        agency.removeProperty("mmm33");
+        agency.addProperty(new Property(760000.00, a6, 3, false, "residence", "mr6789"));
+        assertEquals(11, agency.getPropertiesBetween(0, Integer.MAX_VALUE).length);
+
+        // stopping reads everything back and deletes the file
+        agency.spillColdListings();
+        agency.spillColdListings();
+        assertTrue(agency.getColdCount() > 0);
+        agency.setColdStorage(null);
+        assertEquals(0, agency.getColdCount());
+        assertFalse(Files.exists(file));
+        assertEquals(760000.00, agency.getProperty("mr6789").getPriceUsd());
+    }
+
+    @Test
+    void countAndSumBetween()
+    {
+        assertEquals(agency.getPropertiesBetween(500000, 3000000).length, agency.countBetween(500000, 3000000));
+        assertEquals(12, agency.countBetween(0, Integer.MAX_VALUE));
+        assertEquals(agency.getTotalPropertyValues(), agency.sumBetween(0, Integer.MAX_VALUE), 0.01);
+        assertEquals(agency.getTotalPropertyValuesBetween(500000, 3000000, 2, 4),
+                agency.sumBetween(500000, 3000000, 2, 4), 0.01);
+        // p6 (740100, 3 bedrooms) and p11 (840000, 4 bedrooms)
+        assertEquals(2, agency.countBetween(700001, 900000, 3, 4));
+
+        // kept on price change, remove and batch
+        p6.setPriceUsd(950000.00);
+        assertEquals(1, agency.countBetween(700001, 900000, 3, 4));
+        agency.removeProperty("A1212");
+        assertEquals(0, agency.countBetween(700001, 900000, 3, 4));
+        agency.updatePrices(property -> true, price -> price / 2);
+        assertEquals(agency.getTotalPropertyValues(), agency.sumBetween(0, Integer.MAX_VALUE), 0.01);
+        assertEquals(1, agency.countBetween(475000, 475000, 3, 3));
+    }
+
+    @Test
+    void analytics()
+    {
+        AgencyAnalytics analytics = agency.getAnalytics();
+        assertEquals(12, analytics.getListingCount());
+        assertEquals(5.0 / 12, analytics.getPoolShare(), 1e-9);
+        assertEquals(9, analytics.getDistinctCities());
+        assertEquals(9, analytics.getDistinctStreets());
+        assertEquals(12, analytics.getDistinctPostalCodes());
+        assertEquals(3, analytics.getStreetFrequency("Elm St.", "Los Angeles"));
+        assertEquals(12, analytics.getSampleSize());
+        assertEquals(99999.00, analytics.getPriceQuantile(0), 0.01);
+        assertEquals(15000000.00, analytics.getPriceQuantile(1), 0.01);
+        assertEquals(4.0 / 12, analytics.getPriceBandShare(0, 740100), 1e-9);
+
+        // kept on remove and price change
+        agency.removeProperty("777def");
+        assertEquals(2, analytics.getStreetFrequency("elm street", "los angeles"));
+        assertEquals(4.0 / 11, analytics.getPoolShare(), 1e-9);
+        p5.setPriceUsd(20000000.00);
+        assertEquals(20000000.00, analytics.getPriceQuantile(1), 0.01);
+        assertEquals(11, analytics.getSample().size());
+    }
+
+    @Test
+    void diffAndReconcile()
+    {
+        Agency rebuilt = new Agency("BCIT Ltd rebuilt");
+        assertTrue(rebuilt.getContentHash() == 0);
+        assertEquals(12, agency.diff(rebuilt).size());
+
+        // copies hold the same content whatever order they were listed in
+        ArrayList<Property> copies = new ArrayList<>();
+        for (Property property : new Property[] {p12, p11, p10, p9, p8, p7, p6, p5, p4, p3, p2, p1})
+        {
+            copies.add(new Property(property.getPriceUsd(), property.getAddress(), property.getNumberOfBedrooms(),
+                    property.hasSwimmingPool(), property.getType(), property.getPropertyId()));
+        }
+        rebuilt.addAll(copies);
+        assertEquals(agency.getContentHash(), rebuilt.getContentHash());
+        assertTrue(agency.diff(rebuilt).isEmpty());
+        assertTrue(agency.diff(agency).isEmpty());
+
+        // a price change, a removal and an addition on the live side
+        p6.setPriceUsd(750000.00);
+        agency.removeProperty("9999");
+        Address a13 = new Address(null, 42, "fir street", "v5k0a1", "vancouver");
+        agency.addProperty(new Property(650000.00, a13, 2, false, "residence", "fir42"));
+        assertEquals(List.of("9999", "fir42", "mr6789"), agency.diff(rebuilt));
+        assertEquals(List.of("9999", "fir42", "mr6789"), rebuilt.diff(agency));
+
+        // only the three differing listings are exchanged
+        assertEquals(3, rebuilt.reconcileWith(agency));
+        assertEquals(agency.getContentHash(), rebuilt.getContentHash());
+        assertEquals(750000.00, rebuilt.getProperty("mr6789").getPriceUsd());
+        assertNull(rebuilt.getProperty("9999"));
+        assertNotSame(agency.getProperty("fir42"), rebuilt.getProperty("fir42"));
+        assertEquals(0, rebuilt.reconcileWith(agency));
+
+        assertThrows(NullPointerException.class, () -> agency.diff(null));
+    }
+
+    @Test
+    void scansPromoteOnlyTheirMatches(@TempDir final Path directory) throws IOException
+    {
+        long start = p1.getPriceHistory().getFirstMillis();
+        agency.setColdStorage(directory.resolve("cold.segment"));
+        agency.spillColdListings();
+        assertEquals(12, agency.spillColdListings());
+
+        // no matches: nothing is read back
+        assertNull(agency.getPropertiesOn("nowhere"));
+        assertTrue(agency.propertiesOn("nowhere").isEmpty());
+        assertTrue(agency.propertiesWithBedrooms(7, 9).isEmpty());
+        assertEquals(0, agency.getPropertiesBetween(1, 2, start).length);
+        assertTrue(agency.getPropertiesWithPriceDrop(50, start, System.currentTimeMillis()).isEmpty());
+        assertTrue(agency.getTotalPropertyValuesAt(System.currentTimeMillis()) > 0);
+        assertEquals(12, agency.getColdCount());
+
+        // only the matches are
+        assertEquals(5, agency.getPropertiesWithPools().size());
+        assertEquals(7, agency.getColdCount());
+        // p3 is already in memory; p8 and p12 are read back
+        assertEquals(3, agency.getPropertiesOn("Elm Street").size());
+        assertEquals(5, agency.getColdCount());
+        int count = 0;
+        for (Property property : agency.propertiesWithBedrooms(5, 6))
+        {
+            count++;
+        }
+        assertEquals(2, count);
+        assertEquals(5, agency.getColdCount());
+        agency.setColdStorage(null);
+    }
+
+    @Test
+    void manyIdenticalListings()
+    {
+        // same price, bedrooms, pool and type: one point in the comparables tree
+        Address street = new Address(null, 1, "copy street", "v2v2v2", "vancouver");
+        ArrayList<Property> batch = new ArrayList<>();
+        for (int count = 0; count < 5_000; count++)
+        {
+            batch.add(new Property(650000.00, street, 2, false, "residence", "c" + count));
+        }
+        agency.addAll(batch);
+        for (int count = 5_000; count < 10_000; count++)
+        {
+            agency.addProperty(new Property(650000.00, street, 2, false, "residence", "c" + count));
+        }
+        assertEquals(10_012, agency.countBetween(0, Integer.MAX_VALUE));
+        ArrayList<Property> comparables = agency.getComparables(p1, 3);
+        assertEquals(3, comparables.size());
+        assertEquals(650000.00, comparables.get(0).getPriceUsd());
+    }
+
+    @Test
+    void replaceAllIsOneChange(@TempDir final Path directory) throws IOException
+    {
+        agency.setColdStorage(directory.resolve("cold.segment"));
+        agency.spillColdListings();
+        assertEquals(12, agency.spillColdListings());
+
+        // every change is heard before the new listings are published, so the listener only sees the old ones
+        List<Integer> sizesSeen = new ArrayList<>();
+        agency.addMutationListener(new AgencyMutationListener()
+        {
+            @Override
+            public void propertyAdded(final long sequence, final Listing listing)
+            {
+                sizesSeen.add(agency.snapshot().size());
+            }
+
+            @Override
+            public void propertyRemoved(final long sequence, final String propertyId)
+            {
+                sizesSeen.add(agency.snapshot().size());
+            }
+
+            @Override
+            public void priceChanged(final long sequence, final Listing oldListing, final Listing newListing)
+            {
+            }
+        });
+        Property kept = new Property(510000.00, a1, 2, false, "residence", "abc123");
+        Property added = new Property(620000.00, a10, 3, false, "residence", "new1");
+        agency.replaceAll(List.of(kept, added));
+
+        assertEquals(13, sizesSeen.size());
+        assertTrue(sizesSeen.stream().allMatch(size -> size == 12));
+        assertEquals(2, agency.snapshot().size());
+        assertSame(kept, agency.getProperty("abc123"));
+        assertSame(added, agency.getProperty("new1"));
+        assertNull(agency.getProperty("xyz789"));
+        assertEquals(0, agency.getColdCount());
+        assertEquals(1_130_000.00, agency.getTotalPropertyValues(), 0.001);
+        assertEquals(1, agency.countBetween(600_000, 700_000));
+
+        NullPointerException npe = assertThrows(NullPointerException.class, () -> agency.replaceAll(null));
+        assertEquals("Properties cannot be null", npe.getMessage());
+        agency.setColdStorage(null);
+    }
+
+    @Test
+    void duplicatesSurviveRebuilds()
+    {
+        agency.setDuplicatePolicy(DuplicatePolicy.FLAG);
+        Property copy = new Property(510000.00, new Address("#1A", 777, "56th Ave.", "V7N2m8", "Surrey"),
+                2, false, "residence", "feed2a");
+        Property third = new Property(520000.00, a1, 2, false, "residence", "feed3a");
+        agency.addProperty(copy);
+        agency.addProperty(third);
+        assertEquals(Set.of("feed2a", "feed3a"), agency.getFlaggedDuplicates());
+
+        // a batch this large rebuilds every index from the main map
+        List<Property> batch = new ArrayList<>();
+        List<String> batchIds = new ArrayList<>();
+        for (int count = 0; count < 20; count++)
+        {
+            batch.add(new Property(100000 + count, new Address(null, count + 1, "rebuild road", "v1v1v1", "langley"),
+                    2, false, "residence", "rb" + count));
+            batchIds.add("rb" + count);
+        }
+        agency.addAll(batch);
+        assertEquals(Set.of("feed2a", "feed3a"), agency.getFlaggedDuplicates());
+        assertEquals(List.of(List.of(p1, copy, third)), agency.findDuplicates());
+
+        batchIds.add("feed3a");
+        agency.removeAll(batchIds);
+        assertEquals(Set.of("feed2a"), agency.getFlaggedDuplicates());
+
+        // relisting an id drops its old flag, even in a rebuild
+        agency.setDuplicatePolicy(DuplicatePolicy.ALLOW);
+        Property relisted = new Property(515000.00, a1, 2, false, "residence", "feed2a");
+        batch.add(relisted);
+        agency.addAll(batch);
+        assertTrue(agency.getFlaggedDuplicates().isEmpty());
+        assertEquals(List.of(List.of(p1, relisted)), agency.findDuplicates());
+    }
+
+    @Test
+    void estimateCoversIndexes()
+    {
+        Agency measured = new Agency("Estimate Ltd");
+        AgencyMemoryReport empty = measured.getMemoryReport();
+        for (int count = 0; count < 2000; count++)
+        {
+            measured.addProperty(new Property(100000 + count * 250, new Address(null, count + 1, "estimate road",
+                    "v2v2v2", "burnaby"), 1 + count % 5, count % 2 == 0, "residence", "e" + count));
+        }
+        AgencyMemoryReport full = measured.getMemoryReport();
+
+        // every index grows with the listings, so the running estimate must cover them as well as the main map
+        long grown = full.getMapBytes() - empty.getMapBytes() + full.getIndexBytes() - empty.getIndexBytes();
+        assertTrue(measured.getEstimatedBytes() >= grown, measured.getEstimatedBytes() + " < " + grown);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgencyWorkloadTest
+{
+    private Agency populatedAgency(final int size)
+    {
+        Agency agency = new Agency("Soak Ltd");
+        for (int index = 0; index < size; index++)
+        {
+            Address address = new Address(null, index + 1, "soak street", "v1v1v1", "vancouver");
+            agency.addProperty(new Property(100000 + index * 1000, address, 1 + index % 20, index % 3 == 0,
+                    index % 2 == 0 ? "residence" : "retail", "s" + index));
+        }
+        return agency;
+    }
+
+    @Test
+    void soak() throws InterruptedException
+    {
+        Agency agency = populatedAgency(500);
+        AgencyWorkload workload = new AgencyWorkload(agency, 4, 4_000, 750, 36);
+
+        AgencyWorkload.Report report = workload.run();
+
+        assertEquals(0, report.getErrors());
+        // paced to the target rate, so the count is near rate * duration
+        assertTrue(report.getOperations() > 1_000, report.toString());
+        assertTrue(report.getOperations() <= 3_000 + 4, report.toString());
+        assertTrue(report.getThroughput() > 0);
+
+        long reads = report.getLatency(AgencyWorkload.Operation.GET_PROPERTY).getCount()
+                + report.getLatency(AgencyWorkload.Operation.PRICE_RANGE).getCount()
+                + report.getLatency(AgencyWorkload.Operation.BEDROOM_RANGE).getCount();
+        assertEquals(0.85, reads / (double) report.getOperations(), 0.05);
+        assertEquals(0.10, report.getLatency(AgencyWorkload.Operation.PRICE_UPDATE).getCount()
+                / (double) report.getOperations(), 0.04);
+
+        for (AgencyWorkload.Operation operation : AgencyWorkload.Operation.values())
+        {
+            LatencyHistogram latency = report.getLatency(operation);
+            assertTrue(latency.getCount() > 0, operation.name());
+            assertTrue(latency.getPercentileNanos(50) <= latency.getPercentileNanos(99));
+            assertTrue(latency.getPercentileNanos(99) <= latency.getPercentileNanos(99.9));
+        }
+
+        // every thread removes only what it added, and never more
+        long added = report.getLatency(AgencyWorkload.Operation.ADD_PROPERTY).getCount();
+        long removed = report.getLatency(AgencyWorkload.Operation.REMOVE_PROPERTY).getCount();
+        assertEquals(500 + added - removed, agency.snapshot().size());
+        // and each added property has an address of its own
+        assertTrue(agency.findDuplicates().isEmpty());
+        assertTrue(added - removed < 2 || agency.getAnalytics().getDistinctStreets() > 1);
+        assertTrue(report.toString().contains("p99.9 us"));
+    }
+
+    @Test
+    void unthrottledMix() throws InterruptedException
+    {
+        Agency agency = populatedAgency(50);
+        AgencyWorkload workload = new AgencyWorkload(agency, 2, 0, 100, 1);
+        workload.setMix(100, 0);
+
+        AgencyWorkload.Report report = workload.run();
+
+        assertEquals(0, report.getErrors());
+        assertEquals(0, report.getLatency(AgencyWorkload.Operation.PRICE_UPDATE).getCount());
+        assertEquals(0, report.getLatency(AgencyWorkload.Operation.ADD_PROPERTY).getCount());
+        assertEquals(50, agency.snapshot().size());
+    }
+
+    @Test
+    void getExpectedExceptions()
+    {
+        Agency agency = populatedAgency(1);
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            new AgencyWorkload(agency, 0, 100, 100, 1);
+        });
+        assertEquals("Invalid threads: 0", ex.getMessage());
+
+        ex = assertThrows(IllegalArgumentException.class, ()->{
+            new AgencyWorkload(agency, 1, 100, 100, 1).setMix(90, 20);
+        });
+        assertEquals("Invalid mix: 90, 20", ex.getMessage());
+
+        IllegalStateException ex2 = assertThrows(IllegalStateException.class, ()->{
+            new AgencyWorkload(new Agency("Empty"), 1, 100, 100, 1).run();
+        });
+        assertEquals("Agency has no properties to query", ex2.getMessage());
+    }
+}
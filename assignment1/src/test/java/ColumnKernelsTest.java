@@ -0,0 +1,115 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnKernelsTest
+{
+    @Test
+    void selectBetween()
+    {
+        double[] prices = {5.0, 10.0, 15.0, 20.0, 25.0};
+        long[] selection = new long[1];
+        ColumnKernels.selectBetween(prices, prices.length, 10.0, 20.0, selection, 0);
+
+        assertEquals(0b01110L, selection[0]);
+        assertEquals(3, ColumnKernels.count(selection));
+
+        int[] bedrooms = {1, 2, 3, 4, 5};
+        long[] fewBedrooms = new long[1];
+        ColumnKernels.selectBetween(bedrooms, bedrooms.length, 1, 2, fewBedrooms, 0);
+        ColumnKernels.and(selection, fewBedrooms);
+        assertEquals(0b00010L, selection[0]);
+    }
+
+    @Test
+    void nextSelected()
+    {
+        long[] selection = new long[3];
+        selection[0] = 1L << 63;
+        selection[2] = 1L << 5;
+
+        assertEquals(63, ColumnKernels.nextSelected(selection, 0));
+        assertEquals(63, ColumnKernels.nextSelected(selection, 63));
+        assertEquals(133, ColumnKernels.nextSelected(selection, 64));
+        assertEquals(-1, ColumnKernels.nextSelected(selection, 134));
+        assertEquals(-1, ColumnKernels.nextSelected(selection, 192));
+    }
+
+    @Test
+    void chunksMatchScalarLoops()
+    {
+        // a column in chunks of 1024 rows, the last one partly in use
+        Random random = new Random(35);
+        int chunkRows = 1024;
+        int length = 10_000 + 37;
+        int chunkCount = (length + chunkRows - 1) / chunkRows;
+        double[][] prices = new double[chunkCount][chunkRows];
+        int[][] bedrooms = new int[chunkCount][chunkRows];
+        for (int row = 0; row < length; row++)
+        {
+            prices[row / chunkRows][row % chunkRows] = random.nextInt(1_000_000);
+            bedrooms[row / chunkRows][row % chunkRows] = 1 + random.nextInt(20);
+        }
+
+        int words = (length + 63) / 64;
+        long[] selection = new long[words];
+        long[] fewBedrooms = new long[words];
+        long[] all = new long[words];
+        for (int chunk = 0; chunk < chunkCount; chunk++)
+        {
+            int rows = Math.min(chunkRows, length - chunk * chunkRows);
+            int firstWord = chunk * chunkRows / 64;
+            ColumnKernels.selectBetween(prices[chunk], rows, 250_000, 500_000, selection, firstWord);
+            ColumnKernels.selectBetween(bedrooms[chunk], rows, 2, 4, fewBedrooms, firstWord);
+            ColumnKernels.selectBetween(prices[chunk], rows, 0, Double.MAX_VALUE, all, firstWord);
+        }
+        ColumnKernels.and(selection, fewBedrooms);
+
+        int count = 0;
+        double sum = 0;
+        double total = 0;
+        for (int row = 0; row < length; row++)
+        {
+            double price = prices[row / chunkRows][row % chunkRows];
+            int bedroomCount = bedrooms[row / chunkRows][row % chunkRows];
+            boolean selected = price >= 250_000 && price <= 500_000 && bedroomCount >= 2 && bedroomCount <= 4;
+            assertEquals(selected, (selection[row >>> 6] & (1L << row)) != 0);
+            if (selected)
+            {
+                count++;
+                sum += price;
+            }
+            total += price;
+        }
+        assertEquals(count, ColumnKernels.count(selection));
+        assertEquals(length, ColumnKernels.count(all));
+
+        double selectedSum = 0;
+        double allSum = 0;
+        for (int chunk = 0; chunk < chunkCount; chunk++)
+        {
+            int rows = Math.min(chunkRows, length - chunk * chunkRows);
+            selectedSum += ColumnKernels.sumSelected(prices[chunk], rows, selection, chunk * chunkRows / 64);
+            allSum += ColumnKernels.sumSelected(prices[chunk], rows, all, chunk * chunkRows / 64);
+        }
+        assertEquals(sum, selectedSum, 1e-6);
+        assertEquals(total, allSum, 1e-3);
+    }
+
+    @Test
+    void sumSelectedFullWords()
+    {
+        double[] prices = new double[130];
+        for (int index = 0; index < prices.length; index++)
+        {
+            prices[index] = index;
+        }
+        long[] all = new long[3];
+        ColumnKernels.selectBetween(prices, prices.length, 0, 1000, all, 0);
+
+        assertEquals(-1L, all[0]);
+        assertEquals(129 * 130 / 2, ColumnKernels.sumSelected(prices, prices.length, all, 0));
+    }
+}
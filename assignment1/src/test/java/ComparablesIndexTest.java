@@ -0,0 +1,152 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComparablesIndexTest
+{
+    private final Address address = new Address(null, 1, "kd street", "v1v1v1", "vancouver");
+    private final String[] types = {"residence", "commercial", "retail"};
+
+    private Property randomProperty(final Random random, final int index)
+    {
+        return new Property(50_000 + random.nextInt(5_000_000), address, 1 + random.nextInt(20),
+                random.nextBoolean(), types[random.nextInt(3)], "k" + index);
+    }
+
+    private static double distance(final Property a, final Listing b, final ComparableWeights weights)
+    {
+        double[] x = ComparablesIndex.featuresOf(a, a.getPriceUsd());
+        double[] y = ComparablesIndex.featuresOf(b.getProperty(), b.getPriceUsd());
+        double[] w = {weights.getPrice(), weights.getBedrooms(), weights.getPool(),
+                weights.getType(), weights.getType(), weights.getType()};
+        double sum = 0;
+        for (int dimension = 0; dimension < ComparablesIndex.DIMENSIONS; dimension++)
+        {
+            sum += w[dimension] * (x[dimension] - y[dimension]) * (x[dimension] - y[dimension]);
+        }
+        return sum;
+    }
+
+    private static void assertMatchesBruteForce(final ComparablesIndex index,
+                                                final List<Listing> live,
+                                                final Property query,
+                                                final int k,
+                                                final ComparableWeights weights)
+    {
+        List<Listing> expected = new ArrayList<>(live);
+        expected.removeIf(listing -> listing.getProperty() == query);
+        expected.sort(Comparator.comparingDouble((Listing listing) -> distance(query, listing, weights)));
+        List<Listing> nearest = index.nearest(query, k, weights);
+
+        assertEquals(Math.min(k, expected.size()), nearest.size());
+        for (int rank = 0; rank < nearest.size(); rank++)
+        {
+            // ties may come back in either order, so compare distances
+            assertEquals(distance(query, expected.get(rank), weights), distance(query, nearest.get(rank), weights), 1e-9);
+        }
+    }
+
+    @Test
+    void nearestMatchesBruteForce()
+    {
+        Random random = new Random(37);
+        ComparablesIndex index = new ComparablesIndex();
+        List<Listing> live = new ArrayList<>();
+        for (int count = 0; count < 2_000; count++)
+        {
+            Listing listing = new Listing(randomProperty(random, count));
+            index.insert(listing);
+            live.add(listing);
+        }
+
+        ComparableWeights pricey = new ComparableWeights(10, 1, 0.5, 2);
+        for (int query = 0; query < 50; query++)
+        {
+            Property property = query % 2 == 0 ? live.get(random.nextInt(live.size())).getProperty()
+                    : randomProperty(random, -1);
+            assertMatchesBruteForce(index, live, property, 10, ComparableWeights.EQUAL);
+            assertMatchesBruteForce(index, live, property, 5, pricey);
+        }
+    }
+
+    @Test
+    void removeAndRebuild()
+    {
+        Random random = new Random(370);
+        ComparablesIndex index = new ComparablesIndex();
+        List<Listing> live = new ArrayList<>();
+        for (int count = 0; count < 500; count++)
+        {
+            Listing listing = new Listing(randomProperty(random, count));
+            index.insert(listing);
+            live.add(listing);
+        }
+        // enough removes to force at least one rebuild
+        for (int count = 0; count < 400; count++)
+        {
+            index.remove(live.remove(random.nextInt(live.size())));
+        }
+
+        assertEquals(100, index.size());
+        Property query = randomProperty(random, -1);
+        assertMatchesBruteForce(index, live, query, 20, ComparableWeights.EQUAL);
+        assertEquals(100, index.nearest(query, 1_000, ComparableWeights.EQUAL).size());
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(index.nearest(query, 3, ComparableWeights.EQUAL).isEmpty());
+    }
+
+    @Test
+    void identicalAndSortedListings()
+    {
+        // identical features share a node instead of forming a chain
+        ComparablesIndex index = new ComparablesIndex();
+        List<Listing> identical = new ArrayList<>();
+        for (int count = 0; count < 50_000; count++)
+        {
+            Listing listing = new Listing(new Property(500_000, address, 3, false, "residence", "s" + count));
+            index.insert(listing);
+            identical.add(listing);
+        }
+        Property query = new Property(510_000, address, 3, false, "residence", "q1");
+        assertEquals(5, index.nearest(query, 5, ComparableWeights.EQUAL).size());
+        for (int count = 0; count < 49_990; count++)
+        {
+            index.remove(identical.get(count));
+        }
+        assertEquals(10, index.size());
+        assertEquals(10, index.nearest(query, 20, ComparableWeights.EQUAL).size());
+
+        // listings arriving in price order stay balanced enough to search
+        index.clear();
+        List<Listing> live = new ArrayList<>();
+        for (int count = 0; count < 20_000; count++)
+        {
+            Listing listing = new Listing(new Property(50_000 + count, address, 1 + count % 3, false, "residence",
+                    "p" + count));
+            index.insert(listing);
+            live.add(listing);
+        }
+        assertMatchesBruteForce(index, live, query, 10, ComparableWeights.EQUAL);
+    }
+
+    @Test
+    void getExpectedExceptionsWeight()
+    {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            new ComparableWeights(1, -1, 1, 1);
+        });
+        assertEquals("Invalid weight: -1.0", ex.getMessage());
+
+        ex = assertThrows(IllegalArgumentException.class, ()->{
+            new ComparableWeights(Double.NaN, 1, 1, 1);
+        });
+        assertEquals("Invalid weight: NaN", ex.getMessage());
+    }
+}
@@ -0,0 +1,58 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountMinSketchTest
+{
+    @Test
+    void neverUnderestimates()
+    {
+        Random random = new Random(49);
+        CountMinSketch sketch = new CountMinSketch(256, 4);
+        int[] counts = new int[2_000];
+        for (int count = 0; count < 20_000; count++)
+        {
+            // a few heavy streets and a long tail
+            int street = random.nextBoolean() ? random.nextInt(10) : random.nextInt(counts.length);
+            counts[street]++;
+            sketch.add(HyperLogLog.hash64("street " + street), 1);
+        }
+
+        int withinBound = 0;
+        for (int street = 0; street < counts.length; street++)
+        {
+            int estimate = sketch.estimate(HyperLogLog.hash64("street " + street));
+            assertTrue(estimate >= counts[street]);
+            if (estimate - counts[street] <= Math.E / 256 * 20_000)
+            {
+                withinBound++;
+            }
+        }
+        assertTrue(withinBound >= counts.length * 0.95);
+    }
+
+    @Test
+    void removeAndMerge()
+    {
+        CountMinSketch sketch = new CountMinSketch(64, 3);
+        long elm = HyperLogLog.hash64("elm st|los angeles");
+        sketch.add(elm, 1);
+        sketch.add(elm, 1);
+        sketch.add(elm, -1);
+        assertEquals(1, sketch.estimate(elm));
+
+        CountMinSketch other = new CountMinSketch(64, 3);
+        other.add(elm, 4);
+        sketch.merge(other);
+        assertEquals(5, sketch.estimate(elm));
+
+        sketch.clear();
+        assertEquals(0, sketch.estimate(elm));
+
+        assertThrows(IllegalArgumentException.class, () -> sketch.merge(new CountMinSketch(128, 3)));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(100, 3));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(64, 0));
+    }
+}
@@ -0,0 +1,44 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectBufferPoolTest
+{
+    @Test
+    void acquireAndRelease()
+    {
+        DirectBufferPool pool = new DirectBufferPool(128, 1);
+
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        assertTrue(first.isDirect());
+        assertEquals(128, first.capacity());
+        assertNotSame(first, second);
+
+        first.put((byte) 1);
+        pool.release(first);
+        pool.release(second);
+        // only one is kept, and it comes back cleared
+        assertEquals(1, pool.getIdleCount());
+        ByteBuffer again = pool.acquire();
+        assertSame(first, again);
+        assertEquals(0, again.position());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    void getExpectedExceptions()
+    {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            new DirectBufferPool(8, 1);
+        });
+        assertEquals("Invalid buffer size: 8", ex.getMessage());
+
+        ex = assertThrows(IllegalArgumentException.class, ()->{
+            new DirectBufferPool(1024, 0);
+        });
+        assertEquals("Invalid capacity: 0", ex.getMessage());
+    }
+}
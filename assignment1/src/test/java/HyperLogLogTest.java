@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest
+{
+    @Test
+    void estimatesDistinctValues()
+    {
+        HyperLogLog sketch = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        assertEquals(0, sketch.estimate());
+
+        // small counts are exact or nearly so
+        for (int value = 0; value < 10; value++)
+        {
+            sketch.add(HyperLogLog.hash64("street " + value));
+            sketch.add(HyperLogLog.hash64("street " + value));
+        }
+        assertEquals(10, sketch.estimate(), 1);
+
+        for (int value = 10; value < 100_000; value++)
+        {
+            sketch.add(HyperLogLog.hash64("street " + value));
+        }
+        assertEquals(100_000, sketch.estimate(), 100_000 * 0.05);
+
+        sketch.clear();
+        assertEquals(0, sketch.estimate());
+    }
+
+    @Test
+    void mergeIsUnion()
+    {
+        HyperLogLog left = new HyperLogLog(10);
+        HyperLogLog right = new HyperLogLog(10);
+        for (int value = 0; value < 6_000; value++)
+        {
+            left.add(HyperLogLog.hash64("city " + value));
+            right.add(HyperLogLog.hash64("city " + (value + 3_000)));
+        }
+        left.merge(right);
+        assertEquals(9_000, left.estimate(), 9_000 * 0.1);
+
+        assertThrows(IllegalArgumentException.class, () -> left.merge(new HyperLogLog(11)));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(3));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(17));
+    }
+}
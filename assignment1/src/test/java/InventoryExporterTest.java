@@ -0,0 +1,107 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InventoryExporterTest
+{
+    private Agency smallAgency()
+    {
+        Agency agency = new Agency("Export Ltd");
+        agency.addProperty(new Property(499000.50, new Address("1a", 777, "56th avenue", "v7n2m8", "surrey"),
+                2, false, "residence", "abc123"));
+        return agency;
+    }
+
+    private static String export(final InventoryExporter exporter,
+                                 final AgencySnapshot snapshot,
+                                 final InventoryExporter.Format format) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long written = exporter.export(snapshot, format, Channels.newChannel(bytes));
+        assertEquals(bytes.size(), written);
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void exportCsv() throws IOException
+    {
+        String csv = export(new InventoryExporter(), smallAgency().snapshot(), InventoryExporter.Format.CSV);
+
+        assertEquals("id,type,price,bedrooms,pool,unit,street_number,street,postal_code,city\n"
+                + "abc123,RESIDENCE,499000.50,2,false,1a,777,56th avenue,v7n2m8,surrey\n", csv);
+    }
+
+    @Test
+    void exportJson() throws IOException
+    {
+        Agency agency = smallAgency();
+        agency.addProperty(new Property(1000000, new Address(null, 5, "rue \"the\" café", "h2x1y4", "montréal"),
+                1, true, "retail", "q1"));
+
+        String json = export(new InventoryExporter(), agency.snapshot(), InventoryExporter.Format.JSON);
+
+        assertTrue(json.startsWith("[\n{"));
+        assertTrue(json.endsWith("}\n]\n"));
+        assertTrue(json.contains("{\"id\":\"abc123\",\"type\":\"RESIDENCE\",\"price\":499000.50,\"bedrooms\":2,"
+                + "\"pool\":false,\"unit\":\"1a\",\"street_number\":777,\"street\":\"56th avenue\","
+                + "\"postal_code\":\"v7n2m8\",\"city\":\"surrey\"}"));
+        assertTrue(json.contains("\"price\":1000000,\"bedrooms\":1,\"pool\":true,\"unit\":null,"
+                + "\"street_number\":5,\"street\":\"rue \\\"the\\\" café\""));
+        assertTrue(json.contains("\"city\":\"montréal\""));
+    }
+
+    @Test
+    void csvQuoting() throws IOException
+    {
+        Agency agency = new Agency("Quote Ltd");
+        agency.addProperty(new Property(1, new Address(null, 1, "main, \"upper\"", "v1v1v1", "y"), 1, false, "retail", "z"));
+
+        String csv = export(new InventoryExporter(), agency.snapshot(), InventoryExporter.Format.CSV);
+
+        assertTrue(csv.endsWith("z,RETAIL,1,1,false,,1,\"main, \"\"upper\"\"\",v1v1v1,y\n"));
+    }
+
+    @Test
+    void manySmallBuffers() throws IOException
+    {
+        Agency agency = new Agency("Bulk Ltd");
+        for (int index = 0; index < 2_000; index++)
+        {
+            agency.addProperty(new Property(1000 + index, new Address(null, index, "bulk street", "v1v1v1", "vancouver"),
+                    1 + index % 20, index % 2 == 0, "residence", "b" + index));
+        }
+        DirectBufferPool pool = new DirectBufferPool(100, 2);
+
+        // a buffer barely larger than one row is flushed thousands of times
+        String csv = export(new InventoryExporter(pool), agency.snapshot(), InventoryExporter.Format.CSV);
+        assertEquals(2_001, csv.split("\n").length);
+        assertEquals(1, pool.getIdleCount());
+
+        String json = export(new InventoryExporter(pool), agency.snapshot(), InventoryExporter.Format.JSON);
+        assertEquals(2_000, json.split("\"id\"").length - 1);
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    void exportToFileAndTransfer(@TempDir final Path directory) throws IOException
+    {
+        InventoryExporter exporter = new InventoryExporter();
+        AgencySnapshot snapshot = smallAgency().snapshot();
+        Path file = directory.resolve("inventory.csv");
+
+        long written = exporter.exportToFile(snapshot, InventoryExporter.Format.CSV, file);
+        assertEquals(Files.size(file), written);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertEquals(written, exporter.transfer(file, Channels.newChannel(bytes)));
+        assertEquals(export(exporter, snapshot, InventoryExporter.Format.CSV), bytes.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest
+{
+    private LatencyHistogram histogram;
+
+    @BeforeEach
+    void setUp()
+    {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    void empty()
+    {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(99));
+        assertEquals(0, histogram.getMeanNanos());
+    }
+
+    @Test
+    void record()
+    {
+        histogram.record(5);
+        histogram.record(15);
+        histogram.record(-3);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(20, histogram.getTotalNanos());
+        assertEquals(15, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(0));
+        assertEquals(15, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    void getPercentileNanos()
+    {
+        for (int value = 1; value <= 100000; value++)
+        {
+            histogram.record(value * 1000L);
+        }
+
+        // every bucket is at most 1/16 of its power of two wide
+        assertEquals(50000000, histogram.getPercentileNanos(50), 50000000 / 16.0);
+        assertEquals(99000000, histogram.getPercentileNanos(99), 99000000 / 16.0);
+        assertEquals(99900000, histogram.getPercentileNanos(99.9), 99900000 / 16.0);
+        assertEquals(100000000, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    void bucketBounds()
+    {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE};
+        for (long value : values)
+        {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value <= LatencyHistogram.upperBoundOf(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.upperBoundOf(bucket - 1));
+        }
+    }
+
+    @Test
+    void reset()
+    {
+        histogram.record(100);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    void getExpectedExceptionsPercentile()
+    {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            histogram.getPercentileNanos(100.5);
+        });
+        assertTrue(ex.getMessage().equals("Invalid percentile: 100.5"));
+    }
+}
@@ -0,0 +1,113 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListingColumnIndexTest
+{
+    private static Listing listing(final String propertyId, final double priceUsd, final int bedrooms)
+    {
+        Address address = new Address(null, 10, "column street", "v1v1v1", "vancouver");
+        return new Listing(new Property(priceUsd, address, bedrooms, false, "residence", propertyId));
+    }
+
+    private static void assertHolds(final Map<String, Listing> expected, final ListingColumns columns)
+    {
+        assertEquals(expected.size(), columns.size());
+        Map<String, Listing> rows = new HashMap<>();
+        for (int row = 0; row < columns.size(); row++)
+        {
+            rows.put(columns.listing(row).getPropertyId(), columns.listing(row));
+        }
+        assertEquals(expected, rows);
+
+        // the filters agree with a scan of the expected listings
+        long[] selection = columns.selectPricesBetween(200_000, 600_000);
+        ColumnKernels.and(selection, columns.selectBedroomsBetween(2, 3));
+        double total = 0;
+        int count = 0;
+        for (Listing listing : expected.values())
+        {
+            if (listing.getPriceUsd() >= 200_000 && listing.getPriceUsd() <= 600_000
+                    && listing.getNumberOfBedrooms() >= 2 && listing.getNumberOfBedrooms() <= 3)
+            {
+                total += listing.getPriceUsd();
+                count++;
+            }
+        }
+        assertEquals(count, ColumnKernels.count(selection));
+        assertEquals(total, columns.sumPricesSelected(selection), 1e-3);
+    }
+
+    @Test
+    void publishedColumnsNeverChange()
+    {
+        Random random = new Random(35);
+        ListingColumnIndex index = new ListingColumnIndex();
+        Map<String, Listing> current = new HashMap<>();
+        List<Map<String, Listing>> expected = new ArrayList<>();
+        List<ListingColumns> published = new ArrayList<>();
+        for (int step = 0; step < 30_000; step++)
+        {
+            String propertyId = "c" + random.nextInt(4_000);
+            Listing existing = current.get(propertyId);
+            int action = random.nextInt(3);
+            if (existing == null)
+            {
+                Listing added = listing(propertyId, 100_000 + random.nextInt(900_000), 1 + random.nextInt(4));
+                index.insert(added);
+                current.put(propertyId, added);
+            }
+            else if (action == 0)
+            {
+                index.remove(existing);
+                current.remove(propertyId);
+            }
+            else
+            {
+                Listing repriced = listing(propertyId, 100_000 + random.nextInt(900_000),
+                        existing.getNumberOfBedrooms());
+                index.replace(existing, repriced);
+                current.put(propertyId, repriced);
+            }
+            if (random.nextInt(100) == 0)
+            {
+                published.add(index.columns());
+                expected.add(new HashMap<>(current));
+            }
+        }
+
+        assertHolds(current, index.columns());
+        for (int position = 0; position < published.size(); position++)
+        {
+            assertHolds(expected.get(position), published.get(position));
+        }
+    }
+
+    @Test
+    void publishingWithoutChangesReusesTheColumns()
+    {
+        ListingColumnIndex index = new ListingColumnIndex();
+        for (int count = 0; count < 3_000; count++)
+        {
+            index.insert(listing("c" + count, 100_000 + count, 2));
+        }
+        ListingColumns columns = index.columns();
+        assertSame(columns, index.columns());
+
+        index.remove(columns.listing(0));
+        ListingColumns afterRemove = index.columns();
+        assertNotSame(columns, afterRemove);
+        assertEquals(3_000, columns.size());
+        assertEquals(2_999, afterRemove.size());
+
+        index.clear();
+        assertEquals(0, index.columns().size());
+        assertEquals(0, ColumnKernels.count(index.columns().selectPricesBetween(0, Double.MAX_VALUE)));
+    }
+}
@@ -0,0 +1,159 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListingDigestTest
+{
+    private static Listing listing(final String propertyId, final double priceUsd)
+    {
+        Address address = new Address(null, 10, "digest street", "v1v1v1", "vancouver");
+        return new Listing(new Property(priceUsd, address, 2, false, "residence", propertyId));
+    }
+
+    @Test
+    void sameListingsInAnyOrderHashTheSame()
+    {
+        ListingDigest left = new ListingDigest();
+        ListingDigest right = new ListingDigest();
+        assertEquals(0, left.getRootHash());
+        List<Listing> listings = new ArrayList<>();
+        for (int count = 0; count < 5_000; count++)
+        {
+            listings.add(listing("d" + count, 100_000 + count));
+        }
+        for (Listing added : listings)
+        {
+            left.add(added);
+        }
+        for (int position = listings.size() - 1; position >= 0; position--)
+        {
+            right.add(listings.get(position));
+        }
+        assertEquals(left.getRootHash(), right.getRootHash());
+        assertTrue(ListingDigest.diff(left, right).isEmpty());
+
+        // removing everything returns to the empty hash
+        for (Listing removed : listings)
+        {
+            left.remove(removed);
+        }
+        assertEquals(0, left.getRootHash());
+        right.clear();
+        assertEquals(0, right.getRootHash());
+    }
+
+    @Test
+    void diffFindsExactlyTheDifferences()
+    {
+        Random random = new Random(50);
+        ListingDigest left = new ListingDigest();
+        ListingDigest right = new ListingDigest();
+        Map<String, Listing> leftListings = new HashMap<>();
+        for (int count = 0; count < 20_000; count++)
+        {
+            Listing added = listing("d" + count, 100_000 + count);
+            left.add(added);
+            right.add(added);
+            leftListings.put(added.getPropertyId(), added);
+        }
+
+        TreeSet<String> expected = new TreeSet<>();
+        for (int change = 0; change < 30; change++)
+        {
+            String propertyId = "d" + random.nextInt(20_000);
+            expected.add(propertyId);
+            Listing current = leftListings.get(propertyId);
+            switch (change % 3)
+            {
+                case 0:
+                    // repriced on one side only
+                    current.getProperty().setPriceUsd(current.getPriceUsd() + 1);
+                    Listing repriced = current.reprice();
+                    left.replace(current, repriced);
+                    leftListings.put(propertyId, repriced);
+                    break;
+                case 1:
+                    // a different listing under the same id
+                    right.remove(listing(propertyId, 0));
+                    right.add(new Listing(new Property(current.getPriceUsd(),
+                            new Address("2", 10, "digest street", "v1v1v1", "vancouver"), 2, false, "residence",
+                            propertyId)));
+                    break;
+                default:
+                    left.remove(current);
+                    leftListings.remove(propertyId);
+                    break;
+            }
+        }
+        right.add(listing("xtra1", 1));
+        expected.add("xtra1");
+
+        assertNotEquals(left.getRootHash(), right.getRootHash());
+        assertEquals(new ArrayList<>(expected), ListingDigest.diff(left, right));
+        assertEquals(new ArrayList<>(expected), ListingDigest.diff(right, left));
+    }
+
+    @Test
+    void digestsOfDifferentDepthsCompare()
+    {
+        // the grown digest has FANOUT times the buckets of the small one, or more
+        ListingDigest grown = new ListingDigest();
+        ListingDigest small = new ListingDigest();
+        List<Listing> listings = new ArrayList<>();
+        for (int count = 0; count < 40_000; count++)
+        {
+            listings.add(listing("g" + count, 100_000 + count));
+            grown.add(listings.get(count));
+        }
+        for (int count = 0; count < 35_000; count++)
+        {
+            grown.remove(listings.get(count));
+        }
+        for (int count = listings.size() - 1; count >= 35_000; count--)
+        {
+            small.add(listings.get(count));
+        }
+        assertEquals(grown.getRootHash(), small.getRootHash());
+        assertTrue(ListingDigest.diff(grown, small).isEmpty());
+
+        // a whole branch on one side only is found by merging it against the other side's bucket
+        TreeSet<String> expected = new TreeSet<>();
+        for (int count = 0; count < 2_000; count++)
+        {
+            grown.add(listings.get(count));
+            expected.add(listings.get(count).getPropertyId());
+        }
+        small.remove(listings.get(39_999));
+        expected.add(listings.get(39_999).getPropertyId());
+        assertEquals(new ArrayList<>(expected), ListingDigest.diff(grown, small));
+        assertEquals(new ArrayList<>(expected), ListingDigest.diff(small, grown));
+
+        // adding a listing that is already there changes nothing
+        long rootHash = small.getRootHash();
+        small.add(listings.get(39_998));
+        assertEquals(rootHash, small.getRootHash());
+    }
+
+    @Test
+    void contentHashCoversEveryField()
+    {
+        Address address = new Address("1a", 777, "56th avenue", "v7n2m8", "surrey");
+        long hash = ListingDigest.contentHashOf(new Property(1, address, 2, false, "residence", "abc123"));
+        assertEquals(hash, ListingDigest.contentHashOf(new Property(2, address, 2, false, "residence", "abc123")));
+        assertNotEquals(hash, ListingDigest.contentHashOf(new Property(1, address, 3, false, "residence", "abc123")));
+        assertNotEquals(hash, ListingDigest.contentHashOf(new Property(1, address, 2, true, "residence", "abc123")));
+        assertNotEquals(hash, ListingDigest.contentHashOf(new Property(1, address, 2, false, "retail", "abc123")));
+        assertNotEquals(hash, ListingDigest.contentHashOf(new Property(1, address, 2, false, "residence", "abc124")));
+        assertNotEquals(hash, ListingDigest.contentHashOf(new Property(1,
+                new Address("1a", 777, "56th Avenue", "v7n2m8", "surrey"), 2, false, "residence", "abc123")));
+        assertNotEquals(hash, ListingDigest.contentHashOf(new Property(1,
+                new Address(null, 777, "56th avenue", "v7n2m8", "surrey"), 2, false, "residence", "abc123")));
+    }
+}
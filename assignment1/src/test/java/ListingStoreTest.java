@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListingStoreTest
+{
+    @Test
+    void appendAndRead(@TempDir final Path directory) throws IOException
+    {
+        Property first = new Property(499000.00, new Address("1a", 777, "56th avenue", "v7n2m8", "surrey"),
+                2, false, "residence", "abc123");
+        first.setPriceUsd(489000.00);
+        Property second = new Property(1000000, new Address(null, 5, "rue café", "h2x1y4", "montréal"),
+                4, true, "commercial", "xyz789");
+
+        Path file = directory.resolve("cold.segment");
+        PriceChangeListener listener = (property, oldPriceUsd) -> { };
+        try (ListingStore store = new ListingStore(file, listener, listing -> { }))
+        {
+            long firstOffset = store.append(first);
+            long secondOffset = store.append(second);
+            assertEquals(0, firstOffset);
+            assertTrue(secondOffset > firstOffset);
+            assertTrue(store.getSizeBytes() > secondOffset);
+            assertSame(listener, store.getListener());
+
+            // read in any order, as often as needed
+            Property secondRead = store.read(secondOffset);
+            Property firstRead = store.read(firstOffset);
+            assertEquals("xyz789", secondRead.getPropertyId());
+            assertEquals("montréal", secondRead.getAddress().getCity());
+            assertTrue(secondRead.hasSwimmingPool());
+            assertEquals("abc123", firstRead.getPropertyId());
+            assertEquals(489000.00, firstRead.getPriceUsd());
+            assertEquals(first.getAddress(), firstRead.getAddress());
+            assertEquals(2, firstRead.getPriceHistory().getCount());
+            assertEquals(first.getPriceHistory().getFirstMillis(), firstRead.getPriceHistory().getFirstMillis());
+            assertNotSame(firstRead, store.read(firstOffset));
+        }
+        // the segment is scratch space, not a backup
+        assertFalse(Files.exists(file));
+    }
+}
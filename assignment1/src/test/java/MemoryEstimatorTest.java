@@ -0,0 +1,49 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryEstimatorTest
+{
+    @Test
+    void align()
+    {
+        assertEquals(0, MemoryEstimator.align(0));
+        assertEquals(16, MemoryEstimator.align(12));
+        assertEquals(16, MemoryEstimator.align(16));
+        assertEquals(24, MemoryEstimator.align(17));
+    }
+
+    @Test
+    void sizeOfArray()
+    {
+        assertEquals(16, MemoryEstimator.sizeOfArray(0, 4));
+        assertEquals(56, MemoryEstimator.sizeOfArray(10, 4));
+    }
+
+    @Test
+    void sizeOfString()
+    {
+        long empty = MemoryEstimator.sizeOfString("");
+
+        assertEquals(0, MemoryEstimator.sizeOfString(null));
+        assertEquals(empty + 8, MemoryEstimator.sizeOfString("surrey 1"));
+        assertTrue(MemoryEstimator.sizeOfString("ĀĀĀĀĀĀĀĀ") > MemoryEstimator.sizeOfString("abcdefgh"));
+    }
+
+    @Test
+    void shallowSizeOf()
+    {
+        // header plus a double, an int, a boolean and references, rounded to 8
+        long propertyBytes = MemoryEstimator.shallowSizeOf(Property.class);
+
+        assertTrue(propertyBytes >= 40);
+        assertEquals(0, propertyBytes % 8);
+    }
+
+    @Test
+    void sizeOfHashMap()
+    {
+        assertTrue(MemoryEstimator.sizeOfHashMap(100) > MemoryEstimator.sizeOfHashMap(10));
+        assertEquals(MemoryEstimator.sizeOfHashMap(0), MemoryEstimator.sizeOfHashMap(12) - 12 * MemoryEstimator.sizeOfHashMapNode());
+    }
+}
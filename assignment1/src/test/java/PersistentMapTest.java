@@ -0,0 +1,203 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentMapTest
+{
+    /**
+     * a key whose hash code is chosen by the test, to force collisions
+     */
+    private static final class Key
+    {
+        private final String name;
+        private final int hash;
+
+        Key(final String name, final int hash)
+        {
+            this.name = name;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(final Object other)
+        {
+            return other instanceof Key && ((Key) other).name.equals(name);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    @Test
+    void empty()
+    {
+        PersistentMap<String, String> map = PersistentMap.empty();
+
+        assertEquals(0, map.size());
+        assertTrue(map.isEmpty());
+        assertNull(map.get("x"));
+        assertFalse(map.iterator().hasNext());
+        assertSame(map, map.remove("x"));
+    }
+
+    @Test
+    void putGetRemove()
+    {
+        PersistentMap<String, String> empty = PersistentMap.empty();
+        PersistentMap<String, String> one = empty.put("abc123", "surrey");
+        PersistentMap<String, String> two = one.put("xyz789", "west vancouver");
+        PersistentMap<String, String> replaced = two.put("abc123", "burnaby");
+        PersistentMap<String, String> removed = replaced.remove("xyz789");
+
+        // every version keeps its own contents
+        assertEquals(0, empty.size());
+        assertEquals("surrey", one.get("abc123"));
+        assertNull(one.get("xyz789"));
+        assertEquals(2, two.size());
+        assertEquals("surrey", two.get("abc123"));
+        assertEquals("burnaby", replaced.get("abc123"));
+        assertEquals(2, replaced.size());
+        assertEquals(1, removed.size());
+        assertNull(removed.get("xyz789"));
+        assertSame(removed, removed.remove("fake"));
+    }
+
+    @Test
+    void collisions()
+    {
+        Key a = new Key("a", 42);
+        Key b = new Key("b", 42);
+        Key c = new Key("c", 42);
+        Key d = new Key("d", 42 + (1 << 30));
+
+        PersistentMap<Key, Integer> map = PersistentMap.<Key, Integer>empty().put(a, 1).put(b, 2).put(c, 3).put(d, 4);
+
+        assertEquals(4, map.size());
+        assertEquals(1, map.get(a));
+        assertEquals(2, map.get(b));
+        assertEquals(3, map.get(c));
+        assertEquals(4, map.get(d));
+        assertNull(map.get(new Key("e", 42)));
+
+        map = map.remove(b).remove(a);
+        assertEquals(2, map.size());
+        assertEquals(3, map.get(c));
+        assertEquals(4, map.get(d));
+        assertNull(map.get(a));
+    }
+
+    @Test
+    void matchesHashMap()
+    {
+        Random random = new Random(2501);
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+
+        for (int step = 0; step < 20000; step++)
+        {
+            int key = random.nextInt(3000);
+            if (random.nextInt(3) == 0)
+            {
+                expected.remove(key);
+                map = map.remove(key);
+            }
+            else
+            {
+                expected.put(key, step);
+                map = map.put(key, step);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        HashSet<Integer> values = new HashSet<>();
+        for (Integer value : map)
+        {
+            values.add(value);
+        }
+        assertEquals(new HashSet<>(expected.values()), values);
+        for (Integer key : expected.keySet())
+        {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    @Test
+    void estimateBytes()
+    {
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+        assertEquals(0, map.estimateBytes());
+
+        for (int key = 0; key < 1000; key++)
+        {
+            map = map.put(key, key);
+        }
+        assertTrue(map.estimateBytes() > 1000 * MemoryEstimator.shallowSizeOf(PersistentMap.Entry.class));
+    }
+
+    @Test
+    void spliterator()
+    {
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+        for (int key = 0; key < 10_000; key++)
+        {
+            map = map.put(key, key);
+        }
+
+        Spliterator<Integer> right = map.spliterator();
+        assertTrue(right.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE));
+        assertEquals(10_000, right.estimateSize());
+
+        // every split is exact and roughly even
+        Spliterator<Integer> left = right.trySplit();
+        assertNotNull(left);
+        assertEquals(10_000, left.estimateSize() + right.estimateSize());
+        assertTrue(left.estimateSize() > 4_000 && right.estimateSize() > 4_000);
+        long[] counted = new long[1];
+        left.forEachRemaining(value -> counted[0]++);
+        assertEquals(5_000, counted[0], 500);
+        assertEquals(10_000 - counted[0], right.estimateSize());
+
+        // a parallel sum over the trie sees every value exactly once
+        assertEquals(IntStream.range(0, 10_000).sum(),
+                StreamSupport.stream(map.spliterator(), true).mapToInt(Integer::intValue).sum());
+        assertEquals(10_000, StreamSupport.stream(map.spliterator(), true).collect(Collectors.toSet()).size());
+    }
+
+    @Test
+    void spliteratorOfCollisionsAndEmpty()
+    {
+        PersistentMap<Key, String> map = PersistentMap.empty();
+        for (int index = 0; index < 5; index++)
+        {
+            map = map.put(new Key("k" + index, 42), "v" + index);
+        }
+
+        Spliterator<String> right = map.spliterator();
+        Spliterator<String> left = right.trySplit();
+        assertNotNull(left);
+        assertEquals(5, left.estimateSize() + right.estimateSize());
+        StringBuilder seen = new StringBuilder();
+        assertTrue(left.tryAdvance(seen::append));
+        assertNull(left.trySplit());
+        left.forEachRemaining(seen::append);
+        right.forEachRemaining(seen::append);
+        assertEquals(10, seen.length());
+        assertEquals(0, left.estimateSize());
+
+        Spliterator<String> empty = PersistentMap.<Key, String>empty().spliterator();
+        assertEquals(0, empty.estimateSize());
+        assertNull(empty.trySplit());
+        assertFalse(empty.tryAdvance(seen::append));
+    }
+}
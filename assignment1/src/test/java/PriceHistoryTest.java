@@ -0,0 +1,108 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceHistoryTest
+{
+    @Test
+    void priceAt()
+    {
+        PriceHistory history = new PriceHistory();
+        history.record(1_000, 500000.00);
+        history.record(2_000, 480000.50);
+        history.record(2_000, 470000.00);
+        history.record(5_000, 510000.00);
+
+        assertEquals(4, history.getCount());
+        assertEquals(1_000, history.getFirstMillis());
+        assertEquals(5_000, history.getLastMillis());
+        assertTrue(Double.isNaN(history.priceAt(999)));
+        assertEquals(500000.00, history.priceAt(1_000));
+        assertEquals(500000.00, history.priceAt(1_999));
+        assertEquals(470000.00, history.priceAt(2_000));
+        assertEquals(470000.00, history.priceAt(4_999));
+        assertEquals(510000.00, history.priceAt(Long.MAX_VALUE));
+    }
+
+    @Test
+    void priceAtAcrossCheckpoints()
+    {
+        PriceHistory history = new PriceHistory();
+        int changes = PriceHistory.CHECKPOINT_INTERVAL * 5 + 3;
+        for (int index = 0; index < changes; index++)
+        {
+            // prices go up and down so both signs of delta are encoded
+            history.record(1_700_000_000_000L + index * 60_000L, 100000.00 + (index % 2 == 0 ? index : -index) * 12.34);
+        }
+
+        for (int index = 0; index < changes; index++)
+        {
+            double expected = 100000.00 + (index % 2 == 0 ? index : -index) * 12.34;
+            assertEquals(expected, history.priceAt(1_700_000_000_000L + index * 60_000L + 30_000L), 0.005);
+        }
+    }
+
+    @Test
+    void compactEncoding()
+    {
+        PriceHistory history = new PriceHistory();
+        long initialBytes = history.estimateBytes();
+        for (int index = 0; index < 1_000; index++)
+        {
+            history.record(1_700_000_000_000L + index * 86_400_000L, 500000.00 - index * 100.00);
+        }
+
+        assertEquals(PriceHistory.estimateInitialBytes(), initialBytes);
+        // a day and a hundred dollars fit in four bytes each; two longs would be sixteen
+        assertTrue(history.estimateBytes() < 1_000 * 16);
+    }
+
+    @Test
+    void writeToAndReadFrom() throws IOException
+    {
+        PriceHistory history = new PriceHistory();
+        int changes = PriceHistory.CHECKPOINT_INTERVAL * 2 + 5;
+        for (int index = 0; index < changes; index++)
+        {
+            history.record(1_700_000_000_000L + index * 60_000L, 250000.00 + index * 99.99);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        history.writeTo(new DataOutputStream(bytes));
+
+        PriceHistory copy = new PriceHistory();
+        copy.record(1_000, 1.00);
+        copy.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(changes, copy.getCount());
+        assertEquals(history.getFirstMillis(), copy.getFirstMillis());
+        assertEquals(history.getLastMillis(), copy.getLastMillis());
+        for (int index = 0; index < changes; index++)
+        {
+            long millis = 1_700_000_000_000L + index * 60_000L + 30_000L;
+            assertEquals(history.priceAt(millis), copy.priceAt(millis));
+        }
+        // the copy keeps recording where the original left off
+        copy.record(history.getLastMillis() + 1, 1.00);
+        assertEquals(1.00, copy.priceAt(Long.MAX_VALUE));
+        assertEquals(history.priceAt(history.getLastMillis()), copy.priceAt(history.getLastMillis()));
+    }
+
+    @Test
+    void getExpectedExceptionsTime()
+    {
+        PriceHistory history = new PriceHistory();
+        history.record(2_000, 1.00);
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            history.record(1_999, 2.00);
+        });
+        assertEquals("Invalid time: 1999", ex.getMessage());
+        assertEquals(1.00, history.priceAt(2_000));
+    }
+}
@@ -0,0 +1,129 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceIntervalTreeTest
+{
+    private static SavedSearch search(final String id, final double minUsd, final double maxUsd)
+    {
+        return new SavedSearch(id, minUsd, maxUsd, 1, 20, null, null, null);
+    }
+
+    private static Set<String> stab(final PriceIntervalTree tree, final double priceUsd)
+    {
+        Set<String> ids = new HashSet<>();
+        tree.stab(priceUsd, search -> assertTrue(ids.add(search.getSearchId())));
+        return ids;
+    }
+
+    @Test
+    void stabAtBounds()
+    {
+        PriceIntervalTree tree = PriceIntervalTree.EMPTY
+                .with(search("a", 100, 200))
+                .with(search("b", 150, 300))
+                .with(search("c", 400, 400));
+        assertEquals(Set.of("a"), stab(tree, 100));
+        assertEquals(Set.of("a", "b"), stab(tree, 200));
+        assertEquals(Set.of("b"), stab(tree, 300));
+        assertEquals(Set.of("c"), stab(tree, 400));
+        assertTrue(stab(tree, 350).isEmpty());
+        assertTrue(stab(tree, 99.99).isEmpty());
+
+        PriceIntervalTree smaller = tree.without("b");
+        assertEquals(2, smaller.size());
+        assertEquals(Set.of("a"), stab(smaller, 200));
+        assertSame(smaller, smaller.without("missing"));
+        assertEquals(3, tree.size());
+    }
+
+    @Test
+    void stabMatchesScan()
+    {
+        Random random = new Random(44);
+        List<SavedSearch> searches = new ArrayList<>();
+        PriceIntervalTree tree = PriceIntervalTree.EMPTY;
+        for (int index = 0; index < 500; index++)
+        {
+            double minUsd = random.nextInt(1000) * 1000;
+            SavedSearch search = search("s" + index, minUsd, minUsd + random.nextInt(300) * 1000);
+            searches.add(search);
+            tree = tree.with(search);
+        }
+        for (int probe = 0; probe < 500; probe++)
+        {
+            double priceUsd = random.nextInt(1300) * 1000;
+            Set<String> expected = new HashSet<>();
+            for (SavedSearch search : searches)
+            {
+                if (priceUsd >= search.getMinUsd() && priceUsd <= search.getMaxUsd())
+                {
+                    expected.add(search.getSearchId());
+                }
+            }
+            assertEquals(expected, stab(tree, priceUsd));
+        }
+    }
+
+    @Test
+    void levelsStayCorrectThroughAddsAndRemoves()
+    {
+        Random random = new Random(4400);
+        List<SavedSearch> searches = new ArrayList<>();
+        PriceIntervalTree tree = PriceIntervalTree.EMPTY;
+        for (int index = 0; index < 5_000; index++)
+        {
+            double minUsd = random.nextInt(1000) * 1000;
+            SavedSearch search = search("s" + index, minUsd, minUsd + random.nextInt(300) * 1000);
+            if (index % 500 == 0)
+            {
+                // a batch goes into one level
+                List<SavedSearch> batch = new ArrayList<>(List.of(search));
+                for (int extra = 0; extra < 40; extra++)
+                {
+                    double batchMinUsd = random.nextInt(1000) * 1000;
+                    batch.add(search("b" + index + "-" + extra, batchMinUsd, batchMinUsd + 50_000));
+                }
+                searches.addAll(batch);
+                tree = tree.withAll(batch);
+            }
+            else
+            {
+                searches.add(search);
+                tree = tree.with(search);
+            }
+            if (index % 3 == 0)
+            {
+                SavedSearch removed = searches.remove(random.nextInt(searches.size()));
+                tree = tree.without(removed.getSearchId());
+            }
+        }
+        assertEquals(searches.size(), tree.size());
+
+        for (int probe = 0; probe < 300; probe++)
+        {
+            double priceUsd = random.nextInt(1300) * 1000;
+            Set<String> expected = new HashSet<>();
+            for (SavedSearch search : searches)
+            {
+                if (priceUsd >= search.getMinUsd() && priceUsd <= search.getMaxUsd())
+                {
+                    expected.add(search.getSearchId());
+                }
+            }
+            assertEquals(expected, stab(tree, priceUsd));
+        }
+
+        for (SavedSearch search : searches)
+        {
+            tree = tree.without(search.getSearchId());
+        }
+        assertSame(PriceIntervalTree.EMPTY, tree);
+    }
+}
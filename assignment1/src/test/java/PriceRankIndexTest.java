@@ -0,0 +1,213 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceRankIndexTest
+{
+    private final Address address = new Address(null, 1, "range street", "v1v1v1", "vancouver");
+
+    @Test
+    void countAndSumMatchScan()
+    {
+        Random random = new Random(48);
+        PriceRankIndex index = PriceRankIndex.empty();
+        List<Listing> live = new ArrayList<>();
+        for (int count = 0; count < 3_000; count++)
+        {
+            // few distinct prices, so equal prices are common
+            Listing listing = new Listing(new Property(1_000 * (1 + random.nextInt(200)) + 0.25, address,
+                    1 + random.nextInt(20), false, "residence", "r" + count));
+            index = index.put(listing);
+            live.add(listing);
+        }
+        for (int count = 0; count < 1_000; count++)
+        {
+            index = index.remove(live.remove(random.nextInt(live.size())));
+        }
+        // a price change is a remove at the old price and an insert at the new one
+        for (int count = 0; count < 500; count++)
+        {
+            int position = random.nextInt(live.size());
+            Listing oldListing = live.get(position);
+            oldListing.getProperty().setPriceUsd(1_000 * (1 + random.nextInt(200)) + 0.75);
+            Listing newListing = oldListing.reprice();
+            index = index.remove(oldListing);
+            index = index.put(newListing);
+            live.set(position, newListing);
+        }
+        assertEquals(live.size(), index.size());
+
+        for (int query = 0; query < 200; query++)
+        {
+            int minUsd = 1_000 * random.nextInt(200);
+            int maxUsd = minUsd + 1_000 * random.nextInt(50);
+            int minBedrooms = random.nextInt(22);
+            int maxBedrooms = minBedrooms + random.nextInt(6);
+
+            int expectedCount = 0;
+            double expectedSum = 0;
+            for (Listing listing : live)
+            {
+                int bedrooms = listing.getNumberOfBedrooms();
+                if (listing.getPriceUsd() >= minUsd && listing.getPriceUsd() <= maxUsd
+                        && bedrooms >= minBedrooms && bedrooms <= maxBedrooms)
+                {
+                    expectedCount++;
+                    expectedSum += listing.getPriceUsd();
+                }
+            }
+            assertEquals(expectedCount, index.count(minUsd, maxUsd, minBedrooms, maxBedrooms));
+            assertEquals(expectedSum, index.sum(minUsd, maxUsd, minBedrooms, maxBedrooms), 1e-6);
+        }
+    }
+
+    @Test
+    void boundsAndTies()
+    {
+        PriceRankIndex index = PriceRankIndex.empty();
+        Listing a = new Listing(new Property(200, address, 2, false, "retail", "a"));
+        Listing b = new Listing(new Property(200, address, 2, false, "retail", "b"));
+        Listing c = new Listing(new Property(300, address, 3, false, "retail", "c"));
+        index = index.put(a);
+        index = index.put(b);
+        index = index.put(c);
+
+        assertEquals(3, index.count(200, 300, 1, 20));
+        assertEquals(700, index.sum(200, 300, 1, 20));
+        assertEquals(2, index.count(200, 299.99, 1, 20));
+        assertEquals(1, index.count(200, 300, 3, 3));
+        assertEquals(0, index.count(300, 200, 1, 20));
+        assertEquals(0, index.sum(0, 1_000, 4, 20));
+
+        // equal prices are told apart by id
+        index = index.remove(b);
+        assertEquals(1, index.count(200, 200, 1, 20));
+        index = index.remove(b);
+        assertEquals(2, index.size());
+        index = PriceRankIndex.empty();
+        assertEquals(0, index.count(0, Double.MAX_VALUE, 1, 20));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void queryMatchesScan()
+    {
+        Random random = new Random(38);
+        PriceRankIndex index = PriceRankIndex.empty();
+        List<Listing> live = new ArrayList<>();
+        for (int count = 0; count < 3_000; count++)
+        {
+            // few distinct prices, so equal prices are common
+            Listing listing = new Listing(new Property(1_000 * (1 + random.nextInt(200)), address,
+                    1 + random.nextInt(20), false, "residence", "r" + count));
+            index = index.put(listing);
+            live.add(listing);
+        }
+        for (int count = 0; count < 1_000; count++)
+        {
+            index = index.remove(live.remove(random.nextInt(live.size())));
+        }
+
+        for (int query = 0; query < 100; query++)
+        {
+            int minUsd = 1_000 * random.nextInt(200);
+            int maxUsd = minUsd + 1_000 * random.nextInt(50);
+            int minBedrooms = random.nextInt(22);
+            int maxBedrooms = minBedrooms + random.nextInt(6);
+
+            HashSet<Listing> expected = new HashSet<>();
+            for (Listing listing : live)
+            {
+                int bedrooms = listing.getProperty().getNumberOfBedrooms();
+                if (listing.getPriceUsd() >= minUsd && listing.getPriceUsd() <= maxUsd
+                        && bedrooms >= minBedrooms && bedrooms <= maxBedrooms)
+                {
+                    expected.add(listing);
+                }
+            }
+            List<Listing> matches = index.query(minUsd, maxUsd, minBedrooms, maxBedrooms);
+            assertEquals(expected.size(), matches.size());
+            assertEquals(expected, new HashSet<>(matches));
+        }
+    }
+
+    @Test
+    void queryOrderAndBounds()
+    {
+        PriceRankIndex index = PriceRankIndex.empty();
+        Listing a = new Listing(new Property(200, address, 2, false, "retail", "a"));
+        Listing b = new Listing(new Property(100, address, 2, false, "retail", "b"));
+        Listing c = new Listing(new Property(100, address, 1, false, "retail", "c"));
+        Listing d = new Listing(new Property(300, address, 3, false, "retail", "d"));
+        Listing e = new Listing(new Property(100, address, 2, false, "retail", "e"));
+        index = index.put(a);
+        index = index.put(e);
+        index = index.put(b);
+        index = index.put(c);
+        index = index.put(d);
+
+        // by bedrooms, then by price, then by id
+        assertEquals(List.of(c, b, e, a, d), index.query(0, Double.MAX_VALUE, -5, 50));
+        assertEquals(List.of(c, b, e), index.query(100, 100, 1, 20));
+        assertEquals(List.of(a), index.query(150, 300, 2, 2));
+        assertTrue(index.query(300, 100, 1, 20).isEmpty());
+
+        index = PriceRankIndex.empty();
+        assertTrue(index.query(0, Double.MAX_VALUE, 1, 20).isEmpty());
+    }
+
+    @Test
+    void versionsAreUnchangedByLaterPuts()
+    {
+        Listing a = new Listing(new Property(200, address, 2, false, "retail", "a"));
+        Listing b = new Listing(new Property(300, address, 2, false, "retail", "b"));
+        PriceRankIndex first = PriceRankIndex.empty().put(a);
+        PriceRankIndex second = first.put(b);
+        PriceRankIndex third = second.remove(a);
+
+        assertEquals(List.of(a), first.query(0, 1_000, 1, 20));
+        assertEquals(List.of(a, b), second.query(0, 1_000, 1, 20));
+        assertEquals(List.of(b), third.query(0, 1_000, 1, 20));
+        assertEquals(200, first.sum(0, 1_000, 1, 20));
+        assertEquals(500, second.sum(0, 1_000, 1, 20));
+        assertSame(third, third.remove(a));
+        assertEquals(0, PriceRankIndex.empty().size());
+    }
+
+    @Test
+    void ofMatchesPuts()
+    {
+        Random random = new Random(31);
+        PriceRankIndex put = PriceRankIndex.empty();
+        List<Listing> listings = new ArrayList<>();
+        for (int count = 0; count < 2_000; count++)
+        {
+            Listing listing = new Listing(new Property(1_000 * (1 + random.nextInt(100)), address,
+                    1 + random.nextInt(20), false, "residence", "o" + count));
+            put = put.put(listing);
+            listings.add(listing);
+        }
+        PriceRankIndex built = PriceRankIndex.of(listings);
+        assertEquals(put.size(), built.size());
+        for (int query = 0; query < 100; query++)
+        {
+            int minUsd = 1_000 * random.nextInt(100);
+            int maxUsd = minUsd + 1_000 * random.nextInt(30);
+            assertEquals(put.query(minUsd, maxUsd, 1, 20), built.query(minUsd, maxUsd, 1, 20));
+            assertEquals(put.count(minUsd, maxUsd, 3, 9), built.count(minUsd, maxUsd, 3, 9));
+        }
+
+        // a built index changes like any other
+        for (Listing listing : listings.subList(0, 1_000))
+        {
+            built = built.remove(listing);
+        }
+        assertEquals(1_000, built.size());
+        assertEquals(1_000, built.count(0, Double.MAX_VALUE, 1, 20));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,43 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PropertyCodecTest
+{
+    @Test
+    void writeAndRead() throws IOException
+    {
+        Property withUnit = new Property(499000.50, new Address("1a", 777, "56th avenue", "v7n2m8", "surrey"),
+                2, false, "residence", "abc123");
+        Property withoutUnit = new Property(1000000, new Address(null, 5, "rue café", "h2x1y4", "montréal"),
+                4, true, "commercial", "xyz789");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        PropertyCodec.write(output, withUnit, 450000);
+        PropertyCodec.write(output, withoutUnit, withoutUnit.getPriceUsd());
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+
+        Property first = PropertyCodec.read(input);
+        assertEquals("abc123", first.getPropertyId());
+        // the price passed in is written, not the property's own
+        assertEquals(450000, first.getPriceUsd());
+        assertEquals(withUnit.getAddress(), first.getAddress());
+        assertEquals(2, first.getNumberOfBedrooms());
+        assertFalse(first.hasSwimmingPool());
+        assertEquals("residence", first.getType());
+
+        Property second = PropertyCodec.read(input);
+        assertEquals("xyz789", second.getPropertyId());
+        assertNull(second.getAddress().getUnitNumber());
+        assertEquals("montréal", second.getAddress().getCity());
+        assertTrue(second.hasSwimmingPool());
+        assertEquals(0, input.available());
+    }
+}
@@ -1,154 +1,208 @@
-import org.junit.jupiter.api.AfterEach;
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
-
-import static org.junit.jupiter.api.Assertions.*;
-
-class PropertyTest
-{
-    private Property property1;
-    private Property property2;
-    private Property property3;
-    private Address address;
-
-    @BeforeEach
-    void setUp()
-    {
-        address = new Address("1a", 777, "56th avenue", "v7n2m8", "surrey");
-
-        property1 = new Property(499000, address, 1, true, "resiDEnce", "11111");
-        property2 = new Property(1000000, address, 2, false, "commErcial", "22222");
-        property3 = new Property(840000, address, 3, false, "rETAil", "xxxxx");
-    }
-
-    @AfterEach
-    void tearDown()
-    {
-        address = null;
-
-        property1 = null;
-        property2 = null;
-        property3 = null;
-    }
-
-    @Test
-    void getPriceUsd()
-    {
-        assertEquals(499000, property1.getPriceUsd());
-        assertEquals(1000000, property2.getPriceUsd());
-        assertEquals(840000, property3.getPriceUsd());
-    }
-
-    @Test
-    void getAddress()
-    {
-        assertEquals(address, property1.getAddress());
-    }
-
-    @Test
-    void getNumberOfBedrooms()
-    {
-        assertEquals(1, property1.getNumberOfBedrooms());
-        assertEquals(2, property2.getNumberOfBedrooms());
-        assertEquals(3, property3.getNumberOfBedrooms());
-    }
-
-    @Test
-    void hasSwimmingPool()
-    {
-        assertTrue(property1.hasSwimmingPool());
-        assertFalse(property2.hasSwimmingPool());
-        assertFalse(property3.hasSwimmingPool());
-    }
-
-    @Test
-    void getType()
-    {
-        assertEquals("resiDEnce", property1.getType());
-        assertEquals("commErcial", property2.getType());
-        assertEquals("rETAil", property3.getType());
-    }
-
-    @Test
-    void getPropertyId()
-    {
-        assertEquals("11111", property1.getPropertyId());
-        assertEquals("22222", property2.getPropertyId());
-        assertEquals("xxxxx", property3.getPropertyId());
-    }
-
-    @Test
-    void setPriceUsd()
-    {
-        property1.setPriceUsd(777123);
-        assertEquals(777123, property1.getPriceUsd());
-    }
-
-
-    @Test
-    void getExpectedExceptionsPriceUsd()
-    {
-        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
-            property1 = new Property(-0.01, address, 1, true, "residence", "11111");
-        });
-        assertTrue(ex.getMessage().equals("Invalid price: -0.01"));
-     }
-
-    @Test
-    void getExpectedExceptionsAddress()
-    {
-        NullPointerException ex = assertThrows(NullPointerException.class, ()->{
-            property1 = new Property(499000, null, 1, true, "residence", "11111");
-        });
-        assertTrue(ex.getMessage().equals("Invalid address: null"));
-    }
-
-    @Test
-    void getExpectedExceptionsNumBedrooms()
-    {
-        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
-            property1 = new Property(499000, address, 0, true, "residence", "11111");
-        });
-        assertTrue(ex.getMessage().equals("Invalid number of bedrooms: 0"));
-
-        ex = assertThrows(IllegalArgumentException.class, ()->{
-            property1 = new Property(499000, address, 21, true, "residence", "11111");
-        });
-        assertTrue(ex.getMessage().equals("Invalid number of bedrooms: 21"));
-    }
-
-    @Test
-    void getExpectedExceptionsPropertyType()
-    {
-        NullPointerException ex = assertThrows(NullPointerException.class, ()->{
-            property1 = new Property(499000, address, 1, true, null, "11111");
-        });
-        assertTrue(ex.getMessage().equals("Invalid property type: null"));
-
-        IllegalArgumentException ex2 = assertThrows(IllegalArgumentException.class, ()->{
-            property1 = new Property(499000, address, 2, true, "residencee", "11111");
-        });
-        assertTrue(ex2.getMessage().equals("Invalid property type: residencee"));
-    }
-
-    @Test
-    void getExpectedExceptionsPropertyId()
-    {
-        NullPointerException ex = assertThrows(NullPointerException.class, ()->{
-            property1 = new Property(499000, address, 1, true, "residence", null);
-        });
-        assertTrue(ex.getMessage().equals("Invalid property id: null"));
-
-
-        IllegalArgumentException ex2 = assertThrows(IllegalArgumentException.class, ()->{
-            property1 = new Property(499000, address, 1, true, "residence", "");
-        });
-        assertTrue(ex2.getMessage().equals("Invalid property id: "));
-
-        ex2 = assertThrows(IllegalArgumentException.class, ()->{
-            property1 = new Property(499000, address, 1, true, "residence", "1234567");
-        });
-        assertTrue(ex2.getMessage().equals("Invalid property id: 1234567"));
-    }
-}
-
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PropertyTest
+{
+    private Property property1;
+    private Property property2;
+    private Property property3;
+    private Address address;
+
+    @BeforeEach
+    void setUp()
+    {
+        address = new Address("1a", 777, "56th avenue", "v7n2m8", "surrey");
+
+        property1 = new Property(499000, address, 1, true, "resiDEnce", "11111");
+        property2 = new Property(1000000, address, 2, false, "commErcial", "22222");
+        property3 = new Property(840000, address, 3, false, "rETAil", "xxxxx");
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        address = null;
+
+        property1 = null;
+        property2 = null;
+        property3 = null;
+    }
+
+    @Test
+    void getPriceUsd()
+    {
+        assertEquals(499000, property1.getPriceUsd());
+        assertEquals(1000000, property2.getPriceUsd());
+        assertEquals(840000, property3.getPriceUsd());
+    }
+
+    @Test
+    void getAddress()
+    {
+        assertEquals(address, property1.getAddress());
+    }
+
+    @Test
+    void getNumberOfBedrooms()
+    {
+        assertEquals(1, property1.getNumberOfBedrooms());
+        assertEquals(2, property2.getNumberOfBedrooms());
+        assertEquals(3, property3.getNumberOfBedrooms());
+    }
+
+    @Test
+    void hasSwimmingPool()
+    {
+        assertTrue(property1.hasSwimmingPool());
+        assertFalse(property2.hasSwimmingPool());
+        assertFalse(property3.hasSwimmingPool());
+    }
+
+    @Test
+    void getType()
+    {
+        assertEquals("resiDEnce", property1.getType());
+        assertEquals("commErcial", property2.getType());
+        assertEquals("rETAil", property3.getType());
+    }
+
+    @Test
+    void getPropertyType()
+    {
+        assertEquals(PropertyType.RESIDENCE, property1.getPropertyType());
+        assertEquals(PropertyType.COMMERCIAL, property2.getPropertyType());
+        assertEquals(PropertyType.RETAIL, property3.getPropertyType());
+    }
+
+    @Test
+    void getPropertyId()
+    {
+        assertEquals("11111", property1.getPropertyId());
+        assertEquals("22222", property2.getPropertyId());
+        assertEquals("xxxxx", property3.getPropertyId());
+    }
+
+    @Test
+    void setPriceUsd()
+    {
+        property1.setPriceUsd(777123);
+        assertEquals(777123, property1.getPriceUsd());
+    }
+
+
+    @Test
+    void priceChangeListener()
+    {
+        double[] oldPrices = new double[1];
+        PriceChangeListener listener = (property, oldPriceUsd) -> oldPrices[0] = oldPriceUsd;
+
+        property1.addPriceChangeListener(listener);
+        property1.setPriceUsd(777123);
+        assertEquals(499000, oldPrices[0]);
+
+        // an unchanged price is not a change
+        oldPrices[0] = 0;
+        property1.setPriceUsd(777123);
+        assertEquals(0, oldPrices[0]);
+
+        property1.removePriceChangeListener(listener);
+        property1.setPriceUsd(1);
+        assertEquals(0, oldPrices[0]);
+    }
+
+
+    @Test
+    void getExpectedExceptionsPriceUsd()
+    {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            property1 = new Property(-0.01, address, 1, true, "residence", "11111");
+        });
+        assertTrue(ex.getMessage().equals("Invalid price: -0.01"));
+     }
+
+    @Test
+    void getExpectedExceptionsAddress()
+    {
+        NullPointerException ex = assertThrows(NullPointerException.class, ()->{
+            property1 = new Property(499000, null, 1, true, "residence", "11111");
+        });
+        assertTrue(ex.getMessage().equals("Invalid address: null"));
+    }
+
+    @Test
+    void getExpectedExceptionsNumBedrooms()
+    {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            property1 = new Property(499000, address, 0, true, "residence", "11111");
+        });
+        assertTrue(ex.getMessage().equals("Invalid number of bedrooms: 0"));
+
+        ex = assertThrows(IllegalArgumentException.class, ()->{
+            property1 = new Property(499000, address, 21, true, "residence", "11111");
+        });
+        assertTrue(ex.getMessage().equals("Invalid number of bedrooms: 21"));
+    }
+
+    @Test
+    void getExpectedExceptionsPropertyType()
+    {
+        NullPointerException ex = assertThrows(NullPointerException.class, ()->{
+            property1 = new Property(499000, address, 1, true, null, "11111");
+        });
+        assertTrue(ex.getMessage().equals("Invalid property type: null"));
+
+        IllegalArgumentException ex2 = assertThrows(IllegalArgumentException.class, ()->{
+            property1 = new Property(499000, address, 2, true, "residencee", "11111");
+        });
+        assertTrue(ex2.getMessage().equals("Invalid property type: residencee"));
+    }
+
+    @Test
+    void getExpectedExceptionsPropertyId()
+    {
+        NullPointerException ex = assertThrows(NullPointerException.class, ()->{
+            property1 = new Property(499000, address, 1, true, "residence", null);
+        });
+        assertTrue(ex.getMessage().equals("Invalid property id: null"));
+
+
+        IllegalArgumentException ex2 = assertThrows(IllegalArgumentException.class, ()->{
+            property1 = new Property(499000, address, 1, true, "residence", "");
+        });
+        assertTrue(ex2.getMessage().equals("Invalid property id: "));
+
+        ex2 = assertThrows(IllegalArgumentException.class, ()->{
+            property1 = new Property(499000, address, 1, true, "residence", "1234567");
+        });
+        assertTrue(ex2.getMessage().equals("Invalid property id: 1234567"));
+    }
+
+    @Test
+    void getPriceUsdAt()
+    {
+        Property listed = new Property(500000, address, 2, false, "residence", "h1", 1_000);
+        listed.setPriceUsd(450000, 2_000);
+        listed.setPriceUsd(450000, 3_000);
+        listed.setPriceUsd(470000, 4_000);
+
+        assertTrue(Double.isNaN(listed.getPriceUsdAt(999)));
+        assertEquals(500000, listed.getPriceUsdAt(1_500));
+        assertEquals(450000, listed.getPriceUsdAt(3_500));
+        assertEquals(470000, listed.getPriceUsdAt(4_000));
+        // an unchanged price is not a change
+        assertEquals(3, listed.getPriceHistory().getCount());
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            listed.setPriceUsd(1, 3_999);
+        });
+        assertEquals("Invalid time: 3999", ex.getMessage());
+        assertEquals(470000, listed.getPriceUsd());
+
+        listed.setPriceUsd(460000);
+        assertEquals(460000, listed.getPriceUsdAt(Long.MAX_VALUE));
+    }
+}
+
@@ -0,0 +1,22 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PropertyTypeTest
+{
+    @Test
+    void parse()
+    {
+        assertEquals(PropertyType.RESIDENCE, PropertyType.parse("resiDEnce"));
+        assertEquals(PropertyType.COMMERCIAL, PropertyType.parse(" commErcial "));
+        assertEquals(PropertyType.RETAIL, PropertyType.parse("RETAIL"));
+    }
+
+    @Test
+    void parseUnknown()
+    {
+        assertNull(PropertyType.parse(null));
+        assertNull(PropertyType.parse(""));
+        assertNull(PropertyType.parse("fake fake fake"));
+    }
+}
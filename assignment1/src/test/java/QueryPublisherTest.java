@@ -0,0 +1,164 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryPublisherTest
+{
+    /**
+     * records what it is sent and requests only when told to
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<Integer>
+    {
+        final List<Integer> items = new ArrayList<>();
+        Flow.Subscription subscription;
+        Throwable error;
+        boolean complete;
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(final Integer item)
+        {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(final Throwable throwable)
+        {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete()
+        {
+            complete = true;
+        }
+    }
+
+    @Test
+    void emitsOnlyWhatIsRequested()
+    {
+        List<Integer> pulled = new ArrayList<>();
+        Iterable<Integer> source = () -> List.of(1, 2, 3, 4, 5).stream().peek(pulled::add).iterator();
+        QueryPublisher<Integer> publisher = new QueryPublisher<>(source, Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        // nothing is read before the first request
+        assertTrue(pulled.isEmpty());
+
+        subscriber.subscription.request(2);
+        assertEquals(List.of(1, 2), subscriber.items);
+        // one match is looked up ahead, to know whether to complete
+        assertTrue(pulled.size() <= 3);
+        assertFalse(subscriber.complete);
+
+        subscriber.subscription.request(3);
+        assertEquals(List.of(1, 2, 3, 4, 5), subscriber.items);
+        assertTrue(subscriber.complete);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    void requestFromOnNextDoesNotRecurse()
+    {
+        List<Integer> many = new ArrayList<>();
+        for (int index = 0; index < 100_000; index++)
+        {
+            many.add(index);
+        }
+        RecordingSubscriber subscriber = new RecordingSubscriber()
+        {
+            @Override
+            public void onNext(final Integer item)
+            {
+                super.onNext(item);
+                subscription.request(1);
+            }
+        };
+        new QueryPublisher<>(many, Runnable::run).subscribe(subscriber);
+        subscriber.subscription.request(1);
+        assertEquals(100_000, subscriber.items.size());
+        assertTrue(subscriber.complete);
+    }
+
+    @Test
+    void cancelAndInvalidRequest()
+    {
+        QueryPublisher<Integer> publisher = new QueryPublisher<>(List.of(1, 2, 3), Runnable::run);
+        RecordingSubscriber cancelled = new RecordingSubscriber();
+        publisher.subscribe(cancelled);
+        cancelled.subscription.request(1);
+        cancelled.subscription.cancel();
+        cancelled.subscription.request(5);
+        assertEquals(List.of(1), cancelled.items);
+        assertFalse(cancelled.complete);
+
+        RecordingSubscriber invalid = new RecordingSubscriber();
+        publisher.subscribe(invalid);
+        invalid.subscription.request(0);
+        assertEquals("Invalid request: 0", invalid.error.getMessage());
+        assertTrue(invalid.items.isEmpty());
+    }
+
+    @Test
+    void executeOn() throws InterruptedException
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            List<Integer> items = new ArrayList<>();
+            // requests one at a time as it goes, each request handing the next emission to the executor
+            QueryPublisher<Integer> publisher = new QueryPublisher<>(List.of(1, 2, 3), Runnable::run).executeOn(executor);
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            publisher.subscribe(new Flow.Subscriber<>()
+            {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(final Flow.Subscription subscription)
+                {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(final Integer item)
+                {
+                    items.add(item);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(final Throwable throwable)
+                {
+                    done.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete()
+                {
+                    done.complete(null);
+                }
+            });
+            done.join();
+            assertEquals(List.of(1, 2, 3), items);
+        }
+        finally
+        {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryViewTest
+{
+    private final Address address = new Address("1a", 777, "56th avenue", "v7n2m8", "surrey");
+    private final List<Property> properties = new ArrayList<>(List.of(
+            new Property(100000, address, 1, false, "residence", "1"),
+            new Property(200000, address, 2, true, "residence", "2"),
+            new Property(300000, address, 3, true, "retail", "3"),
+            new Property(400000, address, 4, false, "retail", "4")));
+
+    @Test
+    void evaluatedOnIteration()
+    {
+        AtomicInteger tested = new AtomicInteger();
+        QueryView<String> view = new QueryView<>(() -> properties,
+                property -> {
+                    tested.incrementAndGet();
+                    return property.hasSwimmingPool();
+                },
+                Property::getPropertyId);
+
+        assertEquals(0, tested.get());
+        assertEquals("2", view.first());
+        assertEquals(2, tested.get());
+
+        tested.set(0);
+        assertFalse(view.isEmpty());
+        assertEquals(2, tested.get());
+
+        List<String> ids = new ArrayList<>();
+        view.forEach(ids::add);
+        assertEquals(List.of("2", "3"), ids);
+    }
+
+    @Test
+    void live()
+    {
+        QueryView<Property> view = new QueryView<>(() -> properties, property -> property.getNumberOfBedrooms() > 4,
+                property -> property);
+
+        assertTrue(view.isEmpty());
+        assertNull(view.first());
+
+        properties.add(new Property(500000, address, 5, false, "retail", "5"));
+        assertFalse(view.isEmpty());
+        assertEquals("5", view.first().getPropertyId());
+    }
+
+    @Test
+    void getExpectedExceptionsNext()
+    {
+        Iterator<Property> matches = new QueryView<>(() -> properties, property -> false, property -> property).iterator();
+
+        assertFalse(matches.hasNext());
+        assertThrows(NoSuchElementException.class, matches::next);
+    }
+}
@@ -0,0 +1,159 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicationTest
+{
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private Property property(final int number, final double priceUsd)
+    {
+        return new Property(priceUsd, new Address(null, number, "main street", "v1v1v1", "vancouver"),
+                number % 5 + 1, number % 2 == 0, "residence", "id" + number);
+    }
+
+    @Test
+    void followerCatchesUpAndFollows() throws IOException, InterruptedException
+    {
+        Agency leaderAgency = new Agency("Leader Ltd");
+        for (int number = 1; number <= 20; number++)
+        {
+            leaderAgency.addProperty(property(number, 100000 * number));
+        }
+        Agency followerAgency = new Agency("Follower Ltd");
+        // stale contents are replaced by the leader's snapshot
+        followerAgency.addProperty(property(99, 1));
+
+        try (ReplicationLeader leader = new ReplicationLeader(leaderAgency, 0, InetAddress.getLoopbackAddress());
+             ReplicationFollower follower = new ReplicationFollower(followerAgency, "localhost", leader.getPort()))
+        {
+            leader.start();
+            follower.start();
+            assertTrue(follower.awaitSequence(leaderAgency.snapshot().getSequence(), TIMEOUT_MILLIS));
+            assertEquals(20, followerAgency.snapshot().size());
+            assertNull(followerAgency.getProperty("id99"));
+            assertEquals(1, follower.getSnapshotsLoaded());
+
+            leaderAgency.addProperty(property(21, 2100000));
+            leaderAgency.removeProperty("id1");
+            leaderAgency.getProperty("id2").setPriceUsd(123456);
+            leaderAgency.removeAll(List.of("id3", "id4"));
+
+            assertTrue(follower.awaitSequence(leaderAgency.snapshot().getSequence(), TIMEOUT_MILLIS));
+            assertEquals(18, followerAgency.snapshot().size());
+            assertEquals(2100000, followerAgency.getProperty("id21").getPriceUsd());
+            assertNull(followerAgency.getProperty("id1"));
+            assertNull(followerAgency.getProperty("id4"));
+            assertEquals(123456, followerAgency.getProperty("id2").getPriceUsd());
+            assertEquals(leaderAgency.getTotalPropertyValues(), followerAgency.getTotalPropertyValues());
+            assertEquals(0, follower.getSequenceLag());
+            assertEquals(0, follower.getLagMillis());
+            assertEquals(1, leader.getFollowerCount());
+        }
+    }
+
+    @Test
+    void followerReconnectsAfterLeaderRestarts() throws IOException, InterruptedException
+    {
+        Agency leaderAgency = new Agency("Leader Ltd");
+        leaderAgency.addProperty(property(1, 100000));
+        Agency followerAgency = new Agency("Follower Ltd");
+
+        ReplicationLeader leader = new ReplicationLeader(leaderAgency, 0, InetAddress.getLoopbackAddress());
+        int port = leader.getPort();
+        try (ReplicationFollower follower = new ReplicationFollower(followerAgency, "localhost", port))
+        {
+            leader.start();
+            follower.start();
+            assertTrue(follower.awaitSequence(leaderAgency.snapshot().getSequence(), TIMEOUT_MILLIS));
+            leader.close();
+
+            // changes made while the follower is disconnected arrive in the next snapshot
+            leaderAgency.addProperty(property(2, 200000));
+            leaderAgency.removeProperty("id1");
+            try (ReplicationLeader restarted = rebind(leaderAgency, port))
+            {
+                restarted.start();
+                assertTrue(follower.awaitSequence(leaderAgency.snapshot().getSequence(), TIMEOUT_MILLIS));
+                assertEquals(2, follower.getSnapshotsLoaded());
+                assertNull(followerAgency.getProperty("id1"));
+                assertEquals(200000, followerAgency.getProperty("id2").getPriceUsd());
+            }
+        }
+    }
+
+    private ReplicationLeader rebind(final Agency agency, final int port) throws IOException, InterruptedException
+    {
+        // the follower's reconnect attempts can hold the port for a moment
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true)
+        {
+            try
+            {
+                return new ReplicationLeader(agency, port, InetAddress.getLoopbackAddress());
+            }
+            catch (BindException e)
+            {
+                if (System.currentTimeMillis() > deadline)
+                {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test
+    void followerResyncsAfterARefusedChange() throws IOException, InterruptedException
+    {
+        Agency leaderAgency = new Agency("Leader Ltd");
+        leaderAgency.addProperty(property(1, 100000));
+        Agency followerAgency = new Agency("Follower Ltd");
+        // the leader allows a second listing at the same address; the follower's own policy must not refuse it
+        followerAgency.setDuplicatePolicy(DuplicatePolicy.REJECT);
+
+        try (ReplicationLeader leader = new ReplicationLeader(leaderAgency, 0, InetAddress.getLoopbackAddress());
+             ReplicationFollower follower = new ReplicationFollower(followerAgency, "localhost", leader.getPort()))
+        {
+            leader.start();
+            follower.start();
+            assertTrue(follower.awaitSequence(leaderAgency.snapshot().getSequence(), TIMEOUT_MILLIS));
+            leaderAgency.addProperty(property(2, 200000));
+            assertTrue(follower.awaitSequence(leaderAgency.snapshot().getSequence(), TIMEOUT_MILLIS));
+            assertEquals(2, followerAgency.snapshot().size());
+            assertEquals(0, follower.getFailures());
+
+            // a change over the follower's memory budget is refused; the follower keeps running and,
+            // once the budget allows, catches up from a fresh snapshot
+            followerAgency.setMemoryBudget(followerAgency.getEstimatedBytes());
+            leaderAgency.addProperty(property(3, 300000));
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (follower.getFailures() == 0 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+            assertTrue(follower.getFailures() > 0);
+            assertInstanceOf(IllegalStateException.class, follower.getLastFailure());
+            assertNull(followerAgency.getProperty("id3"));
+
+            followerAgency.setMemoryBudget(0);
+            assertTrue(follower.awaitSequence(leaderAgency.snapshot().getSequence(), TIMEOUT_MILLIS));
+            assertEquals(3, followerAgency.snapshot().size());
+            assertTrue(follower.getSnapshotsLoaded() >= 2);
+        }
+    }
+
+    @Test
+    void getExpectedExceptions()
+    {
+        NullPointerException ex = assertThrows(NullPointerException.class, ()->{
+            new ReplicationFollower(null, "localhost", 1);
+        });
+        assertEquals("Invalid agency: null", ex.getMessage());
+    }
+}
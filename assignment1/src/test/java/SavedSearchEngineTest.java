@@ -0,0 +1,155 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SavedSearchEngineTest
+{
+    private Agency agency;
+    private List<String> matches;
+    private SavedSearchEngine engine;
+
+    private final SavedSearch burnabyPool =
+            new SavedSearch("burnaby-pool", 0, 800000, 3, 20, null, true, "Burnaby");
+    private final SavedSearch anyResidence =
+            new SavedSearch("any-residence", 500000, 1000000, 1, 20, PropertyType.RESIDENCE, null, null);
+    private final SavedSearch retail =
+            new SavedSearch("retail", 0, 10000000, 1, 20, PropertyType.RETAIL, null, null);
+
+    private static Property property(final String id, final double priceUsd, final int bedrooms, final boolean pool, final String city)
+    {
+        return new Property(priceUsd, new Address(null, 1, "main street", "v1v1v1", city), bedrooms, pool, "residence", id);
+    }
+
+    @BeforeEach
+    void setUp()
+    {
+        agency = new Agency("Search Ltd");
+        matches = new ArrayList<>();
+        engine = new SavedSearchEngine(agency, (search, property, priceUsd) ->
+                matches.add(search.getSearchId() + ":" + property.getPropertyId()));
+        engine.register(burnabyPool);
+        engine.register(anyResidence);
+        engine.register(retail);
+    }
+
+    @Test
+    void matchesNewListings()
+    {
+        agency.addProperty(property("p1", 750000, 3, true, " BURNABY"));
+        assertEquals(List.of("any-residence:p1", "burnaby-pool:p1"), sorted(matches));
+
+        matches.clear();
+        // too few bedrooms for burnaby-pool, and too cheap for any-residence
+        agency.addProperty(property("p2", 400000, 2, true, "burnaby"));
+        assertTrue(matches.isEmpty());
+
+        assertEquals(3, engine.size());
+        assertEquals(List.of("any-residence", "burnaby-pool"), sortedIds(engine.matching(agency.getProperty("p1"))));
+    }
+
+    @Test
+    void registerAllMatchesLikeRegister()
+    {
+        List<SavedSearch> saved = new ArrayList<>();
+        for (int index = 0; index < 200; index++)
+        {
+            saved.add(new SavedSearch("bulk" + index, index * 10000, index * 10000 + 5000, 1, 20, null, null, null));
+        }
+        // the last search with an id wins, and an id already saved is replaced
+        saved.add(new SavedSearch("bulk7", 0, 1, 1, 20, null, null, null));
+        saved.add(new SavedSearch("retail", 0, 10000000, 1, 20, PropertyType.RESIDENCE, null, null));
+        engine.registerAll(saved);
+        assertEquals(203, engine.size());
+
+        agency.addProperty(property("p1", 82000, 1, false, "surrey"));
+        assertEquals(List.of("bulk8:p1", "retail:p1"), sorted(matches));
+        matches.clear();
+        agency.addProperty(property("p2", 1, 1, false, "surrey"));
+        assertEquals(List.of("bulk0:p2", "bulk7:p2", "retail:p2"), sorted(matches));
+    }
+
+    @Test
+    void matchesPriceChangesOnce()
+    {
+        agency.addProperty(property("p1", 900000, 3, true, "burnaby"));
+        assertEquals(List.of("any-residence:p1"), matches);
+
+        matches.clear();
+        agency.getProperty("p1").setPriceUsd(790000);
+        // any-residence matched before the drop, so only burnaby-pool is new
+        assertEquals(List.of("burnaby-pool:p1"), matches);
+
+        matches.clear();
+        agency.getProperty("p1").setPriceUsd(780000);
+        assertTrue(matches.isEmpty());
+
+        // batch repricing is matched the same way: below any-residence, then back into it
+        agency.updatePrices(property -> true, price -> 450000);
+        assertTrue(matches.isEmpty());
+        agency.updatePrices(property -> true, price -> 600000);
+        assertEquals(List.of("any-residence:p1"), matches);
+    }
+
+    @Test
+    void unregisterAndClose()
+    {
+        assertTrue(engine.unregister("burnaby-pool"));
+        assertFalse(engine.unregister("burnaby-pool"));
+        // replacing a search moves it to its new bucket
+        engine.register(new SavedSearch("retail", 0, 10000000, 1, 20, PropertyType.RESIDENCE, false, null));
+        agency.addProperty(property("p1", 750000, 3, true, "burnaby"));
+        assertEquals(List.of("any-residence:p1"), matches);
+        agency.addProperty(property("p2", 750000, 3, false, "burnaby"));
+        assertEquals(List.of("any-residence:p1", "any-residence:p2", "retail:p2"), sorted(matches));
+
+        matches.clear();
+        engine.close();
+        agency.addProperty(property("p3", 750000, 3, false, "burnaby"));
+        assertTrue(matches.isEmpty());
+    }
+
+    private static List<String> sorted(final List<String> strings)
+    {
+        List<String> copy = new ArrayList<>(strings);
+        copy.sort(null);
+        return copy;
+    }
+
+    private static List<String> sortedIds(final List<SavedSearch> searches)
+    {
+        List<String> ids = new ArrayList<>();
+        for (SavedSearch search : searches)
+        {
+            ids.add(search.getSearchId());
+        }
+        return sorted(ids);
+    }
+
+    @Test
+    void getExpectedExceptions()
+    {
+        NullPointerException npe = assertThrows(NullPointerException.class, ()->{
+            new SavedSearch(" ", 0, 1, 1, 1, null, null, null);
+        });
+        assertEquals("Invalid search id:  ", npe.getMessage());
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            new SavedSearch("s", 10, 1, 1, 1, null, null, null);
+        });
+        assertEquals("Invalid price range: 10.0 to 1.0", ex.getMessage());
+
+        ex = assertThrows(IllegalArgumentException.class, ()->{
+            new SavedSearch("s", 0, 1, 3, 2, null, null, null);
+        });
+        assertEquals("Invalid bedroom range: 3 to 2", ex.getMessage());
+
+        npe = assertThrows(NullPointerException.class, ()->{
+            engine.register(null);
+        });
+        assertEquals("Invalid search: null", npe.getMessage());
+    }
+}
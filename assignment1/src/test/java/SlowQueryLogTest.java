@@ -0,0 +1,91 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlowQueryLogTest
+{
+    @Test
+    void thresholdAndSampling() throws InterruptedException
+    {
+        try (SlowQueryLog log = new SlowQueryLog(5, 0, 10))
+        {
+            log.offer("BCIT Ltd", "getPropertiesBetween", "0, 100", "price column", 12, 3, 6_000_000, 4_000_000);
+            log.offer("BCIT Ltd", "getProperty", "abc123", "listings", 1, 1, 1_000, 1_000);
+            log.flush();
+
+            List<SlowQuery> entries = log.getEntries();
+            assertEquals(1, entries.size());
+            SlowQuery entry = entries.get(0);
+            assertTrue(entry.isSlow());
+            assertEquals("BCIT Ltd", entry.getAgency());
+            assertEquals("getPropertiesBetween", entry.getMethod());
+            assertEquals("0, 100", entry.getParameters());
+            assertEquals("price column", entry.getIndex());
+            assertEquals(12, entry.getRowsScanned());
+            assertEquals(3, entry.getResultSize());
+            assertEquals(6_000_000, entry.getDurationNanos());
+            assertEquals(2_000_000, entry.getFormatNanos());
+            assertEquals(Thread.currentThread().getName(), entry.getThread());
+
+            // every call under the threshold is sampled at rate 1
+            log.setSampleRate(1);
+            log.offer("BCIT Ltd", "getProperty", "abc123", "listings", 1, 1, 1_000, 1_000);
+            log.flush();
+            assertEquals(2, log.getWrittenCount());
+            assertFalse(log.getEntries().get(1).isSlow());
+        }
+    }
+
+    @Test
+    void ringKeepsNewest() throws InterruptedException
+    {
+        try (SlowQueryLog log = new SlowQueryLog(0, 0, 4))
+        {
+            for (int call = 0; call < 10; call++)
+            {
+                log.offer("BCIT Ltd", "getProperty", String.valueOf(call), null, 1, 1, 1_000, 1_000);
+                log.flush();
+            }
+
+            List<SlowQuery> entries = log.getEntries();
+            assertEquals(4, log.getCapacity());
+            assertEquals(10, log.getWrittenCount());
+            assertEquals(4, entries.size());
+            for (int index = 0; index < entries.size(); index++)
+            {
+                assertEquals(String.valueOf(6 + index), entries.get(index).getParameters());
+            }
+            assertEquals(0, log.getDroppedCount());
+        }
+    }
+
+    @Test
+    void closedLogIgnoresCalls()
+    {
+        SlowQueryLog log = new SlowQueryLog(0, 1, 4);
+        log.close();
+        log.offer("BCIT Ltd", "getProperty", "abc123", null, 1, 1, 1_000, 1_000);
+        assertTrue(log.getEntries().isEmpty());
+    }
+
+    @Test
+    void getExpectedExceptions()
+    {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, ()->{
+            new SlowQueryLog(-1, 0, 4);
+        });
+        assertEquals("Invalid threshold: -1", ex.getMessage());
+
+        ex = assertThrows(IllegalArgumentException.class, ()->{
+            new SlowQueryLog(0, 1.5, 4);
+        });
+        assertEquals("Invalid sample rate: 1.5", ex.getMessage());
+
+        ex = assertThrows(IllegalArgumentException.class, ()->{
+            new SlowQueryLog(0, 0, 0);
+        });
+        assertEquals("Invalid capacity: 0", ex.getMessage());
+    }
+}
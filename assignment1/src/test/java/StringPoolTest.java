@@ -0,0 +1,47 @@
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StringPoolTest
+{
+    @Test
+    void intern()
+    {
+        String first = StringPool.intern(new String("maple ridge"));
+        String second = StringPool.intern(new String("maple ridge"));
+
+        assertEquals("maple ridge", first);
+        assertSame(first, second);
+        assertNull(StringPool.intern(null));
+    }
+
+    @Test
+    void size()
+    {
+        String held = StringPool.intern(new String("a street never seen"));
+        int size = StringPool.size();
+        assertSame(held, StringPool.intern(new String("a street never seen")));
+
+        // interning an equal value adds nothing (other values may have been reclaimed meanwhile)
+        assertTrue(size >= 1);
+        assertTrue(StringPool.size() <= size);
+    }
+
+    @Test
+    void unreferencedValuesAreReclaimed() throws InterruptedException
+    {
+        WeakReference<String> pooled = new WeakReference<>(StringPool.intern(new String("a street soon forgotten")));
+        for (int attempt = 0; attempt < 50 && pooled.get() != null; attempt++)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(pooled.get());
+
+        // the next request for the value makes a new canonical instance
+        String again = new String("a street soon forgotten");
+        assertSame(again, StringPool.intern(again));
+    }
+}